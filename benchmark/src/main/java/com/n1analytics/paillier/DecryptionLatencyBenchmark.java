@@ -0,0 +1,53 @@
+package com.n1analytics.paillier;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency distribution of a single decryption, serial {@link PaillierPrivateKey#raw_decrypt}
+ * versus the parallel CRT halves of {@link ParallelDecryptor}. Run in sample mode, JMH reports
+ * the p99 (and other percentiles) of both.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class DecryptionLatencyBenchmark {
+
+  @Param({"2048", "3072", "4096"})
+  int keySize;
+
+  PaillierPrivateKey privateKey;
+  BigInteger ciphertext;
+  ExecutorService executor;
+  ParallelDecryptor decryptor;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    privateKey = PaillierPrivateKey.create(keySize);
+    ciphertext = privateKey.getPublicKey().raw_encrypt(BigInteger.valueOf(42));
+    executor = Executors.newFixedThreadPool(2);
+    decryptor = new ParallelDecryptor(privateKey, executor, 0);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  public BigInteger serial() {
+    return privateKey.raw_decrypt(ciphertext);
+  }
+
+  @Benchmark
+  public BigInteger parallel() {
+    return decryptor.raw_decrypt(ciphertext);
+  }
+}
@@ -0,0 +1,94 @@
+package com.n1analytics.paillier;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of encrypted squared distance scoring, in corpus rows per second.
+ *
+ * {@code scoreCorpus} scores the whole corpus with {@link EncryptedDistanceScorer} on all
+ * available cores, {@code scoreRow} scores a single row with the scorer's tables and
+ * {@code naiveRow} computes the same row with one {@code EncryptedNumber.multiply} per dimension.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EncryptedDistanceBenchmark {
+
+  private static final int ROWS = 100000;
+
+  @Param({"2048"})
+  int keySize;
+
+  @Param({"128"})
+  int dimensions;
+
+  @Param({"16"})
+  int valueBits;
+
+  PaillierContext context;
+  EncryptedNumber[] query;
+  EncryptedNumber queryNorm;
+  long[][] corpus;
+  ExecutorService executor;
+  EncryptedDistanceScorer scorer;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    Random rnd = new Random(42);
+    context = PaillierPrivateKey.create(keySize).getPublicKey().createSignedContext();
+    query = new EncryptedNumber[dimensions];
+    long norm = 0;
+    for (int j = 0; j < dimensions; j++) {
+      long q = rnd.nextInt(1 << valueBits) - (1 << (valueBits - 1));
+      query[j] = context.encrypt(q).obfuscate();
+      norm += q * q;
+    }
+    queryNorm = context.encrypt(norm).obfuscate();
+    corpus = new long[ROWS][dimensions];
+    for (long[] row : corpus) {
+      for (int j = 0; j < dimensions; j++) {
+        row[j] = rnd.nextInt(1 << valueBits) - (1 << (valueBits - 1));
+      }
+    }
+    executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    scorer = new EncryptedDistanceScorer(query, queryNorm, valueBits, executor);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    executor.shutdown();
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public void scoreCorpus(Blackhole bh) {
+    bh.consume(scorer.score(corpus));
+  }
+
+  @Benchmark
+  public void scoreRow(Blackhole bh) {
+    bh.consume(scorer.score(corpus[0]));
+  }
+
+  @Benchmark
+  public void naiveRow(Blackhole bh) {
+    long[] row = corpus[0];
+    EncryptedNumber result = queryNorm;
+    long rowNorm = 0;
+    for (int j = 0; j < dimensions; j++) {
+      result = result.add(query[j].multiply(BigInteger.valueOf(-2 * row[j])));
+      rowNorm += row[j] * row[j];
+    }
+    bh.consume(result.add(rowNorm).obfuscate());
+  }
+}
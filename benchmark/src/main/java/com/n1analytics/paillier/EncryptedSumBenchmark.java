@@ -0,0 +1,73 @@
+package com.n1analytics.paillier;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of summing {@code SIZE} ciphertexts, with a division per addition as
+ * {@code PaillierPublicKey.raw_add} used to reduce, and with the Barrett reduction it uses now,
+ * both on raw ciphertexts and through {@code EncryptedNumber.add}. The summands cycle through a
+ * pool of {@code POOL} distinct ciphertexts, which costs the same as distinct ones without
+ * holding a million ciphertexts in memory.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class EncryptedSumBenchmark {
+
+  static final int SIZE = 1000000;
+
+  static final int POOL = 1024;
+
+  @Param({"1024", "2048"})
+  int keyBits;
+
+  PaillierPublicKey publicKey;
+  BigInteger[] ciphertexts;
+  EncryptedNumber[] encrypted;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    publicKey = PaillierPrivateKey.create(keyBits).getPublicKey();
+    PaillierContext context = publicKey.createSignedContext();
+    ciphertexts = new BigInteger[POOL];
+    encrypted = new EncryptedNumber[POOL];
+    for (int i = 0; i < POOL; i++) {
+      encrypted[i] = context.encrypt(i).obfuscate();
+      ciphertexts[i] = encrypted[i].calculateCiphertext();
+    }
+  }
+
+  @Benchmark
+  public BigInteger divisionSum() {
+    BigInteger modulusSquared = publicKey.getModulusSquared();
+    BigInteger sum = BigInteger.ONE;
+    for (int i = 0; i < SIZE; i++) {
+      sum = sum.multiply(ciphertexts[i % POOL]).mod(modulusSquared);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public BigInteger barrettSum() {
+    BigInteger sum = BigInteger.ONE;
+    for (int i = 0; i < SIZE; i++) {
+      sum = publicKey.raw_add(sum, ciphertexts[i % POOL]);
+    }
+    return sum;
+  }
+
+  @Benchmark
+  public EncryptedNumber encryptedNumberSum() {
+    EncryptedNumber sum = encrypted[0];
+    for (int i = 1; i < SIZE; i++) {
+      sum = sum.add(encrypted[i % POOL]);
+    }
+    return sum;
+  }
+}
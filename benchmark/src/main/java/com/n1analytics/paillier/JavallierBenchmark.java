@@ -4,6 +4,8 @@ import org.openjdk.jmh.annotations.*;
 import org.openjdk.jmh.infra.Blackhole;
 
 import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 
@@ -26,9 +28,22 @@ public class JavallierBenchmark {
     EncryptedNumber encryptedNumber1;
     EncryptedNumber encryptedNumber2;
     EncodedNumber encodedNumber2;
+    ExecutorService executor;
+    PaillierKeyGenerator keyGenerator;
 
     public static Random rnd = new Random();
 
+    @Setup(Level.Trial)
+    public void setupKeyGenerator() {
+      executor = Executors.newFixedThreadPool(2);
+      keyGenerator = new PaillierKeyGenerator(executor);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownKeyGenerator() {
+      executor.shutdown();
+    }
+
     @Setup(Level.Iteration)
     public void setup() {
       KEY = PaillierPrivateKey.create(size);
@@ -77,6 +92,11 @@ public class JavallierBenchmark {
       bh.consume(createKey(size));
     }
 
+    @Benchmark
+    public void keyGenerationSieved(Blackhole bh) {
+      bh.consume(keyGenerator.generate(size));
+    }
+
     @Benchmark
     public void safeEncryption(Blackhole bh) {
       bh.consume(encryptSafe(context, num1));
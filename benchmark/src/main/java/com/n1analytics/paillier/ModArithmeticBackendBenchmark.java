@@ -0,0 +1,74 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+import com.n1analytics.paillier.util.ModArithmeticBackends;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the modular arithmetic backends on the batch paths of the bulk operations: a batch
+ * of {@code BATCH} exponentiations with a shared exponent half the length of the modulus, as in
+ * an obfuscation or a scalar multiplication, and the product of {@code FACTORS} numbers, as in a
+ * homomorphic sum. Backends that are not available on this system, e.g. GMP without the native
+ * library, fail their trials.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class ModArithmeticBackendBenchmark {
+
+  static final int BATCH = 8;
+
+  static final int FACTORS = 1024;
+
+  @Param({"GMP", "BigInteger", "Montgomery"})
+  String backendName;
+
+  @Param({"1024", "2048", "4096"})
+  int modulusBits;
+
+  ModArithmeticBackend backend;
+  BigInteger modulus;
+  BigInteger exponent;
+  BigInteger[] bases;
+  BigInteger[] factors;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    for (ModArithmeticBackend available : ModArithmeticBackends.getAvailableBackends()) {
+      if (available.getName().equals(backendName)) {
+        backend = available;
+      }
+    }
+    if (backend == null) {
+      throw new IllegalStateException("the " + backendName + " backend is not available");
+    }
+    Random rnd = new Random(47);
+    modulus = new BigInteger(modulusBits, rnd).setBit(modulusBits - 1).setBit(0);
+    exponent = new BigInteger(modulusBits / 2, rnd).setBit(modulusBits / 2 - 1);
+    bases = new BigInteger[BATCH];
+    for (int i = 0; i < bases.length; i++) {
+      bases[i] = new BigInteger(modulusBits - 1, rnd);
+    }
+    factors = new BigInteger[FACTORS];
+    for (int i = 0; i < factors.length; i++) {
+      factors[i] = new BigInteger(modulusBits - 1, rnd);
+    }
+  }
+
+  @Benchmark
+  public BigInteger[] batchModPow() {
+    return backend.modPow(bases, exponent, modulus);
+  }
+
+  @Benchmark
+  public BigInteger product() {
+    return backend.product(factors, modulus);
+  }
+}
@@ -0,0 +1,63 @@
+package com.n1analytics.paillier;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time of summing {@code size} encrypted numbers with {@link ParallelSummer} on pools of 1 to 64
+ * threads, to measure the speedup of the tree reduction over the single-threaded sum. The
+ * speedup can only be near-linear up to the number of cores of the machine. As in
+ * {@link EncryptedSumBenchmark}, the summands cycle through a pool of {@code POOL} distinct
+ * obfuscated numbers; a tenth of them has a different exponent.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+public class ParallelSumBenchmark {
+
+  static final int POOL = 1024;
+
+  @Param({"10000000"})
+  int size;
+
+  @Param({"1", "2", "4", "8", "16", "32", "64"})
+  int threads;
+
+  @Param({"1024", "2048"})
+  int keyBits;
+
+  ForkJoinPool pool;
+  ParallelSummer summer;
+  EncryptedNumber[] numbers;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    PaillierContext context = PaillierPrivateKey.create(keyBits).getPublicKey()
+            .createSignedContext();
+    EncryptedNumber[] distinct = new EncryptedNumber[POOL];
+    for (int i = 0; i < POOL; i++) {
+      distinct[i] = context.encrypt(i % 10 == 0 ? i / 4.0 : i).obfuscate();
+    }
+    numbers = new EncryptedNumber[size];
+    for (int i = 0; i < size; i++) {
+      numbers[i] = distinct[i % POOL];
+    }
+    pool = new ForkJoinPool(threads);
+    summer = new ParallelSummer(context, pool);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    pool.shutdown();
+  }
+
+  @Benchmark
+  public EncryptedNumber sum() {
+    return summer.sum(numbers);
+  }
+}
@@ -0,0 +1,65 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.RandomnessProvider;
+import com.n1analytics.paillier.util.SharedRandomnessProvider;
+import com.n1analytics.paillier.util.ThreadLocalRandomnessProvider;
+import org.openjdk.jmh.annotations.*;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of drawing obfuscation randomness from 1 to 64 threads, with the single shared
+ * {@code SecureRandom} versus a generator per thread. Each call draws one random number below a
+ * 2048-bit modulus, as an obfuscation does before its exponentiation. The shared generator stops
+ * scaling once threads queue up on its lock; compare the results per thread count.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(1)
+public class RandomnessScalingBenchmark {
+
+  @Param({"shared", "threadLocal"})
+  String provider;
+
+  RandomnessProvider randomness;
+  BigInteger modulus;
+
+  @Setup(Level.Trial)
+  public void setup() {
+    randomness = provider.equals("shared")
+                 ? new SharedRandomnessProvider(new SecureRandom())
+                 : new ThreadLocalRandomnessProvider();
+    modulus = BigInteger.ONE.shiftLeft(2047).add(BigIntegerUtil.randomPositiveNumber(
+            BigInteger.ONE.shiftLeft(2047)));
+  }
+
+  @Benchmark
+  @Threads(1)
+  public BigInteger threads1() {
+    return randomness.randomPositiveNumber(modulus);
+  }
+
+  @Benchmark
+  @Threads(4)
+  public BigInteger threads4() {
+    return randomness.randomPositiveNumber(modulus);
+  }
+
+  @Benchmark
+  @Threads(16)
+  public BigInteger threads16() {
+    return randomness.randomPositiveNumber(modulus);
+  }
+
+  @Benchmark
+  @Threads(64)
+  public BigInteger threads64() {
+    return randomness.randomPositiveNumber(modulus);
+  }
+}
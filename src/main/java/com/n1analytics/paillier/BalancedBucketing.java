@@ -0,0 +1,107 @@
+package com.n1analytics.paillier;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Balanced allocation of set elements into buckets ("power of two choices").
+ *
+ * Every element has two candidate buckets, derived from a SHA-256 hash of a public seed and
+ * the element. When a set is assigned, each element goes into the less loaded of its two
+ * candidates, which keeps the maximum load at <code>O(log log m)</code> instead of the
+ * <code>O(log m / log log m)</code> of a single hash function. In private set intersection the
+ * polynomial owner uses this to split its set into many short polynomials, and the evaluating
+ * party evaluates each of its points at the polynomials of both candidate buckets only.
+ *
+ * Both parties must use the same number of buckets and the same seed.
+ */
+public final class BalancedBucketing {
+
+  private final int numberOfBuckets;
+
+  private final byte[] seed;
+
+  /**
+   * Constructs a bucketing.
+   *
+   * @param numberOfBuckets the number of buckets, must be positive.
+   * @param seed public seed of the hash functions, shared by both parties.
+   */
+  public BalancedBucketing(int numberOfBuckets, byte[] seed) {
+    if (numberOfBuckets < 1) {
+      throw new IllegalArgumentException("numberOfBuckets must be positive");
+    }
+    if (seed == null) {
+      throw new NullPointerException("seed must not be null");
+    }
+    this.numberOfBuckets = numberOfBuckets;
+    this.seed = seed.clone();
+  }
+
+  /**
+   * @return the number of buckets.
+   */
+  public int getNumberOfBuckets() {
+    return numberOfBuckets;
+  }
+
+  /**
+   * Returns the two candidate buckets of {@code element}. The two candidates may coincide.
+   *
+   * @param element the set element.
+   * @return an array holding the two candidate bucket indices.
+   */
+  public int[] candidateBuckets(BigInteger element) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new PaillierRuntimeException(e);
+    }
+    digest.update(seed);
+    byte[] hash = digest.digest(element.toByteArray());
+    long first = ((hash[0] & 0xffL) << 24) | ((hash[1] & 0xffL) << 16)
+            | ((hash[2] & 0xffL) << 8) | (hash[3] & 0xffL);
+    long second = ((hash[4] & 0xffL) << 24) | ((hash[5] & 0xffL) << 16)
+            | ((hash[6] & 0xffL) << 8) | (hash[7] & 0xffL);
+    return new int[]{(int) (first % numberOfBuckets), (int) (second % numberOfBuckets)};
+  }
+
+  /**
+   * Assigns every element to the less loaded of its two candidate buckets.
+   *
+   * @param elements the set to split.
+   * @return the content of each bucket.
+   */
+  public List<List<BigInteger>> assign(BigInteger[] elements) {
+    List<List<BigInteger>> buckets = new ArrayList<List<BigInteger>>(numberOfBuckets);
+    for (int i = 0; i < numberOfBuckets; i++) {
+      buckets.add(new ArrayList<BigInteger>());
+    }
+    for (BigInteger element : elements) {
+      int[] candidates = candidateBuckets(element);
+      List<BigInteger> first = buckets.get(candidates[0]);
+      List<BigInteger> second = buckets.get(candidates[1]);
+      (second.size() < first.size() ? second : first).add(element);
+    }
+    return buckets;
+  }
+
+  /**
+   * Returns the maximum load of the given buckets, i.e., the degree every bucket polynomial
+   * must be padded to.
+   *
+   * @param buckets as returned by {@link #assign(BigInteger[])}.
+   * @return the size of the fullest bucket.
+   */
+  public static int maxLoad(List<List<BigInteger>> buckets) {
+    int max = 0;
+    for (List<BigInteger> bucket : buckets) {
+      max = Math.max(max, bucket.size());
+    }
+    return max;
+  }
+}
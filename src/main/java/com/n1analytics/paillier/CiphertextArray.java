@@ -0,0 +1,479 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.IndexedSpliterator;
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A fixed-length array of encrypted numbers of one context, stored without an object per
+ * element.
+ *
+ * The ciphertexts are kept as fixed-width unsigned big-endian slots in a single direct
+ * {@code ByteBuffer}, outside the Java heap, with a parallel {@code int[]} exponent column and
+ * a bit per element recording whether it is obfuscated. An array of a million ciphertexts is
+ * thus three objects for the garbage collector instead of several million.
+ *
+ * The bulk kernels ({@link #sum()}, {@link #multiply(EncodedNumber)}, {@link #obfuscate()} and
+ * the binary serialisation in {@code com.n1analytics.paillier.io.BinaryFormat}) work on the
+ * slots directly. An {@link EncryptedNumber} is only created when one is asked for with
+ * {@link #get(int)} or {@link #stream()}.
+ *
+ * Instances are not thread-safe, except that the kernels taking an {@code ExecutorService}
+ * split their work over disjoint ranges themselves, and that a parallel {@link #stream()} of
+ * an array that is not modified meanwhile is safe.
+ */
+public final class CiphertextArray {
+
+  /**
+   * The number of elements per task of the parallel kernels.
+   */
+  private static final int CHUNK_SIZE = 1024;
+
+  private final PaillierContext context;
+
+  private final int length;
+
+  private final int ciphertextLength;
+
+  private final ByteBuffer ciphertexts;
+
+  private final int[] exponents;
+
+  private final BitSet safe;
+
+  /**
+   * The ciphertext modulus as unsigned bytes of the slot width, to validate slots.
+   */
+  private final byte[] ciphertextModulus;
+
+  /**
+   * Constructs an array of encryptions of zero with exponent zero.
+   *
+   * @param context of the encrypted numbers.
+   * @param length of the array.
+   */
+  public CiphertextArray(PaillierContext context, int length) {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    BigInteger modulus = context.getPublicKey().getCiphertextModulus();
+    this.ciphertextLength = (modulus.bitLength() + 7) / 8;
+    if (length < 0 || (long) length * ciphertextLength > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("length must be non-negative and below 2GB in total");
+    }
+    this.context = context;
+    this.length = length;
+    this.ciphertexts = ByteBuffer.allocateDirect(length * ciphertextLength);
+    this.exponents = new int[length];
+    this.safe = new BitSet(length);
+    this.ciphertextModulus = new byte[ciphertextLength];
+    put(ByteBuffer.wrap(ciphertextModulus), modulus, ciphertextLength);
+    for (int i = 0; i < length; i++) {
+      // the unobfuscated encryption of zero is 1
+      ciphertexts.put(i * ciphertextLength + ciphertextLength - 1, (byte) 1);
+    }
+  }
+
+  /**
+   * Copies encrypted numbers into a new array.
+   *
+   * @param context of the encrypted numbers.
+   * @param numbers the encrypted numbers.
+   * @return the array.
+   * @throws PaillierContextMismatchException if a number has a different context.
+   */
+  public static CiphertextArray of(PaillierContext context, EncryptedNumber... numbers) {
+    CiphertextArray array = new CiphertextArray(context, numbers.length);
+    for (int i = 0; i < numbers.length; i++) {
+      array.set(i, numbers[i]);
+    }
+    return array;
+  }
+
+  /**
+   * @return the context of the encrypted numbers.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the number of elements.
+   */
+  public int length() {
+    return length;
+  }
+
+  /**
+   * @return the width of a ciphertext slot in bytes.
+   */
+  public int getCiphertextLength() {
+    return ciphertextLength;
+  }
+
+  private void checkIndex(int index) {
+    if (index < 0 || index >= length) {
+      throw new IndexOutOfBoundsException("index " + index + " of " + length);
+    }
+  }
+
+  private static void put(ByteBuffer buffer, BigInteger value, int length) {
+    byte[] bytes = value.toByteArray();
+    int offset = bytes[0] == 0 ? 1 : 0;
+    for (int i = bytes.length - offset; i < length; i++) {
+      buffer.put((byte) 0);
+    }
+    buffer.put(bytes, offset, bytes.length - offset);
+  }
+
+  private BigInteger ciphertext(ByteBuffer view, int index) {
+    byte[] bytes = new byte[ciphertextLength];
+    view.position(index * ciphertextLength);
+    view.get(bytes);
+    return new BigInteger(1, bytes);
+  }
+
+  private void ciphertext(ByteBuffer view, int index, BigInteger ciphertext) {
+    view.position(index * ciphertextLength);
+    put(view, ciphertext, ciphertextLength);
+  }
+
+  /**
+   * @param index of an element.
+   * @return the ciphertext of the element, which is not obfuscated by this call.
+   */
+  public BigInteger getCiphertext(int index) {
+    checkIndex(index);
+    return ciphertext(ciphertexts.duplicate(), index);
+  }
+
+  /**
+   * @param index of an element.
+   * @return the exponent of the element.
+   */
+  public int getExponent(int index) {
+    checkIndex(index);
+    return exponents[index];
+  }
+
+  /**
+   * @param index of an element.
+   * @return true if the element is obfuscated.
+   */
+  public boolean isSafe(int index) {
+    checkIndex(index);
+    return safe.get(index);
+  }
+
+  /**
+   * Materialises an element as an {@code EncryptedNumber}.
+   *
+   * @param index of an element.
+   * @return the element.
+   */
+  public EncryptedNumber get(int index) {
+    return new EncryptedNumber(context, getCiphertext(index), getExponent(index), isSafe(index));
+  }
+
+  /**
+   * Sets an element.
+   *
+   * @param index of the element.
+   * @param number the new value.
+   * @throws PaillierContextMismatchException if {@code number} has a different context.
+   */
+  public void set(int index, EncryptedNumber number) {
+    checkIndex(index);
+    context.checkSameContext(number);
+    ciphertext(ciphertexts.duplicate(), index, number.ciphertext);
+    exponents[index] = number.exponent;
+    safe.set(index, number.isSafe);
+  }
+
+  /**
+   * Copies the slot of an element to {@code destination}: {@link #getCiphertextLength()}
+   * unsigned big-endian bytes.
+   *
+   * @param index of an element.
+   * @param destination to copy to.
+   */
+  public void copyCiphertext(int index, ByteBuffer destination) {
+    checkIndex(index);
+    ByteBuffer slot = ciphertexts.duplicate();
+    slot.position(index * ciphertextLength);
+    slot.limit(index * ciphertextLength + ciphertextLength);
+    destination.put(slot);
+  }
+
+  /**
+   * Sets an element from a slot of {@link #getCiphertextLength()} unsigned big-endian bytes.
+   *
+   * @param index of the element.
+   * @param source to copy the ciphertext from.
+   * @param exponent the exponent of the element.
+   * @param isSafe whether the ciphertext is obfuscated.
+   * @throws IllegalArgumentException if the ciphertext is not less than the ciphertext modulus.
+   */
+  public void putCiphertext(int index, ByteBuffer source, int exponent, boolean isSafe) {
+    checkIndex(index);
+    ByteBuffer slot = ciphertexts.duplicate();
+    slot.position(index * ciphertextLength);
+    for (int i = 0; i < ciphertextLength; i++) {
+      slot.put(source.get());
+    }
+    // compare with the modulus, as unsigned big-endian numbers of the same width
+    for (int i = 0; i < ciphertextLength; i++) {
+      int b = ciphertexts.get(index * ciphertextLength + i) & 0xff;
+      int m = ciphertextModulus[i] & 0xff;
+      if (b != m) {
+        if (b > m) {
+          break;
+        }
+        exponents[index] = exponent;
+        safe.set(index, isSafe);
+        return;
+      }
+    }
+    ciphertext(ciphertexts.duplicate(), index, BigInteger.ONE);
+    throw new IllegalArgumentException("ciphertext must be less than modulus squared");
+  }
+
+  /**
+   * @return the elements as {@code EncryptedNumber}s.
+   */
+  public EncryptedNumber[] toArray() {
+    EncryptedNumber[] numbers = new EncryptedNumber[length];
+    for (int i = 0; i < length; i++) {
+      numbers[i] = get(i);
+    }
+    return numbers;
+  }
+
+  /**
+   * @return a spliterator over the elements, which splits into halves for parallel streams.
+   */
+  public Spliterator<EncryptedNumber> spliterator() {
+    return new IndexedSpliterator<EncryptedNumber>(
+            index -> get((int) index), 0, length, Spliterator.ORDERED | Spliterator.NONNULL);
+  }
+
+  /**
+   * Streams the elements, materialising each as an {@code EncryptedNumber}. The array must not
+   * be modified while the stream is in use.
+   *
+   * @return a sequential stream of the elements; see {@link Stream#parallel()}.
+   */
+  public Stream<EncryptedNumber> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * @return the homomorphic sum of all elements.
+   */
+  public EncryptedNumber sum() {
+    return sum(0, length);
+  }
+
+  /**
+   * Computes the homomorphic sum of a range of elements. The ciphertexts are accumulated per
+   * exponent, so an array with a single exponent costs one modular multiplication per element,
+   * and the accumulators are aligned once at the end.
+   *
+   * @param from the first element, inclusive.
+   * @param to the last element, exclusive.
+   * @return the sum, an encryption of zero if the range is empty.
+   */
+  public EncryptedNumber sum(int from, int to) {
+    if (from < 0 || to > length || from > to) {
+      throw new IndexOutOfBoundsException("range " + from + " to " + to + " of " + length);
+    }
+    EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+    accumulate(from, to, sum);
+    return sum.sum();
+  }
+
+  /**
+   * Adds the elements {@code from} to {@code to} (exclusive), a valid range, to a sum.
+   */
+  void accumulate(int from, int to, EncryptedSumAccumulator sum) {
+    ByteBuffer view = ciphertexts.duplicate();
+    for (int i = from; i < to; i++) {
+      sum.add(ciphertext(view, i), exponents[i], safe.get(i));
+    }
+  }
+
+  /**
+   * Computes the homomorphic sum of all elements, summing chunks in parallel. Each chunk is
+   * accumulated per exponent and the accumulators are combined, so the exponents are aligned
+   * once for the whole array.
+   *
+   * @param executor to sum the chunks on.
+   * @return the sum.
+   */
+  public EncryptedNumber sum(ExecutorService executor) {
+    List<Callable<EncryptedSumAccumulator>> tasks =
+            new ArrayList<Callable<EncryptedSumAccumulator>>();
+    for (int start = 0; start < length; start += CHUNK_SIZE) {
+      final int from = start;
+      final int to = Math.min(length, start + CHUNK_SIZE);
+      tasks.add(new Callable<EncryptedSumAccumulator>() {
+        @Override
+        public EncryptedSumAccumulator call() {
+          EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+          accumulate(from, to, sum);
+          return sum;
+        }
+      });
+    }
+    EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+    for (EncryptedSumAccumulator partial : invokeAll(executor, tasks)) {
+      sum.combine(partial);
+    }
+    return sum.sum();
+  }
+
+  /**
+   * Multiplies every element by an encoded number, in place.
+   *
+   * @param factor the factor.
+   * @return this array.
+   * @throws PaillierContextMismatchException if {@code factor} has a different context.
+   */
+  public CiphertextArray multiply(EncodedNumber factor) {
+    context.checkSameContext(factor);
+    multiply(factor, 0, length);
+    return this;
+  }
+
+  /**
+   * Multiplies every element by a number, in place.
+   *
+   * @param factor the factor.
+   * @return this array.
+   */
+  public CiphertextArray multiply(long factor) {
+    return multiply(context.encode(factor));
+  }
+
+  private void multiply(EncodedNumber factor, int from, int to) {
+    PaillierPublicKey publicKey = context.getPublicKey();
+    ModArithmeticBackend backend = context.ciphertextBackend();
+    BigInteger value = factor.getValue();
+    BigInteger negated = publicKey.getPlaintextModulus().subtract(value);
+    // as in PaillierContext.multiply, exponentiate with the negative of large plaintexts
+    boolean negative = negated.compareTo(context.getMaxEncoded()) <= 0;
+    BigInteger exponent = negative ? negated : value;
+    ByteBuffer view = ciphertexts.duplicate();
+    for (int start = from; start < to; start += CHUNK_SIZE) {
+      // one batch call into the backend per chunk
+      BigInteger[] batch = new BigInteger[Math.min(to, start + CHUNK_SIZE) - start];
+      for (int i = 0; i < batch.length; i++) {
+        batch[i] = ciphertext(view, start + i);
+        if (negative) {
+          batch[i] = backend.modInverse(batch[i], publicKey.getCiphertextModulus());
+        }
+      }
+      batch = publicKey.raw_multiply(batch, exponent, backend);
+      for (int i = 0; i < batch.length; i++) {
+        ciphertext(view, start + i, batch[i]);
+        exponents[start + i] += factor.getExponent();
+      }
+    }
+  }
+
+  /**
+   * Obfuscates every element that is not obfuscated yet, in place.
+   *
+   * @return this array.
+   */
+  public CiphertextArray obfuscate() {
+    obfuscate(0, length);
+    return this;
+  }
+
+  /**
+   * Obfuscates every element that is not obfuscated yet, in place, in parallel chunks.
+   *
+   * @param executor to obfuscate the chunks on.
+   * @return this array.
+   */
+  public CiphertextArray obfuscate(ExecutorService executor) {
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int start = 0; start < length; start += CHUNK_SIZE) {
+      final int from = start;
+      final int to = Math.min(length, start + CHUNK_SIZE);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          obfuscate(from, to);
+          return null;
+        }
+      });
+    }
+    invokeAll(executor, tasks);
+    return this;
+  }
+
+  private void obfuscate(int from, int to) {
+    PaillierPublicKey publicKey = context.getPublicKey();
+    ModArithmeticBackend backend = context.ciphertextBackend();
+    ByteBuffer view = ciphertexts.duplicate();
+    for (int start = from; start < to; start += CHUNK_SIZE) {
+      int end = Math.min(to, start + CHUNK_SIZE);
+      int[] indices = new int[end - start];
+      int count = 0;
+      synchronized (safe) {
+        for (int i = safe.nextClearBit(start); i < end; i = safe.nextClearBit(i + 1)) {
+          indices[count++] = i;
+        }
+      }
+      if (count == 0) {
+        continue;
+      }
+      // one batch call into the backend per chunk
+      BigInteger[] batch = new BigInteger[count];
+      for (int i = 0; i < count; i++) {
+        batch[i] = ciphertext(view, indices[i]);
+      }
+      batch = publicKey.raw_obfuscate(batch, backend);
+      for (int i = 0; i < count; i++) {
+        ciphertext(view, indices[i], batch[i]);
+      }
+      synchronized (safe) {
+        for (int i = 0; i < count; i++) {
+          safe.set(indices[i]);
+        }
+      }
+    }
+  }
+
+  private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+    try {
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted during a bulk operation", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,189 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+
+import java.math.BigInteger;
+
+/**
+ * A Damg&aring;rd&ndash;Jurik private key, see {@link DamgardJurikPublicKey}.
+ *
+ * Decryption computes <code>a = c<sup>&lambda;</sup> = (1+n)<sup>&lambda;m</sup></code> modulo
+ * <code>n<sup>s+1</sup></code>, where the exponentiation is split into
+ * <code>p<sup>s+1</sup></code> and <code>q<sup>s+1</sup></code> and recombined with the CRT.
+ * The discrete logarithm <code>&lambda;m mod n<sup>s</sup></code> of {@code a} is then extracted
+ * digit by digit in base n (Damg&aring;rd and Jurik, "A Generalisation, a Simplification and
+ * Some Applications of Paillier's Probabilistic Public-Key System", Theorem 1), and finally
+ * multiplied by <code>&lambda;<sup>-1</sup> mod n<sup>s</sup></code>.
+ */
+public final class DamgardJurikPrivateKey {
+
+  private final DamgardJurikPublicKey publicKey;
+
+  private final BigInteger p;
+
+  private final BigInteger q;
+
+  /**
+   * <code>p<sup>s+1</sup></code>
+   */
+  private final BigInteger pPower;
+
+  /**
+   * <code>q<sup>s+1</sup></code>
+   */
+  private final BigInteger qPower;
+
+  /**
+   * &lambda; reduced modulo the order <code>p<sup>s</sup>(p-1)</code> of
+   * <code>Z<sub>p<sup>s+1</sup></sub><sup>*</sup></code>.
+   */
+  private final BigInteger lambdaP;
+
+  /**
+   * &lambda; reduced modulo the order <code>q<sup>s</sup>(q-1)</code> of
+   * <code>Z<sub>q<sup>s+1</sup></sub><sup>*</sup></code>.
+   */
+  private final BigInteger lambdaQ;
+
+  /**
+   * The inverse of <code>p<sup>s+1</sup></code> modulo <code>q<sup>s+1</sup></code>.
+   */
+  private final BigInteger pPowerInverse;
+
+  /**
+   * The inverse of &lambda; modulo <code>n<sup>s</sup></code>.
+   */
+  private final BigInteger lambdaInverse;
+
+  /**
+   * The powers <code>n<sup>j</sup></code> for <code>j = 0..s+1</code>.
+   */
+  private final BigInteger[] modulusPowers;
+
+  /**
+   * Constructs a Damg&aring;rd&ndash;Jurik private key.
+   *
+   * @param publicKey associated with this private key.
+   * @param p prime p.
+   * @param q prime q.
+   */
+  public DamgardJurikPrivateKey(DamgardJurikPublicKey publicKey, BigInteger p, BigInteger q) {
+    if (publicKey == null) {
+      throw new IllegalArgumentException("publicKey must not be null");
+    }
+    if (!publicKey.getModulus().equals(p.multiply(q))) {
+      throw new IllegalArgumentException("publicKey does not match the given prime numbers.");
+    }
+    final int s = publicKey.getS();
+    this.publicKey = publicKey;
+    this.p = p;
+    this.q = q;
+    this.pPower = p.pow(s + 1);
+    this.qPower = q.pow(s + 1);
+    BigInteger pMinusOne = p.subtract(BigInteger.ONE);
+    BigInteger qMinusOne = q.subtract(BigInteger.ONE);
+    BigInteger lambda = pMinusOne.multiply(qMinusOne).divide(pMinusOne.gcd(qMinusOne));
+    this.lambdaP = lambda.mod(p.pow(s).multiply(pMinusOne));
+    this.lambdaQ = lambda.mod(q.pow(s).multiply(qMinusOne));
+    this.pPowerInverse = pPower.modInverse(qPower);
+    this.lambdaInverse = lambda.modInverse(publicKey.getPlaintextModulus());
+    this.modulusPowers = new BigInteger[s + 2];
+    modulusPowers[0] = BigInteger.ONE;
+    for (int j = 1; j < modulusPowers.length; j++) {
+      modulusPowers[j] = modulusPowers[j - 1].multiply(publicKey.getModulus());
+    }
+  }
+
+  /**
+   * Creates a Damg&aring;rd&ndash;Jurik keypair.
+   *
+   * @param modulusLength the length of the modulus n. Must be a positive multiple of 8.
+   * @param s the exponent of the plaintext modulus, must be at least 1.
+   * @return a private key with the corresponding public key.
+   */
+  public static DamgardJurikPrivateKey create(int modulusLength, int s) {
+    if (s < 1) {
+      throw new IllegalArgumentException("s must be at least 1");
+    }
+    PaillierPrivateKey paillier = PaillierPrivateKey.create(modulusLength);
+    return new DamgardJurikPrivateKey(
+            new DamgardJurikPublicKey(paillier.getPublicKey().getModulus(), s),
+            paillier.p, paillier.q);
+  }
+
+  /**
+   * @return the associated public key.
+   */
+  public DamgardJurikPublicKey getPublicKey() {
+    return publicKey;
+  }
+
+  /**
+   * Decrypts an encrypted number.
+   *
+   * @param encrypted EncryptedNumber to be decrypted.
+   * @return the decryption result.
+   * @throws PaillierKeyMismatchException if the encrypted number was not
+   * encoded with the appropriate public key.
+   */
+  public EncodedNumber decrypt(EncryptedNumber encrypted) throws PaillierKeyMismatchException {
+    if (!publicKey.equals(encrypted.getContext().getPublicKey())) {
+      throw new PaillierKeyMismatchException();
+    }
+    if (encrypted.getContext() instanceof MockPaillierContext) {
+      return new EncodedNumber(encrypted.getContext(), encrypted.ciphertext,
+              encrypted.getExponent());
+    }
+    return new EncodedNumber(encrypted.getContext(), raw_decrypt(encrypted.ciphertext),
+            encrypted.getExponent());
+  }
+
+  /**
+   * Implements the decryption function of the Damg&aring;rd&ndash;Jurik scheme.
+   *
+   * @param ciphertext to be decrypted.
+   * @return the plaintext, in <code>[0, n<sup>s</sup>)</code>.
+   */
+  public BigInteger raw_decrypt(BigInteger ciphertext) {
+    BigInteger ap = BigIntegerUtil.modPowSecure(ciphertext.mod(pPower), lambdaP, pPower);
+    BigInteger aq = BigIntegerUtil.modPowSecure(ciphertext.mod(qPower), lambdaQ, qPower);
+    BigInteger a = ap.add(aq.subtract(ap).multiply(pPowerInverse).mod(qPower).multiply(pPower));
+    return discreteLog(a).multiply(lambdaInverse).mod(publicKey.getPlaintextModulus());
+  }
+
+  /**
+   * Computes {@code i} modulo <code>n<sup>s</sup></code> from
+   * <code>a = (1+n)<sup>i</sup> mod n<sup>s+1</sup></code>.
+   */
+  private BigInteger discreteLog(BigInteger a) {
+    final BigInteger modulus = publicKey.getModulus();
+    BigInteger i = BigInteger.ZERO;
+    for (int j = 1; j <= publicKey.getS(); j++) {
+      final BigInteger modJ = modulusPowers[j];
+      BigInteger t1 = a.mod(modulusPowers[j + 1]).subtract(BigInteger.ONE).divide(modulus);
+      BigInteger t2 = i;
+      BigInteger factorial = BigInteger.ONE;
+      for (int k = 2; k <= j; k++) {
+        i = i.subtract(BigInteger.ONE);
+        t2 = t2.multiply(i).mod(modJ);
+        factorial = factorial.multiply(BigInteger.valueOf(k));
+        t1 = t1.subtract(t2.multiply(modulusPowers[k - 1]).multiply(factorial.modInverse(modJ)))
+                .mod(modJ);
+      }
+      i = t1.mod(modJ);
+    }
+    return i;
+  }
+
+  @Override
+  public int hashCode() {
+    return publicKey.hashCode();
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o == this || (o != null &&
+            o.getClass() == DamgardJurikPrivateKey.class &&
+            publicKey.equals(((DamgardJurikPrivateKey) o).publicKey));
+  }
+}
@@ -0,0 +1,163 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+
+import java.math.BigInteger;
+
+import static com.n1analytics.paillier.util.BigIntegerUtil.randomPositiveNumber;
+
+/**
+ * A Damg&aring;rd&ndash;Jurik public key, the generalisation of Paillier to plaintexts modulo
+ * <code>n<sup>s</sup></code> and ciphertexts modulo <code>n<sup>s+1</sup></code> for
+ * <code>s &ge; 1</code>.
+ *
+ * A ciphertext has <code>(s+1)/s</code> times the size of the plaintext it can hold, compared
+ * to twice the size for Paillier (which is the special case {@code s = 1}). Encryption computes
+ * <code>(1+n)<sup>m</sup> r<sup>n<sup>s</sup></sup> mod n<sup>s+1</sup></code>.
+ *
+ * The key is a drop-in replacement for a {@link PaillierPublicKey}: contexts created from it
+ * encode into the plaintext space <code>[0, n<sup>s</sup>)</code>, and {@link EncryptedNumber}
+ * and {@link EncodedNumber} arithmetic works unchanged. Note that {@link #getModulus()} still
+ * returns n; the encoding uses {@link #getPlaintextModulus()}. A Damg&aring;rd&ndash;Jurik key
+ * is never equal to a Paillier key, even if their moduli are the same. For the same reason it
+ * must be serialized with {@link #serialize(DamgardJurikPublicKey.Serializer)}, which includes
+ * s; the Paillier serializer only takes the modulus and is refused.
+ */
+public final class DamgardJurikPublicKey extends PaillierPublicKey {
+
+  /**
+   * The exponent s of the plaintext modulus <code>n<sup>s</sup></code>.
+   */
+  private final int s;
+
+  /**
+   * The plaintext modulus <code>n<sup>s</sup></code>.
+   */
+  private final BigInteger plaintextModulus;
+
+  /**
+   * The ciphertext modulus <code>n<sup>s+1</sup></code>.
+   */
+  private final BigInteger ciphertextModulus;
+
+  /**
+   * A serializer interface for {@code DamgardJurikPublicKey}.
+   */
+  public interface Serializer {
+
+    void serialize(BigInteger modulus, int s);
+  }
+
+  /**
+   * Constructs a Damg&aring;rd&ndash;Jurik public key.
+   *
+   * @param modulus n of the public key.
+   * @param s the exponent of the plaintext modulus, must be at least 1.
+   */
+  public DamgardJurikPublicKey(BigInteger modulus, int s) {
+    super(modulus);
+    if (s < 1) {
+      throw new IllegalArgumentException("s must be at least 1");
+    }
+    this.s = s;
+    this.plaintextModulus = modulus.pow(s);
+    this.ciphertextModulus = plaintextModulus.multiply(modulus);
+  }
+
+  /**
+   * @return the exponent s of the plaintext modulus.
+   */
+  public int getS() {
+    return s;
+  }
+
+  /**
+   * @return <code>n<sup>s</sup></code>.
+   */
+  @Override
+  public BigInteger getPlaintextModulus() {
+    return plaintextModulus;
+  }
+
+  /**
+   * @return <code>n<sup>s+1</sup></code>.
+   */
+  @Override
+  public BigInteger getCiphertextModulus() {
+    return ciphertextModulus;
+  }
+
+  /**
+   * Computes <code>(1+n)<sup>m</sup> mod n<sup>s+1</sup></code> from its binomial expansion
+   * <code>sum<sub>k=0..s</sub> C(m,k) n<sup>k</sup></code>, which needs no modular
+   * exponentiation.
+   *
+   * @param plaintext to be encrypted.
+   * @return corresponding unobfuscated ciphertext.
+   */
+  @Override
+  public BigInteger raw_encrypt_without_obfuscation(BigInteger plaintext) {
+    BigInteger result = BigInteger.ONE;
+    BigInteger binomial = BigInteger.ONE;
+    BigInteger power = BigInteger.ONE;
+    for (int k = 1; k <= s; k++) {
+      // C(m,k) = C(m,k-1) * (m-k+1) / k, the division is exact
+      binomial = binomial.multiply(plaintext.subtract(BigInteger.valueOf(k - 1)))
+              .divide(BigInteger.valueOf(k));
+      power = power.multiply(modulus);
+      result = result.add(binomial.multiply(power));
+    }
+    return result.mod(ciphertextModulus);
+  }
+
+  @Override
+  public BigInteger raw_obfuscate(BigInteger ciphertext, ModArithmeticBackend backend) {
+    return getCiphertextBarrett().multiplyMod(
+            backend.modPow(randomPositiveNumber(modulus), plaintextModulus, ciphertextModulus),
+            ciphertext);
+  }
+
+  @Override
+  public BigInteger raw_multiply(BigInteger ciphertext, BigInteger plainfactor,
+                                 ModArithmeticBackend backend) {
+    return backend.modPow(ciphertext, plainfactor, ciphertextModulus);
+  }
+
+  /**
+   * Serializes the {@code DamgardJurikPublicKey}.
+   *
+   * @param serializer to serialize the {@code DamgardJurikPublicKey}.
+   */
+  public void serialize(Serializer serializer) {
+    serializer.serialize(modulus, s);
+  }
+
+  /**
+   * Refuses to serialize the key as a Paillier public key, which would lose s.
+   *
+   * @throws UnsupportedOperationException always.
+   */
+  @Override
+  public void serialize(PaillierPublicKey.Serializer serializer) {
+    throw new UnsupportedOperationException(
+            "a Damgard-Jurik key must be serialized with its own Serializer, which includes s");
+  }
+
+  @Override
+  public int hashCode() {
+    return 31 * modulus.hashCode() + s;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    return o instanceof DamgardJurikPublicKey && equals((PaillierPublicKey) o);
+  }
+
+  @Override
+  public boolean equals(PaillierPublicKey o) {
+    return o == this || (o != null &&
+            o.getClass() == DamgardJurikPublicKey.class &&
+            modulus.equals(o.modulus) &&
+            s == ((DamgardJurikPublicKey) o).s);
+  }
+}
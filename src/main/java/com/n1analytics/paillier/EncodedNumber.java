@@ -65,7 +65,7 @@ public final class EncodedNumber {
     if (value.signum() < 0) {
       throw new IllegalArgumentException("value must be non-negative");
     }
-    if (value.compareTo(context.getPublicKey().getModulus()) >= 0) {
+    if (value.compareTo(context.getPublicKey().getPlaintextModulus()) >= 0) {
       throw new IllegalArgumentException("value must be less than modulus");
     }
     this.context = context;
@@ -0,0 +1,55 @@
+package com.n1analytics.paillier;
+
+/**
+ * The result of an encrypted average: the homomorphic sum of the summands and their number,
+ * which is not secret. The division happens after decryption, see
+ * {@link #decryptAverage(PaillierPrivateKey)}.
+ */
+public final class EncryptedAverage {
+
+  private final EncryptedNumber sum;
+
+  private final long count;
+
+  /**
+   * @param sum the homomorphic sum.
+   * @param count the number of summands.
+   */
+  public EncryptedAverage(EncryptedNumber sum, long count) {
+    if (sum == null) {
+      throw new NullPointerException("sum must not be null");
+    }
+    if (count < 0) {
+      throw new IllegalArgumentException("count must not be negative");
+    }
+    this.sum = sum;
+    this.count = count;
+  }
+
+  /**
+   * @return the homomorphic sum.
+   */
+  public EncryptedNumber getSum() {
+    return sum;
+  }
+
+  /**
+   * @return the number of summands.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Decrypts the sum and divides it by the count.
+   *
+   * @param privateKey of the sum.
+   * @return the average, zero if there were no summands.
+   */
+  public double decryptAverage(PaillierPrivateKey privateKey) {
+    if (count == 0) {
+      return 0.0;
+    }
+    return sum.decrypt(privateKey).decodeDouble() / count;
+  }
+}
@@ -0,0 +1,205 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.FixedBaseTable;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Computes encrypted squared Euclidean distances between an encrypted query vector and the
+ * rows of a plaintext corpus, e.g., for private nearest-neighbour search.
+ *
+ * The client sends the encrypted components <code>Enc(q<sub>j</sub>)</code> of its query and
+ * the encrypted squared norm <code>Enc(||q||<sup>2</sup>)</code>. For every corpus row
+ * {@code y} the scorer returns the obfuscated encryption of
+ * <code>||q||<sup>2</sup> - 2 q&middot;y + ||y||<sup>2</sup></code>.
+ *
+ * Since every row is scored against the same query, the scorer precomputes fixed-base tables
+ * of <code>Enc(q<sub>j</sub>)<sup>-2</sup></code> and <code>Enc(q<sub>j</sub>)<sup>2</sup></code> once.
+ * The dot product of a row is then a single {@link FixedBaseTable#multiModPow multi-exponentiation}
+ * over all dimensions with the (short) corpus values as exponents. Rows are scored in chunks on the
+ * given {@code ExecutorService}.
+ *
+ * Corpus values are integers; fractional data should be quantised to a fixed-point
+ * representation by the caller. Accordingly, the query must be encoded with exponent zero, or
+ * with a positive exponent, in which case it is rescaled once at construction.
+ */
+public final class EncryptedDistanceScorer {
+
+  /**
+   * The number of rows scored by one task.
+   */
+  private static final int CHUNK_SIZE = 256;
+
+  private final PaillierContext context;
+
+  private final BigInteger queryNormCiphertext;
+
+  /**
+   * Tables of <code>Enc(q<sub>j</sub>)<sup>-2</sup></code>, used for non-negative corpus values.
+   */
+  private final FixedBaseTable[] negativeTables;
+
+  /**
+   * Tables of <code>Enc(q<sub>j</sub>)<sup>2</sup></code>, used for negative corpus values.
+   */
+  private final FixedBaseTable[] positiveTables;
+
+  private final ExecutorService executor;
+
+  /**
+   * Constructs a scorer for one encrypted query.
+   *
+   * @param query the encrypted query components.
+   * @param queryNorm the encrypted squared norm of the query.
+   * @param maxValueBits the bit length of the largest absolute corpus value. Larger values are
+   *                     still scored correctly, but without the help of the tables.
+   * @param executor to score the corpus on. The scorer does not shut it down.
+   * @throws PaillierContextMismatchException if the query components have different contexts.
+   */
+  public EncryptedDistanceScorer(EncryptedNumber[] query, EncryptedNumber queryNorm,
+                                 int maxValueBits, ExecutorService executor)
+          throws PaillierContextMismatchException {
+    if (query == null || query.length == 0) {
+      throw new IllegalArgumentException("query must not be empty");
+    }
+    if (queryNorm == null || executor == null) {
+      throw new NullPointerException("queryNorm and executor must not be null");
+    }
+    if (maxValueBits < 1) {
+      throw new IllegalArgumentException("maxValueBits must be positive");
+    }
+    this.context = queryNorm.getContext();
+    this.queryNormCiphertext = integral(context.checkSameContext(queryNorm)).ciphertext;
+    this.executor = executor;
+
+    final PaillierPublicKey publicKey = context.getPublicKey();
+    final BigInteger ciphertextModulus = publicKey.getCiphertextModulus();
+    final BigInteger two = BigInteger.valueOf(2);
+    // the exponents are 2*|y_j|, hence one more bit
+    int exponentBits = maxValueBits + 1;
+    int windowBits = optimalWindowBits(query.length, exponentBits);
+    negativeTables = new FixedBaseTable[query.length];
+    positiveTables = new FixedBaseTable[query.length];
+    for (int j = 0; j < query.length; j++) {
+      BigInteger ciphertext = integral(context.checkSameContext(query[j])).ciphertext;
+      BigInteger squared = publicKey.raw_multiply(ciphertext, two);
+      BigInteger inverse = BigIntegerUtil.modInverse(squared, ciphertextModulus);
+      positiveTables[j] = new FixedBaseTable(squared, ciphertextModulus, exponentBits,
+              windowBits);
+      negativeTables[j] = new FixedBaseTable(inverse, ciphertextModulus, exponentBits,
+              windowBits);
+    }
+  }
+
+  private static EncryptedNumber integral(EncryptedNumber number) {
+    if (number.getExponent() < 0) {
+      throw new IllegalArgumentException("the query must be encoded as integers");
+    }
+    return number.getExponent() == 0 ? number : number.decreaseExponentTo(0);
+  }
+
+  /**
+   * Chooses the window size minimising the cost of a multi-exponentiation over {@code dimensions}
+   * exponents of {@code exponentBits} bits.
+   */
+  private static int optimalWindowBits(int dimensions, int exponentBits) {
+    int best = 1;
+    long bestCost = Long.MAX_VALUE;
+    for (int w = 1; w <= FixedBaseTable.MAX_WINDOW_BITS; w++) {
+      long cost = (long) dimensions * ((exponentBits + w - 1) / w) + (1L << w);
+      if (cost < bestCost) {
+        best = w;
+        bestCost = cost;
+      }
+    }
+    return best;
+  }
+
+  /**
+   * @return the Paillier context of the query.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the number of dimensions of the query.
+   */
+  public int getDimensions() {
+    return positiveTables.length;
+  }
+
+  /**
+   * Scores a single corpus row.
+   *
+   * @param row the plaintext corpus row.
+   * @return the obfuscated encryption of the squared distance between the query and {@code row}.
+   */
+  public EncryptedNumber score(long[] row) {
+    if (row.length != positiveTables.length) {
+      throw new IllegalArgumentException("row has " + row.length + " dimensions, expected "
+              + positiveTables.length);
+    }
+    final PaillierPublicKey publicKey = context.getPublicKey();
+    FixedBaseTable[] tables = new FixedBaseTable[row.length];
+    BigInteger[] exponents = new BigInteger[row.length];
+    BigInteger rowNorm = BigInteger.ZERO;
+    for (int j = 0; j < row.length; j++) {
+      BigInteger value = BigInteger.valueOf(row[j]);
+      rowNorm = rowNorm.add(value.multiply(value));
+      tables[j] = value.signum() < 0 ? positiveTables[j] : negativeTables[j];
+      exponents[j] = value.abs();
+    }
+    BigInteger ciphertext = FixedBaseTable.multiModPow(tables, exponents);
+    ciphertext = publicKey.raw_add(ciphertext, queryNormCiphertext);
+    BigInteger encryptedRowNorm =
+            publicKey.raw_encrypt_without_obfuscation(rowNorm.mod(publicKey.getPlaintextModulus()));
+    ciphertext = publicKey.raw_add(ciphertext, encryptedRowNorm);
+    return new EncryptedNumber(context, publicKey.raw_obfuscate(ciphertext), 0, true);
+  }
+
+  /**
+   * Scores all rows of {@code corpus} in parallel.
+   *
+   * @param corpus the plaintext corpus rows.
+   * @return the obfuscated encrypted squared distances, one per row.
+   */
+  public EncryptedNumber[] score(final long[][] corpus) {
+    final EncryptedNumber[] scores = new EncryptedNumber[corpus.length];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int start = 0; start < corpus.length; start += CHUNK_SIZE) {
+      final int from = start;
+      final int to = Math.min(corpus.length, start + CHUNK_SIZE);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() {
+          for (int i = from; i < to; i++) {
+            scores[i] = score(corpus[i]);
+          }
+          return null;
+        }
+      });
+    }
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted while scoring", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+    return scores;
+  }
+}
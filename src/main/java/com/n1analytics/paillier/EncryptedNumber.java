@@ -26,6 +26,9 @@ import java.math.BigInteger;
  *     <li>A boolean <code>isSafe</code> that denotes whether the encrypted number has been obfuscated.</li>
  * </ul>
  *
+ * Each instance holds its ciphertext as a full {@code BigInteger}; only the hash code is cached.
+ * Large collections of ciphertexts are stored more compactly in a {@link CiphertextArray}.
+ *
  * This class defines the methods:
  * <ul>
  *     <li>
@@ -70,6 +73,13 @@ public final class EncryptedNumber {
    */
   protected final boolean isSafe;
 
+  /**
+   * The cached hash code, zero until first computed. {@code BigInteger} does not cache its own
+   * hash, so computing it walks the ciphertext and the key's modulus every time. The field fits
+   * into the object's alignment padding and does not grow instances.
+   */
+  private transient int hash;
+
   /**
    * Constructs an encrypted number given the Paillier context used to encrypt this
    * number, the ciphertext and the exponent representing the precision of the
@@ -91,7 +101,7 @@ public final class EncryptedNumber {
     if (ciphertext.signum() < 0) {
       throw new IllegalArgumentException("unsafeCiphertext must be non-negative");
     }
-    if (ciphertext.compareTo(context.getPublicKey().getModulusSquared()) >= 0) {
+    if (ciphertext.compareTo(context.getPublicKey().getCiphertextModulus()) >= 0) {
       throw new IllegalArgumentException(
               "unsafeCiphertext must be less than modulus squared");
     }
@@ -381,7 +391,13 @@ public final class EncryptedNumber {
 
   @Override
   public int hashCode() {
-    return new HashChain().chain(context).chain(ciphertext).hashCode();
+    // racy single-check, as in String: every thread computes the same value
+    int h = hash;
+    if (h == 0) {
+      h = new HashChain().chain(context).chain(ciphertext).hashCode();
+      hash = h;
+    }
+    return h;
   }
 
   @Override
@@ -392,13 +408,17 @@ public final class EncryptedNumber {
     if (o == null || o.getClass() != EncryptedNumber.class) {
       return false;
     }
-    EncryptedNumber number = (EncryptedNumber) o;
-    return context.equals(number.context) && ciphertext.equals(number.ciphertext);
+    return equals((EncryptedNumber) o);
   }
 
   public boolean equals(EncryptedNumber o) {
-    return o == this || (o != null &&
-            context.equals(o.context) &&
-            ciphertext.equals(o.ciphertext));
+    if (o == this) {
+      return true;
+    }
+    if (o == null || (hash != 0 && o.hash != 0 && hash != o.hash)) {
+      return false;
+    }
+    return context.equals(o.context) &&
+            ciphertext.equals(o.ciphertext);
   }
 }
@@ -0,0 +1,182 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * A polynomial with encrypted coefficients, as used for instance in Freedman-style private
+ * set intersection. The coefficients are stored lowest degree first and all share the same
+ * {@code PaillierContext} and exponent.
+ *
+ * A polynomial can be evaluated at a plaintext point in two ways:
+ * <ul>
+ *   <li>
+ *     with Horner's rule, {@link #evaluate(BigInteger)}, which costs one modular
+ *     exponentiation with the point as exponent per coefficient, or
+ *   </li>
+ *   <li>
+ *     as <code>prod<sub>i</sub> Enc(a<sub>i</sub>)<sup>y<sup>i</sup> mod n</sup></code> using
+ *     one {@link FixedBaseTable} per coefficient, see {@link #createTables(int)} and
+ *     {@link #evaluate(BigInteger, FixedBaseTable[])}. This is cheaper as soon as the same
+ *     polynomial is evaluated at several large points.
+ *   </li>
+ * </ul>
+ *
+ * The results of the evaluation are not obfuscated.
+ */
+public final class EncryptedPolynomial {
+
+  private final PaillierContext context;
+
+  private final EncryptedNumber[] coefficients;
+
+  /**
+   * Constructs an encrypted polynomial. The coefficients are rescaled to their smallest
+   * exponent if necessary.
+   *
+   * @param coefficients the encrypted coefficients, lowest degree first.
+   * @throws PaillierContextMismatchException if the coefficients have different contexts.
+   */
+  public EncryptedPolynomial(EncryptedNumber[] coefficients)
+          throws PaillierContextMismatchException {
+    if (coefficients == null || coefficients.length == 0) {
+      throw new IllegalArgumentException("coefficients must not be empty");
+    }
+    this.context = coefficients[0].getContext();
+    int exponent = coefficients[0].getExponent();
+    for (EncryptedNumber coefficient : coefficients) {
+      context.checkSameContext(coefficient);
+      exponent = Math.min(exponent, coefficient.getExponent());
+    }
+    this.coefficients = new EncryptedNumber[coefficients.length];
+    for (int i = 0; i < coefficients.length; i++) {
+      this.coefficients[i] = coefficients[i].getExponent() == exponent ? coefficients[i]
+              : coefficients[i].decreaseExponentTo(exponent);
+    }
+  }
+
+  /**
+   * Encrypts the monic polynomial <code>prod<sub>r</sub> (x - r)</code> whose roots are
+   * {@code roots}. If {@code degree} is larger than the number of roots, the polynomial is
+   * padded with encryptions of zero so that polynomials of differently sized sets can not
+   * be told apart. The coefficients are obfuscated.
+   *
+   * @param context used to encrypt the coefficients.
+   * @param roots of the polynomial.
+   * @param degree of the resulting polynomial, at least {@code roots.length}.
+   * @return the encrypted polynomial.
+   */
+  public static EncryptedPolynomial fromRoots(PaillierContext context, BigInteger[] roots,
+                                              int degree) {
+    if (degree < roots.length) {
+      throw new IllegalArgumentException("degree must be at least the number of roots");
+    }
+    final BigInteger modulus = context.getPublicKey().getPlaintextModulus();
+    // multiply out prod (x - r) over the plaintext space, lowest degree first
+    BigInteger[] plain = new BigInteger[degree + 1];
+    Arrays.fill(plain, BigInteger.ZERO);
+    plain[0] = BigInteger.ONE;
+    for (int k = 0; k < roots.length; k++) {
+      BigInteger negRoot = roots[k].negate().mod(modulus);
+      for (int i = k + 1; i > 0; i--) {
+        plain[i] = plain[i - 1].add(plain[i].multiply(negRoot)).mod(modulus);
+      }
+      plain[0] = plain[0].multiply(negRoot).mod(modulus);
+    }
+    EncryptedNumber[] coefficients = new EncryptedNumber[degree + 1];
+    for (int i = 0; i <= degree; i++) {
+      BigInteger ciphertext = context.getPublicKey().raw_encrypt(plain[i]);
+      coefficients[i] = new EncryptedNumber(context, ciphertext, 0, true);
+    }
+    return new EncryptedPolynomial(coefficients);
+  }
+
+  /**
+   * @return the Paillier context of the coefficients.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the degree of this polynomial.
+   */
+  public int getDegree() {
+    return coefficients.length - 1;
+  }
+
+  /**
+   * @return the exponent shared by all coefficients.
+   */
+  public int getExponent() {
+    return coefficients[0].getExponent();
+  }
+
+  /**
+   * @param i the degree of the coefficient.
+   * @return the i-th coefficient.
+   */
+  public EncryptedNumber getCoefficient(int i) {
+    return coefficients[i];
+  }
+
+  /**
+   * Evaluates this polynomial at {@code point} with Horner's rule.
+   *
+   * @param point at which to evaluate, interpreted modulo the plaintext modulus.
+   * @return the (unobfuscated) encryption of the polynomial's value at {@code point}.
+   */
+  public EncryptedNumber evaluate(BigInteger point) {
+    final PaillierPublicKey publicKey = context.getPublicKey();
+    final BigInteger y = point.mod(publicKey.getPlaintextModulus());
+    BigInteger result = coefficients[coefficients.length - 1].ciphertext;
+    for (int i = coefficients.length - 2; i >= 0; i--) {
+      result = publicKey.raw_add(publicKey.raw_multiply(result, y), coefficients[i].ciphertext);
+    }
+    return new EncryptedNumber(context, result, getExponent(), false);
+  }
+
+  /**
+   * Creates one fixed-base table per coefficient for use with
+   * {@link #evaluate(BigInteger, FixedBaseTable[])}.
+   *
+   * @param windowBits the window size of the tables.
+   * @return the fixed-base tables, lowest degree first.
+   */
+  public FixedBaseTable[] createTables(int windowBits) {
+    final PaillierPublicKey publicKey = context.getPublicKey();
+    final int exponentBits = publicKey.getPlaintextModulus().bitLength();
+    FixedBaseTable[] tables = new FixedBaseTable[coefficients.length];
+    for (int i = 0; i < coefficients.length; i++) {
+      tables[i] = new FixedBaseTable(coefficients[i].ciphertext, publicKey.getCiphertextModulus(),
+              exponentBits, windowBits);
+    }
+    return tables;
+  }
+
+  /**
+   * Evaluates this polynomial at {@code point} as the product of the coefficients raised to
+   * the powers of {@code point}, using the given fixed-base tables.
+   *
+   * @param point at which to evaluate, interpreted modulo the plaintext modulus.
+   * @param tables created by {@link #createTables(int)} on this polynomial.
+   * @return the (unobfuscated) encryption of the polynomial's value at {@code point}.
+   */
+  public EncryptedNumber evaluate(BigInteger point, FixedBaseTable[] tables) {
+    if (tables.length != coefficients.length) {
+      throw new IllegalArgumentException("tables do not belong to this polynomial");
+    }
+    final PaillierPublicKey publicKey = context.getPublicKey();
+    final BigInteger modulus = publicKey.getPlaintextModulus();
+    final BigInteger y = point.mod(modulus);
+    BigInteger result = coefficients[0].ciphertext;
+    BigInteger power = BigInteger.ONE;
+    for (int i = 1; i < coefficients.length; i++) {
+      power = power.multiply(y).mod(modulus);
+      result = publicKey.raw_add(result, tables[i].modPow(power));
+    }
+    return new EncryptedNumber(context, result, getExponent(), false);
+  }
+}
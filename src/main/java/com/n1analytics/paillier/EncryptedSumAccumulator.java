@@ -0,0 +1,183 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BarrettModulus;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A mutable homomorphic sum of encrypted numbers of one {@link PaillierContext}.
+ *
+ * The ciphertexts are multiplied into one product per exponent, so that adding a summand costs
+ * a single modular multiplication and never rescales. The products of the different exponents
+ * are aligned to the smallest exponent once, by {@link #sum()}. Two accumulators of the same
+ * context can be merged with {@link #combine}, which makes this the container of the encrypted
+ * reductions of {@link PaillierCollectors} and of parallel sums.
+ *
+ * Instances are not thread-safe.
+ */
+public final class EncryptedSumAccumulator {
+
+  private final PaillierContext context;
+
+  private final BarrettModulus barrett;
+
+  /**
+   * The products of all exponents but {@code exponent}.
+   */
+  private final Map<Integer, BigInteger> products = new HashMap<Integer, BigInteger>();
+
+  /**
+   * The exponent of the last summand, whose product is kept out of the map.
+   */
+  private int exponent;
+
+  private BigInteger product;
+
+  private boolean allSafe = true;
+
+  private long count;
+
+  /**
+   * Constructs an empty sum.
+   *
+   * @param context of the summands.
+   */
+  public EncryptedSumAccumulator(PaillierContext context) {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    this.context = context;
+    this.barrett = context.getPublicKey().getCiphertextBarrett();
+  }
+
+  /**
+   * @return the context of the summands.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the number of summands.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * Adds an encrypted number.
+   *
+   * @param number to add.
+   * @return this accumulator.
+   * @throws PaillierContextMismatchException if the number has a different context.
+   */
+  public EncryptedSumAccumulator add(EncryptedNumber number) {
+    context.checkSameContext(number.getContext());
+    accumulate(number.ciphertext, number.getExponent(), number.isSafe);
+    return this;
+  }
+
+  /**
+   * Adds an encrypted number of this context given by its raw ciphertext, e.g. one read from
+   * a file, without creating an {@link EncryptedNumber}.
+   *
+   * @param ciphertext the ciphertext, less than the ciphertext modulus.
+   * @param exponent the exponent.
+   * @param isSafe whether the ciphertext is obfuscated.
+   * @return this accumulator.
+   */
+  public EncryptedSumAccumulator add(BigInteger ciphertext, int exponent, boolean isSafe) {
+    if (ciphertext == null) {
+      throw new NullPointerException("ciphertext must not be null");
+    }
+    if (ciphertext.signum() < 0 || ciphertext.compareTo(barrett.getModulus()) >= 0) {
+      throw new IllegalArgumentException("ciphertext must be less than the ciphertext modulus");
+    }
+    accumulate(ciphertext, exponent, isSafe);
+    return this;
+  }
+
+  private void accumulate(BigInteger ciphertext, int exponent, boolean isSafe) {
+    if (product == null) {
+      this.exponent = exponent;
+      product = ciphertext;
+    } else if (this.exponent == exponent) {
+      product = barrett.multiplyMod(product, ciphertext);
+    } else {
+      products.put(this.exponent, product);
+      BigInteger previous = products.remove(exponent);
+      this.exponent = exponent;
+      product = previous == null ? ciphertext : barrett.multiplyMod(previous, ciphertext);
+    }
+    allSafe &= isSafe;
+    count++;
+  }
+
+  /**
+   * Adds all summands of another accumulator to this one. The other accumulator is unchanged.
+   *
+   * @param other accumulator of the same context.
+   * @return this accumulator.
+   * @throws PaillierContextMismatchException if the other accumulator has a different context.
+   */
+  public EncryptedSumAccumulator combine(EncryptedSumAccumulator other) {
+    context.checkSameContext(other.context);
+    if (other.product == null) {
+      return this;
+    }
+    for (Map.Entry<Integer, BigInteger> entry : other.products.entrySet()) {
+      merge(entry.getKey(), entry.getValue());
+    }
+    merge(other.exponent, other.product);
+    allSafe &= other.allSafe;
+    count += other.count;
+    return this;
+  }
+
+  private void merge(int exponent, BigInteger ciphertext) {
+    if (product != null && this.exponent == exponent) {
+      product = barrett.multiplyMod(product, ciphertext);
+      return;
+    }
+    BigInteger previous = products.get(exponent);
+    if (previous == null && product == null) {
+      this.exponent = exponent;
+      product = ciphertext;
+    } else {
+      products.put(exponent,
+              previous == null ? ciphertext : barrett.multiplyMod(previous, ciphertext));
+    }
+  }
+
+  /**
+   * Computes the sum, aligning the products of the different exponents to the smallest one.
+   * The accumulator is unchanged and can take further summands.
+   *
+   * @return the sum, obfuscated if all summands were, or an unobfuscated encryption of zero
+   * with exponent zero if there were none.
+   */
+  public EncryptedNumber sum() {
+    if (product == null) {
+      return new EncryptedNumber(context, BigInteger.ONE, 0, false);
+    }
+    int minExponent = exponent;
+    for (int e : products.keySet()) {
+      minExponent = Math.min(minExponent, e);
+    }
+    BigInteger sum = align(product, exponent, minExponent);
+    for (Map.Entry<Integer, BigInteger> entry : products.entrySet()) {
+      sum = barrett.multiplyMod(sum, align(entry.getValue(), entry.getKey(), minExponent));
+    }
+    return new EncryptedNumber(context, sum, minExponent, allSafe);
+  }
+
+  private BigInteger align(BigInteger ciphertext, int exponent, int minExponent) {
+    if (exponent == minExponent) {
+      return ciphertext;
+    }
+    EncryptedNumber number = new EncryptedNumber(context, ciphertext, exponent, false);
+    return context.decreaseExponentTo(number, minExponent).ciphertext;
+  }
+}
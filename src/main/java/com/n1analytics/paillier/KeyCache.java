@@ -0,0 +1,375 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A bounded cache of public keys and their precomputations, for services that hold the keys of
+ * many tenants.
+ *
+ * Keys are looked up by their id, see
+ * {@link PaillierContextRegistry#getKeyId(PaillierPublicKey)}, and loaded on a miss with the
+ * {@link Loader} of the cache. Contexts and {@link FixedBaseTable}s are created lazily on first
+ * request and held by the cache as long as their key is cached. The contexts are the canonical
+ * instances of the {@link PaillierContextRegistry}, so they are shared with the rest of the
+ * process; the registry only references them weakly, while the cache keeps the contexts of its
+ * keys resident.
+ *
+ * The cache is bounded by an estimate of the bytes it retains: the modulus and the ciphertext
+ * modulus of every key, plus the bounds of every context and the powers of every table. When
+ * the bound is exceeded the least recently used keys are evicted together with their tables,
+ * except for the key being accessed. An evicted key stays usable by whoever still references
+ * it, and its registry entry is released once nothing does.
+ *
+ * Context creation is not routed through the cache: {@link PaillierPublicKey#createSignedContext()}
+ * and {@link PaillierPublicKey#createUnsignedContext()} still go only through the registry, and
+ * a service that wants its contexts bounded obtains them from the cache instead. Both return the
+ * same canonical instances, so contexts from either source pass each other's checks.
+ *
+ * The cache counts hits, misses, loads and evictions. All methods are thread-safe; tables are
+ * built outside the cache lock, so a slow table does not block lookups of other keys.
+ */
+public final class KeyCache {
+
+  /**
+   * Loads the public key of a tenant.
+   */
+  public interface Loader {
+
+    /**
+     * @param keyId the id of the key.
+     * @return the key with the id, or null if there is none.
+     */
+    PaillierPublicKey load(long keyId);
+  }
+
+  private static final class Entry {
+
+    final PaillierPublicKey publicKey;
+
+    /**
+     * The tables by base, maximum exponent length and window size. Guarded by the entry.
+     */
+    final Map<String, FixedBaseTable> tables = new HashMap<String, FixedBaseTable>();
+
+    /**
+     * The contexts by signedness, precision and base. Guarded by the entry.
+     */
+    final Map<String, PaillierContext> contexts = new HashMap<String, PaillierContext>();
+
+    /**
+     * The estimated size of the key and its tables. Guarded by the cache.
+     */
+    long bytes;
+
+    Entry(PaillierPublicKey publicKey) {
+      this.publicKey = publicKey;
+      this.bytes = bytes(publicKey.getModulus()) + bytes(publicKey.getCiphertextModulus());
+    }
+  }
+
+  private final long maximumBytes;
+
+  private final Loader loader;
+
+  /**
+   * The entries in access order, least recently used first. Guarded by itself.
+   */
+  private final LinkedHashMap<Long, Entry> entries =
+          new LinkedHashMap<Long, Entry>(16, 0.75f, true);
+
+  private long bytes = 0;
+
+  private long hits = 0;
+
+  private long misses = 0;
+
+  private long loads = 0;
+
+  private long evictions = 0;
+
+  /**
+   * Constructs a cache.
+   *
+   * @param maximumBytes the bound on the estimated bytes retained by the cache.
+   * @param loader to load keys that are not cached.
+   */
+  public KeyCache(long maximumBytes, Loader loader) {
+    if (maximumBytes < 1) {
+      throw new IllegalArgumentException("maximumBytes must be positive");
+    }
+    if (loader == null) {
+      throw new NullPointerException("loader must not be null");
+    }
+    this.maximumBytes = maximumBytes;
+    this.loader = loader;
+  }
+
+  private static long bytes(BigInteger value) {
+    // the magnitude array and the BigInteger and array headers
+    return ((value.bitLength() + 31) / 32) * 4 + 56;
+  }
+
+  private Entry entry(long keyId) {
+    synchronized (entries) {
+      Entry entry = entries.get(keyId);
+      if (entry != null) {
+        hits++;
+        return entry;
+      }
+      misses++;
+    }
+    // load outside the lock; a concurrent miss of the same key loads it again
+    PaillierPublicKey publicKey = loader.load(keyId);
+    if (publicKey == null) {
+      throw new IllegalArgumentException("no key with id " + Long.toHexString(keyId));
+    }
+    if (PaillierContextRegistry.getKeyId(publicKey) != keyId) {
+      throw new IllegalArgumentException("the loaded key does not have the id "
+                                         + Long.toHexString(keyId));
+    }
+    publicKey = PaillierContextRegistry.intern(publicKey);
+    synchronized (entries) {
+      Entry entry = entries.get(keyId);
+      if (entry == null) {
+        loads++;
+        entry = new Entry(publicKey);
+        entries.put(keyId, entry);
+        bytes += entry.bytes;
+        evict(entry);
+      }
+      return entry;
+    }
+  }
+
+  /**
+   * Evicts the least recently used entries other than {@code keep} until the cache is within
+   * its bound. Must hold the cache lock.
+   */
+  private void evict(Entry keep) {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (bytes > maximumBytes && iterator.hasNext()) {
+      Entry entry = iterator.next();
+      if (entry != keep) {
+        iterator.remove();
+        bytes -= entry.bytes;
+        evictions++;
+      }
+    }
+  }
+
+  /**
+   * Adds a key to the cache, so that it does not have to be loaded.
+   *
+   * @param publicKey the key.
+   * @return the id of the key.
+   */
+  public long put(PaillierPublicKey publicKey) {
+    long keyId = PaillierContextRegistry.getKeyId(publicKey);
+    publicKey = PaillierContextRegistry.intern(publicKey);
+    synchronized (entries) {
+      if (!entries.containsKey(keyId)) {
+        Entry entry = new Entry(publicKey);
+        entries.put(keyId, entry);
+        bytes += entry.bytes;
+        evict(entry);
+      }
+    }
+    return keyId;
+  }
+
+  /**
+   * @param keyId the id of a key.
+   * @return the key, loaded if it is not cached.
+   * @throws IllegalArgumentException if the loader does not know the key.
+   */
+  public PaillierPublicKey getPublicKey(long keyId) {
+    return entry(keyId).publicKey;
+  }
+
+  /**
+   * @param keyId the id of a key.
+   * @return the full precision, signed context of the key.
+   * @throws IllegalArgumentException if the loader does not know the key.
+   */
+  public PaillierContext getSignedContext(long keyId) {
+    Entry entry = entry(keyId);
+    return context(keyId, entry, true, entry.publicKey.getPlaintextModulus().bitLength(),
+                   PaillierContext.DEFAULT_BASE);
+  }
+
+  /**
+   * @param keyId the id of a key.
+   * @return the full precision, unsigned context of the key.
+   * @throws IllegalArgumentException if the loader does not know the key.
+   */
+  public PaillierContext getUnsignedContext(long keyId) {
+    Entry entry = entry(keyId);
+    return context(keyId, entry, false, entry.publicKey.getPlaintextModulus().bitLength(),
+                   PaillierContext.DEFAULT_BASE);
+  }
+
+  /**
+   * @param keyId the id of a key.
+   * @param signed to denote whether the context supports signed or unsigned numbers.
+   * @param precision to denote the number of bits used to represent valid numbers.
+   * @param base the base used for encoding.
+   * @return the context of the key.
+   * @throws IllegalArgumentException if the loader does not know the key, or if
+   * {@code precision} or {@code base} is invalid.
+   */
+  public PaillierContext getContext(long keyId, boolean signed, int precision, int base) {
+    return context(keyId, entry(keyId), signed, precision, base);
+  }
+
+  private PaillierContext context(long keyId, Entry entry, boolean signed, int precision,
+                                  int base) {
+    String key = signed + "/" + precision + "/" + base;
+    PaillierContext context;
+    synchronized (entry) {
+      context = entry.contexts.get(key);
+      if (context != null) {
+        return context;
+      }
+      context = PaillierContextRegistry.getContext(entry.publicKey, signed, precision, base);
+      entry.contexts.put(key, context);
+    }
+    // the maximum and minimum encoded values and significands
+    addBytes(keyId, entry, 4 * bytes(entry.publicKey.getPlaintextModulus()));
+    return context;
+  }
+
+  /**
+   * Returns a table for exponentiations of a fixed base modulo the ciphertext modulus of a key,
+   * building it on first request. The table counts towards the bound of the cache.
+   *
+   * @param keyId the id of a key.
+   * @param base the fixed base, e.g. a ciphertext.
+   * @param maxExponentBits the maximum bit length of exponents handled by the table.
+   * @param windowBits the window size in bits.
+   * @return the table.
+   * @throws IllegalArgumentException if the loader does not know the key.
+   */
+  public FixedBaseTable getTable(long keyId, BigInteger base, int maxExponentBits,
+                                 int windowBits) {
+    Entry entry = entry(keyId);
+    String key = base.toString(Character.MAX_RADIX) + "/" + maxExponentBits + "/" + windowBits;
+    FixedBaseTable table;
+    synchronized (entry) {
+      table = entry.tables.get(key);
+      if (table != null) {
+        return table;
+      }
+      table = new FixedBaseTable(base, entry.publicKey.getCiphertextModulus(), maxExponentBits,
+                                 windowBits);
+      entry.tables.put(key, table);
+    }
+    addBytes(keyId, entry, (table.getPowers().length + 1) * bytes(table.getModulus()));
+    return table;
+  }
+
+  /**
+   * Accounts for a context or table added to an entry, and evicts other entries if the cache
+   * is now over its bound.
+   */
+  private void addBytes(long keyId, Entry entry, long added) {
+    synchronized (entries) {
+      entry.bytes += added;
+      if (entries.get(keyId) == entry) {
+        bytes += added;
+        evict(entry);
+      }
+    }
+  }
+
+  /**
+   * Removes a key and its tables from the cache.
+   *
+   * @param keyId the id of the key.
+   */
+  public void invalidate(long keyId) {
+    synchronized (entries) {
+      Entry entry = entries.remove(keyId);
+      if (entry != null) {
+        bytes -= entry.bytes;
+      }
+    }
+  }
+
+  /**
+   * @return the ids of the cached keys, least recently used first.
+   */
+  public List<Long> getKeyIds() {
+    synchronized (entries) {
+      return new ArrayList<Long>(entries.keySet());
+    }
+  }
+
+  /**
+   * @return the number of cached keys.
+   */
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  /**
+   * @return the estimated bytes retained by the cache.
+   */
+  public long getBytes() {
+    synchronized (entries) {
+      return bytes;
+    }
+  }
+
+  /**
+   * @return the bound on the estimated bytes retained by the cache.
+   */
+  public long getMaximumBytes() {
+    return maximumBytes;
+  }
+
+  /**
+   * @return the number of lookups that found their key in the cache.
+   */
+  public long getHits() {
+    synchronized (entries) {
+      return hits;
+    }
+  }
+
+  /**
+   * @return the number of lookups that did not find their key in the cache.
+   */
+  public long getMisses() {
+    synchronized (entries) {
+      return misses;
+    }
+  }
+
+  /**
+   * @return the number of keys loaded into the cache.
+   */
+  public long getLoads() {
+    synchronized (entries) {
+      return loads;
+    }
+  }
+
+  /**
+   * @return the number of keys evicted from the cache.
+   */
+  public long getEvictions() {
+    synchronized (entries) {
+      return evictions;
+    }
+  }
+}
@@ -0,0 +1,343 @@
+package com.n1analytics.paillier;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A pool of pre-generated Paillier keypairs, for protocols that use a fresh key per session.
+ *
+ * The pool keeps up to {@code keysPerLength} keys for each of its modulus lengths. A background
+ * refill thread tops up the most depleted length with a {@link PaillierKeyGenerator}, whose prime
+ * searches run on {@code refillThreads} daemon threads, so refilling never occupies more than
+ * that many cores. Every key is handed out exactly once.
+ *
+ * The pool reports its depth per modulus length, the number of keys generated and handed out,
+ * and the refill rate. {@link #shutdown()} stops refilling and discards the remaining keys.
+ *
+ * If the generator fails, the failure is logged and kept for {@link #getRefillFailure()}, and
+ * the refill thread retries after a backoff that doubles from {@link #MIN_BACKOFF_MILLIS} up to
+ * {@link #MAX_BACKOFF_MILLIS}. Should the refill thread die nonetheless, {@link #take(int)}
+ * throws instead of waiting for keys that will never come.
+ */
+public final class KeyPool {
+
+  private static final Logger logger = Logger.getLogger("com.n1analytics.paillier");
+
+  /**
+   * The backoff after the first of consecutive generator failures, in milliseconds.
+   */
+  public static final long MIN_BACKOFF_MILLIS = 100;
+
+  /**
+   * The longest backoff between generator failures, in milliseconds.
+   */
+  public static final long MAX_BACKOFF_MILLIS = 30000;
+
+  private final int keysPerLength;
+
+  private final Map<Integer, LinkedBlockingQueue<PaillierPrivateKey>> keys;
+
+  private final ExecutorService generatorExecutor;
+
+  private final PaillierKeyGenerator generator;
+
+  private final Thread refillThread;
+
+  /**
+   * Notified when a key is taken or the pool shuts down.
+   */
+  private final Object signal = new Object();
+
+  private volatile boolean shutdown = false;
+
+  private final AtomicLong keysGenerated = new AtomicLong();
+
+  private final AtomicLong keysTaken = new AtomicLong();
+
+  private final AtomicLong refillNanos = new AtomicLong();
+
+  private volatile Throwable refillFailure;
+
+  /**
+   * Constructs a key pool and starts filling it in the background.
+   *
+   * @param modulusLengths the modulus lengths of the pooled keys.
+   * @param keysPerLength the number of keys kept ready per modulus length.
+   * @param refillThreads the maximum number of threads generating keys.
+   */
+  public KeyPool(int[] modulusLengths, int keysPerLength, int refillThreads) {
+    this(modulusLengths, keysPerLength, newGeneratorExecutor(refillThreads));
+  }
+
+  /**
+   * Constructs a key pool that generates keys on the given executor, which it shuts down on
+   * {@link #shutdown()}.
+   */
+  KeyPool(int[] modulusLengths, int keysPerLength, ExecutorService generatorExecutor) {
+    if (modulusLengths == null || modulusLengths.length == 0) {
+      generatorExecutor.shutdownNow();
+      throw new IllegalArgumentException("need at least one modulus length");
+    }
+    if (keysPerLength < 1) {
+      generatorExecutor.shutdownNow();
+      throw new IllegalArgumentException("keysPerLength must be positive");
+    }
+    this.keysPerLength = keysPerLength;
+    this.keys = new HashMap<Integer, LinkedBlockingQueue<PaillierPrivateKey>>();
+    for (int modulusLength : modulusLengths) {
+      if (modulusLength < 16 || modulusLength % 8 != 0) {
+        generatorExecutor.shutdownNow();
+        throw new IllegalArgumentException(
+                "modulusLength must be a multiple of 8 and at least 16");
+      }
+      keys.put(modulusLength, new LinkedBlockingQueue<PaillierPrivateKey>(keysPerLength));
+    }
+    this.generatorExecutor = generatorExecutor;
+    this.generator = new PaillierKeyGenerator(generatorExecutor);
+    this.refillThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          refill();
+        } catch (Throwable e) {
+          refillFailure = e;
+          logger.log(Level.SEVERE, "key pool refill thread died", e);
+          throw e;
+        }
+      }
+    }, "javallier-key-pool-refill");
+    refillThread.setDaemon(true);
+    refillThread.start();
+  }
+
+  private static ExecutorService newGeneratorExecutor(int refillThreads) {
+    if (refillThreads < 1) {
+      throw new IllegalArgumentException("keysPerLength and refillThreads must be positive");
+    }
+    return Executors.newFixedThreadPool(refillThreads, new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "javallier-key-pool-generator");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  private void refill() {
+    long backoff = MIN_BACKOFF_MILLIS;
+    while (!shutdown) {
+      int modulusLength = mostDepleted();
+      if (modulusLength < 0) {
+        synchronized (signal) {
+          while (!shutdown && mostDepleted() < 0) {
+            try {
+              signal.wait();
+            } catch (InterruptedException e) {
+              return;
+            }
+          }
+        }
+        continue;
+      }
+      long start = System.nanoTime();
+      PaillierPrivateKey key;
+      try {
+        key = generator.generate(modulusLength);
+      } catch (RuntimeException e) {
+        // interrupted or rejected by the generator executor during shutdown
+        if (shutdown) {
+          return;
+        }
+        refillFailure = e;
+        logger.log(Level.WARNING, "failed to generate a " + modulusLength
+                + " bit key for the pool, retrying in " + backoff + " ms", e);
+        try {
+          Thread.sleep(backoff);
+        } catch (InterruptedException interrupted) {
+          return;
+        }
+        backoff = Math.min(2 * backoff, MAX_BACKOFF_MILLIS);
+        continue;
+      }
+      backoff = MIN_BACKOFF_MILLIS;
+      refillNanos.addAndGet(System.nanoTime() - start);
+      keysGenerated.incrementAndGet();
+      if (shutdown) {
+        return;
+      }
+      // only the refill thread adds keys, so this cannot exceed the capacity
+      LinkedBlockingQueue<PaillierPrivateKey> queue = keys.get(modulusLength);
+      queue.offer(key);
+      // shutdown() may have cleared the queues between the check above and the offer
+      if (shutdown) {
+        queue.remove(key);
+        return;
+      }
+    }
+  }
+
+  /**
+   * @return the modulus length with the fewest keys, or -1 if the pool is full.
+   */
+  private int mostDepleted() {
+    int modulusLength = -1;
+    int depth = keysPerLength;
+    for (Map.Entry<Integer, LinkedBlockingQueue<PaillierPrivateKey>> entry : keys.entrySet()) {
+      if (entry.getValue().size() < depth) {
+        modulusLength = entry.getKey();
+        depth = entry.getValue().size();
+      }
+    }
+    return modulusLength;
+  }
+
+  private LinkedBlockingQueue<PaillierPrivateKey> queue(int modulusLength) {
+    LinkedBlockingQueue<PaillierPrivateKey> queue = keys.get(modulusLength);
+    if (queue == null) {
+      throw new IllegalArgumentException("the pool has no keys of length " + modulusLength);
+    }
+    return queue;
+  }
+
+  private PaillierPrivateKey handOut(PaillierPrivateKey key) {
+    if (key != null) {
+      keysTaken.incrementAndGet();
+      synchronized (signal) {
+        signal.notifyAll();
+      }
+    }
+    return key;
+  }
+
+  /**
+   * Takes a key from the pool if one is ready.
+   *
+   * @param modulusLength the modulus length of the key.
+   * @return a key that has not been handed out before, or null if the pool is empty.
+   */
+  public PaillierPrivateKey poll(int modulusLength) {
+    return handOut(queue(modulusLength).poll());
+  }
+
+  /**
+   * Takes a key from the pool, waiting for the refill if the pool is empty.
+   *
+   * @param modulusLength the modulus length of the key.
+   * @return a key that has not been handed out before.
+   * @throws IllegalStateException if the pool is shut down and has no keys left, or if the
+   *                               refill thread has died.
+   */
+  public PaillierPrivateKey take(int modulusLength) {
+    LinkedBlockingQueue<PaillierPrivateKey> queue = queue(modulusLength);
+    try {
+      for (; ; ) {
+        PaillierPrivateKey key = queue.poll(100, TimeUnit.MILLISECONDS);
+        if (key != null) {
+          return handOut(key);
+        }
+        if (shutdown) {
+          throw new IllegalStateException("the key pool is shut down");
+        }
+        if (!refillThread.isAlive()) {
+          throw new IllegalStateException("the key pool refill thread has died", refillFailure);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted while waiting for a key", e);
+    }
+  }
+
+  /**
+   * @param modulusLength a modulus length of the pool.
+   * @return the number of keys of that length that are ready.
+   */
+  public int getDepth(int modulusLength) {
+    return queue(modulusLength).size();
+  }
+
+  /**
+   * @return the number of keys kept ready per modulus length.
+   */
+  public int getKeysPerLength() {
+    return keysPerLength;
+  }
+
+  /**
+   * @return the total number of keys generated by the pool.
+   */
+  public long getKeysGenerated() {
+    return keysGenerated.get();
+  }
+
+  /**
+   * @return the total number of keys handed out by the pool.
+   */
+  public long getKeysTaken() {
+    return keysTaken.get();
+  }
+
+  /**
+   * @return the refill rate, in keys generated per second of refilling. Zero if no key has been
+   * generated yet.
+   */
+  public double getRefillRate() {
+    long nanos = refillNanos.get();
+    return nanos == 0 ? 0 : keysGenerated.get() * 1e9 / nanos;
+  }
+
+  /**
+   * @return the last failure of the key generator, or null if it has never failed. A failure
+   * is kept after the refill recovers from it.
+   */
+  public Throwable getRefillFailure() {
+    return refillFailure;
+  }
+
+  /**
+   * Stops refilling and discards all keys that have not been handed out.
+   */
+  public void shutdown() {
+    shutdown = true;
+    synchronized (signal) {
+      signal.notifyAll();
+    }
+    refillThread.interrupt();
+    generatorExecutor.shutdownNow();
+    for (LinkedBlockingQueue<PaillierPrivateKey> queue : keys.values()) {
+      queue.clear();
+    }
+  }
+
+  /**
+   * @return true if {@link #shutdown()} has been called.
+   */
+  public boolean isShutdown() {
+    return shutdown;
+  }
+
+  /**
+   * Waits for the background threads to finish after {@link #shutdown()}.
+   *
+   * @param timeout the maximum time to wait.
+   * @param unit the unit of {@code timeout}.
+   * @return true if all background threads have finished.
+   * @throws InterruptedException if interrupted while waiting.
+   */
+  public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+    long deadline = System.nanoTime() + unit.toNanos(timeout);
+    refillThread.join(Math.max(1, unit.toMillis(timeout)));
+    long remaining = deadline - System.nanoTime();
+    return !refillThread.isAlive()
+            && generatorExecutor.awaitTermination(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+  }
+}
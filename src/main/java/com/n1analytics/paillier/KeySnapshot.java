@@ -0,0 +1,392 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of a key and its precomputations in a binary file, for fast warm starts.
+ *
+ * Restoring a private key from its totient costs two modular exponentiations and rebuilding a
+ * {@link FixedBaseTable} costs one squaring per exponent bit, which adds up to seconds for large
+ * keys and tables. A snapshot stores the results instead: the modulus and its square, the primes
+ * with the CRT precomputations <code>hp</code>, <code>hq</code> and
+ * <code>p<sup>-1</sup> mod q</code> and any number of fixed-base tables.
+ *
+ * {@link #open(File)} memory maps the file and only checks its header. The keys and tables are
+ * decoded from the mapped file on first access, where the checksum of each entry is verified, and
+ * are cached afterwards. None of this needs a modular exponentiation.
+ *
+ * The file starts with a header of the magic number, the format {@link #VERSION}, the number of
+ * entries and one directory record (type, offset, length, CRC32) per entry, followed by a CRC32 of
+ * the header itself. All integers are big-endian. A file of another version is rejected.
+ *
+ * A snapshot is written to a temporary file next to the target, synced and atomically moved
+ * over the target, so a crash leaves either the previous file or the complete new one.
+ *
+ * Instances are thread-safe.
+ */
+public final class KeySnapshot {
+
+  /**
+   * The current version of the file format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * "JPKS", the first four bytes of every snapshot file.
+   */
+  private static final int MAGIC = 0x4a504b53;
+
+  private static final int PUBLIC_KEY = 1;
+  private static final int PRIVATE_KEY = 2;
+  private static final int TABLE = 3;
+
+  /**
+   * The length of a directory record: type, offset, length and checksum.
+   */
+  private static final int RECORD_LENGTH = 4 + 8 + 4 + 4;
+
+  private final MappedByteBuffer buffer;
+
+  private final int[] types;
+
+  private final int[] offsets;
+
+  private final int[] lengths;
+
+  private final int[] checksums;
+
+  private final int privateKeyEntry;
+
+  private final int[] tableEntries;
+
+  private PaillierPublicKey publicKey;
+
+  private PaillierPrivateKey privateKey;
+
+  private final FixedBaseTable[] tables;
+
+  private KeySnapshot(MappedByteBuffer buffer, int[] types, int[] offsets, int[] lengths,
+                      int[] checksums) {
+    this.buffer = buffer;
+    this.types = types;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.checksums = checksums;
+    int privateKeyEntry = -1;
+    List<Integer> tableEntries = new ArrayList<Integer>();
+    for (int i = 0; i < types.length; i++) {
+      if (types[i] == PRIVATE_KEY) {
+        privateKeyEntry = i;
+      } else if (types[i] == TABLE) {
+        tableEntries.add(i);
+      }
+    }
+    this.privateKeyEntry = privateKeyEntry;
+    this.tableEntries = new int[tableEntries.size()];
+    for (int i = 0; i < this.tableEntries.length; i++) {
+      this.tableEntries[i] = tableEntries.get(i);
+    }
+    this.tables = new FixedBaseTable[this.tableEntries.length];
+  }
+
+  /**
+   * Writes a snapshot of a public key.
+   *
+   * @param file to write to, replacing any existing content.
+   * @param publicKey the key.
+   * @param tables fixed-base tables to store with the key.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(File file, PaillierPublicKey publicKey, FixedBaseTable... tables)
+          throws IOException {
+    checkKeyClass(publicKey.getClass() == PaillierPublicKey.class);
+    write(file, publicKey, null, tables);
+  }
+
+  /**
+   * Writes a snapshot of a private key, including its public key.
+   *
+   * @param file to write to, replacing any existing content.
+   * @param privateKey the key.
+   * @param tables fixed-base tables to store with the key.
+   * @throws IOException if the file cannot be written.
+   */
+  public static void write(File file, PaillierPrivateKey privateKey, FixedBaseTable... tables)
+          throws IOException {
+    checkKeyClass(privateKey.getClass() == PaillierPrivateKey.class
+            && privateKey.getPublicKey().getClass() == PaillierPublicKey.class);
+    write(file, privateKey.getPublicKey(), privateKey, tables);
+  }
+
+  private static void checkKeyClass(boolean isPaillierKey) {
+    if (!isPaillierKey) {
+      throw new IllegalArgumentException("only plain Paillier keys can be snapshot");
+    }
+  }
+
+  private static void write(File file, PaillierPublicKey publicKey, PaillierPrivateKey privateKey,
+                            FixedBaseTable[] tables) throws IOException {
+    List<Integer> types = new ArrayList<Integer>();
+    List<byte[]> entries = new ArrayList<byte[]>();
+    types.add(PUBLIC_KEY);
+    entries.add(encode(publicKey.modulus, publicKey.modulusSquared));
+    if (privateKey != null) {
+      types.add(PRIVATE_KEY);
+      entries.add(encode(privateKey.p, privateKey.q, privateKey.hp, privateKey.hq,
+                         privateKey.pInverse));
+    }
+    for (FixedBaseTable table : tables) {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream out = new DataOutputStream(bytes);
+      BigInteger[] powers = table.getPowers();
+      out.writeInt(table.getMaxExponentBits());
+      out.writeInt(table.getWindowBits());
+      out.writeInt(powers.length);
+      writeBigInteger(out, table.getModulus());
+      for (BigInteger power : powers) {
+        writeBigInteger(out, power);
+      }
+      types.add(TABLE);
+      entries.add(bytes.toByteArray());
+    }
+
+    ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+    DataOutputStream header = new DataOutputStream(headerBytes);
+    header.writeInt(MAGIC);
+    header.writeInt(VERSION);
+    header.writeInt(entries.size());
+    long offset = 4 * 4 + (long) entries.size() * RECORD_LENGTH;
+    for (int i = 0; i < entries.size(); i++) {
+      byte[] entry = entries.get(i);
+      header.writeInt(types.get(i));
+      header.writeLong(offset);
+      header.writeInt(entry.length);
+      header.writeInt(checksum(entry, 0, entry.length));
+      offset += entry.length;
+    }
+    if (offset > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("snapshot too large");
+    }
+    byte[] headerArray = headerBytes.toByteArray();
+    header.writeInt(checksum(headerArray, 0, headerArray.length));
+
+    File temporary = new File(file.getPath() + ".tmp");
+    FileOutputStream stream = new FileOutputStream(temporary);
+    try {
+      DataOutputStream out = new DataOutputStream(stream);
+      headerBytes.writeTo(out);
+      for (byte[] entry : entries) {
+        out.write(entry);
+      }
+      out.flush();
+      stream.getChannel().force(true);
+    } finally {
+      stream.close();
+    }
+    Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    syncDirectory(file.getAbsoluteFile().getParentFile());
+  }
+
+  private static void syncDirectory(File directory) throws IOException {
+    FileChannel channel;
+    try {
+      channel = FileChannel.open(directory.toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      // some platforms, e.g. Windows, cannot open directories, and journal renames instead
+      return;
+    }
+    try {
+      channel.force(true);
+    } finally {
+      channel.close();
+    }
+  }
+
+  private static byte[] encode(BigInteger... values) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    for (BigInteger value : values) {
+      writeBigInteger(out, value);
+    }
+    return bytes.toByteArray();
+  }
+
+  private static void writeBigInteger(DataOutputStream out, BigInteger value) throws IOException {
+    byte[] bytes = value.toByteArray();
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Opens a snapshot file. The file is memory mapped and only its header is read and verified.
+   *
+   * @param file the snapshot file.
+   * @return the snapshot.
+   * @throws IOException if the file cannot be read, is not a snapshot, has another version or
+   * its header is corrupted.
+   */
+  public static KeySnapshot open(File file) throws IOException {
+    MappedByteBuffer buffer;
+    RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      FileChannel channel = raf.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("not a key snapshot: file too large");
+      }
+      // the mapping stays valid after the channel is closed
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      raf.close();
+    }
+    ByteBuffer header = buffer.duplicate();
+    if (header.remaining() < 4 * 4 || header.getInt() != MAGIC) {
+      throw new IOException("not a key snapshot");
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported key snapshot version " + version);
+    }
+    int numberOfEntries = header.getInt();
+    if (numberOfEntries < 1 || numberOfEntries > (header.remaining() - 4) / RECORD_LENGTH) {
+      throw new IOException("corrupted key snapshot header");
+    }
+    int[] types = new int[numberOfEntries];
+    int[] offsets = new int[numberOfEntries];
+    int[] lengths = new int[numberOfEntries];
+    int[] checksums = new int[numberOfEntries];
+    for (int i = 0; i < numberOfEntries; i++) {
+      types[i] = header.getInt();
+      long offset = header.getLong();
+      lengths[i] = header.getInt();
+      checksums[i] = header.getInt();
+      if (offset < 0 || lengths[i] < 0 || offset + lengths[i] > buffer.capacity()) {
+        throw new IOException("corrupted key snapshot header");
+      }
+      offsets[i] = (int) offset;
+    }
+    int headerLength = header.position();
+    byte[] headerArray = new byte[headerLength];
+    buffer.duplicate().get(headerArray);
+    if (header.getInt() != checksum(headerArray, 0, headerLength) || types[0] != PUBLIC_KEY) {
+      throw new IOException("corrupted key snapshot header");
+    }
+    return new KeySnapshot(buffer, types, offsets, lengths, checksums);
+  }
+
+  /**
+   * Reads an entry from the mapped file and verifies its checksum.
+   */
+  private ByteBuffer entry(int i) {
+    byte[] bytes = new byte[lengths[i]];
+    ByteBuffer mapped = buffer.duplicate();
+    mapped.position(offsets[i]);
+    mapped.get(bytes);
+    if (checksum(bytes, 0, bytes.length) != checksums[i]) {
+      throw new PaillierRuntimeException("key snapshot entry " + i + " is corrupted");
+    }
+    return ByteBuffer.wrap(bytes);
+  }
+
+  private static BigInteger readBigInteger(ByteBuffer entry) {
+    byte[] bytes = new byte[entry.getInt()];
+    entry.get(bytes);
+    return new BigInteger(bytes);
+  }
+
+  /**
+   * @return the public key, decoded on the first call.
+   * @throws PaillierRuntimeException if the entry is corrupted.
+   */
+  public synchronized PaillierPublicKey getPublicKey() {
+    if (publicKey == null) {
+      ByteBuffer entry = entry(0);
+      try {
+        publicKey = new PaillierPublicKey(readBigInteger(entry), readBigInteger(entry));
+      } catch (IllegalArgumentException e) {
+        throw new PaillierRuntimeException("key snapshot entry 0 is inconsistent", e);
+      }
+    }
+    return publicKey;
+  }
+
+  /**
+   * @return true if the snapshot contains a private key.
+   */
+  public boolean hasPrivateKey() {
+    return privateKeyEntry >= 0;
+  }
+
+  /**
+   * @return the private key, decoded on the first call.
+   * @throws IllegalStateException if the snapshot only contains a public key.
+   * @throws PaillierRuntimeException if the entry is corrupted.
+   */
+  public synchronized PaillierPrivateKey getPrivateKey() {
+    if (!hasPrivateKey()) {
+      throw new IllegalStateException("the snapshot does not contain a private key");
+    }
+    if (privateKey == null) {
+      ByteBuffer entry = entry(privateKeyEntry);
+      BigInteger p = readBigInteger(entry);
+      BigInteger q = readBigInteger(entry);
+      BigInteger hp = readBigInteger(entry);
+      BigInteger hq = readBigInteger(entry);
+      BigInteger pInverse = readBigInteger(entry);
+      privateKey = new PaillierPrivateKey(getPublicKey(), p, q, hp, hq, pInverse);
+    }
+    return privateKey;
+  }
+
+  /**
+   * @return the number of fixed-base tables in the snapshot.
+   */
+  public int getNumberOfTables() {
+    return tables.length;
+  }
+
+  /**
+   * Returns a fixed-base table, in the order they were written.
+   *
+   * @param index of the table.
+   * @return the table, decoded on the first call.
+   * @throws PaillierRuntimeException if the entry is corrupted.
+   */
+  public synchronized FixedBaseTable getTable(int index) {
+    if (tables[index] == null) {
+      ByteBuffer entry = entry(tableEntries[index]);
+      int maxExponentBits = entry.getInt();
+      int windowBits = entry.getInt();
+      BigInteger[] powers = new BigInteger[entry.getInt()];
+      BigInteger modulus = readBigInteger(entry);
+      for (int i = 0; i < powers.length; i++) {
+        powers[i] = readBigInteger(entry);
+      }
+      tables[index] = new FixedBaseTable(modulus, maxExponentBits, windowBits, powers);
+    }
+    return tables[index];
+  }
+}
@@ -56,7 +56,7 @@ public class MockPaillierContext extends PaillierContext {
   public EncryptedNumber encrypt(EncodedNumber encoded) {
     //we don't actually encrypt. 
     checkSameContext(encoded);
-    final BigInteger modulus = getPublicKey().getModulus();
+    final BigInteger modulus = getPublicKey().getPlaintextModulus();
     final BigInteger value = encoded.getValue();
     return new EncryptedNumber(this, value.mod(modulus), encoded.getExponent());
   }
@@ -74,7 +74,7 @@ public class MockPaillierContext extends PaillierContext {
       throws PaillierContextMismatchException {
     checkSameContext(operand1);
     checkSameContext(operand2);
-    final BigInteger modulus = getPublicKey().getModulus();
+    final BigInteger modulus = getPublicKey().getPlaintextModulus();
     BigInteger value1 = operand1.ciphertext;
     BigInteger value2 = operand2.ciphertext;
     int exponent1 = operand1.getExponent();
@@ -88,8 +88,8 @@ public class MockPaillierContext extends PaillierContext {
     } // else do nothing
     BigInteger result = value1.add(value2);
     //this tests for overflows
-    BigInteger posValue1 = (isSigned() && value1.compareTo(getMinEncoded())>=0)? value1.subtract(this.getPublicKey().modulus) : value1;
-    BigInteger posValue2 = (isSigned() && value2.compareTo(getMinEncoded())>=0)? value2.subtract(this.getPublicKey().modulus) : value2;
+    BigInteger posValue1 = (isSigned() && value1.compareTo(getMinEncoded())>=0)? value1.subtract(this.getPublicKey().getPlaintextModulus()) : value1;
+    BigInteger posValue2 = (isSigned() && value2.compareTo(getMinEncoded())>=0)? value2.subtract(this.getPublicKey().getPlaintextModulus()) : value2;
 
     if(posValue1.add(posValue2).compareTo(modulus) != -1){
       logger.warning("Overflow occured in add()");
@@ -107,7 +107,7 @@ public class MockPaillierContext extends PaillierContext {
   public EncryptedNumber additiveInverse(EncryptedNumber operand1) throws PaillierContextMismatchException {
     checkSameContext(operand1);
     return new EncryptedNumber(operand1.getContext(),
-        getPublicKey().modulus.subtract(operand1.ciphertext),
+        getPublicKey().getPlaintextModulus().subtract(operand1.ciphertext),
         operand1.getExponent());
   }
 
@@ -123,7 +123,7 @@ public class MockPaillierContext extends PaillierContext {
     if (operand1.getValue().signum() == 0) {
       return operand1;
     }
-    final BigInteger modulus = getPublicKey().getModulus();
+    final BigInteger modulus = getPublicKey().getPlaintextModulus();
     final BigInteger value1 = operand1.getValue();
     final BigInteger result = modulus.subtract(value1);
     return new EncodedNumber(this, result, operand1.getExponent());
@@ -147,13 +147,13 @@ public class MockPaillierContext extends PaillierContext {
     final BigInteger result = value1.multiply(value2);
     
     //this tests for overflows
-    BigInteger posValue1 = (isSigned() && value1.compareTo(getMinEncoded())>=0)? value1.subtract(this.getPublicKey().modulus) : value1;
-    BigInteger posValue2 = (isSigned() && value2.compareTo(getMinEncoded())>=0)? value2.subtract(this.getPublicKey().modulus) : value2;
-    if(posValue1.multiply(posValue2).compareTo(getPublicKey().getModulus()) != -1){
+    BigInteger posValue1 = (isSigned() && value1.compareTo(getMinEncoded())>=0)? value1.subtract(this.getPublicKey().getPlaintextModulus()) : value1;
+    BigInteger posValue2 = (isSigned() && value2.compareTo(getMinEncoded())>=0)? value2.subtract(this.getPublicKey().getPlaintextModulus()) : value2;
+    if(posValue1.multiply(posValue2).compareTo(getPublicKey().getPlaintextModulus()) != -1){
       logger.warning("Overflow occured in multiply()");
     }
     final int exponent = operand1.getExponent() + operand2.getExponent();
-    return new EncryptedNumber(this, result.mod(getPublicKey().getModulus()), exponent);
+    return new EncryptedNumber(this, result.mod(getPublicKey().getPlaintextModulus()), exponent);
   }
   
   @Override
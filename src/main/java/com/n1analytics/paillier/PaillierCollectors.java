@@ -0,0 +1,126 @@
+package com.n1analytics.paillier;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+
+/**
+ * {@link Collector}s for encrypted reductions of streams.
+ *
+ * Unlike {@code stream.reduce(EncryptedNumber::add)}, which may rescale the running sum at every
+ * step, the collectors accumulate into an {@link EncryptedSumAccumulator}: one modular
+ * multiplication per element, and the exponents are aligned once when the result is finished.
+ * The containers of parallel streams are merged with {@link EncryptedSumAccumulator#combine},
+ * so the collectors work equally on sequential and parallel streams, e.g. those of
+ * {@link CiphertextArray#stream()} and
+ * {@link com.n1analytics.paillier.io.EncryptedColumnReader#stream()}.
+ *
+ * All elements must belong to the context given to the collector, otherwise a
+ * {@link PaillierContextMismatchException} is thrown.
+ */
+public final class PaillierCollectors {
+
+  private PaillierCollectors() {
+  }
+
+  /**
+   * @param context of the elements.
+   * @return a collector of the homomorphic sum of encrypted numbers, an encryption of zero for
+   * no elements.
+   */
+  public static Collector<EncryptedNumber, ?, EncryptedNumber> summing(PaillierContext context) {
+    return summing(context, Function.<EncryptedNumber>identity());
+  }
+
+  /**
+   * @param context of the encrypted numbers.
+   * @param mapper from an element to its encrypted number.
+   * @param <T> the type of the elements.
+   * @return a collector of the homomorphic sum of the mapped elements.
+   */
+  public static <T> Collector<T, ?, EncryptedNumber> summing(
+          PaillierContext context, Function<? super T, EncryptedNumber> mapper) {
+    return Collector.of(accumulator(context),
+            (sum, element) -> sum.add(mapper.apply(element)),
+            EncryptedSumAccumulator::combine,
+            EncryptedSumAccumulator::sum,
+            Collector.Characteristics.UNORDERED);
+  }
+
+  /**
+   * Collects the sum of the encrypted numbers of the elements, each multiplied by an unencrypted
+   * weight, e.g. a weighted score.
+   *
+   * @param context of the encrypted numbers.
+   * @param mapper from an element to its encrypted number.
+   * @param weight from an element to its weight, encoded with {@code context}.
+   * @param <T> the type of the elements.
+   * @return a collector of the homomorphic weighted sum.
+   * @throws EncodeException when a weight cannot be encoded.
+   */
+  public static <T> Collector<T, ?, EncryptedNumber> weightedSum(
+          PaillierContext context, Function<? super T, EncryptedNumber> mapper,
+          Function<? super T, ? extends Number> weight) {
+    return summing(context,
+            (T element) -> mapper.apply(element).multiply(encode(context, weight.apply(element))));
+  }
+
+  /**
+   * Collects a homomorphic sum per group.
+   *
+   * @param context of the encrypted numbers.
+   * @param classifier from an element to its group.
+   * @param mapper from an element to its encrypted number.
+   * @param <T> the type of the elements.
+   * @param <K> the type of the groups.
+   * @return a collector of the sum of every group.
+   */
+  public static <T, K> Collector<T, ?, Map<K, EncryptedNumber>> groupingSum(
+          PaillierContext context, Function<? super T, ? extends K> classifier,
+          Function<? super T, EncryptedNumber> mapper) {
+    return Collectors.groupingBy(classifier, summing(context, mapper));
+  }
+
+  /**
+   * Collects the homomorphic sum and the number of the elements, from which the average follows
+   * after decryption.
+   *
+   * @param context of the encrypted numbers.
+   * @param mapper from an element to its encrypted number.
+   * @param <T> the type of the elements.
+   * @return a collector of the encrypted average.
+   */
+  public static <T> Collector<T, ?, EncryptedAverage> averaging(
+          PaillierContext context, Function<? super T, EncryptedNumber> mapper) {
+    return Collector.of(accumulator(context),
+            (sum, element) -> sum.add(mapper.apply(element)),
+            EncryptedSumAccumulator::combine,
+            sum -> new EncryptedAverage(sum.sum(), sum.getCount()),
+            Collector.Characteristics.UNORDERED);
+  }
+
+  private static Supplier<EncryptedSumAccumulator> accumulator(PaillierContext context) {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    return () -> new EncryptedSumAccumulator(context);
+  }
+
+  private static EncodedNumber encode(PaillierContext context, Number weight) {
+    if (weight instanceof Long || weight instanceof Integer || weight instanceof Short
+        || weight instanceof Byte) {
+      return context.encode(weight.longValue());
+    }
+    if (weight instanceof BigInteger) {
+      return context.encode((BigInteger) weight);
+    }
+    if (weight instanceof BigDecimal) {
+      return context.encode((BigDecimal) weight);
+    }
+    return context.encode(weight.doubleValue());
+  }
+}
@@ -16,6 +16,8 @@ package com.n1analytics.paillier;
 
 import com.n1analytics.paillier.util.BigIntegerUtil;
 import com.n1analytics.paillier.util.HashChain;
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+import com.n1analytics.paillier.util.ModArithmeticBackends;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
@@ -78,6 +80,11 @@ public class PaillierContext {
    */
   private final EncodingScheme encoding;
 
+  /**
+   * The modular arithmetic backend of this PaillierContext, or null to select the backend with
+   * {@link ModArithmeticBackends#forModulus(BigInteger)}.
+   */
+  private final ModArithmeticBackend backend;
   
   /**
    * Constructs a Paillier context using the  {@code DEFAULT_BASE}.
@@ -107,6 +114,7 @@ public class PaillierContext {
     }
     this.publicKey = publicKey;
     this.encoding = new StandardEncodingScheme(this, signed, precision, base);
+    this.backend = null;
   }
   
   
@@ -116,6 +124,53 @@ public class PaillierContext {
     }
     this.publicKey = publicKey;
     this.encoding = encoding;
+    this.backend = null;
+  }
+
+  /**
+   * Constructs a copy of {@code context} with a different modular arithmetic backend. A
+   * {@code StandardEncodingScheme} is recreated, so that it encodes numbers in the copy.
+   */
+  private PaillierContext(PaillierContext context, ModArithmeticBackend backend) {
+    this.publicKey = context.publicKey;
+    if (context.encoding instanceof StandardEncodingScheme) {
+      this.encoding = new StandardEncodingScheme(this, context.isSigned(), context.getPrecision(),
+                                                 context.getBase());
+    } else {
+      this.encoding = context.encoding;
+    }
+    this.backend = backend;
+  }
+
+  /**
+   * Returns a PaillierContext that computes its modular exponentiations and inverses with
+   * {@code backend} instead of the one selected for the size of the ciphertext modulus. The
+   * returned context equals this one, so their numbers can be combined.
+   *
+   * @param backend the modular arithmetic backend, or null for the default selection.
+   * @return a PaillierContext with the given backend.
+   */
+  public PaillierContext withArithmeticBackend(ModArithmeticBackend backend) {
+    if (backend == this.backend) {
+      return this;
+    }
+    return new PaillierContext(this, backend);
+  }
+
+  /**
+   * @return the modular arithmetic backend of this PaillierContext, or null if the backend is
+   * selected by {@link ModArithmeticBackends#forModulus(BigInteger)}.
+   */
+  public ModArithmeticBackend getArithmeticBackend() {
+    return backend;
+  }
+
+  /**
+   * @return the backend for operations modulo the ciphertext modulus.
+   */
+  ModArithmeticBackend ciphertextBackend() {
+    return backend != null ? backend
+            : ModArithmeticBackends.forModulus(publicKey.getCiphertextModulus());
   }
 
   /**
@@ -169,7 +224,7 @@ public class PaillierContext {
    * @return true if this PaillierContext has full precision, false otherwise.
    */
   public boolean isFullPrecision() {
-    return getPrecision() == publicKey.getModulus().bitLength();
+    return getPrecision() == publicKey.getPlaintextModulus().bitLength();
   }
 
   /**
@@ -375,7 +430,7 @@ public class PaillierContext {
 
     int expDiff = exponent - newExp;
     BigInteger bigFactor = getRescalingFactor(expDiff);
-    BigInteger newEnc = significand.multiply(bigFactor).mod(publicKey.getModulus());
+    BigInteger newEnc = significand.multiply(bigFactor).mod(publicKey.getPlaintextModulus());
     return new EncodedNumber(this, newEnc, newExp);
   }
 
@@ -396,7 +451,8 @@ public class PaillierContext {
 
     int expDiff = exponent - newExp;
     BigInteger bigFactor = getRescalingFactor(expDiff);
-    BigInteger newEnc = publicKey.raw_multiply(encryptedNumber.ciphertext, bigFactor);
+    BigInteger newEnc = publicKey.raw_multiply(encryptedNumber.ciphertext, bigFactor,
+                                                 ciphertextBackend());
     return new EncryptedNumber(this, newEnc, newExp, encryptedNumber.isSafe);
   }
 
@@ -450,7 +506,8 @@ public class PaillierContext {
   public EncryptedNumber obfuscate(EncryptedNumber encrypted) {
     checkSameContext(encrypted);
     
-    final BigInteger obfuscated = publicKey.raw_obfuscate(encrypted.ciphertext);
+    final BigInteger obfuscated =
+            publicKey.raw_obfuscate(encrypted.ciphertext, ciphertextBackend());
     return new EncryptedNumber(this, obfuscated, encrypted.getExponent(), true);
   }
 
@@ -521,10 +578,12 @@ public class PaillierContext {
     int exponent1 = operand1.getExponent();
     int exponent2 = operand2.getExponent();
     if (exponent1 > exponent2) {
-      value1 = publicKey.raw_multiply(value1, getRescalingFactor(exponent1 - exponent2));
+      value1 = publicKey.raw_multiply(value1, getRescalingFactor(exponent1 - exponent2),
+                                     ciphertextBackend());
       exponent1 = exponent2;
     } else if (exponent1 < exponent2) {
-      value2 = publicKey.raw_multiply(value2, getRescalingFactor(exponent2 - exponent1));
+      value2 = publicKey.raw_multiply(value2, getRescalingFactor(exponent2 - exponent1),
+                                     ciphertextBackend());
     } // else do nothing
     final BigInteger result = publicKey.raw_add(value1, value2);
     return new EncryptedNumber(this, result, exponent1, operand1.isSafe && operand2.isSafe);
@@ -553,7 +612,7 @@ public class PaillierContext {
     int exponent2 = operand2.getExponent();
     BigInteger value2 = operand2.value;
     if(exponent1 < exponent2){
-      value2 = value2.multiply(getRescalingFactor(exponent2-exponent1)).mod(publicKey.getModulus());
+      value2 = value2.multiply(getRescalingFactor(exponent2-exponent1)).mod(publicKey.getPlaintextModulus());
       return add(operand1, encrypt(new EncodedNumber(this, value2, exponent1)));
     }
     if(exponent1 > exponent2 && operand2.signum() == 1){
@@ -598,7 +657,7 @@ public class PaillierContext {
   throws PaillierContextMismatchException {
     checkSameContext(operand1);
     checkSameContext(operand2);
-    final BigInteger modulus = publicKey.getModulus();
+    final BigInteger modulus = publicKey.getPlaintextModulus();
     BigInteger value1 = operand1.getValue();
     BigInteger value2 = operand2.getValue();
     int exponent1 = operand1.getExponent();
@@ -624,8 +683,8 @@ public class PaillierContext {
   public EncryptedNumber additiveInverse(EncryptedNumber operand1)
           throws PaillierContextMismatchException {
     checkSameContext(operand1);
-    return new EncryptedNumber(operand1.getContext(), BigIntegerUtil.modInverse(operand1.ciphertext,
-            operand1.getContext().getPublicKey().getModulusSquared()),
+    return new EncryptedNumber(operand1.getContext(), ciphertextBackend().modInverse(
+            operand1.ciphertext, publicKey.getCiphertextModulus()),
                                operand1.getExponent(), operand1.isSafe);
   }
 
@@ -643,7 +702,7 @@ public class PaillierContext {
     if (operand1.getValue().signum() == 0) {
       return operand1;
     }
-    final BigInteger modulus = publicKey.getModulus();
+    final BigInteger modulus = publicKey.getPlaintextModulus();
     final BigInteger value1 = operand1.getValue();
     final BigInteger result = modulus.subtract(value1);
     return new EncodedNumber(this, result, operand1.getExponent());
@@ -723,13 +782,13 @@ public class PaillierContext {
     checkSameContext(operand2);
     BigInteger value1 = operand1.ciphertext;
     BigInteger value2 = operand2.getValue();
-    BigInteger neg_plain = publicKey.getModulus().subtract(value2);
+    BigInteger neg_plain = publicKey.getPlaintextModulus().subtract(value2);
     // If the plaintext is large, exponentiate using its negative instead.
     if (neg_plain.compareTo(encoding.getMaxEncoded()) <= 0) {
-        value1 = BigIntegerUtil.modInverse(value1, publicKey.getModulusSquared());
+        value1 = ciphertextBackend().modInverse(value1, publicKey.getCiphertextModulus());
         value2 = neg_plain;
     }
-    final BigInteger result = publicKey.raw_multiply(value1, value2);
+    final BigInteger result = publicKey.raw_multiply(value1, value2, ciphertextBackend());
     final int exponent = operand1.getExponent() + operand2.getExponent();
     return new EncryptedNumber(this, result, exponent, operand1.isSafe);
   }
@@ -761,7 +820,7 @@ public class PaillierContext {
           throws PaillierContextMismatchException {
     checkSameContext(operand1);
     checkSameContext(operand2);
-    final BigInteger modulus = publicKey.getModulus();
+    final BigInteger modulus = publicKey.getPlaintextModulus();
     final BigInteger value1 = operand1.getValue();
     final BigInteger value2 = operand2.getValue();
     final BigInteger result = value1.multiply(value2).mod(modulus);
@@ -776,7 +835,7 @@ public class PaillierContext {
    * @return a random EncodedNumber
    */
   public EncodedNumber randomEncodedNumber(int exponent){
-    return new EncodedNumber(this, BigIntegerUtil.randomPositiveNumber(publicKey.getModulus()), exponent);
+    return new EncodedNumber(this, BigIntegerUtil.randomPositiveNumber(publicKey.getPlaintextModulus()), exponent);
   }
 
   @Override
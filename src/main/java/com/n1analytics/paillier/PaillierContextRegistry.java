@@ -0,0 +1,269 @@
+package com.n1analytics.paillier;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Canonicalises public keys and contexts, so that equal keys and contexts are one instance.
+ *
+ * The context checks of every homomorphic operation start with an identity comparison, and
+ * only fall back to comparing the moduli and encoding schemes when the instances differ. The
+ * {@code createSignedContext} and {@code createUnsignedContext} methods of
+ * {@link PaillierPublicKey} return contexts from this registry, so numbers created from equal
+ * keys, for example keys deserialised separately, pass the checks by identity.
+ *
+ * Each key is also given an id, the first eight bytes of the SHA-256 hash of its modulus, and
+ * each context an id that additionally covers its encoding. For keys of other classes than
+ * {@code PaillierPublicKey}, such as Damgard-Jurik keys, the hash also covers the class name and
+ * the ciphertext modulus, so they never share an id with a Paillier key of the same modulus. The
+ * ids are computed once per key and encoding, and {@link #lookup(long)} finds a live key by its
+ * id.
+ *
+ * The registry references keys and contexts weakly: an entry is removed once nothing else
+ * references its key. Only keys of class {@code PaillierPublicKey} and contexts of class
+ * {@code PaillierContext} with a {@code StandardEncodingScheme} are canonicalised; other
+ * instances, such as Damgard-Jurik keys and mock contexts, are returned unchanged.
+ */
+public final class PaillierContextRegistry {
+
+  private static final class KeyReference extends WeakReference<PaillierPublicKey> {
+
+    final long id;
+
+    KeyReference(PaillierPublicKey publicKey, long id, ReferenceQueue<PaillierPublicKey> queue) {
+      super(publicKey, queue);
+      this.id = id;
+    }
+  }
+
+  private static final class Entry {
+
+    final KeyReference publicKey;
+
+    /**
+     * The contexts of the key by signedness, precision and base. The contexts reference the
+     * key, so they are held weakly too.
+     */
+    final Map<String, WeakReference<PaillierContext>> contexts =
+            new HashMap<String, WeakReference<PaillierContext>>();
+
+    final Map<String, Long> contextIds = new HashMap<String, Long>();
+
+    Entry(KeyReference publicKey) {
+      this.publicKey = publicKey;
+    }
+  }
+
+  private static final WeakHashMap<PaillierPublicKey, Entry> entries =
+          new WeakHashMap<PaillierPublicKey, Entry>();
+
+  private static final Map<Long, KeyReference> keysById = new HashMap<Long, KeyReference>();
+
+  private static final ReferenceQueue<PaillierPublicKey> queue =
+          new ReferenceQueue<PaillierPublicKey>();
+
+  private PaillierContextRegistry() {
+  }
+
+  private static boolean isCanonical(PaillierPublicKey publicKey) {
+    return publicKey.getClass() == PaillierPublicKey.class;
+  }
+
+  /**
+   * Removes the ids of collected keys. Must hold the registry lock.
+   */
+  private static void expunge() {
+    KeyReference reference;
+    while ((reference = (KeyReference) queue.poll()) != null) {
+      if (keysById.get(reference.id) == reference) {
+        keysById.remove(reference.id);
+      }
+    }
+  }
+
+  /**
+   * Returns the entry of a key, registering the key if no equal key is registered. Must hold the
+   * registry lock.
+   */
+  private static Entry entry(PaillierPublicKey publicKey) {
+    expunge();
+    Entry entry = entries.get(publicKey);
+    if (entry == null || entry.publicKey.get() == null) {
+      long id = fingerprint(publicKey, null);
+      entry = new Entry(new KeyReference(publicKey, id, queue));
+      entries.put(publicKey, entry);
+      keysById.put(id, entry.publicKey);
+    }
+    return entry;
+  }
+
+  private static String encodingKey(boolean signed, int precision, int base) {
+    return (signed ? "s" : "u") + precision + "/" + base;
+  }
+
+  /**
+   * Returns the canonical instance of a public key.
+   *
+   * @param publicKey the key.
+   * @return the registered key equal to {@code publicKey}, which is registered if there is none.
+   */
+  public static PaillierPublicKey intern(PaillierPublicKey publicKey) {
+    if (!isCanonical(publicKey)) {
+      return publicKey;
+    }
+    synchronized (entries) {
+      return entry(publicKey).publicKey.get();
+    }
+  }
+
+  /**
+   * Returns the canonical context of a key and encoding, creating it if necessary.
+   *
+   * @param publicKey associated with the context.
+   * @param signed to denote whether the context supports signed or unsigned numbers.
+   * @param precision to denote the number of bits used to represent valid numbers.
+   * @param base the base used for encoding.
+   * @return the context.
+   * @throws IllegalArgumentException if {@code precision} or {@code base} is invalid.
+   */
+  public static PaillierContext getContext(PaillierPublicKey publicKey, boolean signed,
+                                           int precision, int base) {
+    if (!isCanonical(publicKey)) {
+      return new PaillierContext(publicKey, signed, precision, base);
+    }
+    String key = encodingKey(signed, precision, base);
+    synchronized (entries) {
+      Entry entry = entry(publicKey);
+      WeakReference<PaillierContext> reference = entry.contexts.get(key);
+      PaillierContext context = reference == null ? null : reference.get();
+      if (context == null) {
+        context = new PaillierContext(entry.publicKey.get(), signed, precision, base);
+        entry.contexts.put(key, new WeakReference<PaillierContext>(context));
+      }
+      return context;
+    }
+  }
+
+  /**
+   * Returns the canonical instance of a context.
+   *
+   * @param context the context.
+   * @return the registered context equal to {@code context}, which is registered if there is
+   * none. Contexts with their own arithmetic backend are returned unchanged.
+   */
+  public static PaillierContext intern(PaillierContext context) {
+    if (context.getClass() != PaillierContext.class ||
+            !(context.getEncodingScheme() instanceof StandardEncodingScheme) ||
+            context.getArithmeticBackend() != null ||
+            !isCanonical(context.getPublicKey())) {
+      return context;
+    }
+    String key = encodingKey(context.isSigned(), context.getPrecision(), context.getBase());
+    synchronized (entries) {
+      Entry entry = entry(context.getPublicKey());
+      WeakReference<PaillierContext> reference = entry.contexts.get(key);
+      PaillierContext canonical = reference == null ? null : reference.get();
+      if (canonical == null) {
+        canonical = context;
+        if (context.getPublicKey() == entry.publicKey.get()) {
+          entry.contexts.put(key, new WeakReference<PaillierContext>(context));
+        } else {
+          // the canonical context must reference the canonical key
+          canonical = getContext(context.getPublicKey(), context.isSigned(),
+                                 context.getPrecision(), context.getBase());
+        }
+      }
+      return canonical;
+    }
+  }
+
+  /**
+   * @param publicKey the key.
+   * @return the id of the key, the first eight bytes of the SHA-256 hash of its modulus, and for
+   * keys of other classes than {@code PaillierPublicKey} of their class name and ciphertext
+   * modulus.
+   */
+  public static long getKeyId(PaillierPublicKey publicKey) {
+    if (!isCanonical(publicKey)) {
+      return fingerprint(publicKey, null);
+    }
+    synchronized (entries) {
+      return entry(publicKey).publicKey.id;
+    }
+  }
+
+  /**
+   * @param context the context.
+   * @return the id of the context, the first eight bytes of the SHA-256 hash of the key as in
+   * {@link #getKeyId(PaillierPublicKey)}, the signedness, the precision and the base of the
+   * context.
+   */
+  public static long getContextId(PaillierContext context) {
+    byte[] encoding = ByteBuffer.allocate(9).put((byte) (context.isSigned() ? 1 : 0))
+            .putInt(context.getPrecision()).putInt(context.getBase()).array();
+    PaillierPublicKey publicKey = context.getPublicKey();
+    if (!isCanonical(publicKey)) {
+      return fingerprint(publicKey, encoding);
+    }
+    String key = encodingKey(context.isSigned(), context.getPrecision(), context.getBase());
+    synchronized (entries) {
+      Entry entry = entry(publicKey);
+      Long id = entry.contextIds.get(key);
+      if (id == null) {
+        id = fingerprint(publicKey, encoding);
+        entry.contextIds.put(key, id);
+      }
+      return id;
+    }
+  }
+
+  /**
+   * Finds a registered key by its id.
+   *
+   * @param id the id of the key.
+   * @return the key, or null if no live key has this id.
+   */
+  public static PaillierPublicKey lookup(long id) {
+    synchronized (entries) {
+      expunge();
+      KeyReference reference = keysById.get(id);
+      return reference == null ? null : reference.get();
+    }
+  }
+
+  /**
+   * @return the number of registered keys that have not been collected yet.
+   */
+  public static int size() {
+    synchronized (entries) {
+      expunge();
+      return entries.size();
+    }
+  }
+
+  private static long fingerprint(PaillierPublicKey publicKey, byte[] encoding) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new PaillierRuntimeException(e);
+    }
+    digest.update(publicKey.getModulus().toByteArray());
+    if (!isCanonical(publicKey)) {
+      // the ids of Paillier keys stay those of earlier versions
+      digest.update(publicKey.getClass().getName().getBytes(StandardCharsets.UTF_8));
+      digest.update(publicKey.getCiphertextModulus().toByteArray());
+    }
+    if (encoding != null) {
+      digest.update(encoding);
+    }
+    return ByteBuffer.wrap(digest.digest()).getLong();
+  }
+}
@@ -0,0 +1,119 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.PrimeSieve;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Generates Paillier keypairs, searching for the primes {@code p} and {@code q} concurrently.
+ *
+ * Both primes are found with a {@link PrimeSieve sieved search}, as separate tasks on the given
+ * {@code ExecutorService}. Their two most significant bits are set, so the modulus always has
+ * the requested length and no retries on the product are needed, unlike in
+ * {@link PaillierPrivateKey#create(int)}.
+ *
+ * Each task draws its candidates from its own SHA1PRNG, seeded from the generator's
+ * {@code Random}. Hence the generated keys only depend on that {@code Random} and not on thread
+ * scheduling: a generator constructed with a seeded {@code Random} produces the same sequence of
+ * keys every time, which is meant for tests only.
+ */
+public final class PaillierKeyGenerator {
+
+  /**
+   * The size of the per-task seeds in bytes.
+   */
+  private static final int SEED_LENGTH = 32;
+
+  private final ExecutorService executor;
+
+  private final Random random;
+
+  /**
+   * Constructs a key generator with a {@code SecureRandom}.
+   *
+   * @param executor to search for the primes on. The generator does not shut it down.
+   */
+  public PaillierKeyGenerator(ExecutorService executor) {
+    this(executor, new SecureRandom());
+  }
+
+  /**
+   * Constructs a key generator.
+   *
+   * @param executor to search for the primes on. The generator does not shut it down.
+   * @param random source of the seeds for the prime searches. Must be a {@code SecureRandom}
+   *               unless the keys are for testing.
+   */
+  public PaillierKeyGenerator(ExecutorService executor, Random random) {
+    if (executor == null || random == null) {
+      throw new NullPointerException("executor and random must not be null");
+    }
+    this.executor = executor;
+    this.random = random;
+  }
+
+  /**
+   * Generates a Paillier keypair.
+   *
+   * @param modulusLength the length of the public key modulus. Must be a multiple of 8 and at
+   *                      least 16.
+   * @return a Paillier keypair consists of a private key and the corresponding public key.
+   * @throws IllegalArgumentException on illegal {@code modulusLength}.
+   */
+  public PaillierPrivateKey generate(int modulusLength) {
+    if (modulusLength < 16 || modulusLength % 8 != 0) {
+      throw new IllegalArgumentException("modulusLength must be a multiple of 8 and at least 16");
+    }
+    final int primeLength = modulusLength / 2;
+    for (; ; ) {
+      List<Callable<BigInteger>> tasks = new ArrayList<Callable<BigInteger>>(2);
+      for (int i = 0; i < 2; i++) {
+        final byte[] seed = new byte[SEED_LENGTH];
+        synchronized (random) {
+          random.nextBytes(seed);
+        }
+        tasks.add(new Callable<BigInteger>() {
+          @Override
+          public BigInteger call() throws NoSuchAlgorithmException {
+            SecureRandom taskRandom = SecureRandom.getInstance("SHA1PRNG");
+            taskRandom.setSeed(seed);
+            return PrimeSieve.randomPrime(primeLength, taskRandom);
+          }
+        });
+      }
+      List<BigInteger> primes = invokeAll(tasks);
+      BigInteger p = primes.get(0);
+      BigInteger q = primes.get(1);
+      if (!p.equals(q)) { //p and q must not be equal
+        return new PaillierPrivateKey(new PaillierPublicKey(p.multiply(q)), p, q);
+      }
+    }
+  }
+
+  private List<BigInteger> invokeAll(List<Callable<BigInteger>> tasks) {
+    try {
+      List<BigInteger> results = new ArrayList<BigInteger>(tasks.size());
+      for (Future<BigInteger> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted during key generation", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+  }
+}
@@ -15,7 +15,9 @@ package com.n1analytics.paillier;
 
 import java.math.BigInteger;
 
-import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.BarrettModulus;
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+import com.n1analytics.paillier.util.ModArithmeticBackends;
 
 import static com.n1analytics.paillier.util.BigIntegerUtil.randomPositiveNumber;
 
@@ -32,8 +34,13 @@ import static com.n1analytics.paillier.util.BigIntegerUtil.randomPositiveNumber;
  *
  * Besides storing Paillier public key, the class has methods to generate the corresponding encoding
  * scheme (i.e., Paillier context).
+ *
+ * The class is not final only so that {@link DamgardJurikPublicKey} can extend it, which also
+ * exposes its protected attributes to that subclass. Subclasses must override the plaintext
+ * and ciphertext moduli, the raw operations, {@link #equals(PaillierPublicKey)} and
+ * {@link #serialize(Serializer)} consistently; other subclasses are not supported.
  */
-public final class PaillierPublicKey {
+public class PaillierPublicKey {
 
   /**
    * The modulus (n) of the public key.
@@ -50,6 +57,11 @@ public final class PaillierPublicKey {
    */
   protected final BigInteger generator;
 
+  /**
+   * The Barrett arithmetic of the ciphertext modulus, computed on first use.
+   */
+  private BarrettModulus ciphertextBarrett;
+
   /**
    * A serializer interface for {@code PaillierPublicKey}.
    */
@@ -74,6 +86,27 @@ public final class PaillierPublicKey {
     this.generator = modulus.add(BigInteger.ONE);
   }
 
+  /**
+   * Constructs a Paillier public key with a precomputed square of the modulus, e.g., from a
+   * {@link KeySnapshot}. The square is checked with a single multiplication.
+   *
+   * @param modulus of the public key
+   * @param modulusSquared the square of {@code modulus}
+   * @throws IllegalArgumentException if {@code modulusSquared} is not the square of
+   *                                  {@code modulus}.
+   */
+  PaillierPublicKey(BigInteger modulus, BigInteger modulusSquared) {
+    if (modulus == null || modulusSquared == null) {
+      throw new NullPointerException("modulus must not be null");
+    }
+    if (!modulusSquared.equals(modulus.multiply(modulus))) {
+      throw new IllegalArgumentException("modulusSquared must be the square of modulus");
+    }
+    this.modulus = modulus;
+    this.modulusSquared = modulusSquared;
+    this.generator = modulus.add(BigInteger.ONE);
+  }
+
   /**
    * @return the modulus.
    */
@@ -88,6 +121,41 @@ public final class PaillierPublicKey {
     return modulusSquared;
   }
 
+  /**
+   * Returns the modulus of the plaintext space, i.e., every {@code EncodedNumber} of a context
+   * with this public key has a value in <code>[0, plaintextModulus)</code>. For Paillier this is
+   * the modulus n.
+   *
+   * @return the plaintext modulus.
+   */
+  public BigInteger getPlaintextModulus() {
+    return modulus;
+  }
+
+  /**
+   * Returns the modulus of the ciphertext space. For Paillier this is
+   * <code>n<sup>2</sup></code>.
+   *
+   * @return the ciphertext modulus.
+   */
+  public BigInteger getCiphertextModulus() {
+    return modulusSquared;
+  }
+
+  /**
+   * @return the Barrett arithmetic of the ciphertext modulus, which reduces the products of
+   * homomorphic additions without a division.
+   */
+  BarrettModulus getCiphertextBarrett() {
+    // racy single-check: BarrettModulus is immutable, so a thread sees null or a complete instance
+    BarrettModulus barrett = ciphertextBarrett;
+    if (barrett == null) {
+      barrett = new BarrettModulus(getCiphertextModulus());
+      ciphertextBarrett = barrett;
+    }
+    return barrett;
+  }
+
   /**
    * @return the generator.
    */
@@ -105,17 +173,19 @@ public final class PaillierPublicKey {
   }
 
   /**
-   * Creates a new full precision, unsigned Paillier context. The precision of the new context
-   * equals to the modulus's bit length.
+   * Returns the full precision, unsigned Paillier context of this key. The precision of the
+   * context equals to the modulus's bit length. Equal keys share one context instance, see
+   * {@link PaillierContextRegistry}.
    *
    * @return the Paillier context.
    */
   public PaillierContext createUnsignedContext() {
-    return new PaillierContext(this, false, modulus.bitLength());
+    return createUnsignedContext(getPlaintextModulus().bitLength());
   }
 
   /**
-   * Creates a new partial precision, unsigned Paillier context.
+   * Returns a partial precision, unsigned Paillier context of this key. Equal keys share one
+   * context instance, see {@link PaillierContextRegistry}.
    *
    * @param precision of the Paillier context.
    * @return the Paillier context.
@@ -123,27 +193,29 @@ public final class PaillierPublicKey {
    */
   public PaillierContext createUnsignedContext(int precision)
           throws IllegalArgumentException {
-    return new PaillierContext(this, false, precision);
+    return PaillierContextRegistry.getContext(this, false, precision, PaillierContext.DEFAULT_BASE);
   }
 
   /**
-   * Creates a new full precision, signed Paillier context. The precision of the new context
-   * equals to the modulus's bit length.
+   * Returns the full precision, signed Paillier context of this key. The precision of the
+   * context equals to the modulus's bit length. Equal keys share one context instance, see
+   * {@link PaillierContextRegistry}.
    *
    * @return the Paillier context.
    */
   public PaillierContext createSignedContext() {
-    return new PaillierContext(this, true, modulus.bitLength());
+    return createSignedContext(getPlaintextModulus().bitLength());
   }
 
   /**
-   * Creates a new partial precision, signed Paillier context.
+   * Returns a partial precision, signed Paillier context of this key. Equal keys share one
+   * context instance, see {@link PaillierContextRegistry}.
    *
    * @param precision of the Paillier context.
    * @return the Paillier context.
    */
   public PaillierContext createSignedContext(int precision) {
-    return new PaillierContext(this, true, precision);
+    return PaillierContextRegistry.getContext(this, true, precision, PaillierContext.DEFAULT_BASE);
   }
 
   /**
@@ -152,7 +224,7 @@ public final class PaillierPublicKey {
    * @return the  {@code MockPaillierContext}.
    */
   public MockPaillierContext createMockUnsignedContext() {
-    return new MockPaillierContext(this, false, modulus.bitLength());
+    return new MockPaillierContext(this, false, getPlaintextModulus().bitLength());
   }
 
   /**
@@ -173,7 +245,7 @@ public final class PaillierPublicKey {
    * @return the {@code MockPaillierContext}.
    */
   public MockPaillierContext createMockSignedContext() {
-    return new MockPaillierContext(this, true, modulus.bitLength());
+    return new MockPaillierContext(this, true, getPlaintextModulus().bitLength());
   }
 
   /**
@@ -224,7 +296,51 @@ public final class PaillierPublicKey {
    * @return obfuscated ciphertext.
    */
   public BigInteger raw_obfuscate(BigInteger ciphertext) {
-    return BigIntegerUtil.modPow(randomPositiveNumber(modulus), modulus, modulusSquared).multiply(ciphertext).mod(modulusSquared);
+    return raw_obfuscate(ciphertext, ModArithmeticBackends.forModulus(getCiphertextModulus()));
+  }
+
+  /**
+   * Implements the obfuscation function of the Paillier encryption scheme with a given
+   * modular arithmetic backend.
+   *
+   * @param ciphertext to be ofuscated
+   * @param backend to compute the exponentiation with.
+   * @return obfuscated ciphertext.
+   */
+  public BigInteger raw_obfuscate(BigInteger ciphertext, ModArithmeticBackend backend) {
+    return getCiphertextBarrett().multiplyMod(
+            backend.modPow(randomPositiveNumber(modulus), modulus, modulusSquared), ciphertext);
+  }
+
+  /**
+   * Obfuscates a batch of ciphertexts with a single call into the modular arithmetic backend
+   * selected for the ciphertext modulus.
+   *
+   * @param ciphertexts to be obfuscated.
+   * @return a new array of the obfuscated ciphertexts.
+   */
+  public BigInteger[] raw_obfuscate(BigInteger[] ciphertexts) {
+    return raw_obfuscate(ciphertexts, ModArithmeticBackends.forModulus(getCiphertextModulus()));
+  }
+
+  /**
+   * Obfuscates a batch of ciphertexts with a single call into a given modular arithmetic backend.
+   *
+   * @param ciphertexts to be obfuscated.
+   * @param backend to compute the exponentiations with.
+   * @return a new array of the obfuscated ciphertexts.
+   */
+  public BigInteger[] raw_obfuscate(BigInteger[] ciphertexts, ModArithmeticBackend backend) {
+    final BarrettModulus barrett = getCiphertextBarrett();
+    BigInteger[] masks = new BigInteger[ciphertexts.length];
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = randomPositiveNumber(modulus);
+    }
+    masks = backend.modPow(masks, getPlaintextModulus(), barrett.getModulus());
+    for (int i = 0; i < masks.length; i++) {
+      masks[i] = barrett.multiplyMod(masks[i], ciphertexts[i]);
+    }
+    return masks;
   }
   
   /**
@@ -235,7 +351,31 @@ public final class PaillierPublicKey {
    * @return ciphertext of the sum of the two plaintexts corresponding to {@code ciphertext1} and {@code ciphertext2}.
    */
   public BigInteger raw_add(BigInteger ciphertext1, BigInteger ciphertext2){
-    return ciphertext1.multiply(ciphertext2).mod(modulusSquared);
+    return getCiphertextBarrett().multiplyMod(ciphertext1, ciphertext2);
+  }
+
+  /**
+   * Adds a batch of ciphertexts with a single call into the modular arithmetic backend selected
+   * for the ciphertext modulus.
+   *
+   * @param ciphertexts to be added.
+   * @return ciphertext of the sum of all corresponding plaintexts, an unobfuscated encryption of
+   * zero if there are none.
+   */
+  public BigInteger raw_add(BigInteger[] ciphertexts) {
+    return raw_add(ciphertexts, ModArithmeticBackends.forModulus(getCiphertextModulus()));
+  }
+
+  /**
+   * Adds a batch of ciphertexts with a single call into a given modular arithmetic backend.
+   *
+   * @param ciphertexts to be added.
+   * @param backend to compute the product with.
+   * @return ciphertext of the sum of all corresponding plaintexts, an unobfuscated encryption of
+   * zero if there are none.
+   */
+  public BigInteger raw_add(BigInteger[] ciphertexts, ModArithmeticBackend backend) {
+    return backend.product(ciphertexts, getCiphertextModulus());
   }
   
   /**
@@ -247,7 +387,51 @@ public final class PaillierPublicKey {
    * @return product a*b.
    */
   public BigInteger raw_multiply(BigInteger ciphertext, BigInteger plainfactor){
-    return BigIntegerUtil.modPow(ciphertext, plainfactor, modulusSquared);
+    return raw_multiply(ciphertext, plainfactor,
+                        ModArithmeticBackends.forModulus(getCiphertextModulus()));
+  }
+
+  /**
+   * Implements the multiplication function of the Paillier encryption scheme with a given
+   * modular arithmetic backend.
+   *
+   * @param ciphertext of factor a.
+   * @param plainfactor b.
+   * @param backend to compute the exponentiation with.
+   * @return product a*b.
+   */
+  public BigInteger raw_multiply(BigInteger ciphertext, BigInteger plainfactor,
+                                 ModArithmeticBackend backend) {
+    return backend.modPow(ciphertext, plainfactor, modulusSquared);
+  }
+
+  /**
+   * Multiplies a batch of ciphertexts by the same plaintext factor with a single call into a
+   * given modular arithmetic backend.
+   *
+   * @param ciphertexts of the factors a.
+   * @param plainfactor b.
+   * @param backend to compute the exponentiations with.
+   * @return a new array of the products a*b.
+   */
+  public BigInteger[] raw_multiply(BigInteger[] ciphertexts, BigInteger plainfactor,
+                                   ModArithmeticBackend backend) {
+    return backend.modPow(ciphertexts, plainfactor, getCiphertextModulus());
+  }
+
+  /**
+   * Multiplies a batch of ciphertexts by a plaintext factor each with a single call into a given
+   * modular arithmetic backend.
+   *
+   * @param ciphertexts of the factors a.
+   * @param plainfactors b, as many as {@code ciphertexts}.
+   * @param backend to compute the exponentiations with.
+   * @return a new array of the products a*b.
+   * @throws IllegalArgumentException if the arrays have different lengths.
+   */
+  public BigInteger[] raw_multiply(BigInteger[] ciphertexts, BigInteger[] plainfactors,
+                                   ModArithmeticBackend backend) {
+    return backend.modPow(ciphertexts, plainfactors, getCiphertextModulus());
   }
 
   @Override
@@ -267,7 +451,9 @@ public final class PaillierPublicKey {
   }
 
   public boolean equals(PaillierPublicKey o) {
-    return o == this || (o != null && modulus.equals(o.modulus));
+    return o == this || (o != null &&
+            o.getClass() == PaillierPublicKey.class &&
+            modulus.equals(o.modulus));
     // NOTE we don't need to compare modulusSquared or generator since they
     //      are uniquely determined by modulus
   }
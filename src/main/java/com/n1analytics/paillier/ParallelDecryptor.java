@@ -0,0 +1,129 @@
+package com.n1analytics.paillier;
+
+import java.math.BigInteger;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decrypts single ciphertexts with lower latency by running the two halves of the CRT
+ * decryption concurrently: the exponentiation modulo <code>q<sup>2</sup></code> is submitted to
+ * a pooled thread while the calling thread computes the one modulo <code>p<sup>2</sup></code>,
+ * and the halves are joined for the CRT.
+ *
+ * This trades throughput for latency, since the handoff costs some CPU time, so it is only worth
+ * it for large keys. Keys with a modulus shorter than {@code minModulusLength} are decrypted
+ * serially.
+ */
+public final class ParallelDecryptor {
+
+  /**
+   * The default minimum modulus length for parallel decryption.
+   */
+  public static final int DEFAULT_MIN_MODULUS_LENGTH = 2048;
+
+  private final PaillierPrivateKey privateKey;
+
+  private final ExecutorService executor;
+
+  private final boolean parallel;
+
+  /**
+   * Constructs a decryptor that runs parallel for moduli of at least
+   * {@link #DEFAULT_MIN_MODULUS_LENGTH} bits.
+   *
+   * @param privateKey to decrypt with.
+   * @param executor to run the q-half of decryptions on. The decryptor does not shut it down.
+   */
+  public ParallelDecryptor(PaillierPrivateKey privateKey, ExecutorService executor) {
+    this(privateKey, executor, DEFAULT_MIN_MODULUS_LENGTH);
+  }
+
+  /**
+   * Constructs a decryptor.
+   *
+   * @param privateKey to decrypt with.
+   * @param executor to run the q-half of decryptions on. The decryptor does not shut it down.
+   * @param minModulusLength the minimum modulus length for which decryption runs parallel.
+   */
+  public ParallelDecryptor(PaillierPrivateKey privateKey, ExecutorService executor,
+                           int minModulusLength) {
+    if (privateKey == null || executor == null) {
+      throw new NullPointerException("privateKey and executor must not be null");
+    }
+    this.privateKey = privateKey;
+    this.executor = executor;
+    this.parallel = privateKey.getPublicKey().getModulus().bitLength() >= minModulusLength;
+  }
+
+  /**
+   * @return the private key.
+   */
+  public PaillierPrivateKey getPrivateKey() {
+    return privateKey;
+  }
+
+  /**
+   * @return true if decryptions with this decryptor's key run parallel.
+   */
+  public boolean isParallel() {
+    return parallel;
+  }
+
+  /**
+   * Decrypts an encrypted number, see {@link PaillierPrivateKey#decrypt(EncryptedNumber)}.
+   *
+   * @param encrypted EncryptedNumber to be decrypted.
+   * @return the decryption result.
+   * @throws PaillierKeyMismatchException if the encrypted number was not
+   * encoded with the appropriate public key.
+   */
+  public EncodedNumber decrypt(EncryptedNumber encrypted) throws PaillierKeyMismatchException {
+    final PaillierContext context = encrypted.getContext();
+    if (!parallel || context instanceof MockPaillierContext) {
+      return privateKey.decrypt(encrypted);
+    }
+    if (!privateKey.getPublicKey().equals(context.getPublicKey())) {
+      throw new PaillierKeyMismatchException();
+    }
+    return new EncodedNumber(context, raw_decrypt(encrypted.ciphertext), encrypted.getExponent());
+  }
+
+  /**
+   * Decrypts a raw ciphertext, see {@link PaillierPrivateKey#raw_decrypt(BigInteger)}.
+   *
+   * @param ciphertext to be decrypted.
+   * @return the decrypted plaintext.
+   */
+  public BigInteger raw_decrypt(final BigInteger ciphertext) {
+    if (!parallel) {
+      return privateKey.raw_decrypt(ciphertext);
+    }
+    Future<BigInteger> decryptedToQ = executor.submit(new Callable<BigInteger>() {
+      @Override
+      public BigInteger call() {
+        return privateKey.decryptToQ(ciphertext);
+      }
+    });
+    BigInteger decryptedToP;
+    try {
+      decryptedToP = privateKey.decryptToP(ciphertext);
+    } catch (RuntimeException e) {
+      decryptedToQ.cancel(true);
+      throw e;
+    }
+    try {
+      return privateKey.crt(decryptedToP, decryptedToQ.get());
+    } catch (InterruptedException e) {
+      decryptedToQ.cancel(true);
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted during decryption", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+  }
+}
@@ -0,0 +1,179 @@
+package com.n1analytics.paillier;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes large homomorphic sums as a tree reduction on a {@link ForkJoinPool}.
+ *
+ * The range of summands is halved recursively until a range has at most {@link #getThreshold()}
+ * elements. Such a leaf is summed into an {@link EncryptedSumAccumulator}, one modular
+ * multiplication per element, and the accumulators of sibling tasks are combined per exponent
+ * on the way up. The exponents are aligned once, at the root. Idle workers steal the pending
+ * halves, so the sum uses the whole pool even when the elements differ in cost.
+ *
+ * The default threshold depends on the key size: a leaf should cost far more than forking and
+ * joining a task, and the cost of a multiplication grows with the modulus, so larger keys get
+ * smaller leaves.
+ */
+public final class ParallelSummer {
+
+  /**
+   * The default threshold is this divided by the length of the modulus in bits, e.g. 256
+   * summands per leaf for a 1024 bit key.
+   */
+  public static final int DEFAULT_THRESHOLD_BITS = 1 << 18;
+
+  /**
+   * The smallest default threshold.
+   */
+  public static final int MIN_THRESHOLD = 16;
+
+  private final PaillierContext context;
+
+  private final ForkJoinPool pool;
+
+  private final int threshold;
+
+  /**
+   * Constructs a summer on the common pool with the default threshold for the key.
+   *
+   * @param context of the summands.
+   */
+  public ParallelSummer(PaillierContext context) {
+    this(context, ForkJoinPool.commonPool());
+  }
+
+  /**
+   * Constructs a summer with the default threshold for the key.
+   *
+   * @param context of the summands.
+   * @param pool to run the reduction on. The summer does not shut it down.
+   */
+  public ParallelSummer(PaillierContext context, ForkJoinPool pool) {
+    this(context, pool, defaultThreshold(context.getPublicKey().getModulus().bitLength()));
+  }
+
+  /**
+   * Constructs a summer.
+   *
+   * @param context of the summands.
+   * @param pool to run the reduction on. The summer does not shut it down.
+   * @param threshold the maximum number of summands of a task that is not split further.
+   */
+  public ParallelSummer(PaillierContext context, ForkJoinPool pool, int threshold) {
+    if (context == null || pool == null) {
+      throw new NullPointerException("context and pool must not be null");
+    }
+    if (threshold < 1) {
+      throw new IllegalArgumentException("threshold must be positive");
+    }
+    this.context = context;
+    this.pool = pool;
+    this.threshold = threshold;
+  }
+
+  /**
+   * @param modulusLength the length of the public key's modulus in bits.
+   * @return the default threshold for the key.
+   */
+  public static int defaultThreshold(int modulusLength) {
+    return Math.max(MIN_THRESHOLD, DEFAULT_THRESHOLD_BITS / Math.max(1, modulusLength));
+  }
+
+  /**
+   * @return the context of the summands.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the pool the reduction runs on.
+   */
+  public ForkJoinPool getPool() {
+    return pool;
+  }
+
+  /**
+   * @return the maximum number of summands of a task that is not split further.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Sums encrypted numbers.
+   *
+   * @param numbers the summands.
+   * @return the sum, an encryption of zero if there are no summands.
+   * @throws PaillierContextMismatchException if a summand has a different context.
+   */
+  public EncryptedNumber sum(final EncryptedNumber... numbers) {
+    return pool.invoke(new SumTask(new Leaf() {
+      @Override
+      public EncryptedSumAccumulator sum(int from, int to) {
+        EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+        for (int i = from; i < to; i++) {
+          sum.add(numbers[i]);
+        }
+        return sum;
+      }
+    }, 0, numbers.length)).sum();
+  }
+
+  /**
+   * Sums the elements of an array, which must not be modified meanwhile.
+   *
+   * @param array the summands.
+   * @return the sum, an encryption of zero if the array is empty.
+   * @throws PaillierContextMismatchException if the array has a different context.
+   */
+  public EncryptedNumber sum(final CiphertextArray array) {
+    context.checkSameContext(array.getContext());
+    return pool.invoke(new SumTask(new Leaf() {
+      @Override
+      public EncryptedSumAccumulator sum(int from, int to) {
+        EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+        array.accumulate(from, to, sum);
+        return sum;
+      }
+    }, 0, array.length())).sum();
+  }
+
+  /**
+   * Sums a range of summands into a new accumulator.
+   */
+  private interface Leaf {
+    EncryptedSumAccumulator sum(int from, int to);
+  }
+
+  private final class SumTask extends RecursiveTask<EncryptedSumAccumulator> {
+
+    private static final long serialVersionUID = -3917240582613375106L;
+
+    private final Leaf leaf;
+
+    private final int from;
+
+    private final int to;
+
+    SumTask(Leaf leaf, int from, int to) {
+      this.leaf = leaf;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected EncryptedSumAccumulator compute() {
+      if (to - from <= threshold) {
+        return leaf.sum(from, to);
+      }
+      int middle = (from + to) >>> 1;
+      SumTask left = new SumTask(leaf, from, middle);
+      left.fork();
+      EncryptedSumAccumulator right = new SumTask(leaf, middle, to).compute();
+      return left.join().combine(right);
+    }
+  }
+}
@@ -0,0 +1,68 @@
+package com.n1analytics.paillier;
+
+import java.math.BigInteger;
+
+/**
+ * The partial decryptions of a batch of ciphertexts by one {@link ThresholdPaillierKeyShare}.
+ *
+ * Partial decryptions reveal nothing about the plaintexts on their own, so they can be sent
+ * to whoever combines them, e.g., from a worker process holding one key share. Given the index
+ * of the share and the values, a {@code PartialDecryption} can be reconstructed on the
+ * receiving side with {@link #PartialDecryption(ThresholdPaillierKey, int, BigInteger[])}.
+ */
+public final class PartialDecryption {
+
+  private final ThresholdPaillierKey key;
+
+  private final int index;
+
+  private final BigInteger[] values;
+
+  /**
+   * Constructs partial decryptions.
+   *
+   * @param key the threshold key.
+   * @param index the index of the share that computed the partial decryptions.
+   * @param values the partial decryptions, one per ciphertext of the batch.
+   */
+  public PartialDecryption(ThresholdPaillierKey key, int index, BigInteger[] values) {
+    if (key == null || values == null) {
+      throw new NullPointerException("key and values must not be null");
+    }
+    if (index < 1 || index > key.getNumberOfShares()) {
+      throw new IllegalArgumentException("index must be between 1 and the number of shares");
+    }
+    this.key = key;
+    this.index = index;
+    this.values = values.clone();
+  }
+
+  /**
+   * @return the threshold key.
+   */
+  public ThresholdPaillierKey getKey() {
+    return key;
+  }
+
+  /**
+   * @return the index of the share that computed the partial decryptions.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the number of ciphertexts in the batch.
+   */
+  public int size() {
+    return values.length;
+  }
+
+  /**
+   * @param i position in the batch.
+   * @return the partial decryption of the i-th ciphertext.
+   */
+  public BigInteger getValue(int i) {
+    return values[i];
+  }
+}
@@ -0,0 +1,220 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.FixedBaseTable;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Batch evaluation of bucketed encrypted polynomials, i.e., the evaluating side of
+ * Freedman-style private set intersection.
+ *
+ * The polynomial owner splits its set with a {@link BalancedBucketing} and sends one encrypted
+ * polynomial per bucket (see {@link #encryptSet(PaillierContext, BigInteger[], BalancedBucketing)}).
+ * The evaluating party then evaluates each of its points only at the polynomials of the
+ * point's two candidate buckets, so the degree of the polynomials is the maximum bucket load
+ * instead of the size of the set.
+ *
+ * A batch of points is grouped by bucket and the buckets are processed in parallel on the given
+ * {@code ExecutorService}. For each bucket the engine estimates whether Horner's rule or
+ * fixed-base tables for the bucket's coefficients (built once and shared by all points of the
+ * bucket) is cheaper, and evaluates all of the bucket's points with that method. Finally the
+ * outputs are re-randomised in the same parallel pass, so the returned encrypted numbers are
+ * safe to send.
+ */
+public final class PolynomialEvaluationEngine {
+
+  private final PaillierContext context;
+
+  private final EncryptedPolynomial[] polynomials;
+
+  private final BalancedBucketing bucketing;
+
+  private final ExecutorService executor;
+
+  /**
+   * Constructs an evaluation engine.
+   *
+   * @param polynomials one encrypted polynomial per bucket, all with the same context.
+   * @param bucketing the bucketing used to split the polynomial owner's set.
+   * @param executor to run the evaluations on. The engine does not shut it down.
+   */
+  public PolynomialEvaluationEngine(EncryptedPolynomial[] polynomials,
+                                    BalancedBucketing bucketing, ExecutorService executor) {
+    if (polynomials == null || bucketing == null || executor == null) {
+      throw new NullPointerException("polynomials, bucketing and executor must not be null");
+    }
+    if (polynomials.length != bucketing.getNumberOfBuckets()) {
+      throw new IllegalArgumentException("need exactly one polynomial per bucket");
+    }
+    this.context = polynomials[0].getContext();
+    for (EncryptedPolynomial polynomial : polynomials) {
+      context.checkSameContext(polynomial.getContext());
+    }
+    this.polynomials = polynomials.clone();
+    this.bucketing = bucketing;
+    this.executor = executor;
+  }
+
+  /**
+   * Splits {@code elements} into buckets and encrypts one polynomial per bucket whose roots
+   * are the bucket's elements. All polynomials are padded to the maximum bucket load.
+   *
+   * @param context used to encrypt the polynomials.
+   * @param elements the polynomial owner's set.
+   * @param bucketing the bucketing shared with the evaluating party.
+   * @return one encrypted polynomial per bucket.
+   */
+  public static EncryptedPolynomial[] encryptSet(PaillierContext context, BigInteger[] elements,
+                                                 BalancedBucketing bucketing) {
+    List<List<BigInteger>> buckets = bucketing.assign(elements);
+    int degree = BalancedBucketing.maxLoad(buckets);
+    EncryptedPolynomial[] polynomials = new EncryptedPolynomial[buckets.size()];
+    for (int i = 0; i < polynomials.length; i++) {
+      List<BigInteger> bucket = buckets.get(i);
+      polynomials[i] = EncryptedPolynomial.fromRoots(context,
+              bucket.toArray(new BigInteger[bucket.size()]), degree);
+    }
+    return polynomials;
+  }
+
+  /**
+   * @return the Paillier context of the polynomials.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * Evaluates every point at the polynomials of both of its candidate buckets.
+   *
+   * @param points the points to evaluate at.
+   * @return {@code result[i][j]} is the obfuscated encryption of the polynomial of the j-th
+   * candidate bucket of {@code points[i]} evaluated at {@code points[i]}.
+   */
+  public EncryptedNumber[][] evaluate(BigInteger[] points) {
+    return run(points, null);
+  }
+
+  /**
+   * Computes the private set intersection response for every point and both of its candidate
+   * buckets, that is the obfuscated encryption of <code>r*P(y) + payload</code> for a fresh
+   * random {@code r}. This decrypts to {@code payload} if {@code y} is a root of {@code P}, and
+   * to a random value otherwise.
+   *
+   * @param points the points to evaluate at.
+   * @param payloads the value revealed for each point in the intersection, typically the point
+   *                 itself.
+   * @return the masked evaluations, indexed as in {@link #evaluate(BigInteger[])}.
+   */
+  public EncryptedNumber[][] evaluateMasked(BigInteger[] points, BigInteger[] payloads) {
+    if (payloads == null || payloads.length != points.length) {
+      throw new IllegalArgumentException("need exactly one payload per point");
+    }
+    return run(points, payloads);
+  }
+
+  private EncryptedNumber[][] run(BigInteger[] points, BigInteger[] payloads) {
+    // group the (point, candidate) pairs by bucket
+    List<List<int[]>> jobs = new ArrayList<List<int[]>>(polynomials.length);
+    for (int i = 0; i < polynomials.length; i++) {
+      jobs.add(null);
+    }
+    for (int i = 0; i < points.length; i++) {
+      int[] candidates = bucketing.candidateBuckets(points[i]);
+      for (int j = 0; j < candidates.length; j++) {
+        List<int[]> bucketJobs = jobs.get(candidates[j]);
+        if (bucketJobs == null) {
+          bucketJobs = new ArrayList<int[]>();
+          jobs.set(candidates[j], bucketJobs);
+        }
+        bucketJobs.add(new int[]{i, j});
+      }
+    }
+
+    final EncryptedNumber[][] results = new EncryptedNumber[points.length][2];
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    for (int b = 0; b < jobs.size(); b++) {
+      if (jobs.get(b) != null) {
+        tasks.add(new BucketTask(polynomials[b], jobs.get(b), points, payloads, results));
+      }
+    }
+    try {
+      for (Future<Void> future : executor.invokeAll(tasks)) {
+        future.get();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted while evaluating polynomials", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+    return results;
+  }
+
+  /**
+   * Evaluates all jobs of one bucket, choosing between Horner's rule and fixed-base tables
+   * depending on which is estimated to need fewer modular multiplications.
+   */
+  private static final class BucketTask implements Callable<Void> {
+    private final EncryptedPolynomial polynomial;
+    private final List<int[]> jobs;
+    private final BigInteger[] points;
+    private final BigInteger[] payloads;
+    private final EncryptedNumber[][] results;
+
+    BucketTask(EncryptedPolynomial polynomial, List<int[]> jobs, BigInteger[] points,
+               BigInteger[] payloads, EncryptedNumber[][] results) {
+      this.polynomial = polynomial;
+      this.jobs = jobs;
+      this.points = points;
+      this.payloads = payloads;
+      this.results = results;
+    }
+
+    @Override
+    public Void call() {
+      final PaillierContext context = polynomial.getContext();
+      final PaillierPublicKey publicKey = context.getPublicKey();
+      final BigInteger modulus = publicKey.getPlaintextModulus();
+      final int modulusBits = modulus.bitLength();
+      final long degree = polynomial.getDegree();
+
+      // cost estimates in modular multiplications
+      long hornerCost = 0;
+      for (int[] job : jobs) {
+        int bits = points[job[0]].mod(modulus).bitLength();
+        hornerCost += degree * (bits + bits / 5);
+      }
+      int windowBits = FixedBaseTable.optimalWindowBits(modulusBits);
+      long tableCost = degree * modulusBits
+              + jobs.size() * degree * FixedBaseTable.exponentiationCost(modulusBits, windowBits);
+      FixedBaseTable[] tables = tableCost < hornerCost ? polynomial.createTables(windowBits) : null;
+
+      for (int[] job : jobs) {
+        BigInteger point = points[job[0]];
+        EncryptedNumber value = tables == null ? polynomial.evaluate(point)
+                : polynomial.evaluate(point, tables);
+        BigInteger ciphertext = value.ciphertext;
+        if (payloads != null) {
+          BigInteger mask = BigIntegerUtil.randomPositiveNumber(modulus);
+          ciphertext = publicKey.raw_add(publicKey.raw_multiply(ciphertext, mask),
+                  publicKey.raw_encrypt_without_obfuscation(payloads[job[0]].mod(modulus)));
+        }
+        ciphertext = publicKey.raw_obfuscate(ciphertext);
+        results[job[0]][job[1]] = new EncryptedNumber(context, ciphertext,
+                value.getExponent(), true);
+      }
+      return null;
+    }
+  }
+}
@@ -66,7 +66,7 @@ public class StandardEncodingScheme implements EncodingScheme{
     }
     this.base =base;
     this.log2Base = Math.log((double) base)/ Math.log(2.0);
-    BigInteger modulus = context.getPublicKey().getModulus();
+    BigInteger modulus = context.getPublicKey().getPlaintextModulus();
     if(modulus.bitLength() < precision || precision < 1) {
       throw new IllegalArgumentException("Precision must be greater than zero and less than or equal to the number of bits in the modulus");
     }
@@ -115,7 +115,7 @@ public class StandardEncodingScheme implements EncodingScheme{
       throw new EncodeException("Input value cannot be encoded.");
     }
     if(value.signum() < 0)
-      value = value.add(context.getPublicKey().getModulus()); 
+      value = value.add(context.getPublicKey().getPlaintextModulus()); 
     return new EncodedNumber(context, value, exponent);
   }
 
@@ -217,7 +217,7 @@ public class StandardEncodingScheme implements EncodingScheme{
         throw new EncodeException("Input value cannot be encoded.");
       }
       if (significant.signum() < 0) {
-        significant = context.getPublicKey().getModulus().add(significant);
+        significant = context.getPublicKey().getPlaintextModulus().add(significant);
       }
       return new EncodedNumber(context, significant, exp);
     } else {
@@ -231,7 +231,7 @@ public class StandardEncodingScheme implements EncodingScheme{
           throw new EncodeException("Input value cannot be encoded.");
         }
         if (significant.signum() < 0) {
-          significant = context.getPublicKey().getModulus().add(significant);
+          significant = context.getPublicKey().getPlaintextModulus().add(significant);
         }
         return new EncodedNumber(context, significant, newExponent);
       } else {
@@ -294,7 +294,7 @@ public class StandardEncodingScheme implements EncodingScheme{
     }
 
     if (bigIntRep.signum() < 0) {
-      bigIntRep = bigIntRep.add(context.getPublicKey().getModulus());
+      bigIntRep = bigIntRep.add(context.getPublicKey().getPlaintextModulus());
     }
 
     return bigIntRep;
@@ -336,7 +336,7 @@ public class StandardEncodingScheme implements EncodingScheme{
     }
     //if this context is signed, then a negative significant is strictly greater 
     //than modulus/2.
-    BigInteger halfModulus = context.getPublicKey().modulus.shiftRight(1);
+    BigInteger halfModulus = context.getPublicKey().getPlaintextModulus().shiftRight(1);
     return number.value.compareTo(halfModulus) > 0 ? -1 : 1;
   }
   
@@ -460,7 +460,7 @@ public class StandardEncodingScheme implements EncodingScheme{
     context.checkSameContext(encoded);
     final BigInteger value = encoded.getValue();
 
-    if(value.compareTo(context.getPublicKey().getModulus()) > 0)
+    if(value.compareTo(context.getPublicKey().getPlaintextModulus()) > 0)
       throw new DecodeException("The significand of the encoded number is corrupted");
 
     // Non-negative
@@ -471,7 +471,7 @@ public class StandardEncodingScheme implements EncodingScheme{
     // Negative - note that negative encoded numbers are greater than
     // non-negative encoded numbers and hence minEncoded > maxEncoded
     if (signed && value.compareTo(minEncoded) >= 0) {
-      final BigInteger modulus = context.getPublicKey().getModulus();
+      final BigInteger modulus = context.getPublicKey().getPlaintextModulus();
       return value.subtract(modulus);
     }
     throw new DecodeException("Detected overflow");
@@ -0,0 +1,378 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * The public part of a threshold Paillier key, following the scheme of Damg&aring;rd and Jurik
+ * (with Shoup's trick of multiplying by <code>&Delta; = l!</code>).
+ *
+ * The decryption exponent {@code d}, with <code>d = 0 mod p'q'</code> and <code>d = 1 mod n</code>,
+ * is split with Shamir's secret sharing into {@code numberOfShares} key shares
+ * ({@link ThresholdPaillierKeyShare}), any {@code threshold} of which can decrypt together:
+ * <ul>
+ *   <li>
+ *     Every share holder computes a {@link PartialDecryption},
+ *     <code>c<sub>i</sub> = c<sup>2&Delta;s<sub>i</sub></sup> mod n<sup>2</sup></code>,
+ *     independently of the others. This is the expensive step and can run in parallel on
+ *     different threads, processes or machines.
+ *   </li>
+ *   <li>
+ *     The partial decryptions of {@code threshold} shares are combined into the plaintext with
+ *     <code>prod c<sub>i</sub><sup>2&lambda;<sub>i</sub></sup> = (1+n)<sup>4&Delta;<sup>2</sup>m</sup></code>,
+ *     where the Lagrange coefficients <code>&lambda;<sub>i</sub></code> only depend on the set of
+ *     participating shares. The combination is cheap, as the <code>&lambda;<sub>i</sub></code>
+ *     are small integers.
+ *   </li>
+ * </ul>
+ *
+ * The regular {@link PaillierPublicKey} of a threshold key can be used to encrypt and to create
+ * contexts as usual. Note that the implementation assumes honest share holders, i.e., partial
+ * decryptions are not accompanied by zero-knowledge proofs of correctness.
+ */
+public final class ThresholdPaillierKey {
+
+  private final PaillierPublicKey publicKey;
+
+  private final int threshold;
+
+  private final int numberOfShares;
+
+  /**
+   * <code>&Delta; = numberOfShares!</code>
+   */
+  private final BigInteger delta;
+
+  /**
+   * The inverse of <code>4&Delta;<sup>2</sup></code> modulo {@code n}.
+   */
+  private final BigInteger combiningFactor;
+
+  /**
+   * Constructs the public part of a threshold Paillier key.
+   *
+   * @param publicKey the Paillier public key.
+   * @param threshold the number of shares required to decrypt.
+   * @param numberOfShares the total number of shares.
+   */
+  public ThresholdPaillierKey(PaillierPublicKey publicKey, int threshold, int numberOfShares) {
+    if (publicKey == null) {
+      throw new NullPointerException("publicKey must not be null");
+    }
+    if (threshold < 1 || threshold > numberOfShares) {
+      throw new IllegalArgumentException("threshold must be between 1 and numberOfShares");
+    }
+    this.publicKey = publicKey;
+    this.threshold = threshold;
+    this.numberOfShares = numberOfShares;
+    BigInteger factorial = BigInteger.ONE;
+    for (int i = 2; i <= numberOfShares; i++) {
+      factorial = factorial.multiply(BigInteger.valueOf(i));
+    }
+    this.delta = factorial;
+    this.combiningFactor = BigIntegerUtil.modInverse(
+            delta.multiply(delta).shiftLeft(2).mod(publicKey.getModulus()), publicKey.getModulus());
+  }
+
+  /**
+   * Creates a threshold Paillier key and its shares. The modulus is the product of two safe
+   * primes, so key generation takes considerably longer than {@link PaillierPrivateKey#create(int)}.
+   *
+   * @param modulusLength the length of the public key modulus. Must be a positive multiple of 8.
+   * @param threshold the number of shares required to decrypt.
+   * @param numberOfShares the total number of shares.
+   * @return the key shares, the i-th share has index {@code i+1}.
+   */
+  public static ThresholdPaillierKeyShare[] create(int modulusLength, int threshold,
+                                                   int numberOfShares) {
+    if (modulusLength < 16 || modulusLength % 8 != 0) {
+      throw new IllegalArgumentException("modulusLength must be a multiple of 8 and at least 16");
+    }
+    if (threshold < 1 || threshold > numberOfShares) {
+      throw new IllegalArgumentException("threshold must be between 1 and numberOfShares");
+    }
+    SecureRandom random = new SecureRandom();
+    int primeLength = modulusLength / 2;
+    BigInteger p, q, modulus;
+    do {
+      p = safePrime(primeLength, random);
+      do {
+        q = safePrime(primeLength, random);
+      } while (p.equals(q));
+      modulus = p.multiply(q);
+    } while (modulus.bitLength() != modulusLength);
+
+    // m = p'q' with p = 2p'+1, q = 2q'+1
+    BigInteger m = p.shiftRight(1).multiply(q.shiftRight(1));
+    // d = 0 mod m and d = 1 mod n
+    BigInteger d = m.multiply(m.modInverse(modulus));
+    BigInteger shareModulus = modulus.multiply(m);
+
+    BigInteger[] coefficients = new BigInteger[threshold];
+    coefficients[0] = d;
+    for (int i = 1; i < threshold; i++) {
+      coefficients[i] = new BigInteger(shareModulus.bitLength() + 64, random).mod(shareModulus);
+    }
+
+    ThresholdPaillierKey key = new ThresholdPaillierKey(new PaillierPublicKey(modulus), threshold,
+            numberOfShares);
+    ThresholdPaillierKeyShare[] shares = new ThresholdPaillierKeyShare[numberOfShares];
+    for (int i = 1; i <= numberOfShares; i++) {
+      BigInteger x = BigInteger.valueOf(i);
+      BigInteger share = BigInteger.ZERO;
+      for (int j = threshold - 1; j >= 0; j--) {
+        share = share.multiply(x).add(coefficients[j]).mod(shareModulus);
+      }
+      shares[i - 1] = new ThresholdPaillierKeyShare(key, i, share);
+    }
+    return shares;
+  }
+
+  private static BigInteger safePrime(int bitLength, SecureRandom random) {
+    for (; ; ) {
+      BigInteger candidate = BigInteger.probablePrime(bitLength - 1, random);
+      BigInteger safe = candidate.shiftLeft(1).add(BigInteger.ONE);
+      if (safe.isProbablePrime(64)) {
+        return safe;
+      }
+    }
+  }
+
+  /**
+   * @return the Paillier public key.
+   */
+  public PaillierPublicKey getPublicKey() {
+    return publicKey;
+  }
+
+  /**
+   * @return the number of shares required to decrypt.
+   */
+  public int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * @return the total number of shares.
+   */
+  public int getNumberOfShares() {
+    return numberOfShares;
+  }
+
+  /**
+   * @return <code>&Delta; = numberOfShares!</code>
+   */
+  BigInteger getDelta() {
+    return delta;
+  }
+
+  /**
+   * Computes the exponents <code>2&lambda;<sub>i</sub></code> used to combine the partial
+   * decryptions of the given share indices, where <code>&lambda;<sub>i</sub></code> is &Delta;
+   * times the Lagrange coefficient of share {@code i} at zero.
+   */
+  private BigInteger[] combiningExponents(int[] indices) {
+    BigInteger[] exponents = new BigInteger[indices.length];
+    for (int a = 0; a < indices.length; a++) {
+      BigInteger numerator = delta;
+      BigInteger denominator = BigInteger.ONE;
+      for (int b = 0; b < indices.length; b++) {
+        if (a != b) {
+          numerator = numerator.multiply(BigInteger.valueOf(-indices[b]));
+          denominator = denominator.multiply(BigInteger.valueOf(indices[a] - indices[b]));
+        }
+      }
+      // the division is exact since delta is a multiple of the denominator
+      exponents[a] = numerator.divide(denominator).shiftLeft(1);
+    }
+    return exponents;
+  }
+
+  /**
+   * Combines the partial decryptions of {@code threshold} distinct shares into plaintexts.
+   *
+   * @param partials the partial decryptions, all of the same batch of ciphertexts.
+   * @return the plaintexts, in the order of the batch.
+   * @throws IllegalArgumentException if there are not enough distinct shares or the partial
+   * decryptions do not match.
+   */
+  public BigInteger[] raw_combine(PartialDecryption[] partials) {
+    return raw_combine(partials, 0, checkPartials(partials));
+  }
+
+  private int checkPartials(PartialDecryption[] partials) {
+    if (partials.length < threshold) {
+      throw new IllegalArgumentException("need at least " + threshold + " partial decryptions");
+    }
+    int size = partials[0].size();
+    boolean[] seen = new boolean[numberOfShares + 1];
+    for (int i = 0; i < threshold; i++) {
+      PartialDecryption partial = partials[i];
+      if (!equals(partial.getKey())) {
+        throw new IllegalArgumentException("partial decryption of a different key");
+      }
+      if (partial.size() != size) {
+        throw new IllegalArgumentException("partial decryptions of different batches");
+      }
+      if (seen[partial.getIndex()]) {
+        throw new IllegalArgumentException("duplicate share index " + partial.getIndex());
+      }
+      seen[partial.getIndex()] = true;
+    }
+    return size;
+  }
+
+  private BigInteger[] raw_combine(PartialDecryption[] partials, int from, int to) {
+    final BigInteger modulus = publicKey.getModulus();
+    final BigInteger modulusSquared = publicKey.getModulusSquared();
+    int[] indices = new int[threshold];
+    for (int i = 0; i < threshold; i++) {
+      indices[i] = partials[i].getIndex();
+    }
+    BigInteger[] exponents = combiningExponents(indices);
+    BigInteger[] plaintexts = new BigInteger[to - from];
+    for (int k = from; k < to; k++) {
+      BigInteger combined = BigInteger.ONE;
+      for (int i = 0; i < threshold; i++) {
+        combined = combined.multiply(BigIntegerUtil.modPow(partials[i].getValue(k), exponents[i],
+                modulusSquared)).mod(modulusSquared);
+      }
+      // combined = (1+n)^(4 delta^2 m) = 1 + 4 delta^2 m n mod n^2
+      BigInteger l = combined.subtract(BigInteger.ONE).divide(modulus);
+      plaintexts[k - from] = l.multiply(combiningFactor).mod(modulus);
+    }
+    return plaintexts;
+  }
+
+  /**
+   * Combines the partial decryptions of {@code encrypted} into the decrypted numbers.
+   *
+   * @param encrypted the batch of encrypted numbers the partial decryptions were computed for.
+   * @param partials the partial decryptions of at least {@code threshold} distinct shares.
+   * @return the decrypted numbers.
+   */
+  public EncodedNumber[] combine(EncryptedNumber[] encrypted, PartialDecryption[] partials) {
+    return toEncoded(encrypted, raw_combine(partials));
+  }
+
+  /**
+   * Combines the partial decryptions in parallel chunks on {@code executor}.
+   *
+   * @param encrypted the batch of encrypted numbers the partial decryptions were computed for.
+   * @param partials the partial decryptions of at least {@code threshold} distinct shares.
+   * @param executor to run the combination on.
+   * @return the decrypted numbers.
+   */
+  public EncodedNumber[] combine(EncryptedNumber[] encrypted, final PartialDecryption[] partials,
+                                 ExecutorService executor) {
+    final int size = checkPartials(partials);
+    int chunks = Math.max(1, Math.min(size, Runtime.getRuntime().availableProcessors() * 4));
+    List<Callable<BigInteger[]>> tasks = new ArrayList<Callable<BigInteger[]>>();
+    for (int c = 0; c < chunks; c++) {
+      final int from = (int) ((long) size * c / chunks);
+      final int to = (int) ((long) size * (c + 1) / chunks);
+      tasks.add(new Callable<BigInteger[]>() {
+        @Override
+        public BigInteger[] call() {
+          return raw_combine(partials, from, to);
+        }
+      });
+    }
+    BigInteger[] plaintexts = new BigInteger[size];
+    int offset = 0;
+    for (BigInteger[] chunk : invokeAll(executor, tasks)) {
+      System.arraycopy(chunk, 0, plaintexts, offset, chunk.length);
+      offset += chunk.length;
+    }
+    return toEncoded(encrypted, plaintexts);
+  }
+
+  /**
+   * Decrypts a batch of encrypted numbers with the given shares: every share computes its partial
+   * decryption of the batch as a separate task on {@code executor}, then the partial decryptions
+   * are combined in parallel.
+   *
+   * @param encrypted the encrypted numbers to decrypt.
+   * @param shares at least {@code threshold} distinct key shares.
+   * @param executor to run the partial decryptions and the combination on.
+   * @return the decrypted numbers.
+   */
+  public EncodedNumber[] decrypt(final EncryptedNumber[] encrypted,
+                                 ThresholdPaillierKeyShare[] shares, ExecutorService executor) {
+    if (shares.length < threshold) {
+      throw new IllegalArgumentException("need at least " + threshold + " key shares");
+    }
+    List<Callable<PartialDecryption>> tasks = new ArrayList<Callable<PartialDecryption>>();
+    for (int i = 0; i < threshold; i++) {
+      final ThresholdPaillierKeyShare share = shares[i];
+      tasks.add(new Callable<PartialDecryption>() {
+        @Override
+        public PartialDecryption call() {
+          return share.partialDecrypt(encrypted);
+        }
+      });
+    }
+    List<PartialDecryption> partials = invokeAll(executor, tasks);
+    return combine(encrypted, partials.toArray(new PartialDecryption[partials.size()]), executor);
+  }
+
+  private EncodedNumber[] toEncoded(EncryptedNumber[] encrypted, BigInteger[] plaintexts) {
+    if (encrypted.length != plaintexts.length) {
+      throw new IllegalArgumentException("partial decryptions do not match the batch");
+    }
+    EncodedNumber[] decrypted = new EncodedNumber[encrypted.length];
+    for (int k = 0; k < encrypted.length; k++) {
+      PaillierContext context = encrypted[k].getContext();
+      if (!publicKey.equals(context.getPublicKey())) {
+        throw new PaillierKeyMismatchException();
+      }
+      decrypted[k] = new EncodedNumber(context, plaintexts[k], encrypted[k].getExponent());
+    }
+    return decrypted;
+  }
+
+  private static <T> List<T> invokeAll(ExecutorService executor, List<Callable<T>> tasks) {
+    try {
+      List<T> results = new ArrayList<T>(tasks.size());
+      for (Future<T> future : executor.invokeAll(tasks)) {
+        results.add(future.get());
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted during threshold decryption", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+  }
+
+  @Override
+  public int hashCode() {
+    return Arrays.hashCode(new int[]{publicKey.hashCode(), threshold, numberOfShares});
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (o == this) {
+      return true;
+    }
+    if (o == null || o.getClass() != ThresholdPaillierKey.class) {
+      return false;
+    }
+    ThresholdPaillierKey key = (ThresholdPaillierKey) o;
+    return publicKey.equals(key.publicKey) && threshold == key.threshold
+            && numberOfShares == key.numberOfShares;
+  }
+}
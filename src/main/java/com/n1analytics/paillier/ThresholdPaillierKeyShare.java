@@ -0,0 +1,105 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerUtil;
+
+import java.math.BigInteger;
+
+/**
+ * One share of a threshold Paillier private key, as created by
+ * {@link ThresholdPaillierKey#create(int, int, int)}.
+ *
+ * A share holder computes {@link PartialDecryption}s of ciphertexts without interacting with
+ * the other share holders. The partial decryptions of {@link ThresholdPaillierKey#getThreshold()}
+ * distinct shares are then combined with {@link ThresholdPaillierKey#combine}.
+ */
+public final class ThresholdPaillierKeyShare {
+
+  private final ThresholdPaillierKey key;
+
+  private final int index;
+
+  /**
+   * The share of the decryption exponent, <code>s<sub>i</sub> = f(i)</code>.
+   */
+  private final BigInteger share;
+
+  /**
+   * The exponent used for partial decryption, <code>2&Delta;s<sub>i</sub></code>.
+   */
+  private final BigInteger decryptionExponent;
+
+  /**
+   * Constructs a key share.
+   *
+   * @param key the threshold key this is a share of.
+   * @param index the index {@code i} of the share, between 1 and the number of shares.
+   * @param share the value <code>f(i)</code> of the sharing polynomial.
+   */
+  public ThresholdPaillierKeyShare(ThresholdPaillierKey key, int index, BigInteger share) {
+    if (key == null || share == null) {
+      throw new NullPointerException("key and share must not be null");
+    }
+    if (index < 1 || index > key.getNumberOfShares()) {
+      throw new IllegalArgumentException("index must be between 1 and the number of shares");
+    }
+    if (share.signum() < 0) {
+      throw new IllegalArgumentException("share must be non-negative");
+    }
+    this.key = key;
+    this.index = index;
+    this.share = share;
+    this.decryptionExponent = share.multiply(key.getDelta()).shiftLeft(1);
+  }
+
+  /**
+   * @return the threshold key this is a share of.
+   */
+  public ThresholdPaillierKey getKey() {
+    return key;
+  }
+
+  /**
+   * @return the index of this share.
+   */
+  public int getIndex() {
+    return index;
+  }
+
+  /**
+   * @return the value of the sharing polynomial at {@link #getIndex()}.
+   */
+  public BigInteger getShare() {
+    return share;
+  }
+
+  /**
+   * Computes the partial decryption of a raw ciphertext.
+   *
+   * @param ciphertext the ciphertext.
+   * @return <code>ciphertext<sup>2&Delta;s<sub>i</sub></sup> mod n<sup>2</sup></code>.
+   */
+  public BigInteger raw_partialDecrypt(BigInteger ciphertext) {
+    return BigIntegerUtil.modPowSecure(ciphertext, decryptionExponent,
+            key.getPublicKey().getModulusSquared());
+  }
+
+  /**
+   * Computes the partial decryptions of a batch of encrypted numbers.
+   *
+   * @param encrypted the encrypted numbers.
+   * @return the partial decryptions of this share, in the order of the batch.
+   * @throws PaillierKeyMismatchException if an encrypted number was not encrypted with the
+   * threshold key's public key.
+   */
+  public PartialDecryption partialDecrypt(EncryptedNumber... encrypted)
+          throws PaillierKeyMismatchException {
+    BigInteger[] values = new BigInteger[encrypted.length];
+    for (int k = 0; k < encrypted.length; k++) {
+      if (!key.getPublicKey().equals(encrypted[k].getContext().getPublicKey())) {
+        throw new PaillierKeyMismatchException();
+      }
+      values[k] = raw_partialDecrypt(encrypted[k].ciphertext);
+    }
+    return new PartialDecryption(key, index, values);
+  }
+}
@@ -254,7 +254,7 @@ public class JavallierCLI {
       log.info("Keypair generated");
 
       PrivateKeyJsonSerialiser serializedPrivateKey = new PrivateKeyJsonSerialiser(comment);
-      privateKey.serialize(serializedPrivateKey);
+      privateKey.serializeCrt(serializedPrivateKey);
 
       String outputFile;
       if( args.size() < 2) {
@@ -12,7 +12,16 @@ import org.apache.commons.codec.binary.Base64;
 import java.math.BigInteger;
 
 
-public class PrivateKeyJsonSerialiser implements PaillierPrivateKey.Serializer {
+/**
+ * Serialises a private key to JSON. Besides the legacy {@code lambda} and {@code mu} values, the
+ * output carries the primes and the CRT precomputations ({@code p}, {@code q}, {@code hp},
+ * {@code hq}, {@code pinv}), so that {@link SerialisationUtil#unserialise_private(java.util.Map)}
+ * can restore the key without factoring the modulus. Pass it to
+ * {@link PaillierPrivateKey#serializeCrt} for the CRT values, or to
+ * {@link PaillierPrivateKey#serialize} for the legacy values only.
+ */
+public class PrivateKeyJsonSerialiser implements PaillierPrivateKey.Serializer,
+        PaillierPrivateKey.CrtSerializer<RuntimeException> {
   ObjectNode data;
   ObjectMapper mapper;
   String comment;
@@ -51,4 +60,15 @@ public class PrivateKeyJsonSerialiser implements PaillierPrivateKey.Serializer {
     data.put("mu", encodedMu);
   }
 
+  @Override
+  public void serialize(PaillierPublicKey publickey, BigInteger p, BigInteger q, BigInteger hp,
+                        BigInteger hq, BigInteger pInverse) {
+    serialize(publickey, p, q);
+    data.put("p", Base64.encodeBase64URLSafeString(p.toByteArray()));
+    data.put("q", Base64.encodeBase64URLSafeString(q.toByteArray()));
+    data.put("hp", Base64.encodeBase64URLSafeString(hp.toByteArray()));
+    data.put("hq", Base64.encodeBase64URLSafeString(hq.toByteArray()));
+    data.put("pinv", Base64.encodeBase64URLSafeString(pInverse.toByteArray()));
+  }
+
 }
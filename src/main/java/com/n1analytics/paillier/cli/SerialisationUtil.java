@@ -23,17 +23,31 @@ public class SerialisationUtil {
     return new PaillierPublicKey(n);
   }
 
+  /**
+   * Unserialises a private key. If the data contains the primes and CRT precomputations, as
+   * written by {@link PrivateKeyJsonSerialiser}, the key is constructed directly from them.
+   * Otherwise the modulus is factored using {@code lambda}.
+   */
   public static PaillierPrivateKey unserialise_private(Map data) {
 
     // First step is to unserialise the Public key
     PaillierPublicKey pub = unserialise_public((Map) data.get("pub"));
 
-    BigInteger lambda = new BigInteger(1, Base64.decodeBase64((String) data.get("lambda")));
-    BigInteger mu = new BigInteger(1, Base64.decodeBase64((String) data.get("mu")));
+    if (data.containsKey("p") && data.containsKey("q") && data.containsKey("hp")
+        && data.containsKey("hq") && data.containsKey("pinv")) {
+      return new PaillierPrivateKey(pub, decode(data, "p"), decode(data, "q"), decode(data, "hp"),
+          decode(data, "hq"), decode(data, "pinv"));
+    }
+
+    BigInteger lambda = decode(data, "lambda");
 
     return new PaillierPrivateKey(pub, lambda);
   }
 
+  private static BigInteger decode(Map<?, ?> data, String key) {
+    return new BigInteger(1, Base64.decodeBase64((String) data.get(key)));
+  }
+
   public static ObjectNode serialise_encrypted(EncryptedNumber enc) {
     ObjectNode data;
     ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,81 @@
+package com.n1analytics.paillier.io;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierContextMismatchException;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link EncryptedNumber.Serializer} that appends the numbers it is given to a record batch
+ * of the {@link BinaryFormat binary wire format}.
+ *
+ * The batch header is written by the constructor; {@link #finish()} fills in the length and the
+ * number of records once all numbers have been serialized. All numbers must have the context the
+ * serializer was created with.
+ */
+public final class BinaryEncryptedNumberSerializer implements EncryptedNumber.Serializer {
+
+  private final ByteBuffer buffer;
+
+  private final PaillierContext context;
+
+  private final int ciphertextLength;
+
+  private final int start;
+
+  private final int countPosition;
+
+  private int count = 0;
+
+  private boolean finished = false;
+
+  /**
+   * Starts a batch.
+   *
+   * @param buffer to write to, big-endian.
+   * @param context the context of the numbers.
+   */
+  public BinaryEncryptedNumberSerializer(ByteBuffer buffer, PaillierContext context) {
+    if (buffer == null || context == null) {
+      throw new NullPointerException("buffer and context must not be null");
+    }
+    this.buffer = buffer;
+    this.context = context;
+    this.ciphertextLength = BinaryFormat.ciphertextLength(context.getPublicKey());
+    this.start = BinaryFormat.beginFrame(buffer, BinaryFormat.ENCRYPTED_NUMBERS,
+                                         BinaryFormat.fingerprint(context));
+    this.countPosition = buffer.position();
+    buffer.putInt(0);
+  }
+
+  @Override
+  public void serialize(PaillierContext context, BigInteger value, int exponent) {
+    if (finished) {
+      throw new IllegalStateException("the batch is finished");
+    }
+    this.context.checkSameContext(context);
+    BinaryFormat.writeUnsigned(buffer, value, ciphertextLength);
+    BinaryFormat.writeVarint(buffer, exponent);
+    count++;
+  }
+
+  /**
+   * Completes the batch header. No more numbers can be added afterwards.
+   */
+  public void finish() {
+    if (!finished) {
+      buffer.putInt(countPosition, count);
+      BinaryFormat.endFrame(buffer, start);
+      finished = true;
+    }
+  }
+
+  /**
+   * @return the number of records written so far.
+   */
+  public int getCount() {
+    return count;
+  }
+}
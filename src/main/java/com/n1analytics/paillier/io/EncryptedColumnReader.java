@@ -0,0 +1,377 @@
+package com.n1analytics.paillier.io;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.EncryptedSumAccumulator;
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierContextMismatchException;
+import com.n1analytics.paillier.PaillierPublicKey;
+import com.n1analytics.paillier.PaillierRuntimeException;
+import com.n1analytics.paillier.util.IndexedSpliterator;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Reads a column file written by {@link EncryptedColumnWriter}.
+ *
+ * The blocks are memory mapped with {@link FileChannel#map} on first access. The ciphertext and
+ * exponent columns of a block can be accessed as read-only views of the mapping without any
+ * copying, and single rows are decoded on demand.
+ *
+ * The homomorphic sums read the ciphertexts straight from the mapped columns and accumulate
+ * them per exponent in an {@link EncryptedSumAccumulator}, so that a row costs one modular
+ * multiplication. The products of different exponents are aligned once at the end. The rows can
+ * also be streamed, in parallel too, with {@link #stream()}.
+ *
+ * Instances are thread-safe.
+ */
+public final class EncryptedColumnReader implements Closeable {
+
+  private final RandomAccessFile file;
+
+  private final FileChannel channel;
+
+  private final PaillierContext context;
+
+  private final int ciphertextLength;
+
+  private final long size;
+
+  private final long[] blockOffsets;
+
+  /**
+   * The first row of each block, plus the total number of rows.
+   */
+  private final long[] blockStarts;
+
+  private final int[] minExponents;
+
+  private final int[] maxExponents;
+
+  private final MappedByteBuffer[] blocks;
+
+  /**
+   * Opens a column file.
+   *
+   * @param file the column file.
+   * @param context of the encrypted numbers.
+   * @throws IOException if the file cannot be read or is not a complete column file.
+   * @throws PaillierContextMismatchException if the file was written for a different context.
+   */
+  public EncryptedColumnReader(File file, PaillierContext context) throws IOException {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    this.context = context;
+    this.ciphertextLength = BinaryFormat.ciphertextLength(context.getPublicKey());
+    this.file = new RandomAccessFile(file, "r");
+    try {
+      this.channel = this.file.getChannel();
+      long fileLength = channel.size();
+      if (fileLength < EncryptedColumnWriter.HEADER_LENGTH) {
+        throw new IOException("not a column file");
+      }
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                      EncryptedColumnWriter.HEADER_LENGTH);
+      if (header.getInt() != EncryptedColumnWriter.MAGIC) {
+        throw new IOException("not a column file, or it was not closed");
+      }
+      int version = header.getInt();
+      if (version != EncryptedColumnWriter.VERSION) {
+        throw new IOException("unsupported column file version " + version);
+      }
+      if (header.getLong() != BinaryFormat.fingerprint(context)) {
+        throw new PaillierContextMismatchException(
+                "the column file was written for a different context");
+      }
+      if (header.getInt() != ciphertextLength) {
+        throw new IOException("corrupted column file header");
+      }
+      int numberOfBlocks = header.getInt();
+      this.size = header.getLong();
+      long indexOffset = header.getLong();
+      if (numberOfBlocks < 0 || indexOffset < EncryptedColumnWriter.HEADER_LENGTH
+              || indexOffset + (long) numberOfBlocks * EncryptedColumnWriter.INDEX_ENTRY_LENGTH
+              != fileLength) {
+        throw new IOException("corrupted column file header");
+      }
+      ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset,
+              (long) numberOfBlocks * EncryptedColumnWriter.INDEX_ENTRY_LENGTH);
+      blockOffsets = new long[numberOfBlocks];
+      blockStarts = new long[numberOfBlocks + 1];
+      minExponents = new int[numberOfBlocks];
+      maxExponents = new int[numberOfBlocks];
+      for (int i = 0; i < numberOfBlocks; i++) {
+        blockOffsets[i] = index.getLong();
+        int rows = index.getInt();
+        minExponents[i] = index.getInt();
+        maxExponents[i] = index.getInt();
+        blockStarts[i + 1] = blockStarts[i] + rows;
+        if (rows < 1 || blockOffsets[i] < EncryptedColumnWriter.HEADER_LENGTH
+                || blockOffsets[i] + (long) rows * (ciphertextLength + 4) > indexOffset) {
+          throw new IOException("corrupted column file index");
+        }
+      }
+      if (blockStarts[numberOfBlocks] != size) {
+        throw new IOException("corrupted column file index");
+      }
+      blocks = new MappedByteBuffer[numberOfBlocks];
+    } catch (IOException e) {
+      this.file.close();
+      throw e;
+    } catch (RuntimeException e) {
+      this.file.close();
+      throw e;
+    }
+  }
+
+  /**
+   * @return the context of the encrypted numbers.
+   */
+  public PaillierContext getContext() {
+    return context;
+  }
+
+  /**
+   * @return the number of rows.
+   */
+  public long size() {
+    return size;
+  }
+
+  /**
+   * @return the number of blocks.
+   */
+  public int getNumberOfBlocks() {
+    return blocks.length;
+  }
+
+  /**
+   * @param block the index of a block.
+   * @return the first row of the block.
+   */
+  public long getBlockStart(int block) {
+    return blockStarts[block];
+  }
+
+  /**
+   * @param block the index of a block.
+   * @return the number of rows of the block.
+   */
+  public int getBlockRows(int block) {
+    return (int) (blockStarts[block + 1] - blockStarts[block]);
+  }
+
+  /**
+   * @param block the index of a block.
+   * @return the smallest exponent in the block.
+   */
+  public int getMinExponent(int block) {
+    return minExponents[block];
+  }
+
+  /**
+   * @param block the index of a block.
+   * @return the largest exponent in the block.
+   */
+  public int getMaxExponent(int block) {
+    return maxExponents[block];
+  }
+
+  private synchronized MappedByteBuffer block(int block) {
+    if (blocks[block] == null) {
+      try {
+        blocks[block] = channel.map(FileChannel.MapMode.READ_ONLY, blockOffsets[block],
+                                    (long) getBlockRows(block) * (ciphertextLength + 4));
+      } catch (IOException e) {
+        throw new PaillierRuntimeException("cannot map block " + block, e);
+      }
+    }
+    return blocks[block];
+  }
+
+  /**
+   * Returns the ciphertext column of a block: {@link #getBlockRows(int)} unsigned big-endian
+   * ciphertexts of {@link BinaryFormat#ciphertextLength(PaillierPublicKey)} bytes each.
+   *
+   * @param block the index of a block.
+   * @return a read-only view of the mapped column.
+   */
+  public ByteBuffer getCiphertextColumn(int block) {
+    ByteBuffer column = block(block).asReadOnlyBuffer();
+    column.limit(getBlockRows(block) * ciphertextLength);
+    return column.slice();
+  }
+
+  /**
+   * @param block the index of a block.
+   * @return a read-only view of the mapped exponent column of the block.
+   */
+  public IntBuffer getExponentColumn(int block) {
+    ByteBuffer column = block(block).asReadOnlyBuffer();
+    column.position(getBlockRows(block) * ciphertextLength);
+    return column.slice().asIntBuffer();
+  }
+
+  private int blockOf(long row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("row " + row + " of " + size);
+    }
+    int block = Arrays.binarySearch(blockStarts, row);
+    return block >= 0 ? block : -block - 2;
+  }
+
+  /**
+   * @param row the index of a row.
+   * @return the ciphertext of the row.
+   */
+  public BigInteger getCiphertext(long row) {
+    int block = blockOf(row);
+    ByteBuffer column = block(block).duplicate();
+    column.position((int) (row - blockStarts[block]) * ciphertextLength);
+    return BinaryFormat.readUnsigned(column, ciphertextLength);
+  }
+
+  /**
+   * @param row the index of a row.
+   * @return the exponent of the row.
+   */
+  public int getExponent(long row) {
+    int block = blockOf(row);
+    return block(block).getInt(getBlockRows(block) * ciphertextLength
+                               + (int) (row - blockStarts[block]) * 4);
+  }
+
+  /**
+   * @param row the index of a row.
+   * @return the encrypted number of the row.
+   */
+  public EncryptedNumber get(long row) {
+    return new EncryptedNumber(context, getCiphertext(row), getExponent(row));
+  }
+
+  /**
+   * @return the homomorphic sum of all rows.
+   */
+  public EncryptedNumber sum() {
+    return sum(0, size);
+  }
+
+  /**
+   * Computes the homomorphic sum of a range of rows.
+   *
+   * @param from the first row, inclusive.
+   * @param to the last row, exclusive.
+   * @return the sum, an encryption of zero if the range is empty.
+   */
+  public EncryptedNumber sum(long from, long to) {
+    if (from < 0 || to > size || from > to) {
+      throw new IndexOutOfBoundsException("rows " + from + " to " + to + " of " + size);
+    }
+    EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+    for (int block = from == to ? blocks.length : blockOf(from);
+         block < blocks.length && blockStarts[block] < to; block++) {
+      int first = (int) (Math.max(from, blockStarts[block]) - blockStarts[block]);
+      int last = (int) (Math.min(to, blockStarts[block + 1]) - blockStarts[block]);
+      sum.combine(sumBlock(block, first, last));
+    }
+    return sum.sum();
+  }
+
+  /**
+   * Computes the homomorphic sum of all rows, summing the blocks in parallel.
+   *
+   * @param executor to sum the blocks on.
+   * @return the sum.
+   */
+  public EncryptedNumber sum(ExecutorService executor) {
+    List<Callable<EncryptedSumAccumulator>> tasks =
+            new ArrayList<Callable<EncryptedSumAccumulator>>();
+    for (int i = 0; i < blocks.length; i++) {
+      final int block = i;
+      tasks.add(new Callable<EncryptedSumAccumulator>() {
+        @Override
+        public EncryptedSumAccumulator call() {
+          return sumBlock(block, 0, getBlockRows(block));
+        }
+      });
+    }
+    EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+    try {
+      for (Future<EncryptedSumAccumulator> future : executor.invokeAll(tasks)) {
+        sum.combine(future.get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new PaillierRuntimeException("interrupted while summing the column", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      throw new PaillierRuntimeException(e.getCause());
+    }
+    return sum.sum();
+  }
+
+  /**
+   * Accumulates the rows {@code first} to {@code last} (exclusive) of a block per exponent.
+   */
+  private EncryptedSumAccumulator sumBlock(int block, int first, int last) {
+    ByteBuffer ciphertexts = block(block).duplicate();
+    ciphertexts.position(first * ciphertextLength);
+    int exponentColumn = getBlockRows(block) * ciphertextLength;
+    boolean singleExponent = minExponents[block] == maxExponents[block];
+    EncryptedSumAccumulator sum = new EncryptedSumAccumulator(context);
+    for (int row = first; row < last; row++) {
+      BigInteger ciphertext = BinaryFormat.readUnsigned(ciphertexts, ciphertextLength);
+      int exponent = singleExponent ? minExponents[block]
+                                    : ciphertexts.getInt(exponentColumn + row * 4);
+      sum.add(ciphertext, exponent, false);
+    }
+    return sum;
+  }
+
+  /**
+   * @return a spliterator over the rows, which splits into halves for parallel streams.
+   */
+  public Spliterator<EncryptedNumber> spliterator() {
+    return new IndexedSpliterator<EncryptedNumber>(this::get, 0, size,
+            Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE);
+  }
+
+  /**
+   * Streams the rows, decoding each as an {@code EncryptedNumber}.
+   *
+   * @return a sequential stream of the rows; see {@link Stream#parallel()}.
+   */
+  public Stream<EncryptedNumber> stream() {
+    return StreamSupport.stream(spliterator(), false);
+  }
+
+  /**
+   * Closes the file. Mapped blocks stay valid until they are garbage collected.
+   *
+   * @throws IOException if closing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    file.close();
+  }
+}
@@ -0,0 +1,231 @@
+package com.n1analytics.paillier.io;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a column of encrypted numbers to a file in a columnar layout, to be read by
+ * {@link EncryptedColumnReader}.
+ *
+ * The file consists of
+ * <ul>
+ *   <li>a header of {@link #HEADER_LENGTH} bytes: magic number, version, the
+ *   {@link BinaryFormat#fingerprint(PaillierContext) context fingerprint}, the ciphertext
+ *   width, the number of blocks, the number of rows and the offset of the block index,</li>
+ *   <li>the blocks, each made of a ciphertext column of fixed-width unsigned big-endian slots
+ *   followed by an {@code int} exponent column,</li>
+ *   <li>the block index, with the offset, the number of rows and the minimum and maximum
+ *   exponent of every block.</li>
+ * </ul>
+ * All integers are big-endian.
+ *
+ * {@link #append} may be called concurrently. Each call obfuscates and encodes its numbers on
+ * the calling thread, reserves space for its own blocks and writes them with positional writes,
+ * so appends only synchronize for the reservation. The numbers of one call are stored
+ * consecutively, the order of concurrent calls is unspecified. The header and index are written
+ * by {@link #close()}, after the blocks have been forced to the storage device.
+ *
+ * If writing a block fails, the writer is marked failed: later appends and {@link #close()}
+ * throw an {@code IOException} and the header is never written, so that readers reject the
+ * incomplete file instead of reading a block that is indexed but was not written.
+ */
+public final class EncryptedColumnWriter implements Closeable {
+
+  /**
+   * The default maximum number of rows per block.
+   */
+  public static final int DEFAULT_BLOCK_ROWS = 1 << 16;
+
+  /**
+   * The version of the file format.
+   */
+  public static final int VERSION = 1;
+
+  /**
+   * "JPEC", the first four bytes of every column file.
+   */
+  static final int MAGIC = 0x4a504543;
+
+  /**
+   * The length of the file header.
+   */
+  static final int HEADER_LENGTH = 4 + 4 + 8 + 4 + 4 + 8 + 8;
+
+  /**
+   * The length of a block index entry: offset, rows, minimum and maximum exponent.
+   */
+  static final int INDEX_ENTRY_LENGTH = 8 + 4 + 4 + 4;
+
+  private final RandomAccessFile file;
+
+  private final FileChannel channel;
+
+  private final PaillierContext context;
+
+  private final int ciphertextLength;
+
+  private final int blockRows;
+
+  private final List<long[]> index = new ArrayList<long[]>();
+
+  private long end = HEADER_LENGTH;
+
+  private long rows = 0;
+
+  private boolean closed = false;
+
+  private IOException failure;
+
+  /**
+   * Creates a column file with the default block size.
+   *
+   * @param file to write to, replacing any existing content.
+   * @param context of the encrypted numbers.
+   * @throws IOException if the file cannot be created.
+   */
+  public EncryptedColumnWriter(File file, PaillierContext context) throws IOException {
+    this(file, context, DEFAULT_BLOCK_ROWS);
+  }
+
+  /**
+   * Creates a column file.
+   *
+   * @param file to write to, replacing any existing content.
+   * @param context of the encrypted numbers.
+   * @param blockRows the maximum number of rows per block.
+   * @throws IOException if the file cannot be created.
+   */
+  public EncryptedColumnWriter(File file, PaillierContext context, int blockRows)
+          throws IOException {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    this.ciphertextLength = BinaryFormat.ciphertextLength(context.getPublicKey());
+    if (blockRows < 1 || (long) blockRows * (ciphertextLength + 4) > Integer.MAX_VALUE) {
+      throw new IllegalArgumentException("blocks must have at least one row and less than 2GB");
+    }
+    this.context = context;
+    this.blockRows = blockRows;
+    this.file = new RandomAccessFile(file, "rw");
+    this.file.setLength(0);
+    this.channel = this.file.getChannel();
+  }
+
+  /**
+   * Appends encrypted numbers to the column. Thread-safe.
+   *
+   * @param numbers the encrypted numbers, obfuscated first if necessary.
+   * @throws IOException if writing fails.
+   * @throws com.n1analytics.paillier.PaillierContextMismatchException if a number has a
+   * different context.
+   */
+  public void append(EncryptedNumber... numbers) throws IOException {
+    for (int from = 0; from < numbers.length; from += blockRows) {
+      int count = Math.min(blockRows, numbers.length - from);
+      ByteBuffer block = ByteBuffer.allocate(count * (ciphertextLength + 4));
+      int minExponent = Integer.MAX_VALUE;
+      int maxExponent = Integer.MIN_VALUE;
+      for (int i = from; i < from + count; i++) {
+        context.checkSameContext(numbers[i]);
+        BinaryFormat.writeUnsigned(block, numbers[i].calculateCiphertext(), ciphertextLength);
+      }
+      for (int i = from; i < from + count; i++) {
+        int exponent = numbers[i].getExponent();
+        block.putInt(exponent);
+        minExponent = Math.min(minExponent, exponent);
+        maxExponent = Math.max(maxExponent, exponent);
+      }
+      block.flip();
+      long offset;
+      synchronized (this) {
+        if (closed) {
+          throw new IllegalStateException("the writer is closed");
+        }
+        checkNotFailed();
+        offset = end;
+        end += block.remaining();
+        rows += count;
+        index.add(new long[]{offset, count, minExponent, maxExponent});
+      }
+      try {
+        while (block.hasRemaining()) {
+          offset += channel.write(block, offset);
+        }
+      } catch (IOException e) {
+        fail(e);
+        throw e;
+      } catch (RuntimeException e) {
+        fail(new IOException("failed to write a block", e));
+        throw e;
+      }
+    }
+  }
+
+  private synchronized void fail(IOException e) {
+    if (failure == null) {
+      failure = e;
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("an append to the column file failed", failure);
+    }
+  }
+
+  /**
+   * @return the number of rows appended so far.
+   */
+  public synchronized long size() {
+    return rows;
+  }
+
+  /**
+   * Writes the header and the block index and closes the file. Appends must have completed.
+   *
+   * @throws IOException if writing fails, or if an append has failed, in which case the file is
+   *                     closed without a header.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      checkNotFailed();
+      ByteBuffer indexBuffer = ByteBuffer.allocate(index.size() * INDEX_ENTRY_LENGTH);
+      for (long[] entry : index) {
+        indexBuffer.putLong(entry[0]).putInt((int) entry[1]).putInt((int) entry[2])
+                   .putInt((int) entry[3]);
+      }
+      indexBuffer.flip();
+      long position = end;
+      while (indexBuffer.hasRemaining()) {
+        position += channel.write(indexBuffer, position);
+      }
+      // the header must not reach the disk before the blocks and the index it points to
+      channel.force(false);
+      ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+      header.putInt(MAGIC).putInt(VERSION).putLong(BinaryFormat.fingerprint(context))
+            .putInt(ciphertextLength).putInt(index.size()).putLong(rows).putLong(end);
+      header.flip();
+      position = 0;
+      while (header.hasRemaining()) {
+        position += channel.write(header, position);
+      }
+      channel.force(false);
+    } finally {
+      file.close();
+    }
+  }
+}
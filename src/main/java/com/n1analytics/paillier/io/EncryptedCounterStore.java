@@ -0,0 +1,574 @@
+package com.n1analytics.paillier.io;
+
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierContextMismatchException;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.CRC32;
+
+/**
+ * A persistent store of encrypted counters, e.g., account balances, keyed by id.
+ *
+ * {@link #increment} only records an increment in the pending batch, where all increments of
+ * one id collapse into a single ciphertext by homomorphic addition. {@link #commit()} then
+ * writes the new value of every id in the batch to the write-ahead log with a single
+ * {@code force}, so all increments recorded since the previous commit, from any number of
+ * threads, share one disk sync. A commit is a single checksummed log record, so it is recovered
+ * either completely or not at all. Afterwards the values are updated in place in fixed-width
+ * slots of ciphertext and exponent.
+ *
+ * Once the log exceeds the snapshot threshold, a compacted snapshot of all slots is written to
+ * a temporary file, synced, atomically moved over the previous snapshot, the directory is synced
+ * and only then is the log truncated. Since the log holds the new values rather than the
+ * increments, replaying it is idempotent, and a crash at any point recovers to the last
+ * commit: {@link #open} reads the snapshot and replays the log on top of it, discarding a torn
+ * last commit.
+ *
+ * If writing a commit fails, the log is truncated back to where the commit started and its
+ * increments return to the pending batch, so the next commit retries them. If even the
+ * truncation fails, every further commit throws until the store is reopened. A snapshot that
+ * fails after its commit has been logged does not fail the commit; it is logged and retried by
+ * the next commit. Only if the log cannot be reset after the new snapshot is in place does the
+ * store refuse further commits until it is reopened.
+ *
+ * Values are stored obfuscated. All numbers must have the store's context.
+ *
+ * Instances are thread-safe.
+ */
+public final class EncryptedCounterStore implements Closeable {
+
+  private static final Logger logger = Logger.getLogger("com.n1analytics.paillier");
+
+  /**
+   * The default length of the log that triggers a snapshot, 64MB.
+   */
+  public static final long DEFAULT_SNAPSHOT_THRESHOLD = 64L << 20;
+
+  /**
+   * The version of the snapshot and log formats.
+   */
+  public static final int VERSION = 1;
+
+  private static final int SNAPSHOT_MAGIC = 0x4a504353;
+  private static final int LOG_MAGIC = 0x4a50434c;
+
+  /**
+   * The length of the snapshot and log headers: magic, version and context fingerprint.
+   */
+  private static final int HEADER_LENGTH = 4 + 4 + 8;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File snapshotFile;
+
+  private final File logFile;
+
+  private final PaillierContext context;
+
+  private final long fingerprint;
+
+  private final int ciphertextLength;
+
+  private final int slotLength;
+
+  private final long snapshotThreshold;
+
+  private final Object pendingLock = new Object();
+
+  private Map<String, EncryptedNumber> pending = new HashMap<String, EncryptedNumber>();
+
+  private final Map<String, Integer> slotIndex = new HashMap<String, Integer>();
+
+  private ByteBuffer slots;
+
+  private RandomAccessFile log;
+
+  private boolean closed = false;
+
+  /**
+   * Why the log could not be rolled back after a failed commit or reset after a snapshot, or
+   * null.
+   */
+  private IOException failure = null;
+
+  private EncryptedCounterStore(File directory, PaillierContext context, long snapshotThreshold) {
+    this.snapshotFile = new File(directory, "snapshot");
+    this.logFile = new File(directory, "log");
+    this.context = context;
+    this.fingerprint = BinaryFormat.fingerprint(context);
+    this.ciphertextLength = BinaryFormat.ciphertextLength(context.getPublicKey());
+    this.slotLength = ciphertextLength + 4;
+    this.snapshotThreshold = snapshotThreshold;
+    this.slots = ByteBuffer.allocate(16 * slotLength);
+  }
+
+  /**
+   * Opens a store with the default snapshot threshold, recovering its state if it exists.
+   *
+   * @param directory of the store's files, created if necessary.
+   * @param context of the counters.
+   * @return the store.
+   * @throws IOException if the files cannot be read or are corrupted.
+   * @throws PaillierContextMismatchException if the store has a different context.
+   */
+  public static EncryptedCounterStore open(File directory, PaillierContext context)
+          throws IOException {
+    return open(directory, context, DEFAULT_SNAPSHOT_THRESHOLD);
+  }
+
+  /**
+   * Opens a store, recovering its state if it exists.
+   *
+   * @param directory of the store's files, created if necessary.
+   * @param context of the counters.
+   * @param snapshotThreshold the length of the log in bytes that triggers a snapshot.
+   * @return the store.
+   * @throws IOException if the files cannot be read or are corrupted.
+   * @throws PaillierContextMismatchException if the store has a different context.
+   */
+  public static EncryptedCounterStore open(File directory, PaillierContext context,
+                                           long snapshotThreshold) throws IOException {
+    if (context == null) {
+      throw new NullPointerException("context must not be null");
+    }
+    if (snapshotThreshold < 1) {
+      throw new IllegalArgumentException("snapshotThreshold must be positive");
+    }
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("cannot create " + directory);
+    }
+    EncryptedCounterStore store = new EncryptedCounterStore(directory, context, snapshotThreshold);
+    store.recover();
+    return store;
+  }
+
+  private void recover() throws IOException {
+    if (snapshotFile.exists()) {
+      readSnapshot();
+    }
+    log = new RandomAccessFile(logFile, "rw");
+    try {
+      if (log.length() < HEADER_LENGTH) {
+        resetLog();
+      } else {
+        replayLog();
+      }
+    } catch (IOException e) {
+      log.close();
+      throw e;
+    } catch (RuntimeException e) {
+      log.close();
+      throw e;
+    }
+  }
+
+  private void checkHeader(ByteBuffer header, int magic, File file) throws IOException {
+    if (header.getInt() != magic) {
+      throw new IOException(file + " is not a counter store file");
+    }
+    int version = header.getInt();
+    if (version != VERSION) {
+      throw new IOException("unsupported version " + version + " of " + file);
+    }
+    if (header.getLong() != fingerprint) {
+      throw new PaillierContextMismatchException("the store has a different context");
+    }
+  }
+
+  private void readSnapshot() throws IOException {
+    byte[] bytes = Files.readAllBytes(snapshotFile.toPath());
+    if (bytes.length < HEADER_LENGTH + 8
+            || checksum(bytes, 0, bytes.length - 4)
+               != ByteBuffer.wrap(bytes, bytes.length - 4, 4).getInt()) {
+      throw new IOException("corrupted snapshot " + snapshotFile);
+    }
+    ByteBuffer snapshot = ByteBuffer.wrap(bytes, 0, bytes.length - 4);
+    checkHeader(snapshot, SNAPSHOT_MAGIC, snapshotFile);
+    int count = snapshot.getInt();
+    for (int i = 0; i < count; i++) {
+      String id = readId(snapshot);
+      slot(id).put(bytes, snapshot.position(), slotLength);
+      snapshot.position(snapshot.position() + slotLength);
+    }
+  }
+
+  private void replayLog() throws IOException {
+    FileChannel channel = log.getChannel();
+    ByteBuffer content = ByteBuffer.allocate((int) channel.size());
+    channel.read(content, 0);
+    content.flip();
+    checkHeader(content, LOG_MAGIC, logFile);
+    int end = content.position();
+    while (content.remaining() >= 8) {
+      int length = content.getInt();
+      int crc = content.getInt();
+      if (length < 4 || length > content.remaining()
+              || checksum(content.array(), content.position(), length) != crc) {
+        break;
+      }
+      apply(content);
+      end = content.position();
+    }
+    // drop a commit torn by a crash during its write
+    channel.truncate(end);
+    channel.position(end);
+  }
+
+  /**
+   * Copies the values of a commit record, starting at its count, into the slots.
+   */
+  private void apply(ByteBuffer record) {
+    int count = record.getInt();
+    for (int i = 0; i < count; i++) {
+      String id = readId(record);
+      slot(id).put(record.array(), record.position(), slotLength);
+      record.position(record.position() + slotLength);
+    }
+  }
+
+  private void resetLog() throws IOException {
+    FileChannel channel = log.getChannel();
+    channel.truncate(0);
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    header.putInt(LOG_MAGIC).putInt(VERSION).putLong(fingerprint);
+    header.flip();
+    channel.write(header, 0);
+    channel.force(true);
+    channel.position(HEADER_LENGTH);
+  }
+
+  private static int checksum(byte[] bytes, int offset, int length) {
+    CRC32 crc = new CRC32();
+    crc.update(bytes, offset, length);
+    return (int) crc.getValue();
+  }
+
+  private static String readId(ByteBuffer buffer) {
+    byte[] id = new byte[buffer.getShort() & 0xffff];
+    buffer.get(id);
+    return new String(id, UTF8);
+  }
+
+  private static byte[] idBytes(String id) {
+    byte[] bytes = id.getBytes(UTF8);
+    if (bytes.length > 0xffff) {
+      throw new IllegalArgumentException("id too long");
+    }
+    return bytes;
+  }
+
+  private void ensureCapacity(int numberOfSlots) {
+    if (numberOfSlots * slotLength > slots.capacity()) {
+      ByteBuffer grown = ByteBuffer.allocate(
+              Math.max(2 * slots.capacity(), numberOfSlots * slotLength));
+      slots.clear();
+      grown.put(slots);
+      slots = grown;
+    }
+  }
+
+  /**
+   * Returns a view of the slot of an id, creating the slot if necessary.
+   */
+  private ByteBuffer slot(String id) {
+    Integer index = slotIndex.get(id);
+    if (index == null) {
+      index = slotIndex.size();
+      ensureCapacity(index + 1);
+      slotIndex.put(id, index);
+    }
+    ByteBuffer slot = slots.duplicate();
+    slot.position(index * slotLength);
+    slot.limit(index * slotLength + slotLength);
+    return slot.slice();
+  }
+
+  private EncryptedNumber read(ByteBuffer slot) {
+    return new EncryptedNumber(context, BinaryFormat.readUnsigned(slot, ciphertextLength),
+                               slot.getInt(), true);
+  }
+
+  /**
+   * Records an increment of a counter. It is applied and persisted by the next
+   * {@link #commit()}. A counter that does not exist yet starts at {@code amount}.
+   *
+   * @param id of the counter.
+   * @param amount to add.
+   * @throws PaillierContextMismatchException if {@code amount} has a different context.
+   */
+  public void increment(String id, EncryptedNumber amount) {
+    if (id == null) {
+      throw new NullPointerException("id must not be null");
+    }
+    idBytes(id);
+    context.checkSameContext(amount);
+    synchronized (pendingLock) {
+      if (closed) {
+        throw new IllegalStateException("the store is closed");
+      }
+      EncryptedNumber previous = pending.get(id);
+      pending.put(id, previous == null ? amount : previous.add(amount));
+    }
+  }
+
+  /**
+   * Persists and applies all increments recorded so far, with one log write and disk sync.
+   * Takes a snapshot if the log has grown past the snapshot threshold; a failure of the
+   * snapshot is logged and does not fail the commit.
+   *
+   * @return the number of counters updated.
+   * @throws IOException if writing the log fails, so the increments are not persisted.
+   */
+  public int commit() throws IOException {
+    Map<String, EncryptedNumber> batch;
+    synchronized (this) {
+      checkNotFailed();
+      synchronized (pendingLock) {
+        batch = pending;
+        pending = new HashMap<String, EncryptedNumber>();
+      }
+      if (batch.isEmpty()) {
+        return 0;
+      }
+      List<String> ids = new ArrayList<String>(batch.size());
+      List<EncryptedNumber> values = new ArrayList<EncryptedNumber>(batch.size());
+      int length = 0;
+      for (Map.Entry<String, EncryptedNumber> entry : batch.entrySet()) {
+        EncryptedNumber value = entry.getValue();
+        Integer index = slotIndex.get(entry.getKey());
+        if (index != null) {
+          ByteBuffer slot = slots.duplicate();
+          slot.position(index * slotLength);
+          value = read(slot).add(value);
+        }
+        ids.add(entry.getKey());
+        values.add(value);
+        length += 2 + idBytes(entry.getKey()).length + slotLength;
+      }
+
+      // one record per commit: length, checksum, count and the new values
+      ByteBuffer record = ByteBuffer.allocate(4 + 4 + 4 + length);
+      record.position(8);
+      record.putInt(ids.size());
+      for (int i = 0; i < ids.size(); i++) {
+        byte[] id = idBytes(ids.get(i));
+        record.putShort((short) id.length);
+        record.put(id);
+        BinaryFormat.writeUnsigned(record, values.get(i).calculateCiphertext(), ciphertextLength);
+        record.putInt(values.get(i).getExponent());
+      }
+      record.putInt(0, record.position() - 8);
+      record.putInt(4, checksum(record.array(), 8, record.position() - 8));
+      record.flip();
+      // the log is only ever appended to, so a commit starts at its end
+      long start = log.length();
+      FileChannel channel = log.getChannel();
+      try {
+        while (record.hasRemaining()) {
+          channel.write(record);
+        }
+        channel.force(false);
+      } catch (IOException e) {
+        rollBack(start, batch);
+        throw e;
+      }
+
+      // the log is durable, now update the slots in place
+      record.position(8);
+      apply(record);
+      if (channel.size() > snapshotThreshold) {
+        try {
+          snapshot();
+        } catch (IOException e) {
+          // the commit is durable in the log; the next commit tries the snapshot again
+          logger.log(Level.WARNING, "failed to snapshot the counter store after a commit", e);
+        }
+      }
+      return ids.size();
+    }
+  }
+
+  private void checkNotFailed() throws IOException {
+    if (failure != null) {
+      throw new IOException("the store failed to roll back or reset its log and must be reopened",
+                            failure);
+    }
+  }
+
+  /**
+   * Undoes a commit whose log write failed: truncates the log to where the commit started, so
+   * that later commits do not follow a torn record, and returns the batch to the pending
+   * increments. If the log cannot be truncated, the store refuses further commits.
+   */
+  private void rollBack(long start, Map<String, EncryptedNumber> batch) {
+    synchronized (pendingLock) {
+      for (Map.Entry<String, EncryptedNumber> entry : batch.entrySet()) {
+        EncryptedNumber later = pending.get(entry.getKey());
+        pending.put(entry.getKey(),
+                later == null ? entry.getValue() : entry.getValue().add(later));
+      }
+    }
+    // an interrupt closes the channel; reopen the log without it and restore it afterwards
+    boolean interrupted = Thread.interrupted();
+    try {
+      if (!log.getChannel().isOpen()) {
+        log.close();
+        log = new RandomAccessFile(logFile, "rw");
+      }
+      FileChannel channel = log.getChannel();
+      channel.truncate(start);
+      channel.position(start);
+      channel.force(true);
+    } catch (IOException e) {
+      failure = e;
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Writes a compacted snapshot of all committed counters and truncates the log.
+   *
+   * @throws IOException if writing fails.
+   */
+  public synchronized void snapshot() throws IOException {
+    checkNotFailed();
+    int length = HEADER_LENGTH + 4 + 4;
+    for (String id : slotIndex.keySet()) {
+      length += 2 + idBytes(id).length + slotLength;
+    }
+    ByteBuffer snapshot = ByteBuffer.allocate(length);
+    snapshot.putInt(SNAPSHOT_MAGIC).putInt(VERSION).putLong(fingerprint);
+    snapshot.putInt(slotIndex.size());
+    for (Map.Entry<String, Integer> entry : slotIndex.entrySet()) {
+      byte[] id = idBytes(entry.getKey());
+      snapshot.putShort((short) id.length);
+      snapshot.put(id);
+      snapshot.put(slots.array(), entry.getValue() * slotLength, slotLength);
+    }
+    snapshot.putInt(checksum(snapshot.array(), 0, snapshot.position()));
+    snapshot.flip();
+
+    File temporary = new File(snapshotFile.getPath() + ".tmp");
+    RandomAccessFile out = new RandomAccessFile(temporary, "rw");
+    try {
+      out.setLength(0);
+      FileChannel channel = out.getChannel();
+      while (snapshot.hasRemaining()) {
+        channel.write(snapshot);
+      }
+      channel.force(true);
+    } finally {
+      out.close();
+    }
+    Files.move(temporary.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+    // the rename must be durable before the log it makes redundant is truncated
+    syncDirectory();
+    try {
+      resetLog();
+    } catch (IOException e) {
+      // a log without its header cannot take further commits, but the snapshot holds them all
+      failure = e;
+      throw e;
+    }
+  }
+
+  private void syncDirectory() throws IOException {
+    FileChannel directory;
+    try {
+      directory = FileChannel.open(snapshotFile.getParentFile().toPath(), StandardOpenOption.READ);
+    } catch (IOException e) {
+      // some platforms, e.g. Windows, cannot open directories, and journal renames instead
+      return;
+    }
+    try {
+      directory.force(true);
+    } finally {
+      directory.close();
+    }
+  }
+
+  /**
+   * @param id of a counter.
+   * @return the committed value of the counter, or null if it does not exist.
+   */
+  public synchronized EncryptedNumber get(String id) {
+    Integer index = slotIndex.get(id);
+    if (index == null) {
+      return null;
+    }
+    ByteBuffer slot = slots.duplicate();
+    slot.position(index * slotLength);
+    return read(slot);
+  }
+
+  /**
+   * @return the ids of all committed counters.
+   */
+  public synchronized List<String> getIds() {
+    return new ArrayList<String>(slotIndex.keySet());
+  }
+
+  /**
+   * @return the number of committed counters.
+   */
+  public synchronized int size() {
+    return slotIndex.size();
+  }
+
+  /**
+   * @return the number of ids with increments that are not committed yet.
+   */
+  public int getPendingCount() {
+    synchronized (pendingLock) {
+      return pending.size();
+    }
+  }
+
+  /**
+   * @return the current length of the log in bytes.
+   * @throws IOException if the length cannot be read.
+   */
+  public synchronized long getLogLength() throws IOException {
+    return log.length();
+  }
+
+  /**
+   * Commits all pending increments and closes the store.
+   *
+   * @throws IOException if writing fails.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    try {
+      commit();
+    } finally {
+      synchronized (pendingLock) {
+        closed = true;
+      }
+      log.close();
+    }
+  }
+}
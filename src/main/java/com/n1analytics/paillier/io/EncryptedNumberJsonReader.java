@@ -0,0 +1,69 @@
+package com.n1analytics.paillier.io;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Reads a JSON array of encrypted numbers incrementally, in the format of
+ * {@link PaillierJsonModule}. Only the current number is held in memory, so arrays with millions
+ * of ciphertexts can be processed without materialising the whole document.
+ */
+public final class EncryptedNumberJsonReader implements Closeable {
+
+  private final JsonParser parser;
+
+  private final PaillierContext context;
+
+  private boolean done = false;
+
+  /**
+   * Constructs a reader for the array at the parser's current or next token.
+   *
+   * @param parser to read from. It is closed together with this reader.
+   * @param context of the encrypted numbers.
+   * @throws IOException if reading fails or there is no array.
+   */
+  public EncryptedNumberJsonReader(JsonParser parser, PaillierContext context)
+          throws IOException {
+    if (parser == null || context == null) {
+      throw new NullPointerException("parser and context must not be null");
+    }
+    this.parser = parser;
+    this.context = context;
+    JsonToken token = parser.getCurrentToken();
+    if (token == null) {
+      token = parser.nextToken();
+    }
+    if (token != JsonToken.START_ARRAY) {
+      throw new JsonParseException(parser, "expected an array of encrypted numbers");
+    }
+  }
+
+  /**
+   * Reads the next encrypted number.
+   *
+   * @return the next encrypted number, or null at the end of the array.
+   * @throws IOException if reading fails or the array contains something else.
+   */
+  public EncryptedNumber next() throws IOException {
+    if (done) {
+      return null;
+    }
+    if (parser.nextToken() == JsonToken.END_ARRAY) {
+      done = true;
+      return null;
+    }
+    return PaillierJsonModule.readEncryptedNumber(parser, context);
+  }
+
+  @Override
+  public void close() throws IOException {
+    parser.close();
+  }
+}
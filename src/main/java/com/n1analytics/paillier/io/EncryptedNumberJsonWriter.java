@@ -0,0 +1,76 @@
+package com.n1analytics.paillier.io;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.n1analytics.paillier.EncryptedNumber;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+
+/**
+ * Writes a JSON array of encrypted numbers incrementally, in the format of
+ * {@link PaillierJsonModule}. Each number is handed straight to the {@code JsonGenerator}, so
+ * the memory needed does not grow with the length of the array.
+ */
+public final class EncryptedNumberJsonWriter implements Closeable, Flushable {
+
+  private final JsonGenerator generator;
+
+  private long count = 0;
+
+  private boolean closed = false;
+
+  /**
+   * Starts an array.
+   *
+   * @param generator to write to. It is closed together with this writer.
+   * @throws IOException if writing fails.
+   */
+  public EncryptedNumberJsonWriter(JsonGenerator generator) throws IOException {
+    if (generator == null) {
+      throw new NullPointerException("generator must not be null");
+    }
+    this.generator = generator;
+    generator.writeStartArray();
+  }
+
+  /**
+   * Appends an encrypted number to the array.
+   *
+   * @param number the encrypted number, obfuscated first if necessary.
+   * @throws IOException if writing fails.
+   */
+  public void write(EncryptedNumber number) throws IOException {
+    if (closed) {
+      throw new IllegalStateException("the writer is closed");
+    }
+    PaillierJsonModule.writeEncryptedNumber(generator, number);
+    count++;
+  }
+
+  /**
+   * @return the number of encrypted numbers written so far.
+   */
+  public long getCount() {
+    return count;
+  }
+
+  @Override
+  public void flush() throws IOException {
+    generator.flush();
+  }
+
+  /**
+   * Ends the array and closes the generator.
+   *
+   * @throws IOException if writing fails.
+   */
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      generator.writeEndArray();
+      generator.close();
+    }
+  }
+}
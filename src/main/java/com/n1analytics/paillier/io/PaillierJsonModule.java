@@ -0,0 +1,254 @@
+package com.n1analytics.paillier.io;
+
+import com.fasterxml.jackson.core.Base64Variant;
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.n1analytics.paillier.DamgardJurikPublicKey;
+import com.n1analytics.paillier.EncryptedNumber;
+import com.n1analytics.paillier.PaillierContext;
+import com.n1analytics.paillier.PaillierPrivateKey;
+import com.n1analytics.paillier.PaillierPublicKey;
+import com.n1analytics.paillier.util.BigIntegerUtil;
+
+import java.io.IOException;
+import java.math.BigInteger;
+
+/**
+ * A Jackson module with typed serializers and deserializers for {@link PaillierPublicKey},
+ * {@link PaillierPrivateKey} and {@link EncryptedNumber}.
+ *
+ * Keys are written in the JWK-like format of the command line tool, all numbers as base64url
+ * without padding. Private keys include the primes and CRT precomputations, and are read back
+ * either from those or, for keys written by older versions, from {@code lambda}.
+ * Damg&aring;rd&ndash;Jurik keys are not supported.
+ *
+ * An encrypted number is written as {@code {"c": <base64url ciphertext>, "e": <exponent>}}. The
+ * ciphertext is obfuscated first if necessary. The reader also accepts the format of the command
+ * line tool, {@code {"v": <decimal ciphertext>, "e": <exponent>}}; the distinct field names keep
+ * a decimal string from being mistaken for base64url. Since the JSON carries no context, encrypted
+ * numbers can only be deserialized by a module constructed with the context they belong to.
+ *
+ * For arrays too large to hold in memory, see {@link EncryptedNumberJsonReader} and
+ * {@link EncryptedNumberJsonWriter}.
+ */
+public class PaillierJsonModule extends SimpleModule {
+
+  private static final long serialVersionUID = 2071733651416497041L;
+
+  /**
+   * The base64url variant of the key and ciphertext fields.
+   */
+  static final Base64Variant BASE64URL = Base64Variants.MODIFIED_FOR_URL;
+
+  /**
+   * Constructs a module that cannot deserialize encrypted numbers.
+   */
+  public PaillierJsonModule() {
+    this(null);
+  }
+
+  /**
+   * Constructs a module.
+   *
+   * @param context of the encrypted numbers to deserialize, may be null.
+   */
+  public PaillierJsonModule(final PaillierContext context) {
+    super("PaillierJsonModule");
+    addSerializer(PaillierPublicKey.class, new JsonSerializer<PaillierPublicKey>() {
+      @Override
+      public void serialize(PaillierPublicKey publicKey, JsonGenerator generator,
+                            SerializerProvider provider) throws IOException {
+        writePublicKey(generator, publicKey);
+      }
+    });
+    addSerializer(PaillierPrivateKey.class, new JsonSerializer<PaillierPrivateKey>() {
+      @Override
+      public void serialize(PaillierPrivateKey privateKey, JsonGenerator generator,
+                            SerializerProvider provider) throws IOException {
+        writePrivateKey(generator, privateKey);
+      }
+    });
+    addSerializer(EncryptedNumber.class, new JsonSerializer<EncryptedNumber>() {
+      @Override
+      public void serialize(EncryptedNumber number, JsonGenerator generator,
+                            SerializerProvider provider) throws IOException {
+        writeEncryptedNumber(generator, number);
+      }
+    });
+    addDeserializer(PaillierPublicKey.class, new JsonDeserializer<PaillierPublicKey>() {
+      @Override
+      public PaillierPublicKey deserialize(JsonParser parser, DeserializationContext ctxt)
+              throws IOException {
+        return readPublicKey(parser.<JsonNode>readValueAsTree(), parser);
+      }
+    });
+    addDeserializer(PaillierPrivateKey.class, new JsonDeserializer<PaillierPrivateKey>() {
+      @Override
+      public PaillierPrivateKey deserialize(JsonParser parser, DeserializationContext ctxt)
+              throws IOException {
+        return readPrivateKey(parser.<JsonNode>readValueAsTree(), parser);
+      }
+    });
+    addDeserializer(EncryptedNumber.class, new JsonDeserializer<EncryptedNumber>() {
+      @Override
+      public EncryptedNumber deserialize(JsonParser parser, DeserializationContext ctxt)
+              throws IOException {
+        if (context == null) {
+          throw JsonMappingException.from(parser,
+                  "the module needs a PaillierContext to deserialize encrypted numbers");
+        }
+        return readEncryptedNumber(parser, context);
+      }
+    });
+  }
+
+  private static void writeNumber(JsonGenerator generator, String name, BigInteger value)
+          throws IOException {
+    generator.writeFieldName(name);
+    byte[] bytes = value.toByteArray();
+    generator.writeBinary(BASE64URL, bytes, 0, bytes.length);
+  }
+
+  private static BigInteger readNumber(JsonNode node, String name, JsonParser parser)
+          throws IOException {
+    JsonNode field = node.get(name);
+    if (field == null || !field.isTextual()) {
+      throw new JsonParseException(parser, "missing field " + name);
+    }
+    try {
+      return new BigInteger(1, BASE64URL.decode(field.textValue()));
+    } catch (IllegalArgumentException e) {
+      throw new JsonParseException(parser, "malformed field " + name, e);
+    }
+  }
+
+  static void writePublicKey(JsonGenerator generator, PaillierPublicKey publicKey)
+          throws IOException {
+    if (publicKey instanceof DamgardJurikPublicKey) {
+      throw JsonMappingException.from(generator, "Damgard-Jurik keys are not supported");
+    }
+    generator.writeStartObject();
+    generator.writeStringField("alg", "PAI-GN1");
+    generator.writeStringField("kty", "DAJ");
+    writeNumber(generator, "n", publicKey.getModulus());
+    generator.writeArrayFieldStart("key_ops");
+    generator.writeString("encrypt");
+    generator.writeEndArray();
+    generator.writeEndObject();
+  }
+
+  static PaillierPublicKey readPublicKey(JsonNode node, JsonParser parser) throws IOException {
+    return new PaillierPublicKey(readNumber(node, "n", parser));
+  }
+
+  static void writePrivateKey(final JsonGenerator generator, PaillierPrivateKey privateKey)
+          throws IOException {
+    privateKey.serializeCrt(new PaillierPrivateKey.CrtSerializer<IOException>() {
+      @Override
+      public void serialize(PaillierPublicKey publicKey, BigInteger p, BigInteger q,
+                            BigInteger hp, BigInteger hq, BigInteger pInverse)
+              throws IOException {
+        BigInteger lambda = p.subtract(BigInteger.ONE).multiply(q.subtract(BigInteger.ONE));
+        generator.writeStartObject();
+        generator.writeStringField("kty", "DAJ");
+        generator.writeArrayFieldStart("key_ops");
+        generator.writeString("decrypt");
+        generator.writeEndArray();
+        generator.writeFieldName("pub");
+        writePublicKey(generator, publicKey);
+        writeNumber(generator, "lambda", lambda);
+        writeNumber(generator, "mu", BigIntegerUtil.modInverse(lambda, publicKey.getModulus()));
+        writeNumber(generator, "p", p);
+        writeNumber(generator, "q", q);
+        writeNumber(generator, "hp", hp);
+        writeNumber(generator, "hq", hq);
+        writeNumber(generator, "pinv", pInverse);
+        generator.writeEndObject();
+      }
+    });
+  }
+
+  static PaillierPrivateKey readPrivateKey(JsonNode node, JsonParser parser) throws IOException {
+    JsonNode pub = node.get("pub");
+    if (pub == null) {
+      throw new JsonParseException(parser, "missing field pub");
+    }
+    PaillierPublicKey publicKey = readPublicKey(pub, parser);
+    try {
+      if (node.has("p") && node.has("q") && node.has("hp") && node.has("hq")
+              && node.has("pinv")) {
+        return new PaillierPrivateKey(publicKey, readNumber(node, "p", parser),
+                readNumber(node, "q", parser), readNumber(node, "hp", parser),
+                readNumber(node, "hq", parser), readNumber(node, "pinv", parser));
+      }
+      return new PaillierPrivateKey(publicKey, readNumber(node, "lambda", parser));
+    } catch (IllegalArgumentException e) {
+      throw new JsonParseException(parser, "invalid private key", e);
+    }
+  }
+
+  static void writeEncryptedNumber(JsonGenerator generator, EncryptedNumber number)
+          throws IOException {
+    generator.writeStartObject();
+    writeNumber(generator, "c", number.calculateCiphertext());
+    generator.writeNumberField("e", number.getExponent());
+    generator.writeEndObject();
+  }
+
+  /**
+   * Reads an encrypted number from a parser positioned at its {@code START_OBJECT} token.
+   * Afterwards, the parser is positioned at the matching {@code END_OBJECT}.
+   */
+  static EncryptedNumber readEncryptedNumber(JsonParser parser, PaillierContext context)
+          throws IOException {
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      throw new JsonParseException(parser, "expected an encrypted number object");
+    }
+    BigInteger ciphertext = null;
+    Integer exponent = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String name = parser.getCurrentName();
+      JsonToken token = parser.nextToken();
+      if ("c".equals(name) && token == JsonToken.VALUE_STRING) {
+        ciphertext = checkUnset(parser, ciphertext,
+                new BigInteger(1, parser.getBinaryValue(BASE64URL)));
+      } else if ("v".equals(name) && token == JsonToken.VALUE_STRING) {
+        try {
+          ciphertext = checkUnset(parser, ciphertext, new BigInteger(parser.getText()));
+        } catch (NumberFormatException e) {
+          throw new JsonParseException(parser, "malformed decimal ciphertext", e);
+        }
+      } else if ("e".equals(name) && token == JsonToken.VALUE_NUMBER_INT) {
+        exponent = parser.getIntValue();
+      } else {
+        parser.skipChildren();
+      }
+    }
+    if (ciphertext == null || exponent == null) {
+      throw new JsonParseException(parser, "an encrypted number needs the fields c and e");
+    }
+    try {
+      return new EncryptedNumber(context, ciphertext, exponent);
+    } catch (IllegalArgumentException e) {
+      throw new JsonParseException(parser, "invalid ciphertext", e);
+    }
+  }
+
+  private static BigInteger checkUnset(JsonParser parser, BigInteger ciphertext,
+                                       BigInteger value) throws JsonParseException {
+    if (ciphertext != null) {
+      throw new JsonParseException(parser, "an encrypted number has more than one ciphertext");
+    }
+    return value;
+  }
+}
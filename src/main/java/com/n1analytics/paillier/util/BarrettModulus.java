@@ -0,0 +1,90 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+
+/**
+ * Modular multiplication with Barrett reduction modulo one fixed modulus.
+ *
+ * The Barrett constant <code>floor(4<sup>k</sup> / modulus)</code>, with {@code k} the bit
+ * length of the modulus, is computed once. A product of two reduced numbers is then reduced with
+ * two multiplications and at most two subtractions instead of a long division, which makes long
+ * chains of multiplications, such as the homomorphic sum of many ciphertexts, about twice as
+ * fast as with {@link BigInteger#mod(BigInteger)}.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class BarrettModulus {
+
+  private final BigInteger modulus;
+
+  /**
+   * The bit length of the modulus.
+   */
+  private final int k;
+
+  private final BigInteger barrett;
+
+  /**
+   * Constructs the Barrett arithmetic for a modulus.
+   *
+   * @param modulus positive modulus.
+   */
+  public BarrettModulus(BigInteger modulus) {
+    if (modulus == null) {
+      throw new NullPointerException("modulus must not be null");
+    }
+    if (modulus.signum() <= 0) {
+      throw new IllegalArgumentException("modulus must be positive");
+    }
+    this.modulus = modulus;
+    this.k = modulus.bitLength();
+    this.barrett = BigInteger.ONE.shiftLeft(2 * k).divide(modulus);
+  }
+
+  /**
+   * @return the modulus.
+   */
+  public BigInteger getModulus() {
+    return modulus;
+  }
+
+  /**
+   * Reduces a number modulo the modulus. Numbers that are negative or not less than the square
+   * of the modulus are reduced with a division instead.
+   *
+   * @param x the number.
+   * @return <code>x mod modulus</code>.
+   */
+  public BigInteger reduce(BigInteger x) {
+    if (x.signum() < 0 || x.bitLength() > 2 * k) {
+      return x.mod(modulus);
+    }
+    BigInteger quotient = x.shiftRight(k - 1).multiply(barrett).shiftRight(k + 1);
+    BigInteger remainder = x.subtract(quotient.multiply(modulus));
+    while (remainder.compareTo(modulus) >= 0) {
+      remainder = remainder.subtract(modulus);
+    }
+    return remainder;
+  }
+
+  /**
+   * @param a first factor.
+   * @param b second factor.
+   * @return <code>a * b mod modulus</code>.
+   */
+  public BigInteger multiplyMod(BigInteger a, BigInteger b) {
+    return reduce(a.multiply(b));
+  }
+
+  /**
+   * @param factors to multiply.
+   * @return the product of the factors modulo the modulus, one for no factors.
+   */
+  public BigInteger product(BigInteger[] factors) {
+    BigInteger product = BigInteger.ONE.mod(modulus);
+    for (BigInteger factor : factors) {
+      product = multiplyMod(product, factor);
+    }
+    return product;
+  }
+}
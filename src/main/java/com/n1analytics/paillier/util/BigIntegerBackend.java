@@ -0,0 +1,78 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+
+/**
+ * The {@link ModArithmeticBackend} of the JDK's {@code BigInteger}, available everywhere. Its
+ * exponentiation is not side-channel resistant.
+ */
+public final class BigIntegerBackend implements ModArithmeticBackend {
+
+  /**
+   * The shared instance.
+   */
+  public static final BigIntegerBackend INSTANCE = new BigIntegerBackend();
+
+  private BigIntegerBackend() {
+  }
+
+  @Override
+  public String getName() {
+    return "BigInteger";
+  }
+
+  @Override
+  public boolean isSideChannelResistant() {
+    return false;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    return base.modPow(exponent, modulus);
+  }
+
+  @Override
+  public BigInteger modPowSecure(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    ModArithmeticBackends.warnNotSideChannelResistant(this);
+    return base.modPow(exponent, modulus);
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = bases[i].modPow(exponent, modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus) {
+    ModArithmeticBackends.checkBatch(bases, exponents);
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = bases[i].modPow(exponents[i], modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger[] modPowSecure(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    ModArithmeticBackends.warnNotSideChannelResistant(this);
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = bases[i].modPow(exponent, modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger product(BigInteger[] factors, BigInteger modulus) {
+    return ModArithmeticBackends.multiplyAll(factors, modulus);
+  }
+
+  @Override
+  public BigInteger modInverse(BigInteger a, BigInteger modulus) {
+    return a.modInverse(modulus);
+  }
+}
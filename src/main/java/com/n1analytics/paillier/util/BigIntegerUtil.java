@@ -48,6 +48,12 @@ public class BigIntegerUtil {
 
  
   public static final SecureRandom random = new SecureRandom();
+
+  /**
+   * The source of the random numbers of {@link #randomPositiveNumber(BigInteger)}.
+   */
+  private static volatile RandomnessProvider randomnessProvider =
+          new ThreadLocalRandomnessProvider();
   
   /**
    * will be set to 'true' if the gmp library is available.
@@ -71,47 +77,74 @@ public class BigIntegerUtil {
   }
   
   /**
-   * computes a modular exponentiation. It will call the GMP library, if available on this system.
-   * If GMP is available, it will use 'mpz_powm_sec' which is side channel attack resistant.
-   * Use this function if you want to protect the exponent from side channel attacks.
+   * computes a modular exponentiation with a side channel attack resistant backend if one is
+   * available, see {@link ModArithmeticBackends#forSecureModulus(BigInteger)}. With GMP this is
+   * 'mpz_powm_sec', whatever the calibration chose for the modulus. Use this function if you
+   * want to protect the exponent from side channel attacks.
    * @param base of the modular exponentiation
    * @param exponent of the exponentiation
    * @param modulus
    * @return (base ^ exponent) mod modulus
    */
   public static BigInteger modPowSecure(BigInteger base, BigInteger exponent, BigInteger modulus) {
-    if (USE_GMP) {
-      return exponent.signum() < 0 // Gmp library can't handle negative exponents
-          ? modInverse(Gmp.modPowSecure(base, exponent.negate(), modulus), modulus)
-          : Gmp.modPowSecure(base, exponent, modulus);
-    } else {
-      logger.log(Level.WARNING,
-          "Gmp library is not available. Falling back to native Java for modPow. This does not "
-          + "provide protection against timing attacks!");
-      return base.modPow(exponent, modulus);
-    }
+    return ModArithmeticBackends.forSecureModulus(modulus).modPowSecure(base, exponent, modulus);
   }
   
   /**
-   * computes a modular exponentiation. It will call the GMP library, if available on this system.
-   * This leads to a significant speed-up.
+   * computes a modular exponentiation with the backend selected for the modulus, see
+   * {@link ModArithmeticBackends}. By default this is the GMP library, if available on this
+   * system. This leads to a significant speed-up.
    * @param base of the modular exponentiation
    * @param exponent of the exponentiation
    * @param modulus
    * @return (base ^ exponent) mod modulus
    */
   public static BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
-    if (USE_GMP) {
-      return exponent.signum() < 0 //Gmp library can't handle negative exponents
-          ? modInverse(Gmp.modPowInsecure(base, exponent.negate(), modulus), modulus)
-          : Gmp.modPowInsecure(base, exponent, modulus);
-    } else {
-      return base.modPow(exponent, modulus);
-    }
+    return ModArithmeticBackends.forModulus(modulus).modPow(base, exponent, modulus);
+  }
+
+  /**
+   * computes a batch of modular exponentiations with the backend selected for the modulus, see
+   * {@link ModArithmeticBackend#modPow(BigInteger[], BigInteger, BigInteger)}.
+   * @param bases of the modular exponentiations
+   * @param exponent of every exponentiation
+   * @param modulus
+   * @return a new array of (bases[i] ^ exponent) mod modulus
+   */
+  public static BigInteger[] modPow(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    return ModArithmeticBackends.forModulus(modulus).modPow(bases, exponent, modulus);
+  }
+
+  /**
+   * computes a batch of modular exponentiations with the backend selected for the modulus, see
+   * {@link ModArithmeticBackend#modPow(BigInteger[], BigInteger[], BigInteger)}.
+   * @param bases of the modular exponentiations
+   * @param exponents of the exponentiations, as many as bases
+   * @param modulus
+   * @return a new array of (bases[i] ^ exponents[i]) mod modulus
+   */
+  public static BigInteger[] modPow(BigInteger[] bases, BigInteger[] exponents,
+                                    BigInteger modulus) {
+    return ModArithmeticBackends.forModulus(modulus).modPow(bases, exponents, modulus);
+  }
+
+  /**
+   * computes a batch of modular exponentiations with a side channel attack resistant backend if
+   * one is available, see {@link ModArithmeticBackends#forSecureModulus(BigInteger)} and
+   * {@link ModArithmeticBackend#modPowSecure(BigInteger[], BigInteger, BigInteger)}.
+   * @param bases of the modular exponentiations
+   * @param exponent of every exponentiation
+   * @param modulus
+   * @return a new array of (bases[i] ^ exponent) mod modulus
+   */
+  public static BigInteger[] modPowSecure(BigInteger[] bases, BigInteger exponent,
+                                          BigInteger modulus) {
+    return ModArithmeticBackends.forSecureModulus(modulus).modPowSecure(bases, exponent, modulus);
   }
 
   /**
-   * Computes the multiplicitive inverse of `a` in the integers, modulo `b`.
+   * Computes the multiplicitive inverse of `a` in the integers, modulo `b`, with the backend
+   * selected for the modulus.
    *
    * @param a the number to invert
    * @param b the modulus
@@ -119,11 +152,7 @@ public class BigIntegerUtil {
    * @return x, where a * x == 1 mod b
    */
   public static BigInteger modInverse(BigInteger a, BigInteger b) throws ArithmeticException {
-    if(USE_GMP){
-      return Gmp.modInverse(a, b);
-    } else {
-      return a.modInverse(b);
-    }
+    return ModArithmeticBackends.forModulus(b).modInverse(a, b);
   }
 
   /**
@@ -211,7 +240,29 @@ public class BigIntegerUtil {
   }
 
   /**
-   * Returns a random strictly positive number less than {@code n}.
+   * @return the source of the random numbers of {@link #randomPositiveNumber(BigInteger)}.
+   */
+  public static RandomnessProvider getRandomnessProvider() {
+    return randomnessProvider;
+  }
+
+  /**
+   * Sets the source of the random numbers of {@link #randomPositiveNumber(BigInteger)}, and thus
+   * of every obfuscation. The default is a {@link ThreadLocalRandomnessProvider}; a
+   * {@link SharedRandomnessProvider} over {@link #random} restores the single shared generator.
+   *
+   * @param provider the new source.
+   */
+  public static void setRandomnessProvider(RandomnessProvider provider) {
+    if (provider == null) {
+      throw new NullPointerException("provider must not be null");
+    }
+    randomnessProvider = provider;
+  }
+
+  /**
+   * Returns a random strictly positive number less than {@code n}, drawn from the
+   * {@link #getRandomnessProvider() randomness provider}.
    *
    * @param n upper bound.
    * @return a random number less than {@code n}.
@@ -220,36 +271,34 @@ public class BigIntegerUtil {
     if (lessOrEqual(n, BigInteger.ONE)) {
       throw new IllegalArgumentException("n must be strictly greater than one");
     }
-
-    int bits = n.bitLength();
-    for (; ; ) {
-      BigInteger r = new BigInteger(bits, random);
-      if (less(r, BigInteger.ONE) || greaterOrEqual(r, n)) {
-        continue;
-      }
-      return r;
-    }
+    return randomnessProvider.randomPositiveNumber(n);
   }
 
   /**
-   * Computes the Integer part of the square root of {@code BigInteger} {@code n}.
-   * This code is adapted from Faruk Akgul's code found at:
-   * http://faruk.akgul.org/blog/javas-missing-algorithm-biginteger-sqrt/
+   * Computes the Integer part of the square root of {@code BigInteger} {@code n}, using Newton's
+   * iteration <code>x' = (x + n/x) / 2</code>. Starting from a power of two above the root, the
+   * iterates decrease monotonically to the result, doubling the number of correct bits in each
+   * step.
    *
    * @param n number to square root.
    * @return the integer part of the square root of {@code n}.
+   * @throws IllegalArgumentException if {@code n} is negative.
    */
   public static BigInteger sqrt(BigInteger n) {
-    BigInteger a = BigInteger.ONE;
-    BigInteger b = n.shiftRight(5).add(BigInteger.valueOf(8));
-    while (b.compareTo(a) >= 0) {
-      BigInteger mid = a.add(b).shiftRight(1);
-      if (mid.multiply(mid).compareTo(n) > 0)
-        b = mid.subtract(BigInteger.ONE);
-      else
-        a = mid.add(BigInteger.ONE);
+    if (n.signum() < 0) {
+      throw new IllegalArgumentException("n must be non-negative");
+    }
+    if (n.signum() == 0) {
+      return BigInteger.ZERO;
+    }
+    BigInteger x = BigInteger.ONE.shiftLeft((n.bitLength() + 1) / 2);
+    for (; ; ) {
+      BigInteger y = x.add(n.divide(x)).shiftRight(1);
+      if (y.compareTo(x) >= 0) {
+        return x;
+      }
+      x = y;
     }
-    return a.subtract(BigInteger.ONE);
   }
   
 }
@@ -0,0 +1,288 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Precomputed table for repeated modular exponentiations of one fixed base.
+ *
+ * The table stores <code>base<sup>2<sup>w*i</sup></sup> mod modulus</code> for every
+ * window {@code i} of an exponent of at most {@code maxExponentBits} bits, where {@code w}
+ * is the window size. An exponentiation is then evaluated with the method of
+ * Brickell, Gordon, McCurley and Wilson (using Yao's digit grouping), which needs
+ * about <code>maxExponentBits/w + 2<sup>w</sup></code> modular multiplications and no
+ * squarings at all. Compared to a plain square-and-multiply this pays off as soon as the
+ * same base is raised to a handful of different full size exponents.
+ *
+ * Instances are immutable and can be shared between threads.
+ */
+public final class FixedBaseTable {
+
+  /**
+   * The largest supported window size.
+   */
+  public static final int MAX_WINDOW_BITS = 16;
+
+  private final BigInteger base;
+
+  private final BigInteger modulus;
+
+  private final int windowBits;
+
+  private final int maxExponentBits;
+
+  /**
+   * The table multiplications reduce with two multiplications instead of a division.
+   */
+  private final BarrettModulus barrett;
+
+  /**
+   * <code>powers[i] = base<sup>2<sup>windowBits*i</sup></sup> mod modulus</code>.
+   */
+  private final BigInteger[] powers;
+
+  /**
+   * Constructs a fixed-base table.
+   *
+   * @param base the fixed base.
+   * @param modulus the modulus of the exponentiations.
+   * @param maxExponentBits the maximum bit length of exponents handled by the table.
+   * @param windowBits the window size in bits, between 1 and {@code MAX_WINDOW_BITS}.
+   */
+  public FixedBaseTable(BigInteger base, BigInteger modulus, int maxExponentBits, int windowBits) {
+    if (base == null || modulus == null) {
+      throw new NullPointerException("base and modulus must not be null");
+    }
+    if (modulus.signum() <= 0) {
+      throw new IllegalArgumentException("modulus must be positive");
+    }
+    if (maxExponentBits < 1) {
+      throw new IllegalArgumentException("maxExponentBits must be positive");
+    }
+    if (windowBits < 1 || windowBits > MAX_WINDOW_BITS) {
+      throw new IllegalArgumentException("windowBits must be between 1 and " + MAX_WINDOW_BITS);
+    }
+    this.base = base.mod(modulus);
+    this.modulus = modulus;
+    this.windowBits = windowBits;
+    this.maxExponentBits = maxExponentBits;
+    this.barrett = new BarrettModulus(modulus);
+    int windows = (maxExponentBits + windowBits - 1) / windowBits;
+    powers = new BigInteger[windows];
+    powers[0] = this.base;
+    for (int i = 1; i < windows; i++) {
+      BigInteger power = powers[i - 1];
+      for (int j = 0; j < windowBits; j++) {
+        power = multiplyMod(power, power);
+      }
+      powers[i] = power;
+    }
+  }
+
+  /**
+   * Constructs a fixed-base table from previously computed powers, e.g., as returned by
+   * {@link #getPowers()}. The powers are trusted and not recomputed.
+   *
+   * @param modulus the modulus of the exponentiations.
+   * @param maxExponentBits the maximum bit length of exponents handled by the table.
+   * @param windowBits the window size in bits, between 1 and {@code MAX_WINDOW_BITS}.
+   * @param powers <code>powers[i] = base<sup>2<sup>windowBits*i</sup></sup> mod modulus</code>,
+   *               one per window of a {@code maxExponentBits} exponent.
+   */
+  public FixedBaseTable(BigInteger modulus, int maxExponentBits, int windowBits,
+                        BigInteger[] powers) {
+    if (modulus == null || powers == null) {
+      throw new NullPointerException("modulus and powers must not be null");
+    }
+    if (modulus.signum() <= 0) {
+      throw new IllegalArgumentException("modulus must be positive");
+    }
+    if (maxExponentBits < 1) {
+      throw new IllegalArgumentException("maxExponentBits must be positive");
+    }
+    if (windowBits < 1 || windowBits > MAX_WINDOW_BITS) {
+      throw new IllegalArgumentException("windowBits must be between 1 and " + MAX_WINDOW_BITS);
+    }
+    if (powers.length != (maxExponentBits + windowBits - 1) / windowBits) {
+      throw new IllegalArgumentException("need one power per window");
+    }
+    this.powers = powers.clone();
+    for (BigInteger power : this.powers) {
+      if (power == null) {
+        throw new NullPointerException("powers must not be null");
+      }
+    }
+    this.base = this.powers[0];
+    this.modulus = modulus;
+    this.windowBits = windowBits;
+    this.maxExponentBits = maxExponentBits;
+    this.barrett = new BarrettModulus(modulus);
+  }
+
+  /**
+   * @return the fixed base.
+   */
+  public BigInteger getBase() {
+    return base;
+  }
+
+  /**
+   * @return the modulus.
+   */
+  public BigInteger getModulus() {
+    return modulus;
+  }
+
+  /**
+   * @return the window size in bits.
+   */
+  public int getWindowBits() {
+    return windowBits;
+  }
+
+  /**
+   * @return the maximum bit length of an exponent served from the table.
+   */
+  public int getMaxExponentBits() {
+    return maxExponentBits;
+  }
+
+  /**
+   * @return a copy of the precomputed powers,
+   * <code>base<sup>2<sup>windowBits*i</sup></sup> mod modulus</code>.
+   */
+  public BigInteger[] getPowers() {
+    return powers.clone();
+  }
+
+  /**
+   * Computes <code>base<sup>exponent</sup> mod modulus</code>. Exponents which are
+   * longer than {@code maxExponentBits} are delegated to {@link BigIntegerUtil#modPow}.
+   *
+   * @param exponent of the exponentiation.
+   * @return (base ^ exponent) mod modulus
+   */
+  public BigInteger modPow(BigInteger exponent) {
+    if (exponent.signum() < 0) {
+      return BigIntegerUtil.modInverse(modPow(exponent.negate()), modulus);
+    }
+    if (exponent.bitLength() > maxExponentBits) {
+      return BigIntegerUtil.modPow(base, exponent, modulus);
+    }
+    return multiModPow(new FixedBaseTable[]{this}, new BigInteger[]{exponent});
+  }
+
+  /**
+   * Computes the multi-exponentiation <code>prod<sub>k</sub> base<sub>k</sub><sup>exponent<sub>k</sub></sup>
+   * mod modulus</code>, where <code>base<sub>k</sub></code> is the base of {@code tables[k]}.
+   *
+   * The digits of all exponents are grouped together, so the whole product costs about
+   * <code>(number of non-zero digits) + 2<sup>w</sup></code> modular multiplications. For many
+   * short exponents, e.g., a dot product of an encrypted vector with a plaintext vector, this is
+   * considerably cheaper than computing the exponentiations one by one. Negative exponents and
+   * exponents longer than the table's {@code maxExponentBits} are computed separately.
+   *
+   * @param tables the fixed-base tables, all with the same modulus and window size.
+   * @param exponents one exponent per table.
+   * @return the product of the exponentiations modulo the tables' modulus.
+   */
+  public static BigInteger multiModPow(FixedBaseTable[] tables, BigInteger[] exponents) {
+    if (tables.length != exponents.length) {
+      throw new IllegalArgumentException("need exactly one exponent per table");
+    }
+    if (tables.length == 0) {
+      throw new IllegalArgumentException("need at least one table");
+    }
+    final FixedBaseTable first = tables[0];
+    final BigInteger modulus = first.modulus;
+    final int windowBits = first.windowBits;
+    BigInteger result = BigInteger.ONE;
+    // split the exponents into their base 2^windowBits digits and remember each non-zero
+    // digit as (digit << 32 | index into powers)
+    int count = 0;
+    for (int k = 0; k < tables.length; k++) {
+      count += (exponents[k].bitLength() + windowBits - 1) / windowBits;
+    }
+    long[] keys = new long[count];
+    BigInteger[] powers = new BigInteger[count];
+    count = 0;
+    for (int k = 0; k < tables.length; k++) {
+      FixedBaseTable table = tables[k];
+      BigInteger exponent = exponents[k];
+      if (!table.modulus.equals(modulus) || table.windowBits != windowBits) {
+        throw new IllegalArgumentException("tables must share modulus and window size");
+      }
+      if (exponent.signum() < 0 || exponent.bitLength() > table.maxExponentBits) {
+        result = result.multiply(table.modPow(exponent)).mod(modulus);
+        continue;
+      }
+      int windows = (exponent.bitLength() + windowBits - 1) / windowBits;
+      for (int i = 0; i < windows; i++) {
+        int digit = 0;
+        for (int j = windowBits - 1; j >= 0; j--) {
+          digit = (digit << 1) | (exponent.testBit(i * windowBits + j) ? 1 : 0);
+        }
+        if (digit != 0) {
+          powers[count] = table.powers[i];
+          keys[count] = ((long) digit << 32) | count;
+          count++;
+        }
+      }
+    }
+    if (count == 0) {
+      return result.mod(modulus);
+    }
+    Arrays.sort(keys, 0, count);
+    // Yao: prod_{d} (prod_{digit == d} power)^d, evaluated by accumulating the inner products
+    // from the largest digit downwards.
+    BigInteger partial = BigInteger.ONE;
+    int next = count - 1;
+    for (long d = keys[count - 1] >>> 32; d >= 1; d--) {
+      while (next >= 0 && (keys[next] >>> 32) == d) {
+        partial = first.multiplyMod(partial, powers[(int) keys[next]]);
+        next--;
+      }
+      result = first.multiplyMod(result, partial);
+    }
+    return result;
+  }
+
+  /**
+   * Computes <code>a * b mod modulus</code> for <code>0 &lt;= a, b &lt; modulus</code> with
+   * Barrett reduction.
+   */
+  private BigInteger multiplyMod(BigInteger a, BigInteger b) {
+    return barrett.multiplyMod(a, b);
+  }
+
+  /**
+   * Returns the number of modular multiplications a single table exponentiation of a
+   * {@code exponentBits} long exponent costs for the given window size.
+   *
+   * @param exponentBits the bit length of the exponent.
+   * @param windowBits the window size.
+   * @return the approximate number of modular multiplications.
+   */
+  public static long exponentiationCost(int exponentBits, int windowBits) {
+    return (exponentBits + windowBits - 1) / windowBits + (1L << windowBits);
+  }
+
+  /**
+   * Chooses the window size which minimises the cost of an exponentiation with a
+   * {@code exponentBits} bit exponent. Note that building a table takes one squaring per
+   * exponent bit regardless of the window size, and that larger windows make the table
+   * smaller, not larger.
+   *
+   * @param exponentBits the bit length of the exponents.
+   * @return the optimal window size.
+   */
+  public static int optimalWindowBits(int exponentBits) {
+    int best = 1;
+    for (int w = 2; w <= MAX_WINDOW_BITS; w++) {
+      if (exponentiationCost(exponentBits, w) < exponentiationCost(exponentBits, best)) {
+        best = w;
+      }
+    }
+    return best;
+  }
+}
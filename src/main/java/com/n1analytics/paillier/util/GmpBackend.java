@@ -0,0 +1,93 @@
+package com.n1analytics.paillier.util;
+
+import com.squareup.jnagmp.Gmp;
+
+import java.math.BigInteger;
+
+/**
+ * The {@link ModArithmeticBackend} of the GMP library, called through JNA. Its secure
+ * exponentiation uses {@code mpz_powm_sec}, which is side-channel resistant.
+ *
+ * The backend is only usable if the native library can be loaded, see {@link #isAvailable()}.
+ * jnagmp has no batch entry points, so the batch methods still cross into native code once per
+ * number.
+ */
+public final class GmpBackend implements ModArithmeticBackend {
+
+  /**
+   * The shared instance.
+   */
+  public static final GmpBackend INSTANCE = new GmpBackend();
+
+  private GmpBackend() {
+  }
+
+  /**
+   * @return true if the GMP library is available on this system.
+   */
+  public static boolean isAvailable() {
+    return BigIntegerUtil.USE_GMP;
+  }
+
+  @Override
+  public String getName() {
+    return "GMP";
+  }
+
+  @Override
+  public boolean isSideChannelResistant() {
+    return true;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    return exponent.signum() < 0 // Gmp library can't handle negative exponents
+        ? Gmp.modInverse(Gmp.modPowInsecure(base, exponent.negate(), modulus), modulus)
+        : Gmp.modPowInsecure(base, exponent, modulus);
+  }
+
+  @Override
+  public BigInteger modPowSecure(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    return exponent.signum() < 0 // Gmp library can't handle negative exponents
+        ? Gmp.modInverse(Gmp.modPowSecure(base, exponent.negate(), modulus), modulus)
+        : Gmp.modPowSecure(base, exponent, modulus);
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = modPow(bases[i], exponent, modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus) {
+    ModArithmeticBackends.checkBatch(bases, exponents);
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = modPow(bases[i], exponents[i], modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger[] modPowSecure(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    BigInteger[] results = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      results[i] = modPowSecure(bases[i], exponent, modulus);
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger product(BigInteger[] factors, BigInteger modulus) {
+    return ModArithmeticBackends.multiplyAll(factors, modulus);
+  }
+
+  @Override
+  public BigInteger modInverse(BigInteger a, BigInteger modulus) {
+    return Gmp.modInverse(a, modulus);
+  }
+}
@@ -0,0 +1,89 @@
+package com.n1analytics.paillier.util;
+
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.function.LongFunction;
+
+/**
+ * A {@link Spliterator} over a range of indices of a random-access source, e.g. the elements of
+ * a {@code CiphertextArray} or the rows of an {@code EncryptedColumnReader}. It splits the
+ * remaining range exactly in half, so that the tasks of a parallel stream get equal shares of
+ * the elements, and reports its exact size.
+ *
+ * @param <T> the type of the elements.
+ */
+public final class IndexedSpliterator<T> implements Spliterator<T> {
+
+  private final LongFunction<? extends T> element;
+
+  private final int characteristics;
+
+  private long index;
+
+  private final long end;
+
+  /**
+   * @param element gets the element of an index; must be safe to call from several threads if
+   * the spliterator feeds a parallel stream.
+   * @param from the first index, inclusive.
+   * @param to the last index, exclusive.
+   * @param characteristics of the source, in addition to {@code SIZED} and {@code SUBSIZED}.
+   */
+  public IndexedSpliterator(LongFunction<? extends T> element, long from, long to,
+                            int characteristics) {
+    if (element == null) {
+      throw new NullPointerException("element must not be null");
+    }
+    if (from < 0 || from > to) {
+      throw new IllegalArgumentException("invalid range " + from + " to " + to);
+    }
+    this.element = element;
+    this.index = from;
+    this.end = to;
+    this.characteristics = characteristics | SIZED | SUBSIZED;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    if (action == null) {
+      throw new NullPointerException("action must not be null");
+    }
+    if (index >= end) {
+      return false;
+    }
+    action.accept(element.apply(index++));
+    return true;
+  }
+
+  @Override
+  public void forEachRemaining(Consumer<? super T> action) {
+    if (action == null) {
+      throw new NullPointerException("action must not be null");
+    }
+    for (; index < end; index++) {
+      action.accept(element.apply(index));
+    }
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    long remaining = end - index;
+    if (remaining < 2) {
+      return null;
+    }
+    long middle = index + remaining / 2;
+    Spliterator<T> prefix = new IndexedSpliterator<T>(element, index, middle, characteristics);
+    index = middle;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return end - index;
+  }
+
+  @Override
+  public int characteristics() {
+    return characteristics;
+  }
+}
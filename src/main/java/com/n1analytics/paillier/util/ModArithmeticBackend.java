@@ -0,0 +1,91 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+
+/**
+ * An implementation of the modular arithmetic that dominates the cost of the Paillier
+ * operations.
+ *
+ * {@link ModArithmeticBackends} selects a backend per operand size for
+ * {@link BigIntegerUtil#modPow}, {@link BigIntegerUtil#modPowSecure} and
+ * {@link BigIntegerUtil#modInverse}, and a {@code PaillierContext} can override the selection
+ * for its own operations. Implementations must be thread-safe and accept negative exponents for
+ * invertible bases.
+ *
+ * The batch methods exponentiate many bases modulo one modulus in a single call, which lets a
+ * backend pay its per-call costs, such as crossing into native code or setting up the constants
+ * of the modulus, once per batch instead of once per number.
+ */
+public interface ModArithmeticBackend {
+
+  /**
+   * @return a short name of the backend, e.g. for logging the calibration.
+   */
+  String getName();
+
+  /**
+   * @return true if the backend resists timing attacks in {@link #modPowSecure}.
+   */
+  boolean isSideChannelResistant();
+
+  /**
+   * @param base of the modular exponentiation.
+   * @param exponent of the exponentiation.
+   * @param modulus positive modulus.
+   * @return <code>base<sup>exponent</sup> mod modulus</code>.
+   */
+  BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus);
+
+  /**
+   * Computes a modular exponentiation, protecting the exponent from timing attacks if the
+   * backend {@link #isSideChannelResistant() can}.
+   *
+   * @param base of the modular exponentiation.
+   * @param exponent of the exponentiation.
+   * @param modulus positive modulus.
+   * @return <code>base<sup>exponent</sup> mod modulus</code>.
+   */
+  BigInteger modPowSecure(BigInteger base, BigInteger exponent, BigInteger modulus);
+
+  /**
+   * @param bases of the modular exponentiations.
+   * @param exponent of every exponentiation.
+   * @param modulus positive modulus.
+   * @return a new array of <code>bases[i]<sup>exponent</sup> mod modulus</code>.
+   */
+  BigInteger[] modPow(BigInteger[] bases, BigInteger exponent, BigInteger modulus);
+
+  /**
+   * @param bases of the modular exponentiations.
+   * @param exponents of the exponentiations, as many as {@code bases}.
+   * @param modulus positive modulus.
+   * @return a new array of <code>bases[i]<sup>exponents[i]</sup> mod modulus</code>.
+   * @throws IllegalArgumentException if the arrays have different lengths.
+   */
+  BigInteger[] modPow(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus);
+
+  /**
+   * The batch version of {@link #modPowSecure(BigInteger, BigInteger, BigInteger)}.
+   *
+   * @param bases of the modular exponentiations.
+   * @param exponent of every exponentiation.
+   * @param modulus positive modulus.
+   * @return a new array of <code>bases[i]<sup>exponent</sup> mod modulus</code>.
+   */
+  BigInteger[] modPowSecure(BigInteger[] bases, BigInteger exponent, BigInteger modulus);
+
+  /**
+   * @param factors to multiply, each less than the modulus.
+   * @param modulus positive modulus.
+   * @return the product of the factors modulo {@code modulus}, one for no factors.
+   */
+  BigInteger product(BigInteger[] factors, BigInteger modulus);
+
+  /**
+   * @param a the number to invert.
+   * @param modulus positive modulus.
+   * @return x, where a * x == 1 mod modulus.
+   * @throws ArithmeticException if the inverse does not exist.
+   */
+  BigInteger modInverse(BigInteger a, BigInteger modulus);
+}
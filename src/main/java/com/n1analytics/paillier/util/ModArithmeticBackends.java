@@ -0,0 +1,297 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Selects the {@link ModArithmeticBackend} of {@link BigIntegerUtil}'s modular arithmetic.
+ *
+ * Without calibration every operand size uses the default backend, GMP if the library is
+ * available and {@code BigInteger} otherwise, as before backends became pluggable.
+ * {@link #calibrate()} times every available backend on a batch of {@link #CALIBRATION_BATCH}
+ * modular exponentiations with a shared exponent, as in a bulk obfuscation, at each of the
+ * {@link #CALIBRATION_BITS} modulus sizes and records the fastest one per size; an operand then
+ * uses the choice of the smallest calibrated size that is at least as large as its modulus. The
+ * calibration takes about a second, mostly warming up the pure-Java Montgomery backend.
+ *
+ * Calibration at startup is opt-in: it only runs when this class is initialised if the system
+ * property {@value #CALIBRATE_PROPERTY} is {@code true}, e.g. with
+ * {@code -Dcom.n1analytics.paillier.calibrate=true}. Otherwise the default backend applies
+ * until {@link #calibrate()} is called explicitly.
+ *
+ * Secure exponentiations, e.g. those of decryption with the secret exponents, ignore both the
+ * calibration and {@link #setDefault}: {@link #forSecureModulus(BigInteger)} always picks a
+ * side-channel resistant backend if one is available, GMP's {@code mpz_powm_sec}. Only
+ * without one does a secure exponentiation run on a backend that is not side-channel
+ * resistant, which then logs a warning. The warning is rate limited to one per
+ * {@link #WARNING_INTERVAL_MILLIS}, with the number of suppressed warnings, so that it does not
+ * flood the logs of the decryption path.
+ */
+public final class ModArithmeticBackends {
+
+  private static final Logger logger = Logger.getLogger("com.n1analytics.paillier");
+
+  /**
+   * The system property that enables the calibration at startup.
+   */
+  public static final String CALIBRATE_PROPERTY = "com.n1analytics.paillier.calibrate";
+
+  /**
+   * The minimum time between two warnings about secure exponentiations.
+   */
+  public static final long WARNING_INTERVAL_MILLIS = 60000;
+
+  /**
+   * The modulus sizes of the calibration, in bits: the ciphertext moduli of 512, 1024 and
+   * 2048-bit keys.
+   */
+  public static final int[] CALIBRATION_BITS = {1024, 2048, 4096};
+
+  /**
+   * The number of exponentiations of a batch during the calibration.
+   */
+  public static final int CALIBRATION_BATCH = 8;
+
+  /**
+   * The bit length of the exponent during the calibration.
+   */
+  private static final int CALIBRATION_EXPONENT_BITS = 128;
+
+  /**
+   * The time spent on each backend and size during the calibration, after as much warm-up.
+   */
+  private static final long CALIBRATION_NANOS = 20000000L;
+
+  /**
+   * The backend of every operand size without calibration.
+   */
+  private static volatile ModArithmeticBackend defaultBackend =
+          GmpBackend.isAvailable() ? GmpBackend.INSTANCE : BigIntegerBackend.INSTANCE;
+
+  /**
+   * The side-channel resistant backend of secure exponentiations, or null if none is available.
+   */
+  private static final ModArithmeticBackend secureBackend = findSecureBackend();
+
+  /**
+   * The calibrated backend per entry of {@code CALIBRATION_BITS}, or null.
+   */
+  private static volatile ModArithmeticBackend[] calibrated = null;
+
+  private static final AtomicLong lastWarning = new AtomicLong(Long.MIN_VALUE);
+
+  private static final AtomicLong suppressedWarnings = new AtomicLong();
+
+  static {
+    if (Boolean.getBoolean(CALIBRATE_PROPERTY)) {
+      calibrate();
+    }
+  }
+
+  private ModArithmeticBackends() {
+  }
+
+  /**
+   * @return the backends available on this system.
+   */
+  public static List<ModArithmeticBackend> getAvailableBackends() {
+    List<ModArithmeticBackend> backends = new ArrayList<ModArithmeticBackend>();
+    if (GmpBackend.isAvailable()) {
+      backends.add(GmpBackend.INSTANCE);
+    }
+    backends.add(BigIntegerBackend.INSTANCE);
+    backends.add(MontgomeryBackend.INSTANCE);
+    return backends;
+  }
+
+  private static ModArithmeticBackend findSecureBackend() {
+    for (ModArithmeticBackend backend : getAvailableBackends()) {
+      if (backend.isSideChannelResistant()) {
+        return backend;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return the backend of operand sizes without a calibrated choice.
+   */
+  public static ModArithmeticBackend getDefault() {
+    return defaultBackend;
+  }
+
+  /**
+   * Sets the backend of all operand sizes, discarding the calibration.
+   *
+   * @param backend the backend.
+   */
+  public static synchronized void setDefault(ModArithmeticBackend backend) {
+    if (backend == null) {
+      throw new NullPointerException("backend must not be null");
+    }
+    defaultBackend = backend;
+    calibrated = null;
+  }
+
+  /**
+   * @param modulusBits the bit length of a modulus.
+   * @return the backend for operations modulo a modulus of that length.
+   */
+  public static ModArithmeticBackend select(int modulusBits) {
+    ModArithmeticBackend[] choices = calibrated;
+    if (choices == null) {
+      return defaultBackend;
+    }
+    for (int i = 0; i < CALIBRATION_BITS.length; i++) {
+      if (modulusBits <= CALIBRATION_BITS[i]) {
+        return choices[i];
+      }
+    }
+    return choices[choices.length - 1];
+  }
+
+  /**
+   * @param modulus a modulus.
+   * @return the backend for operations modulo {@code modulus}.
+   */
+  public static ModArithmeticBackend forModulus(BigInteger modulus) {
+    return select(modulus.bitLength());
+  }
+
+  /**
+   * Selects the backend of a secure exponentiation: the backend of {@link #forModulus} if it is
+   * side-channel resistant, otherwise an available side-channel resistant backend, whatever the
+   * calibration or the default. Without any, the backend of {@code forModulus}.
+   *
+   * @param modulus a modulus.
+   * @return the backend for secure exponentiations modulo {@code modulus}.
+   */
+  public static ModArithmeticBackend forSecureModulus(BigInteger modulus) {
+    ModArithmeticBackend backend = forModulus(modulus);
+    if (backend.isSideChannelResistant() || secureBackend == null) {
+      return backend;
+    }
+    return secureBackend;
+  }
+
+  /**
+   * Times the available backends and records the fastest one per operand size. The calibration
+   * only applies to exponentiations that are not secure, see {@link #forSecureModulus}.
+   *
+   * @return the name of the chosen backend per calibrated modulus size.
+   */
+  public static synchronized Map<Integer, String> calibrate() {
+    Random rnd = new Random(1);
+    List<ModArithmeticBackend> backends = getAvailableBackends();
+    ModArithmeticBackend[] choices = new ModArithmeticBackend[CALIBRATION_BITS.length];
+    for (int i = 0; i < CALIBRATION_BITS.length; i++) {
+      int bits = CALIBRATION_BITS[i];
+      BigInteger modulus = new BigInteger(bits, rnd).setBit(bits - 1).setBit(0);
+      BigInteger[] bases = new BigInteger[CALIBRATION_BATCH];
+      for (int j = 0; j < bases.length; j++) {
+        bases[j] = new BigInteger(bits - 1, rnd);
+      }
+      // the cost per exponent bit decides the ranking, and a short exponent keeps the slow
+      // backends from dominating the time of the calibration
+      BigInteger exponent = new BigInteger(CALIBRATION_EXPONENT_BITS, rnd)
+              .setBit(CALIBRATION_EXPONENT_BITS - 1);
+      double best = Double.MAX_VALUE;
+      for (ModArithmeticBackend backend : backends) {
+        run(backend, bases, exponent, modulus);
+        double nanosPerOp = run(backend, bases, exponent, modulus);
+        if (nanosPerOp < best) {
+          best = nanosPerOp;
+          choices[i] = backend;
+        }
+      }
+    }
+    calibrated = choices;
+    Map<Integer, String> calibration = getCalibration();
+    logger.log(Level.INFO, "calibrated modular arithmetic backends: " + calibration);
+    return calibration;
+  }
+
+  /**
+   * @return the average time of a batch exponentiation, over at least {@code CALIBRATION_NANOS}.
+   */
+  private static double run(ModArithmeticBackend backend, BigInteger[] bases, BigInteger exponent,
+                            BigInteger modulus) {
+    long start = System.nanoTime();
+    long elapsed;
+    int count = 0;
+    do {
+      backend.modPow(bases, exponent, modulus);
+      count++;
+      elapsed = System.nanoTime() - start;
+    } while (elapsed < CALIBRATION_NANOS);
+    return (double) elapsed / count;
+  }
+
+  /**
+   * @return the name of the chosen backend per calibrated modulus size, or an empty map if the
+   * backends have not been calibrated.
+   */
+  public static Map<Integer, String> getCalibration() {
+    ModArithmeticBackend[] choices = calibrated;
+    if (choices == null) {
+      return Collections.emptyMap();
+    }
+    Map<Integer, String> calibration = new LinkedHashMap<Integer, String>();
+    for (int i = 0; i < CALIBRATION_BITS.length; i++) {
+      calibration.put(CALIBRATION_BITS[i], choices[i].getName());
+    }
+    return Collections.unmodifiableMap(calibration);
+  }
+
+  /**
+   * Logs that a backend without side-channel resistance computes a secure exponentiation, at
+   * most once per {@code WARNING_INTERVAL_MILLIS}.
+   *
+   * @param backend the backend.
+   */
+  static void warnNotSideChannelResistant(ModArithmeticBackend backend) {
+    long now = System.currentTimeMillis();
+    long last = lastWarning.get();
+    if (last != Long.MIN_VALUE && now - last < WARNING_INTERVAL_MILLIS
+            || !lastWarning.compareAndSet(last, now)) {
+      suppressedWarnings.incrementAndGet();
+      return;
+    }
+    long suppressed = suppressedWarnings.getAndSet(0);
+    logger.log(Level.WARNING, "The " + backend.getName() + " backend computes a secure modPow. "
+            + "This does not provide protection against timing attacks!"
+            + (suppressed > 0 ? " (" + suppressed + " similar warnings suppressed)" : ""));
+  }
+
+  /**
+   * Multiplies factors one by one with {@code BigInteger} and Barrett reduction.
+   */
+  static BigInteger multiplyAll(BigInteger[] factors, BigInteger modulus) {
+    return new BarrettModulus(modulus).product(factors);
+  }
+
+  /**
+   * Checks the arguments of a batch exponentiation with an exponent per base.
+   */
+  static void checkBatch(BigInteger[] bases, BigInteger[] exponents) {
+    if (bases.length != exponents.length) {
+      throw new IllegalArgumentException("got " + bases.length + " bases but "
+              + exponents.length + " exponents");
+    }
+  }
+
+  /**
+   * @return the number of warnings suppressed since the last one was logged.
+   */
+  public static long getSuppressedWarnings() {
+    return suppressedWarnings.get();
+  }
+}
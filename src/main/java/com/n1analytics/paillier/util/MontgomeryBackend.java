@@ -0,0 +1,118 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A pure-Java {@link ModArithmeticBackend} on {@link MontgomeryModulus}, for platforms without
+ * GMP. It keeps the Montgomery constants of the moduli it has seen, so that the repeated moduli
+ * of a key cost their setup once, and the batch methods share one scratch array. Even moduli
+ * fall back to {@code BigInteger}. Its exponentiation is not side-channel resistant.
+ */
+public final class MontgomeryBackend implements ModArithmeticBackend {
+
+  /**
+   * The shared instance.
+   */
+  public static final MontgomeryBackend INSTANCE = new MontgomeryBackend();
+
+  /**
+   * The number of moduli whose constants are kept; the cache is cleared when it grows beyond.
+   */
+  private static final int MAX_CACHED_MODULI = 64;
+
+  private final ConcurrentHashMap<BigInteger, MontgomeryModulus> moduli =
+          new ConcurrentHashMap<BigInteger, MontgomeryModulus>();
+
+  private MontgomeryBackend() {
+  }
+
+  /**
+   * @param modulus odd modulus greater than one.
+   * @return the Montgomery arithmetic of the modulus.
+   */
+  public MontgomeryModulus getModulus(BigInteger modulus) {
+    MontgomeryModulus montgomery = moduli.get(modulus);
+    if (montgomery == null) {
+      if (moduli.size() >= MAX_CACHED_MODULI) {
+        moduli.clear();
+      }
+      montgomery = new MontgomeryModulus(modulus);
+      moduli.put(modulus, montgomery);
+    }
+    return montgomery;
+  }
+
+  @Override
+  public String getName() {
+    return "Montgomery";
+  }
+
+  @Override
+  public boolean isSideChannelResistant() {
+    return false;
+  }
+
+  @Override
+  public BigInteger modPow(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    if (!modulus.testBit(0) || modulus.equals(BigInteger.ONE)) {
+      return base.modPow(exponent, modulus);
+    }
+    return getModulus(modulus).modPow(base, exponent);
+  }
+
+  @Override
+  public BigInteger modPowSecure(BigInteger base, BigInteger exponent, BigInteger modulus) {
+    ModArithmeticBackends.warnNotSideChannelResistant(this);
+    return modPow(base, exponent, modulus);
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    BigInteger[] exponents = new BigInteger[bases.length];
+    Arrays.fill(exponents, exponent);
+    return modPow(bases, exponents, modulus);
+  }
+
+  @Override
+  public BigInteger[] modPow(BigInteger[] bases, BigInteger[] exponents, BigInteger modulus) {
+    ModArithmeticBackends.checkBatch(bases, exponents);
+    BigInteger[] results = new BigInteger[bases.length];
+    if (!modulus.testBit(0) || modulus.equals(BigInteger.ONE)) {
+      for (int i = 0; i < bases.length; i++) {
+        results[i] = bases[i].modPow(exponents[i], modulus);
+      }
+      return results;
+    }
+    MontgomeryModulus montgomery = getModulus(modulus);
+    int[] scratch = montgomery.newScratch();
+    for (int i = 0; i < bases.length; i++) {
+      BigInteger base = bases[i];
+      BigInteger exponent = exponents[i];
+      if (exponent.signum() < 0) {
+        base = base.modInverse(modulus);
+        exponent = exponent.negate();
+      }
+      results[i] = montgomery.fromMontgomery(
+              montgomery.modPow(montgomery.toMontgomery(base), exponent, scratch));
+    }
+    return results;
+  }
+
+  @Override
+  public BigInteger[] modPowSecure(BigInteger[] bases, BigInteger exponent, BigInteger modulus) {
+    ModArithmeticBackends.warnNotSideChannelResistant(this);
+    return modPow(bases, exponent, modulus);
+  }
+
+  @Override
+  public BigInteger product(BigInteger[] factors, BigInteger modulus) {
+    return ModArithmeticBackends.multiplyAll(factors, modulus);
+  }
+
+  @Override
+  public BigInteger modInverse(BigInteger a, BigInteger modulus) {
+    return a.modInverse(modulus);
+  }
+}
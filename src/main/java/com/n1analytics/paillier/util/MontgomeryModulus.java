@@ -0,0 +1,245 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Montgomery arithmetic modulo one odd modulus, in pure Java.
+ *
+ * Numbers are held as little-endian arrays of {@link #getLimbs()} 32-bit limbs in Montgomery
+ * form, <code>x R mod n</code> with <code>R = 2<sup>32 limbs</sup></code>. A product is
+ * reduced with the coarsely integrated operand scanning (CIOS) method, which interleaves the
+ * multiplication and the reduction limb by limb and needs no division at all. The arrays can be
+ * reused across operations, so long chains of multiplications allocate nothing.
+ *
+ * Instances are immutable and can be shared between threads; the scratch arrays passed to the
+ * methods must not be.
+ */
+public final class MontgomeryModulus {
+
+  private static final long MASK = 0xffffffffL;
+
+  private final BigInteger modulus;
+
+  /**
+   * The limbs of the modulus, least significant first.
+   */
+  private final int[] n;
+
+  /**
+   * <code>-n<sup>-1</sup> mod 2<sup>32</sup></code>.
+   */
+  private final int n0inv;
+
+  /**
+   * One in Montgomery form, <code>R mod n</code>.
+   */
+  private final int[] one;
+
+  /**
+   * Constructs the arithmetic for an odd modulus.
+   *
+   * @param modulus odd modulus greater than one.
+   */
+  public MontgomeryModulus(BigInteger modulus) {
+    if (modulus.signum() <= 0 || !modulus.testBit(0) || modulus.equals(BigInteger.ONE)) {
+      throw new IllegalArgumentException("modulus must be odd and greater than one");
+    }
+    this.modulus = modulus;
+    this.n = toLimbs(modulus, (modulus.bitLength() + 31) / 32);
+    // Newton's iteration doubles the number of correct low bits of the inverse in every step
+    int inverse = n[0];
+    for (int i = 0; i < 5; i++) {
+      inverse *= 2 - n[0] * inverse;
+    }
+    this.n0inv = -inverse;
+    this.one = toMontgomery(BigInteger.ONE);
+  }
+
+  /**
+   * @return the modulus.
+   */
+  public BigInteger getModulus() {
+    return modulus;
+  }
+
+  /**
+   * @return the number of 32-bit limbs of a number in Montgomery form.
+   */
+  public int getLimbs() {
+    return n.length;
+  }
+
+  /**
+   * @return a new scratch array for {@link #multiply(int[], int[], int[], int[])}.
+   */
+  public int[] newScratch() {
+    return new int[n.length + 2];
+  }
+
+  private static int[] toLimbs(BigInteger value, int limbs) {
+    int[] result = new int[limbs];
+    byte[] bytes = value.toByteArray();
+    for (int i = 0; i < bytes.length && i < 4 * limbs; i++) {
+      result[i / 4] |= (bytes[bytes.length - 1 - i] & 0xff) << (8 * (i % 4));
+    }
+    return result;
+  }
+
+  /**
+   * @param x a number, reduced modulo the modulus first.
+   * @return {@code x} in Montgomery form.
+   */
+  public int[] toMontgomery(BigInteger x) {
+    return toLimbs(x.mod(modulus).shiftLeft(32 * n.length).mod(modulus), n.length);
+  }
+
+  /**
+   * @param a a number in Montgomery form.
+   * @return the number, converted back to a {@code BigInteger}.
+   */
+  public BigInteger fromMontgomery(int[] a) {
+    int[] unit = new int[n.length];
+    unit[0] = 1;
+    int[] result = new int[n.length];
+    multiply(a, unit, result, newScratch());
+    return fromLimbs(result);
+  }
+
+  private static BigInteger fromLimbs(int[] limbs) {
+    byte[] bytes = new byte[4 * limbs.length];
+    for (int i = 0; i < limbs.length; i++) {
+      int limb = limbs[limbs.length - 1 - i];
+      bytes[4 * i] = (byte) (limb >>> 24);
+      bytes[4 * i + 1] = (byte) (limb >>> 16);
+      bytes[4 * i + 2] = (byte) (limb >>> 8);
+      bytes[4 * i + 3] = (byte) limb;
+    }
+    return new BigInteger(1, bytes);
+  }
+
+  /**
+   * Computes the Montgomery product <code>a b R<sup>-1</sup> mod n</code>.
+   *
+   * @param a first factor in Montgomery form.
+   * @param b second factor in Montgomery form.
+   * @param result receives the product; may be the same array as {@code a} or {@code b}.
+   * @param scratch a scratch array from {@link #newScratch()}.
+   */
+  public void multiply(int[] a, int[] b, int[] result, int[] scratch) {
+    int k = n.length;
+    int[] t = scratch;
+    Arrays.fill(t, 0);
+    for (int i = 0; i < k; i++) {
+      // t += a * b[i]
+      long bi = b[i] & MASK;
+      long carry = 0;
+      for (int j = 0; j < k; j++) {
+        long s = (t[j] & MASK) + (a[j] & MASK) * bi + carry;
+        t[j] = (int) s;
+        carry = s >>> 32;
+      }
+      long s = (t[k] & MASK) + carry;
+      t[k] = (int) s;
+      t[k + 1] = (int) (s >>> 32);
+      // t = (t + m n) / 2^32, with m chosen so that the division is exact
+      long m = (t[0] * n0inv) & MASK;
+      s = (t[0] & MASK) + m * (n[0] & MASK);
+      carry = s >>> 32;
+      for (int j = 1; j < k; j++) {
+        s = (t[j] & MASK) + m * (n[j] & MASK) + carry;
+        t[j - 1] = (int) s;
+        carry = s >>> 32;
+      }
+      s = (t[k] & MASK) + carry;
+      t[k - 1] = (int) s;
+      t[k] = t[k + 1] + (int) (s >>> 32);
+    }
+    // t < 2n, subtract n once if t >= n
+    if (t[k] != 0 || compare(t, n, k) >= 0) {
+      long borrow = 0;
+      for (int j = 0; j < k; j++) {
+        long d = (t[j] & MASK) - (n[j] & MASK) - borrow;
+        result[j] = (int) d;
+        borrow = d >>> 63;
+      }
+    } else {
+      System.arraycopy(t, 0, result, 0, k);
+    }
+  }
+
+  private static int compare(int[] a, int[] b, int k) {
+    for (int i = k - 1; i >= 0; i--) {
+      if (a[i] != b[i]) {
+        return (a[i] & MASK) < (b[i] & MASK) ? -1 : 1;
+      }
+    }
+    return 0;
+  }
+
+  /**
+   * Computes a modular product of two plain numbers.
+   *
+   * @param a first factor.
+   * @param b second factor.
+   * @return <code>a b mod n</code>.
+   */
+  public BigInteger multiplyMod(BigInteger a, BigInteger b) {
+    int[] product = toMontgomery(a);
+    multiply(product, toMontgomery(b), product, newScratch());
+    return fromMontgomery(product);
+  }
+
+  /**
+   * Computes a modular exponentiation with a fixed window.
+   *
+   * @param base of the exponentiation.
+   * @param exponent of the exponentiation; negative exponents invert the base first.
+   * @return <code>base<sup>exponent</sup> mod n</code>.
+   * @throws ArithmeticException if the exponent is negative and the base is not invertible.
+   */
+  public BigInteger modPow(BigInteger base, BigInteger exponent) {
+    if (exponent.signum() < 0) {
+      base = base.modInverse(modulus);
+      exponent = exponent.negate();
+    }
+    return fromMontgomery(modPow(toMontgomery(base), exponent, newScratch()));
+  }
+
+  /**
+   * Computes a modular exponentiation of a number in Montgomery form.
+   *
+   * @param base in Montgomery form.
+   * @param exponent non-negative exponent.
+   * @param scratch a scratch array from {@link #newScratch()}.
+   * @return the power in Montgomery form.
+   */
+  public int[] modPow(int[] base, BigInteger exponent, int[] scratch) {
+    int bits = exponent.bitLength();
+    int windowBits = bits <= 32 ? 1 : bits <= 128 ? 3 : bits <= 512 ? 4 : 5;
+    int[][] powers = new int[1 << windowBits][];
+    powers[0] = one;
+    powers[1] = base;
+    for (int i = 2; i < powers.length; i++) {
+      powers[i] = new int[n.length];
+      multiply(powers[i - 1], base, powers[i], scratch);
+    }
+    int[] result = one.clone();
+    int windows = (bits + windowBits - 1) / windowBits;
+    for (int w = windows - 1; w >= 0; w--) {
+      if (w != windows - 1) {
+        for (int i = 0; i < windowBits; i++) {
+          multiply(result, result, result, scratch);
+        }
+      }
+      int digit = 0;
+      for (int i = windowBits - 1; i >= 0; i--) {
+        digit = (digit << 1) | (exponent.testBit(w * windowBits + i) ? 1 : 0);
+      }
+      if (digit != 0) {
+        multiply(result, powers[digit], result, scratch);
+      }
+    }
+    return result;
+  }
+}
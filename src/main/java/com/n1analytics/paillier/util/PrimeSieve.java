@@ -0,0 +1,145 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Random prime search with a small-prime sieve.
+ *
+ * A search starts at a random odd number and sieves a window of the following odd numbers with
+ * all odd primes below {@link #SIEVE_BOUND}, so that Miller&ndash;Rabin tests (via
+ * {@link BigInteger#isProbablePrime(int)}) only run on candidates without small factors. The
+ * residues of the start modulo the small primes are computed once per window, from a few
+ * word-sized remainders of the start.
+ *
+ * The result only depends on the given {@code Random}, so a seeded generator gives reproducible
+ * primes.
+ */
+public final class PrimeSieve {
+
+  /**
+   * All odd primes below this bound are sieved out.
+   */
+  public static final int SIEVE_BOUND = 1 << 16;
+
+  /**
+   * The certainty passed to {@link BigInteger#isProbablePrime(int)}, as in
+   * {@link BigInteger#probablePrime(int, Random)}.
+   */
+  private static final int CERTAINTY = 100;
+
+  /**
+   * The odd primes below {@code SIEVE_BOUND}.
+   */
+  private static final int[] SMALL_PRIMES;
+
+  /**
+   * Products of consecutive small primes that fit into a positive {@code int}, and the index of
+   * the first small prime of each product.
+   */
+  private static final int[] PRIME_PRODUCTS;
+  private static final int[] PRODUCT_OFFSETS;
+
+  static {
+    boolean[] composite = new boolean[SIEVE_BOUND];
+    List<Integer> primes = new ArrayList<Integer>();
+    for (int i = 3; i < SIEVE_BOUND; i += 2) {
+      if (!composite[i]) {
+        primes.add(i);
+        for (long j = (long) i * i; j < SIEVE_BOUND; j += 2 * i) {
+          composite[(int) j] = true;
+        }
+      }
+    }
+    SMALL_PRIMES = new int[primes.size()];
+    for (int i = 0; i < SMALL_PRIMES.length; i++) {
+      SMALL_PRIMES[i] = primes.get(i);
+    }
+    List<Integer> products = new ArrayList<Integer>();
+    List<Integer> offsets = new ArrayList<Integer>();
+    for (int i = 0; i < SMALL_PRIMES.length; ) {
+      offsets.add(i);
+      long product = SMALL_PRIMES[i++];
+      while (i < SMALL_PRIMES.length && product * SMALL_PRIMES[i] <= Integer.MAX_VALUE) {
+        product *= SMALL_PRIMES[i++];
+      }
+      products.add((int) product);
+    }
+    PRIME_PRODUCTS = new int[products.size()];
+    PRODUCT_OFFSETS = new int[offsets.size() + 1];
+    for (int i = 0; i < PRIME_PRODUCTS.length; i++) {
+      PRIME_PRODUCTS[i] = products.get(i);
+      PRODUCT_OFFSETS[i] = offsets.get(i);
+    }
+    PRODUCT_OFFSETS[PRIME_PRODUCTS.length] = SMALL_PRIMES.length;
+  }
+
+  private PrimeSieve() {
+  }
+
+  /**
+   * Returns a random probable prime of exactly {@code bitLength} bits whose two most
+   * significant bits are set. The product of two such primes has exactly
+   * {@code 2*bitLength} bits.
+   *
+   * @param bitLength the bit length of the prime, at least 3.
+   * @param random the source of randomness.
+   * @return a probable prime.
+   */
+  public static BigInteger randomPrime(int bitLength, Random random) {
+    if (bitLength < 3) {
+      throw new IllegalArgumentException("bitLength must be at least 3");
+    }
+    final BigInteger topBits = BigInteger.valueOf(3).shiftLeft(bitLength - 2);
+    for (; ; ) {
+      BigInteger start = new BigInteger(bitLength, random).or(topBits).setBit(0);
+      if (bitLength <= 32) {
+        // too short to sieve, the candidate may be one of the small primes
+        if (start.isProbablePrime(CERTAINTY)) {
+          return start;
+        }
+        continue;
+      }
+      BigInteger prime = searchWindow(start, bitLength);
+      if (prime != null) {
+        return prime;
+      }
+    }
+  }
+
+  /**
+   * Returns the first probable prime in a window of odd numbers starting at {@code start}, or
+   * null if there is none or the window runs past {@code bitLength} bits.
+   */
+  private static BigInteger searchWindow(BigInteger start, int bitLength) {
+    // the average prime gap is about 0.69*bitLength, so this window rarely runs empty
+    final int window = 2 * bitLength;
+    boolean[] composite = new boolean[window];
+    for (int k = 0; k < PRIME_PRODUCTS.length; k++) {
+      int residue = start.remainder(BigInteger.valueOf(PRIME_PRODUCTS[k])).intValue();
+      for (int i = PRODUCT_OFFSETS[k]; i < PRODUCT_OFFSETS[k + 1]; i++) {
+        int prime = SMALL_PRIMES[i];
+        // start + 2j = 0 mod prime  <=>  j = -residue / 2 mod prime
+        int r = residue % prime;
+        int j = (int) ((long) (prime - r) * ((prime + 1) / 2) % prime);
+        for (; j < window; j += prime) {
+          composite[j] = true;
+        }
+      }
+    }
+    for (int j = 0; j < window; j++) {
+      if (!composite[j]) {
+        BigInteger candidate = start.add(BigInteger.valueOf(2L * j));
+        if (candidate.bitLength() != bitLength) {
+          return null;
+        }
+        if (candidate.isProbablePrime(CERTAINTY)) {
+          return candidate;
+        }
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,26 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/**
+ * A source of the randomness used to obfuscate ciphertexts and mask values, see
+ * {@link BigIntegerUtil#setRandomnessProvider(RandomnessProvider)}.
+ *
+ * Implementations must be thread-safe and cryptographically secure.
+ */
+public interface RandomnessProvider {
+
+  /**
+   * @return a {@code SecureRandom} the calling thread may use.
+   */
+  SecureRandom getRandom();
+
+  /**
+   * Returns a uniformly random number {@code r} with {@code 0 < r < n}.
+   *
+   * @param n upper bound, greater than one.
+   * @return the random number.
+   */
+  BigInteger randomPositiveNumber(BigInteger n);
+}
@@ -0,0 +1,44 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.security.SecureRandom;
+
+/**
+ * A {@link RandomnessProvider} drawing from one {@code SecureRandom} for all threads.
+ *
+ * This was the only behaviour before randomness became pluggable. The default
+ * {@code SecureRandom} synchronises its generation, so threads that obfuscate concurrently
+ * queue up on it; prefer {@link ThreadLocalRandomnessProvider} for concurrent workloads.
+ */
+public final class SharedRandomnessProvider implements RandomnessProvider {
+
+  private final SecureRandom random;
+
+  /**
+   * Constructs a provider.
+   *
+   * @param random the shared source of randomness.
+   */
+  public SharedRandomnessProvider(SecureRandom random) {
+    if (random == null) {
+      throw new NullPointerException("random must not be null");
+    }
+    this.random = random;
+  }
+
+  @Override
+  public SecureRandom getRandom() {
+    return random;
+  }
+
+  @Override
+  public BigInteger randomPositiveNumber(BigInteger n) {
+    int bits = n.bitLength();
+    for (; ; ) {
+      BigInteger r = new BigInteger(bits, random);
+      if (r.signum() > 0 && r.compareTo(n) < 0) {
+        return r;
+      }
+    }
+  }
+}
@@ -0,0 +1,134 @@
+package com.n1analytics.paillier.util;
+
+import java.math.BigInteger;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+
+/**
+ * A {@link RandomnessProvider} with a generator per thread, so that concurrent obfuscations do
+ * not contend for one {@code SecureRandom}.
+ *
+ * Each thread gets its own deterministic random bit generator of the configured algorithm, seeded
+ * once with 32 bytes from the system's default {@code SecureRandom}. The generator fills a
+ * per-thread buffer in bulk, and bounded random numbers are cut from the buffer, which saves a
+ * call into the generator for every number.
+ */
+public final class ThreadLocalRandomnessProvider implements RandomnessProvider {
+
+  /**
+   * The default generator algorithm, available on every Java platform.
+   */
+  public static final String DEFAULT_ALGORITHM = "SHA1PRNG";
+
+  /**
+   * The default size of the per-thread buffer in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 4096;
+
+  private static final int SEED_LENGTH = 32;
+
+  private final class State {
+
+    final SecureRandom random;
+
+    final byte[] buffer = new byte[bufferSize];
+
+    int position = bufferSize;
+
+    State() {
+      try {
+        random = SecureRandom.getInstance(algorithm);
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      byte[] seed = new byte[SEED_LENGTH];
+      synchronized (seedSource) {
+        seedSource.nextBytes(seed);
+      }
+      // seeding before the first output replaces the generator's own seeding
+      random.setSeed(seed);
+    }
+
+    void nextBytes(byte[] bytes) {
+      int offset = 0;
+      while (offset < bytes.length) {
+        if (position == buffer.length) {
+          random.nextBytes(buffer);
+          position = 0;
+        }
+        int length = Math.min(bytes.length - offset, buffer.length - position);
+        System.arraycopy(buffer, position, bytes, offset, length);
+        // do not keep handed out randomness around
+        Arrays.fill(buffer, position, position + length, (byte) 0);
+        position += length;
+        offset += length;
+      }
+    }
+  }
+
+  private final String algorithm;
+
+  private final int bufferSize;
+
+  private final SecureRandom seedSource = new SecureRandom();
+
+  private final ThreadLocal<State> states = new ThreadLocal<State>() {
+    @Override
+    protected State initialValue() {
+      return new State();
+    }
+  };
+
+  /**
+   * Constructs a provider with the {@code DEFAULT_ALGORITHM} and the {@code DEFAULT_BUFFER_SIZE}.
+   */
+  public ThreadLocalRandomnessProvider() {
+    this(DEFAULT_ALGORITHM, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Constructs a provider.
+   *
+   * @param algorithm the {@code SecureRandom} algorithm of the per-thread generators.
+   * @param bufferSize the size of the per-thread buffer in bytes.
+   * @throws IllegalArgumentException if the algorithm is not available or the buffer size is
+   * not positive.
+   */
+  public ThreadLocalRandomnessProvider(String algorithm, int bufferSize) {
+    if (algorithm == null) {
+      throw new NullPointerException("algorithm must not be null");
+    }
+    if (bufferSize < 1) {
+      throw new IllegalArgumentException("bufferSize must be positive");
+    }
+    try {
+      SecureRandom.getInstance(algorithm);
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalArgumentException("unknown algorithm " + algorithm, e);
+    }
+    this.algorithm = algorithm;
+    this.bufferSize = bufferSize;
+  }
+
+  @Override
+  public SecureRandom getRandom() {
+    return states.get().random;
+  }
+
+  @Override
+  public BigInteger randomPositiveNumber(BigInteger n) {
+    int bits = n.bitLength();
+    byte[] bytes = new byte[(bits + 7) / 8];
+    int excessBits = 8 * bytes.length - bits;
+    State state = states.get();
+    for (; ; ) {
+      state.nextBytes(bytes);
+      bytes[0] &= (byte) (0xff >>> excessBits);
+      BigInteger r = new BigInteger(1, bytes);
+      if (r.signum() > 0 && r.compareTo(n) < 0) {
+        return r;
+      }
+    }
+  }
+}
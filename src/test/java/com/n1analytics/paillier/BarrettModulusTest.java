@@ -0,0 +1,68 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BarrettModulus;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class BarrettModulusTest {
+
+  private static final Random random = new Random(48);
+
+  @Test
+  public void testReduce() {
+    for (int bits : new int[]{1, 2, 31, 64, 100, 1024, 2048}) {
+      BigInteger modulus = new BigInteger(bits, random).setBit(bits - 1);
+      BarrettModulus barrett = new BarrettModulus(modulus);
+      assertEquals(modulus, barrett.getModulus());
+      BigInteger square = modulus.multiply(modulus);
+      BigInteger[] values = {BigInteger.ZERO, BigInteger.ONE, modulus,
+              modulus.subtract(BigInteger.ONE), square.subtract(BigInteger.ONE), square,
+              square.shiftLeft(3).add(BigInteger.TEN), BigInteger.ONE.negate(), square.negate()};
+      for (BigInteger value : values) {
+        assertEquals(value.mod(modulus), barrett.reduce(value));
+      }
+      for (int i = 0; i < 100; i++) {
+        BigInteger a = new BigInteger(bits, random).mod(modulus);
+        BigInteger b = new BigInteger(bits, random).mod(modulus);
+        assertEquals(a.multiply(b).mod(modulus), barrett.multiplyMod(a, b));
+        assertEquals(a.multiply(b).mod(modulus), barrett.reduce(a.multiply(b)));
+      }
+    }
+  }
+
+  @Test
+  public void testProduct() {
+    BigInteger modulus = PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BarrettModulus barrett = new BarrettModulus(modulus);
+    assertEquals(BigInteger.ONE, barrett.product(new BigInteger[0]));
+    assertEquals(BigInteger.ZERO, new BarrettModulus(BigInteger.ONE).product(new BigInteger[0]));
+    BigInteger[] factors = new BigInteger[50];
+    BigInteger expected = BigInteger.ONE;
+    for (int i = 0; i < factors.length; i++) {
+      factors[i] = new BigInteger(modulus.bitLength(), random).mod(modulus);
+      expected = expected.multiply(factors[i]).mod(modulus);
+    }
+    assertEquals(expected, barrett.product(factors));
+  }
+
+  @Test
+  public void testInvalidModuli() {
+    try {
+      new BarrettModulus(null);
+      fail("Successfully created the Barrett arithmetic of null");
+    } catch (NullPointerException e) {
+    }
+    for (BigInteger modulus : new BigInteger[]{BigInteger.ZERO, BigInteger.valueOf(-5)}) {
+      try {
+        new BarrettModulus(modulus);
+        fail("Successfully created the Barrett arithmetic of " + modulus);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+}
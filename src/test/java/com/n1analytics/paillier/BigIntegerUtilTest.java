@@ -14,9 +14,13 @@
 package com.n1analytics.paillier;
 
 import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.RandomnessProvider;
+import com.n1analytics.paillier.util.SharedRandomnessProvider;
+import com.n1analytics.paillier.util.ThreadLocalRandomnessProvider;
 import org.junit.Test;
 
 import java.math.BigInteger;
+import java.security.SecureRandom;
 import java.util.HashSet;
 import java.util.Random;
 
@@ -55,6 +59,58 @@ public class BigIntegerUtilTest {
     }
   }
 
+  @Test
+  public void testRandomnessProviders() throws Exception {
+    RandomnessProvider original = BigIntegerUtil.getRandomnessProvider();
+    assertTrue(original instanceof ThreadLocalRandomnessProvider);
+    RandomnessProvider[] providers = new RandomnessProvider[]{
+            new SharedRandomnessProvider(BigIntegerUtil.random),
+            new ThreadLocalRandomnessProvider(),
+            // a buffer smaller than one number
+            new ThreadLocalRandomnessProvider(ThreadLocalRandomnessProvider.DEFAULT_ALGORITHM, 5)};
+    try {
+      for (RandomnessProvider provider : providers) {
+        BigIntegerUtil.setRandomnessProvider(provider);
+        BigInteger n = BigInteger.ONE.shiftLeft(100).add(BigInteger.valueOf(12345));
+        HashSet<BigInteger> sampled = new HashSet<BigInteger>();
+        for (int i = 0; i < 1000; i++) {
+          BigInteger r = BigIntegerUtil.randomPositiveNumber(n);
+          assertTrue(r.signum() > 0 && r.compareTo(n) < 0);
+          sampled.add(r);
+        }
+        assertEquals(1000, sampled.size());
+        HashSet<Integer> small = new HashSet<Integer>();
+        for (int i = 0; i < 1000; i++) {
+          small.add(BigIntegerUtil.randomPositiveNumber(BigInteger.valueOf(5)).intValue());
+        }
+        assertEquals("Missing samples (NON-DETERMINISTIC TEST)", 4, small.size());
+      }
+    } finally {
+      BigIntegerUtil.setRandomnessProvider(original);
+    }
+
+    // every thread has its own generator
+    final ThreadLocalRandomnessProvider provider = new ThreadLocalRandomnessProvider();
+    final SecureRandom[] randoms = new SecureRandom[1];
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        randoms[0] = provider.getRandom();
+      }
+    };
+    thread.start();
+    thread.join();
+    assertNotNull(randoms[0]);
+    assertSame(provider.getRandom(), provider.getRandom());
+    assertNotSame(randoms[0], provider.getRandom());
+
+    try {
+      new ThreadLocalRandomnessProvider("NO-SUCH-ALGORITHM", 16);
+      fail("Successfully created a provider with an unknown algorithm");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
   @Test
   public void testBigIntegerSignum() throws Exception {
     assertTrue(BigIntegerUtil.positive(BigOne));
@@ -94,6 +150,16 @@ public class BigIntegerUtilTest {
         .shiftLeft(512));
     BigInteger nSquared = n.multiply(n);
     assertEquals(BigIntegerUtil.sqrt(nSquared), n);
+    assertEquals(BigIntegerUtil.sqrt(nSquared.subtract(BigInteger.ONE)), n.subtract(BigInteger.ONE));
+    assertEquals(BigIntegerUtil.sqrt(nSquared.add(n.shiftLeft(1))), n);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals((long) Math.floor(Math.sqrt(i)), BigIntegerUtil.sqrt(BigInteger.valueOf(i)).longValue());
+    }
+    try {
+      BigIntegerUtil.sqrt(BigInteger.ONE.negate());
+      fail("Successfully computed the square root of a negative number");
+    } catch (IllegalArgumentException e) {
+    }
   }
   
   @Test
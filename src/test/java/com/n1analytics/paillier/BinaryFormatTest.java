@@ -0,0 +1,254 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.BinaryEncryptedNumberSerializer;
+import com.n1analytics.paillier.io.BinaryFormat;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_1024;
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class BinaryFormatTest {
+
+  @Test
+  public void testVarint() {
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryFormat.MAX_VARINT_LENGTH);
+    int[] values = {0, 1, -1, 63, -64, 64, -65, 8191, -8192, 1 << 20, Integer.MAX_VALUE,
+                    Integer.MIN_VALUE};
+    int[] lengths = {1, 1, 1, 1, 1, 2, 2, 2, 2, 4, 5, 5};
+    for (int i = 0; i < values.length; i++) {
+      buffer.clear();
+      BinaryFormat.writeVarint(buffer, values[i]);
+      assertEquals(lengths[i], buffer.position());
+      buffer.flip();
+      assertEquals(values[i], BinaryFormat.readVarint(buffer));
+      assertFalse(buffer.hasRemaining());
+    }
+    Random rnd = new Random(1);
+    for (int i = 0; i < 1000; i++) {
+      int value = rnd.nextInt();
+      buffer.clear();
+      BinaryFormat.writeVarint(buffer, value);
+      buffer.flip();
+      assertEquals(value, BinaryFormat.readVarint(buffer));
+    }
+    try {
+      BinaryFormat.readVarint(ByteBuffer.wrap(new byte[]{-1, -1, -1, -1, -1, 1}));
+      fail("Successfully read a malformed varint");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testUnsigned() {
+    ByteBuffer buffer = ByteBuffer.allocate(16);
+    for (BigInteger value : new BigInteger[]{BigInteger.ZERO, BigInteger.valueOf(255),
+            BigInteger.ONE.shiftLeft(127), BigInteger.ONE.shiftLeft(128).subtract(BigInteger.ONE)}) {
+      buffer.clear();
+      BinaryFormat.writeUnsigned(buffer, value, 16);
+      assertEquals(16, buffer.position());
+      buffer.flip();
+      assertEquals(value, BinaryFormat.readUnsigned(buffer, 16));
+    }
+    try {
+      buffer.clear();
+      BinaryFormat.writeUnsigned(buffer, BigInteger.ONE.shiftLeft(128), 16);
+      fail("Successfully wrote a number that is too long");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testKeys() {
+    ByteBuffer buffer = ByteBuffer.allocate(4096);
+    BinaryFormat.writePublicKey(buffer, PRIVATE_KEY_1024.getPublicKey());
+    BinaryFormat.writePrivateKey(buffer, PRIVATE_KEY_1024);
+    buffer.flip();
+    assertEquals(BinaryFormat.PUBLIC_KEY, BinaryFormat.peekType(buffer));
+    assertEquals(PRIVATE_KEY_1024.getPublicKey(), BinaryFormat.readPublicKey(buffer));
+    assertEquals(BinaryFormat.PRIVATE_KEY, BinaryFormat.peekType(buffer));
+    PaillierPrivateKey privateKey = BinaryFormat.readPrivateKey(buffer);
+    assertFalse(buffer.hasRemaining());
+    assertEquals(PRIVATE_KEY_1024, privateKey);
+    assertEquals(PRIVATE_KEY_1024.hp, privateKey.hp);
+    assertEquals(PRIVATE_KEY_1024.hq, privateKey.hq);
+    assertEquals(PRIVATE_KEY_1024.pInverse, privateKey.pInverse);
+
+    // a modified modulus does not match the fingerprint
+    buffer.clear();
+    BinaryFormat.writePublicKey(buffer, PRIVATE_KEY_1024.getPublicKey());
+    buffer.put(buffer.position() - 1, (byte) (buffer.get(buffer.position() - 1) ^ 2));
+    buffer.flip();
+    try {
+      BinaryFormat.readPublicKey(buffer);
+      fail("Successfully read a corrupted public key");
+    } catch (IllegalArgumentException e) {
+    }
+
+    buffer.rewind();
+    try {
+      BinaryFormat.readPrivateKey(buffer);
+      fail("Successfully read a public key frame as a private key");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testBatch() {
+    PaillierContext context = PRIVATE_KEY_1024.getPublicKey().createSignedContext();
+    Random rnd = new Random(2);
+    EncryptedNumber[] numbers = new EncryptedNumber[100];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = context.encrypt(rnd.nextDouble() * 1000 - 500).getSafeEncryptedNumber();
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryFormat.maxBatchLength(context, numbers.length));
+    BinaryFormat.writeBatch(buffer, context, numbers);
+    buffer.flip();
+    assertEquals(BinaryFormat.ENCRYPTED_NUMBERS, BinaryFormat.peekType(buffer));
+    EncryptedNumber[] decoded = BinaryFormat.readBatch(buffer, context);
+    assertFalse(buffer.hasRemaining());
+    assertEquals(numbers.length, decoded.length);
+    for (int i = 0; i < numbers.length; i++) {
+      assertEquals(numbers[i].getExponent(), decoded[i].getExponent());
+      assertEquals(numbers[i].decrypt(PRIVATE_KEY_1024).decodeDouble(),
+                   decoded[i].decrypt(PRIVATE_KEY_1024).decodeDouble(), 0);
+      assertEquals(decoded[i].ciphertext, numbers[i].calculateCiphertext());
+      assertTrue(decoded[i].isSafe);
+    }
+    buffer.rewind();
+    CiphertextArray array = BinaryFormat.readCiphertextArray(buffer, context);
+    for (int i = 0; i < numbers.length; i++) {
+      assertTrue(array.isSafe(i));
+      assertEquals(decoded[i], array.get(i));
+    }
+
+    // much smaller than the decimal strings of the JSON format
+    int decimalLength = 0;
+    for (EncryptedNumber number : decoded) {
+      decimalLength += number.ciphertext.toString().length();
+    }
+    assertTrue(buffer.limit() * 2 < decimalLength);
+
+    // the fingerprint of the batch is checked against the context
+    buffer.rewind();
+    try {
+      BinaryFormat.readBatch(buffer, PRIVATE_KEY_1024.getPublicKey().createUnsignedContext());
+      fail("Successfully read a batch with a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+  }
+
+  @Test
+  public void testSerializer() {
+    PaillierContext context = PRIVATE_KEY_512.getPublicKey().createSignedContext();
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryFormat.maxBatchLength(context, 3) + 10);
+    buffer.position(10);
+    BinaryEncryptedNumberSerializer serializer =
+            new BinaryEncryptedNumberSerializer(buffer, context);
+    context.encrypt(1).serialize(serializer);
+    context.encrypt(-2.5).serialize(serializer);
+    assertEquals(2, serializer.getCount());
+    try {
+      PRIVATE_KEY_1024.getPublicKey().createSignedContext().encrypt(3).serialize(serializer);
+      fail("Successfully serialized a number with a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+    serializer.finish();
+    try {
+      context.encrypt(3).serialize(serializer);
+      fail("Successfully serialized a number into a finished batch");
+    } catch (IllegalStateException e) {
+    }
+    buffer.flip();
+    buffer.position(10);
+    EncryptedNumber[] decoded = BinaryFormat.readBatch(buffer, context);
+    assertEquals(2, decoded.length);
+    assertEquals(1, decoded[0].decrypt(PRIVATE_KEY_512).decodeLong());
+    assertEquals(-2.5, decoded[1].decrypt(PRIVATE_KEY_512).decodeDouble(), 0);
+
+    try {
+      BinaryFormat.writeBatch(ByteBuffer.allocate(100).order(ByteOrder.LITTLE_ENDIAN), context);
+      fail("Successfully wrote to a little-endian buffer");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  private interface Reader {
+    void read(ByteBuffer buffer);
+  }
+
+  /**
+   * Checks that every proper prefix of a frame is rejected with an IllegalArgumentException,
+   * both as is and with the frame length adjusted to the prefix.
+   */
+  private static void assertTruncationRejected(ByteBuffer frame, Reader reader) {
+    for (int length = 0; length < frame.limit(); length++) {
+      for (boolean adjust : new boolean[]{false, true}) {
+        ByteBuffer prefix = ByteBuffer.allocate(length);
+        prefix.put((ByteBuffer) frame.duplicate().position(0).limit(length));
+        if (adjust && length >= 4) {
+          prefix.putInt(0, length - 4);
+        }
+        prefix.flip();
+        try {
+          reader.read(prefix);
+          fail("Successfully read a frame truncated to " + length + " bytes");
+        } catch (IllegalArgumentException e) {
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testTruncation() {
+    final PaillierContext context = PRIVATE_KEY_512.getPublicKey().createSignedContext();
+    ByteBuffer buffer = ByteBuffer.allocate(2048);
+    BinaryFormat.writePublicKey(buffer, PRIVATE_KEY_512.getPublicKey());
+    buffer.flip();
+    assertTruncationRejected(buffer, new Reader() {
+      @Override
+      public void read(ByteBuffer buffer) {
+        BinaryFormat.readPublicKey(buffer);
+      }
+    });
+
+    buffer.clear();
+    BinaryFormat.writePrivateKey(buffer, PRIVATE_KEY_512);
+    buffer.flip();
+    assertTruncationRejected(buffer, new Reader() {
+      @Override
+      public void read(ByteBuffer buffer) {
+        BinaryFormat.readPrivateKey(buffer);
+      }
+    });
+
+    buffer.clear();
+    // a large exponent, so that the last varint takes several bytes
+    BinaryFormat.writeBatch(buffer, context, context.encrypt(1), context.encrypt(1e-30));
+    buffer.flip();
+    assertTruncationRejected(buffer, new Reader() {
+      @Override
+      public void read(ByteBuffer buffer) {
+        BinaryFormat.readBatch(buffer, context);
+      }
+    });
+    assertTruncationRejected(buffer, new Reader() {
+      @Override
+      public void read(ByteBuffer buffer) {
+        BinaryFormat.readCiphertextArray(buffer, context);
+      }
+    });
+    assertTruncationRejected(buffer, new Reader() {
+      @Override
+      public void read(ByteBuffer buffer) {
+        BinaryFormat.peekType(buffer);
+        BinaryFormat.readUnsigned(buffer, buffer.limit() + 1);
+      }
+    });
+  }
+}
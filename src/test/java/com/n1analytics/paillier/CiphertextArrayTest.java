@@ -0,0 +1,179 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.BinaryFormat;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+public class CiphertextArrayTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+
+  private static final PaillierContext context = conf.context();
+
+  @Test
+  public void testGetAndSet() {
+    CiphertextArray array = new CiphertextArray(context, 3);
+    assertEquals(3, array.length());
+    assertEquals(BinaryFormat.ciphertextLength(context.getPublicKey()),
+                 array.getCiphertextLength());
+    for (int i = 0; i < array.length(); i++) {
+      assertEquals(BigInteger.ONE, array.getCiphertext(i));
+      assertEquals(0, conf.decrypt(array.get(i)), 0);
+    }
+
+    EncryptedNumber number = context.encrypt(-2.5);
+    array.set(1, number);
+    assertEquals(number.ciphertext, array.getCiphertext(1));
+    assertEquals(number.getExponent(), array.getExponent(1));
+    assertFalse(array.isSafe(1));
+    assertEquals(-2.5, conf.decrypt(array.get(1)), 0);
+    EncryptedNumber safe = context.encrypt(7).getSafeEncryptedNumber();
+    array.set(2, safe);
+    assertTrue(array.isSafe(2));
+    assertEquals(safe, array.toArray()[2]);
+
+    try {
+      array.set(0, conf.publicKey().createUnsignedContext().encrypt(1));
+      fail("Successfully set a number of a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+    try {
+      array.get(3);
+      fail("Successfully got an element past the end");
+    } catch (IndexOutOfBoundsException e) {
+    }
+  }
+
+  @Test
+  public void testPutCiphertext() {
+    CiphertextArray array = new CiphertextArray(context, 2);
+    int length = array.getCiphertextLength();
+    ByteBuffer slot = ByteBuffer.allocate(length);
+    BinaryFormat.writeUnsigned(slot, context.encrypt(5).calculateCiphertext(), length);
+    slot.flip();
+    array.putCiphertext(0, slot, 0, true);
+    assertEquals(5, conf.decrypt(array.get(0)), 0);
+    ByteBuffer copy = ByteBuffer.allocate(length);
+    array.copyCiphertext(0, copy);
+    copy.flip();
+    slot.rewind();
+    assertEquals(slot, copy);
+
+    slot.clear();
+    BinaryFormat.writeUnsigned(slot, context.getPublicKey().getCiphertextModulus(), length);
+    slot.flip();
+    try {
+      array.putCiphertext(1, slot, 0, true);
+      fail("Successfully put a ciphertext that is not less than the modulus");
+    } catch (IllegalArgumentException e) {
+    }
+    assertEquals(BigInteger.ONE, array.getCiphertext(1));
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testKernels() {
+    Random rnd = new Random(1);
+    EncryptedNumber[] numbers = new EncryptedNumber[2500];
+    double expected = 0;
+    for (int i = 0; i < numbers.length; i++) {
+      // a mix of integers and fractions, so that the exponents differ
+      double value = i % 5 == 0 ? rnd.nextInt(1000) / 8.0 : rnd.nextInt(2000) - 1000;
+      expected += value;
+      numbers[i] = context.encrypt(value);
+    }
+    CiphertextArray array = CiphertextArray.of(context, numbers);
+    assertEquals(expected, conf.decrypt(array.sum()), 1e-9);
+    assertEquals(expected, conf.decrypt(array.sum(TEST_POOL)), 1e-9);
+    // the chunks are combined per exponent, so the result is the sequential one
+    assertEquals(array.sum().ciphertext, array.sum(TEST_POOL).ciphertext);
+    assertEquals(array.sum().getExponent(), array.sum(TEST_POOL).getExponent());
+    assertEquals(conf.decrypt(numbers[3]) + conf.decrypt(numbers[4]) + conf.decrypt(numbers[5]),
+                 conf.decrypt(array.sum(3, 6)), 1e-9);
+    assertEquals(0, conf.decrypt(array.sum(7, 7)), 0);
+    assertEquals(0, conf.decrypt(new CiphertextArray(context, 0).sum(TEST_POOL)), 0);
+
+    array.multiply(-3);
+    assertEquals(-3 * expected, conf.decrypt(array.sum()), 1e-9);
+    array.multiply(context.encode(0.5));
+    assertEquals(-1.5 * expected, conf.decrypt(array.sum(TEST_POOL)), 1e-9);
+    assertEquals(-1.5 * conf.decrypt(numbers[10]), conf.decrypt(array.get(10)), 1e-9);
+
+    BigInteger before = array.getCiphertext(0);
+    array.obfuscate(TEST_POOL);
+    for (int i = 0; i < array.length(); i++) {
+      assertTrue(array.isSafe(i));
+    }
+    assertNotEquals(before, array.getCiphertext(0));
+    BigInteger after = array.getCiphertext(0);
+    array.obfuscate();
+    assertEquals(after, array.getCiphertext(0));
+    assertEquals(-1.5 * expected, conf.decrypt(array.sum()), 1e-9);
+  }
+
+  @Category(SlowTests.class)
+  @Test
+  public void testStream() {
+    EncryptedNumber[] numbers = new EncryptedNumber[101];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = context.encrypt(i % 3 == 0 ? i / 4.0 : i);
+    }
+    CiphertextArray array = CiphertextArray.of(context, numbers);
+    Spliterator<EncryptedNumber> spliterator = array.spliterator();
+    assertTrue(spliterator.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+    Spliterator<EncryptedNumber> prefix = spliterator.trySplit();
+    assertEquals(50, prefix.estimateSize());
+    assertEquals(51, spliterator.estimateSize());
+    List<EncryptedNumber> streamed = array.stream().collect(Collectors.toList());
+    assertEquals(numbers.length, streamed.size());
+    for (int i = 0; i < numbers.length; i++) {
+      assertEquals(conf.decrypt(numbers[i]), conf.decrypt(streamed.get(i)), 0);
+    }
+    EncryptedNumber collected =
+            array.stream().parallel().collect(PaillierCollectors.summing(context));
+    assertEquals(conf.decrypt(array.sum()), conf.decrypt(collected), 1e-9);
+  }
+
+  @Test
+  public void testBinaryFormat() {
+    CiphertextArray array = new CiphertextArray(context, 100);
+    for (int i = 0; i < array.length(); i++) {
+      array.set(i, context.encrypt(i / 4.0));
+    }
+    ByteBuffer buffer = ByteBuffer.allocate(
+            BinaryFormat.maxBatchLength(context, array.length()));
+    BinaryFormat.writeBatch(buffer, array);
+    assertTrue(array.isSafe(0));
+    buffer.flip();
+
+    // the two representations share one wire format
+    EncryptedNumber[] numbers = BinaryFormat.readBatch(buffer.duplicate(), context);
+    CiphertextArray read = BinaryFormat.readCiphertextArray(buffer, context);
+    assertFalse(buffer.hasRemaining());
+    assertEquals(array.length(), read.length());
+    for (int i = 0; i < array.length(); i++) {
+      assertEquals(array.getCiphertext(i), read.getCiphertext(i));
+      assertEquals(array.getExponent(i), read.getExponent(i));
+      assertEquals(numbers[i].ciphertext, read.getCiphertext(i));
+      assertEquals(i / 4.0, conf.decrypt(read.get(i)), 0);
+    }
+
+    buffer.rewind();
+    try {
+      BinaryFormat.readCiphertextArray(buffer,
+              conf.publicKey().createUnsignedContext());
+      fail("Successfully read a batch of a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+  }
+}
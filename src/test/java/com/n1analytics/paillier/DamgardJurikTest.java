@@ -0,0 +1,190 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.BinaryFormat;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class DamgardJurikTest {
+
+  private static final PaillierPrivateKey paillierKey = TestConfiguration.PRIVATE_KEY_512;
+  private static final BigInteger modulus = paillierKey.getPublicKey().getModulus();
+  private static final Random rnd = new Random();
+
+  private static DamgardJurikPrivateKey privateKey(int s) {
+    return new DamgardJurikPrivateKey(new DamgardJurikPublicKey(modulus, s), paillierKey.p,
+            paillierKey.q);
+  }
+
+  @Test
+  public void testRawRoundTrip() {
+    for (int s = 1; s <= 4; s++) {
+      DamgardJurikPrivateKey privateKey = privateKey(s);
+      DamgardJurikPublicKey publicKey = privateKey.getPublicKey();
+      BigInteger plaintextModulus = publicKey.getPlaintextModulus();
+      assertEquals(modulus.pow(s), plaintextModulus);
+      assertEquals(modulus.pow(s + 1), publicKey.getCiphertextModulus());
+      BigInteger[] plaintexts = {BigInteger.ZERO, BigInteger.ONE, BigInteger.valueOf(s),
+              plaintextModulus.subtract(BigInteger.ONE), modulus, modulus.add(BigInteger.ONE)};
+      for (BigInteger plaintext : plaintexts) {
+        BigInteger ciphertext = publicKey.raw_encrypt(plaintext);
+        assertTrue(ciphertext.compareTo(publicKey.getCiphertextModulus()) < 0);
+        assertEquals(plaintext.mod(plaintextModulus), privateKey.raw_decrypt(ciphertext));
+      }
+      for (int i = 0; i < TestConfiguration.MAX_ITERATIONS; i++) {
+        BigInteger plaintext = new BigInteger(plaintextModulus.bitLength() + 8, rnd)
+                .mod(plaintextModulus);
+        BigInteger unobfuscated = publicKey.raw_encrypt_without_obfuscation(plaintext);
+        assertEquals(BigInteger.ONE.add(modulus).modPow(plaintext,
+                publicKey.getCiphertextModulus()), unobfuscated);
+        assertEquals(plaintext, privateKey.raw_decrypt(publicKey.raw_obfuscate(unobfuscated)));
+      }
+    }
+  }
+
+  @Test
+  public void testCompatibleWithPaillierForS1() {
+    DamgardJurikPrivateKey privateKey = privateKey(1);
+    PaillierPublicKey paillierPublicKey = paillierKey.getPublicKey();
+    BigInteger plaintext = new BigInteger(500, rnd);
+    BigInteger ciphertext = paillierPublicKey.raw_encrypt(plaintext);
+    assertEquals(plaintext, privateKey.raw_decrypt(ciphertext));
+    assertEquals(plaintext, paillierKey.raw_decrypt(
+            privateKey.getPublicKey().raw_encrypt(plaintext)));
+  }
+
+  @Test
+  public void testContextArithmetic() {
+    for (int s = 2; s <= 3; s++) {
+      DamgardJurikPrivateKey privateKey = privateKey(s);
+      PaillierContext context = privateKey.getPublicKey().createSignedContext();
+      assertEquals(modulus.pow(s).bitLength(), context.getPrecision());
+      assertTrue(context.isFullPrecision());
+
+      BigInteger large = BigInteger.ONE.shiftLeft(modulus.bitLength() * s - 8).negate();
+      EncryptedNumber encryptedLarge = context.encrypt(large);
+      assertEquals(large, privateKey.decrypt(encryptedLarge).decodeBigInteger());
+
+      for (int i = 0; i < TestConfiguration.MAX_ITERATIONS; i++) {
+        double a = rnd.nextDouble() * 1e6 - 5e5;
+        double b = rnd.nextDouble() * 1e3 - 5e2;
+        long c = rnd.nextInt(10000) - 5000;
+        EncryptedNumber encryptedA = context.encrypt(a);
+        EncryptedNumber encryptedB = context.encrypt(b);
+        assertEquals(a + b, privateKey.decrypt(encryptedA.add(encryptedB)).decodeDouble(),
+                1e-6);
+        assertEquals(a - b, privateKey.decrypt(encryptedA.subtract(encryptedB)).decodeDouble(),
+                1e-6);
+        assertEquals(a * c, privateKey.decrypt(encryptedA.multiply(c)).decodeDouble(), 1e-3);
+        assertEquals(b, privateKey.decrypt(encryptedB.obfuscate()).decodeDouble(), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testKeyMismatch() {
+    DamgardJurikPrivateKey privateKey = privateKey(2);
+    assertFalse(paillierKey.getPublicKey().equals(privateKey.getPublicKey()));
+    assertFalse(privateKey.getPublicKey().equals(paillierKey.getPublicKey()));
+    assertFalse(privateKey.getPublicKey().equals(privateKey(3).getPublicKey()));
+    assertEquals(privateKey.getPublicKey(), privateKey(2).getPublicKey());
+
+    EncryptedNumber paillierEncrypted = paillierKey.getPublicKey().createSignedContext().encrypt(1);
+    try {
+      privateKey.decrypt(paillierEncrypted);
+      fail("Successfully decrypted a Paillier ciphertext with a Damgard-Jurik key");
+    } catch (PaillierKeyMismatchException e) {
+    }
+    EncryptedNumber encrypted = privateKey.getPublicKey().createSignedContext().encrypt(1);
+    try {
+      paillierKey.decrypt(encrypted);
+      fail("Successfully decrypted a Damgard-Jurik ciphertext with a Paillier key");
+    } catch (PaillierKeyMismatchException e) {
+    }
+    try {
+      encrypted.add(paillierEncrypted);
+      fail("Successfully added numbers of a Paillier and a Damgard-Jurik context");
+    } catch (PaillierContextMismatchException e) {
+    }
+    try {
+      new DamgardJurikPublicKey(modulus, 0);
+      fail("Successfully created a key with s = 0");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testIdsDistinguishKeys() {
+    PaillierPublicKey paillierPublicKey = paillierKey.getPublicKey();
+    PaillierPublicKey publicKey2 = privateKey(2).getPublicKey();
+    PaillierPublicKey publicKey3 = privateKey(3).getPublicKey();
+    long paillierId = PaillierContextRegistry.getKeyId(paillierPublicKey);
+    assertNotEquals(paillierId, PaillierContextRegistry.getKeyId(publicKey2));
+    assertNotEquals(paillierId, PaillierContextRegistry.getKeyId(privateKey(1).getPublicKey()));
+    assertNotEquals(PaillierContextRegistry.getKeyId(publicKey2),
+            PaillierContextRegistry.getKeyId(publicKey3));
+    assertEquals(PaillierContextRegistry.getKeyId(publicKey2),
+            PaillierContextRegistry.getKeyId(new DamgardJurikPublicKey(modulus, 2)));
+    assertNotEquals(PaillierContextRegistry.getContextId(paillierPublicKey.createSignedContext()),
+            PaillierContextRegistry.getContextId(publicKey2.createSignedContext()));
+    assertNotEquals(BinaryFormat.fingerprint(publicKey2.createSignedContext()),
+            BinaryFormat.fingerprint(publicKey3.createSignedContext()));
+
+    PaillierContext context = publicKey2.createSignedContext();
+    ByteBuffer buffer = ByteBuffer.allocate(BinaryFormat.maxBatchLength(context, 1));
+    BinaryFormat.writeBatch(buffer, context, new EncryptedNumber[]{context.encrypt(1)});
+    buffer.flip();
+    try {
+      BinaryFormat.readBatch(buffer, privateKey(3).getPublicKey().createSignedContext());
+      fail("Successfully read a batch with the context of a different Damgard-Jurik key");
+    } catch (PaillierContextMismatchException e) {
+    }
+
+    final PaillierPublicKey loaded = publicKey2;
+    KeyCache cache = new KeyCache(1 << 20, new KeyCache.Loader() {
+      @Override
+      public PaillierPublicKey load(long keyId) {
+        return loaded;
+      }
+    });
+    try {
+      cache.getPublicKey(paillierId);
+      fail("Successfully loaded a Damgard-Jurik key for the id of a Paillier key");
+    } catch (IllegalArgumentException e) {
+    }
+    assertEquals(publicKey2, cache.getPublicKey(PaillierContextRegistry.getKeyId(publicKey2)));
+  }
+
+  @Test
+  public void testSerialize() {
+    DamgardJurikPublicKey publicKey = new DamgardJurikPublicKey(modulus, 3);
+    final Object[] serialized = new Object[2];
+    publicKey.serialize(new DamgardJurikPublicKey.Serializer() {
+      @Override
+      public void serialize(BigInteger modulus, int s) {
+        serialized[0] = modulus;
+        serialized[1] = s;
+      }
+    });
+    assertEquals(publicKey, new DamgardJurikPublicKey((BigInteger) serialized[0],
+            (Integer) serialized[1]));
+    try {
+      publicKey.serialize(new PaillierPublicKey.Serializer() {
+        @Override
+        public void serialize(BigInteger modulus) {
+        }
+      });
+      fail("Successfully serialized a Damgard-Jurik key without s");
+    } catch (UnsupportedOperationException e) {
+    }
+    try {
+      BinaryFormat.writePublicKey(ByteBuffer.allocate(1024), publicKey);
+      fail("Successfully wrote a Damgard-Jurik key in the binary format");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -0,0 +1,199 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.BinaryFormat;
+import com.n1analytics.paillier.io.EncryptedColumnReader;
+import com.n1analytics.paillier.io.EncryptedColumnWriter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class EncryptedColumnStoreTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+
+  private static final PaillierContext context = conf.context();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testParallelAppendAndScan() throws Exception {
+    File file = folder.newFile();
+    final EncryptedColumnWriter writer = new EncryptedColumnWriter(file, context, 16);
+    List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+    final List<Long> values = Collections.synchronizedList(new ArrayList<Long>());
+    for (int t = 0; t < 10; t++) {
+      final Random rnd = new Random(t);
+      tasks.add(new Callable<Void>() {
+        @Override
+        public Void call() throws IOException {
+          EncryptedNumber[] numbers = new EncryptedNumber[37];
+          for (int i = 0; i < numbers.length; i++) {
+            long value = rnd.nextInt(1000000) - 500000;
+            values.add(value);
+            numbers[i] = context.encrypt(value);
+          }
+          writer.append(numbers);
+          return null;
+        }
+      });
+    }
+    for (Future<Void> future : TEST_POOL.invokeAll(tasks)) {
+      future.get();
+    }
+    assertEquals(370, writer.size());
+    writer.close();
+
+    EncryptedColumnReader reader = new EncryptedColumnReader(file, context);
+    assertEquals(370, reader.size());
+    assertEquals(30, reader.getNumberOfBlocks());
+    List<Long> read = new ArrayList<Long>();
+    long expectedSum = 0;
+    for (long row = 0; row < reader.size(); row++) {
+      read.add(reader.get(row).decrypt(conf.privateKey()).decodeLong());
+      expectedSum += read.get((int) row);
+    }
+    Collections.sort(read);
+    Collections.sort(values);
+    assertEquals(values, read);
+    assertEquals(expectedSum, reader.sum().decrypt(conf.privateKey()).decodeLong());
+    assertEquals(expectedSum, reader.sum(TEST_POOL).decrypt(conf.privateKey()).decodeLong());
+    assertEquals(370, reader.spliterator().getExactSizeIfKnown());
+    assertEquals(expectedSum, reader.stream().parallel()
+            .collect(PaillierCollectors.summing(context)).decrypt(conf.privateKey()).decodeLong());
+    reader.close();
+  }
+
+  @Test
+  public void testSlicesAndMixedExponents() throws IOException {
+    File file = folder.newFile();
+    EncryptedColumnWriter writer = new EncryptedColumnWriter(file, context, 8);
+    Random rnd = new Random(1);
+    double[] values = new double[50];
+    EncryptedNumber[] numbers = new EncryptedNumber[values.length];
+    for (int i = 0; i < values.length; i++) {
+      // a mix of integers and fractions, so the exponents differ within blocks
+      values[i] = i % 3 == 0 ? rnd.nextInt(1000) : rnd.nextInt(1000) / 4.0;
+      numbers[i] = context.encrypt(values[i]).getSafeEncryptedNumber();
+    }
+    writer.append(numbers);
+    writer.close();
+
+    EncryptedColumnReader reader = new EncryptedColumnReader(file, context);
+    assertEquals(7, reader.getNumberOfBlocks());
+    assertEquals(2, reader.getBlockRows(6));
+    assertEquals(48, reader.getBlockStart(6));
+    int ciphertextLength = BinaryFormat.ciphertextLength(context.getPublicKey());
+    for (int block = 0; block < reader.getNumberOfBlocks(); block++) {
+      ByteBuffer ciphertexts = reader.getCiphertextColumn(block);
+      IntBuffer exponents = reader.getExponentColumn(block);
+      assertEquals(reader.getBlockRows(block) * ciphertextLength, ciphertexts.remaining());
+      assertEquals(reader.getBlockRows(block), exponents.remaining());
+      assertTrue(ciphertexts.isReadOnly());
+      for (int i = 0; i < reader.getBlockRows(block); i++) {
+        EncryptedNumber expected = numbers[(int) reader.getBlockStart(block) + i];
+        assertEquals(expected.calculateCiphertext(),
+                     BinaryFormat.readUnsigned(ciphertexts, ciphertextLength));
+        assertEquals(expected.getExponent(), exponents.get(i));
+        assertTrue(reader.getMinExponent(block) <= exponents.get(i));
+        assertTrue(reader.getMaxExponent(block) >= exponents.get(i));
+      }
+    }
+    for (int[] range : new int[][]{{0, 50}, {3, 4}, {5, 21}, {8, 16}, {49, 50}, {20, 20}}) {
+      double expected = 0;
+      for (int i = range[0]; i < range[1]; i++) {
+        expected += values[i];
+      }
+      assertEquals(expected, reader.sum(range[0], range[1]).decrypt(conf.privateKey())
+                                   .decodeDouble(), 1e-9);
+    }
+    try {
+      reader.get(50);
+      fail("Successfully read a row past the end");
+    } catch (IndexOutOfBoundsException e) {
+    }
+    reader.close();
+  }
+
+  @Test
+  public void testInvalidFiles() throws IOException {
+    File file = folder.newFile();
+    EncryptedColumnWriter writer = new EncryptedColumnWriter(file, context);
+    writer.append(context.encrypt(1), context.encrypt(2));
+    writer.close();
+    assertEquals(BigInteger.valueOf(3), new EncryptedColumnReader(file, context).sum()
+            .decrypt(conf.privateKey()).decodeBigInteger());
+
+    try {
+      new EncryptedColumnReader(file, conf.publicKey().createUnsignedContext());
+      fail("Successfully read a column file with a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    raf.setLength(raf.length() - 1);
+    raf.close();
+    try {
+      new EncryptedColumnReader(file, context);
+      fail("Successfully read a truncated column file");
+    } catch (IOException e) {
+    }
+
+    try {
+      new EncryptedColumnReader(folder.newFile(), context);
+      fail("Successfully read an empty column file");
+    } catch (IOException e) {
+    }
+  }
+
+  @Test
+  public void testFailedAppend() throws IOException {
+    File file = folder.newFile();
+    EncryptedColumnWriter writer = new EncryptedColumnWriter(file, context, 2);
+    writer.append(context.encrypt(1), context.encrypt(2));
+    // an interrupt fails the block write and closes the channel of the file
+    Thread.currentThread().interrupt();
+    try {
+      writer.append(context.encrypt(3));
+      fail("Successfully appended while interrupted");
+    } catch (ClosedByInterruptException e) {
+    } finally {
+      assertTrue(Thread.interrupted());
+    }
+    try {
+      writer.append(context.encrypt(4));
+      fail("Successfully appended after a failed append");
+    } catch (IOException e) {
+    }
+    try {
+      writer.close();
+      fail("Successfully closed a writer with a failed append");
+    } catch (IOException e) {
+    }
+    // no header was written, so the file is rejected rather than read with a missing block
+    try {
+      new EncryptedColumnReader(file, context);
+      fail("Successfully read a column file with a failed append");
+    } catch (IOException e) {
+    }
+  }
+}
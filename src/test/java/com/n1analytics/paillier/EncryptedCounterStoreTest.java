@@ -0,0 +1,227 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.EncryptedCounterStore;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.ClosedByInterruptException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class EncryptedCounterStoreTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+
+  private static final PaillierContext context = conf.context();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private static double value(EncryptedCounterStore store, String id) {
+    return store.get(id).decrypt(conf.privateKey()).decodeDouble();
+  }
+
+  @Test
+  public void testIncrementAndRecover() throws IOException {
+    File directory = folder.newFolder();
+    EncryptedCounterStore store = EncryptedCounterStore.open(directory, context);
+    store.increment("alice", context.encrypt(10));
+    store.increment("alice", context.encrypt(2.5));
+    store.increment("bob", context.encrypt(-3));
+    assertNull(store.get("alice"));
+    assertEquals(2, store.getPendingCount());
+    long emptyLog = store.getLogLength();
+
+    // the increments of alice collapse into one log record
+    assertEquals(2, store.commit());
+    assertEquals(0, store.getPendingCount());
+    assertEquals(0, store.commit());
+    assertEquals(12.5, value(store, "alice"), 0);
+    assertEquals(-3, value(store, "bob"), 0);
+    long oneCommit = store.getLogLength();
+
+    store.increment("bob", context.encrypt(1));
+    store.increment("carol", context.encrypt(7));
+    store.commit();
+    assertEquals(2 * oneCommit - emptyLog, store.getLogLength());
+    store.increment("carol", context.encrypt(1));
+    store.close();
+
+    // recover from the log alone, close committed carol's last increment
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(3, store.size());
+    assertEquals(12.5, value(store, "alice"), 0);
+    assertEquals(-2, value(store, "bob"), 0);
+    assertEquals(8, value(store, "carol"), 0);
+
+    // recover from a snapshot and the log on top of it
+    store.snapshot();
+    assertEquals(emptyLog, store.getLogLength());
+    store.increment("alice", context.encrypt(-0.5));
+    store.commit();
+    store.close();
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(12, value(store, "alice"), 0);
+    assertEquals(8, value(store, "carol"), 0);
+    assertEquals(3, store.getIds().size());
+    store.close();
+
+    try {
+      EncryptedCounterStore.open(directory,
+              conf.publicKey().createUnsignedContext());
+      fail("Successfully opened a store with a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+  }
+
+  @Test
+  public void testFailedCommit() throws IOException {
+    File directory = folder.newFolder();
+    EncryptedCounterStore store = EncryptedCounterStore.open(directory, context);
+    store.increment("alice", context.encrypt(1));
+    store.commit();
+    long logLength = store.getLogLength();
+    store.increment("alice", context.encrypt(2));
+    store.increment("bob", context.encrypt(3));
+    // an interrupt fails the log write and closes the channel of the log
+    Thread.currentThread().interrupt();
+    try {
+      store.commit();
+      fail("Successfully committed while interrupted");
+    } catch (ClosedByInterruptException e) {
+    } finally {
+      assertTrue(Thread.interrupted());
+    }
+    // the batch is pending again and the log is back to the previous commit
+    assertEquals(2, store.getPendingCount());
+    assertEquals(logLength, store.getLogLength());
+    assertEquals(1, value(store, "alice"), 0);
+    assertNull(store.get("bob"));
+
+    store.increment("alice", context.encrypt(4));
+    assertEquals(2, store.commit());
+    assertEquals(7, value(store, "alice"), 0);
+    assertEquals(3, value(store, "bob"), 0);
+    store.close();
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(7, value(store, "alice"), 0);
+    assertEquals(3, value(store, "bob"), 0);
+    store.close();
+  }
+
+  @Test
+  public void testFailedSnapshot() throws IOException {
+    File directory = folder.newFolder();
+    EncryptedCounterStore store = EncryptedCounterStore.open(directory, context, 1);
+    // a directory in the way of the temporary snapshot file fails every snapshot
+    File temporary = new File(directory, "snapshot.tmp");
+    assertTrue(temporary.mkdir());
+    store.increment("alice", context.encrypt(5));
+    assertEquals(1, store.commit());
+    assertFalse(new File(directory, "snapshot").exists());
+    assertEquals(5, value(store, "alice"), 0);
+    long logLength = store.getLogLength();
+
+    // the next commit takes the snapshot once it can be written
+    assertTrue(temporary.delete());
+    store.increment("alice", context.encrypt(1));
+    store.increment("bob", context.encrypt(2));
+    assertEquals(2, store.commit());
+    assertTrue(new File(directory, "snapshot").exists());
+    assertTrue(store.getLogLength() < logLength);
+    store.close();
+
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(6, value(store, "alice"), 0);
+    assertEquals(2, value(store, "bob"), 0);
+    store.close();
+  }
+
+  @Test
+  public void testTornCommit() throws IOException {
+    File directory = folder.newFolder();
+    EncryptedCounterStore store = EncryptedCounterStore.open(directory, context);
+    store.increment("a", context.encrypt(1));
+    store.commit();
+    store.increment("a", context.encrypt(1));
+    store.increment("b", context.encrypt(5));
+    store.commit();
+    store.close();
+
+    // cut the last commit short, as if the process died during the write
+    File log = new File(directory, "log");
+    RandomAccessFile raf = new RandomAccessFile(log, "rw");
+    raf.setLength(raf.length() - 20);
+    raf.close();
+
+    // the whole second commit is lost
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(1, store.size());
+    assertEquals(1, value(store, "a"), 0);
+    store.increment("c", context.encrypt(3));
+    store.commit();
+    store.close();
+    store = EncryptedCounterStore.open(directory, context);
+    assertEquals(2, store.size());
+    assertEquals(3, value(store, "c"), 0);
+    store.close();
+  }
+
+  @Test
+  public void testConcurrentIncrementsAndAutomaticSnapshots() throws Exception {
+    File directory = folder.newFolder();
+    final EncryptedCounterStore store = EncryptedCounterStore.open(directory, context, 4096);
+    final int accounts = 20;
+    List<Callable<long[]>> tasks = new ArrayList<Callable<long[]>>();
+    for (int t = 0; t < 4; t++) {
+      final Random rnd = new Random(t);
+      tasks.add(new Callable<long[]>() {
+        @Override
+        public long[] call() throws IOException {
+          long[] totals = new long[accounts];
+          for (int i = 0; i < 200; i++) {
+            int account = rnd.nextInt(accounts);
+            long amount = rnd.nextInt(1000) - 300;
+            totals[account] += amount;
+            store.increment("account-" + account, context.encrypt(amount));
+            if (i % 25 == 0) {
+              store.commit();
+            }
+          }
+          store.commit();
+          return totals;
+        }
+      });
+    }
+    long[] expected = new long[accounts];
+    for (Future<long[]> future : TEST_POOL.invokeAll(tasks)) {
+      long[] totals = future.get();
+      for (int i = 0; i < accounts; i++) {
+        expected[i] += totals[i];
+      }
+    }
+    assertTrue(new File(directory, "snapshot").exists());
+    assertTrue(store.getLogLength() <= 4096 + 20 * 200);
+    store.close();
+
+    EncryptedCounterStore recovered = EncryptedCounterStore.open(directory, context);
+    for (int i = 0; i < accounts; i++) {
+      if (expected[i] != 0 || recovered.get("account-" + i) != null) {
+        assertEquals(expected[i], value(recovered, "account-" + i), 0);
+      }
+    }
+    recovered.close();
+  }
+}
@@ -0,0 +1,110 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class EncryptedDistanceScorerTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+  private static final PaillierContext context = conf.context();
+  private static final Random rnd = new Random();
+
+  private static BigInteger squaredDistance(long[] a, long[] b) {
+    BigInteger sum = BigInteger.ZERO;
+    for (int j = 0; j < a.length; j++) {
+      BigInteger diff = BigInteger.valueOf(a[j]).subtract(BigInteger.valueOf(b[j]));
+      sum = sum.add(diff.multiply(diff));
+    }
+    return sum;
+  }
+
+  private static EncryptedDistanceScorer scorer(long[] query, int maxValueBits) {
+    return scorer(context, query, maxValueBits);
+  }
+
+  private static EncryptedDistanceScorer scorer(PaillierContext context, long[] query,
+                                                int maxValueBits) {
+    EncryptedNumber[] encryptedQuery = new EncryptedNumber[query.length];
+    long norm = 0;
+    for (int j = 0; j < query.length; j++) {
+      encryptedQuery[j] = context.encrypt(BigInteger.valueOf(query[j])).obfuscate();
+      norm += query[j] * query[j];
+    }
+    return new EncryptedDistanceScorer(encryptedQuery,
+            context.encrypt(BigInteger.valueOf(norm)).obfuscate(), maxValueBits, TEST_POOL);
+  }
+
+  @Test
+  public void testScore() {
+    int dimensions = 16;
+    long[] query = new long[dimensions];
+    for (int j = 0; j < dimensions; j++) {
+      query[j] = rnd.nextInt(2001) - 1000;
+    }
+    EncryptedDistanceScorer scorer = scorer(query, 12);
+    assertEquals(dimensions, scorer.getDimensions());
+
+    long[][] corpus = new long[600][dimensions];
+    for (long[] row : corpus) {
+      for (int j = 0; j < dimensions; j++) {
+        row[j] = rnd.nextInt(4001) - 2000;
+      }
+    }
+    // one row with values beyond maxValueBits
+    corpus[7][3] = 1L << 40;
+    corpus[8][5] = -(1L << 40);
+
+    EncryptedNumber[] scores = scorer.score(corpus);
+    assertEquals(corpus.length, scores.length);
+    for (int i = 0; i < corpus.length; i++) {
+      assertTrue(scores[i].isSafe);
+      assertEquals(squaredDistance(query, corpus[i]),
+              scores[i].decrypt(conf.privateKey()).decodeBigInteger());
+    }
+    assertEquals(0, conf.decrypt(scorer.score(query)), 0);
+  }
+
+  @Test
+  public void testWrongDimensions() {
+    EncryptedDistanceScorer scorer = scorer(new long[]{1, 2, 3}, 8);
+    try {
+      scorer.score(new long[]{1, 2});
+      fail("Successfully scored a row with the wrong number of dimensions");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testFractionalQuery() {
+    try {
+      new EncryptedDistanceScorer(new EncryptedNumber[]{context.encrypt(0.5)},
+              context.encrypt(0.25), 8, TEST_POOL);
+      fail("Successfully created a scorer for a fractional query");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testDamgardJurikKey() {
+    PaillierPrivateKey privateKey = conf.privateKey();
+    DamgardJurikPrivateKey djPrivateKey = new DamgardJurikPrivateKey(
+            new DamgardJurikPublicKey(privateKey.getPublicKey().getModulus(), 2), privateKey.p,
+            privateKey.q);
+    PaillierContext djContext = djPrivateKey.getPublicKey().createSignedContext();
+    long[] query = {5, -1000, 70000};
+    EncryptedDistanceScorer scorer = scorer(djContext, query, 20);
+    long[][] corpus = {{0, 0, 0}, {-5, 1000, -70000}, {1L << 40, 3, 4}};
+    EncryptedNumber[] scores = scorer.score(corpus);
+    for (int i = 0; i < corpus.length; i++) {
+      assertEquals(squaredDistance(query, corpus[i]),
+              djPrivateKey.decrypt(scores[i]).decodeBigInteger());
+    }
+  }
+}
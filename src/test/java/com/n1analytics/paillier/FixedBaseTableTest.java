@@ -0,0 +1,85 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FixedBaseTableTest {
+
+  private static final Random rnd = new Random();
+
+  @Test
+  public void testModPow() {
+    BigInteger modulus = TestConfiguration.PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BigInteger base = new BigInteger(1000, rnd).mod(modulus);
+    for (int windowBits : new int[]{1, 3, 6, 8}) {
+      FixedBaseTable table = new FixedBaseTable(base, modulus, 512, windowBits);
+      for (int i = 0; i < TestConfiguration.MAX_ITERATIONS; i++) {
+        BigInteger exponent = new BigInteger(1 + rnd.nextInt(512), rnd);
+        assertEquals(base.modPow(exponent, modulus), table.modPow(exponent));
+      }
+      assertEquals(BigInteger.ONE, table.modPow(BigInteger.ZERO));
+      assertEquals(base, table.modPow(BigInteger.ONE));
+    }
+  }
+
+  @Test
+  public void testModPowOutOfTableRange() {
+    BigInteger modulus = TestConfiguration.PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BigInteger base = new BigInteger(1000, rnd).mod(modulus);
+    FixedBaseTable table = new FixedBaseTable(base, modulus, 64, 4);
+    BigInteger exponent = new BigInteger(200, rnd).setBit(199);
+    assertEquals(base.modPow(exponent, modulus), table.modPow(exponent));
+    BigInteger unit = TestConfiguration.PRIVATE_KEY_512.getPublicKey().raw_encrypt(BigInteger.TEN);
+    table = new FixedBaseTable(unit, modulus, 64, 4);
+    assertEquals(unit.modPow(BigInteger.valueOf(-12345), modulus),
+            table.modPow(BigInteger.valueOf(-12345)));
+  }
+
+  @Test
+  public void testMultiModPow() {
+    PaillierPublicKey publicKey = TestConfiguration.PRIVATE_KEY_512.getPublicKey();
+    BigInteger modulus = publicKey.getModulusSquared();
+    FixedBaseTable[] tables = new FixedBaseTable[20];
+    BigInteger[] exponents = new BigInteger[tables.length];
+    BigInteger expected = BigInteger.ONE;
+    for (int k = 0; k < tables.length; k++) {
+      BigInteger base = publicKey.raw_encrypt(BigInteger.valueOf(k));
+      tables[k] = new FixedBaseTable(base, modulus, 32, 5);
+      // include zero, negative and too long exponents
+      exponents[k] = k == 0 ? BigInteger.ZERO : new BigInteger(k % 7 == 0 ? 40 : 32, rnd);
+      if (k % 5 == 0) {
+        exponents[k] = exponents[k].negate();
+      }
+      expected = expected.multiply(base.modPow(exponents[k], modulus)).mod(modulus);
+    }
+    assertEquals(expected, FixedBaseTable.multiModPow(tables, exponents));
+  }
+
+  @Test
+  public void testIllegalParameters() {
+    try {
+      new FixedBaseTable(BigInteger.TEN, BigInteger.ZERO, 64, 4);
+      fail("Successfully created a table with a zero modulus");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new FixedBaseTable(BigInteger.TEN, BigInteger.valueOf(101), 64, 0);
+      fail("Successfully created a table with an empty window");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testOptimalWindowBits() {
+    int w = FixedBaseTable.optimalWindowBits(2048);
+    for (int other = 1; other <= FixedBaseTable.MAX_WINDOW_BITS; other++) {
+      assertTrue(FixedBaseTable.exponentiationCost(2048, w)
+              <= FixedBaseTable.exponentiationCost(2048, other));
+    }
+  }
+}
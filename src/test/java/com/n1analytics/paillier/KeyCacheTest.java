@@ -0,0 +1,160 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class KeyCacheTest {
+
+  /**
+   * A loader over a fixed set of tenant keys, counting the loads.
+   */
+  private static class MapLoader implements KeyCache.Loader {
+
+    final Map<Long, PaillierPublicKey> keys = new HashMap<Long, PaillierPublicKey>();
+
+    int loads = 0;
+
+    long add(PaillierPublicKey publicKey) {
+      long id = PaillierContextRegistry.getKeyId(publicKey);
+      keys.put(id, publicKey);
+      return id;
+    }
+
+    @Override
+    public PaillierPublicKey load(long keyId) {
+      loads++;
+      return keys.get(keyId);
+    }
+  }
+
+  private static PaillierPublicKey randomKey(Random rnd) {
+    return new PaillierPublicKey(new BigInteger(512, rnd).setBit(511).setBit(0));
+  }
+
+  @Test
+  public void testLookupAndCounters() {
+    MapLoader loader = new MapLoader();
+    long id = loader.add(new PaillierPublicKey(PRIVATE_KEY_512.getPublicKey().getModulus()));
+    KeyCache cache = new KeyCache(1 << 20, loader);
+
+    PaillierContext context = cache.getSignedContext(id);
+    assertSame(PRIVATE_KEY_512.getPublicKey().createSignedContext(), context);
+    assertEquals(PRIVATE_KEY_512.getPublicKey(), cache.getPublicKey(id));
+    assertSame(PRIVATE_KEY_512.getPublicKey().createUnsignedContext(),
+               cache.getUnsignedContext(id));
+    assertSame(PRIVATE_KEY_512.getPublicKey().createSignedContext(100),
+               cache.getContext(id, true, 100, 16));
+    assertEquals(1, loader.loads);
+    assertEquals(1, cache.getMisses());
+    assertEquals(3, cache.getHits());
+    assertEquals(1, cache.getLoads());
+    assertEquals(1, cache.size());
+    assertEquals(3, context.encrypt(3).decrypt(PRIVATE_KEY_512).decodeLong());
+
+    // the contexts are held by the cache and count towards its bound
+    long bytes = cache.getBytes();
+    assertSame(context, cache.getSignedContext(id));
+    assertEquals(bytes, cache.getBytes());
+    cache.getContext(id, false, 64, 16);
+    assertTrue(cache.getBytes() > bytes);
+
+    try {
+      cache.getPublicKey(id + 1);
+      fail("Successfully looked up an unknown key");
+    } catch (IllegalArgumentException e) {
+    }
+    assertEquals(2, cache.getMisses());
+
+    cache.invalidate(id);
+    assertEquals(0, cache.size());
+    assertEquals(0, cache.getBytes());
+    cache.getPublicKey(id);
+    assertEquals(3, loader.loads);
+  }
+
+  @Test
+  public void testEvictionBySize() {
+    Random rnd = new Random(1);
+    MapLoader loader = new MapLoader();
+    long[] ids = new long[10];
+    for (int i = 0; i < ids.length; i++) {
+      ids[i] = loader.add(randomKey(rnd));
+    }
+    KeyCache cache = new KeyCache(1, loader);
+    cache.getPublicKey(ids[0]);
+    long keyBytes = cache.getBytes();
+    assertTrue(keyBytes >= 512 / 8 * 3);
+
+    // room for four keys
+    cache = new KeyCache(4 * keyBytes, loader);
+    for (long id : ids) {
+      cache.getPublicKey(id);
+    }
+    assertEquals(4, cache.size());
+    assertEquals(6, cache.getEvictions());
+    assertEquals(4 * keyBytes, cache.getBytes());
+
+    // a hit makes a key the most recently used one, so loading another evicts the next one
+    cache.getPublicKey(ids[6]);
+    cache.getPublicKey(ids[0]);
+    assertEquals(Long.valueOf(ids[8]), cache.getKeyIds().get(0));
+    assertEquals(Long.valueOf(ids[6]), cache.getKeyIds().get(2));
+    assertEquals(Long.valueOf(ids[0]), cache.getKeyIds().get(3));
+    assertFalse(cache.getKeyIds().contains(ids[7]));
+  }
+
+  @Test
+  public void testTables() {
+    Random rnd = new Random(2);
+    MapLoader loader = new MapLoader();
+    long first = loader.add(randomKey(rnd));
+    long second = loader.add(randomKey(rnd));
+    KeyCache cache = new KeyCache(1 << 20, loader);
+    cache.getPublicKey(second);
+    cache.getPublicKey(first);
+    long keyBytes = cache.getBytes() / 2;
+
+    PaillierPublicKey publicKey = cache.getPublicKey(first);
+    BigInteger base = new BigInteger(1000, rnd).mod(publicKey.getModulusSquared());
+    FixedBaseTable table = cache.getTable(first, base, 512, 4);
+    assertSame(table, cache.getTable(first, base, 512, 4));
+    assertNotSame(table, cache.getTable(first, base, 512, 5));
+    BigInteger exponent = new BigInteger(500, rnd);
+    assertEquals(base.modPow(exponent, publicKey.getModulusSquared()), table.modPow(exponent));
+    assertTrue(cache.getBytes() > 2 * keyBytes + table.getPowers().length * 128);
+
+    // the tables of the first key push the second key out of a smaller cache
+    KeyCache small = new KeyCache(3 * keyBytes, loader);
+    small.getPublicKey(second);
+    small.getTable(first, base, 512, 4);
+    assertEquals(1, small.size());
+    assertEquals(1, small.getEvictions());
+    assertEquals(Long.valueOf(first), small.getKeyIds().get(0));
+  }
+
+  @Test
+  public void testDamgardJurikTables() {
+    DamgardJurikPublicKey publicKey =
+            new DamgardJurikPublicKey(PRIVATE_KEY_512.getPublicKey().getModulus(), 2);
+    KeyCache cache = new KeyCache(1 << 20, new MapLoader());
+    long id = cache.put(publicKey);
+    assertSame(publicKey, cache.getPublicKey(id));
+    assertEquals(publicKey.getPlaintextModulus().bitLength(),
+                 cache.getSignedContext(id).getPrecision());
+
+    // tables work modulo the ciphertext modulus n^3, not n^2
+    BigInteger base = BigInteger.valueOf(7);
+    FixedBaseTable table = cache.getTable(id, base, 100, 4);
+    assertEquals(publicKey.getCiphertextModulus(), table.getModulus());
+    BigInteger exponent = BigInteger.ONE.shiftLeft(99).add(BigInteger.valueOf(12345));
+    assertEquals(base.modPow(exponent, publicKey.getCiphertextModulus()), table.modPow(exponent));
+  }
+}
@@ -0,0 +1,158 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class KeyPoolTest {
+
+  private static void awaitDepth(KeyPool pool, int modulusLength, int depth)
+          throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 60000;
+    while (pool.getDepth(modulusLength) < depth) {
+      assertTrue("pool did not refill in time", System.currentTimeMillis() < deadline);
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testFillAndTake() throws Exception {
+    KeyPool pool = new KeyPool(new int[]{128, 256}, 3, 1);
+    try {
+      awaitDepth(pool, 128, 3);
+      awaitDepth(pool, 256, 3);
+      assertEquals(6, pool.getKeysGenerated());
+      assertTrue(pool.getRefillRate() > 0);
+
+      Set<PaillierPrivateKey> handedOut = new HashSet<PaillierPrivateKey>();
+      for (int i = 0; i < 10; i++) {
+        PaillierPrivateKey key = pool.take(256);
+        assertEquals(256, key.getPublicKey().getModulus().bitLength());
+        assertTrue("key handed out twice", handedOut.add(key));
+      }
+      PaillierPrivateKey key = pool.poll(128);
+      assertNotNull(key);
+      assertEquals(128, key.getPublicKey().getModulus().bitLength());
+      assertEquals(11, pool.getKeysTaken());
+
+      awaitDepth(pool, 256, 3);
+      awaitDepth(pool, 128, 3);
+      assertEquals(17, pool.getKeysGenerated());
+    } finally {
+      pool.shutdown();
+    }
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Rejects the first {@code failures} tasks, then runs tasks on a single thread.
+   */
+  private static final class FailingExecutor extends AbstractExecutorService {
+
+    private final ExecutorService delegate = Executors.newSingleThreadExecutor();
+
+    private final AtomicInteger failures;
+
+    FailingExecutor(int failures) {
+      this.failures = new AtomicInteger(failures);
+    }
+
+    @Override
+    public void execute(Runnable command) {
+      if (failures.getAndDecrement() > 0) {
+        throw new RejectedExecutionException("injected failure");
+      }
+      delegate.execute(command);
+    }
+
+    @Override
+    public void shutdown() {
+      delegate.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+      return delegate.shutdownNow();
+    }
+
+    @Override
+    public boolean isShutdown() {
+      return delegate.isShutdown();
+    }
+
+    @Override
+    public boolean isTerminated() {
+      return delegate.isTerminated();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+      return delegate.awaitTermination(timeout, unit);
+    }
+  }
+
+  @Test
+  public void testGeneratorFailure() throws Exception {
+    KeyPool pool = new KeyPool(new int[]{128}, 2, new FailingExecutor(3));
+    try {
+      // the refill backs off and retries instead of dying
+      PaillierPrivateKey key = pool.take(128);
+      assertEquals(128, key.getPublicKey().getModulus().bitLength());
+      assertTrue(pool.getRefillFailure() instanceof RejectedExecutionException);
+      awaitDepth(pool, 128, 2);
+      assertEquals(3, pool.getKeysGenerated());
+    } finally {
+      pool.shutdown();
+    }
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testShutdown() throws Exception {
+    KeyPool pool = new KeyPool(new int[]{128}, 2, 2);
+    pool.shutdown();
+    assertTrue(pool.isShutdown());
+    assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    assertEquals(0, pool.getDepth(128));
+    assertNull(pool.poll(128));
+    try {
+      pool.take(128);
+      fail("Successfully took a key from a pool that is shut down");
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testIllegalArguments() {
+    try {
+      new KeyPool(new int[]{100}, 1, 1);
+      fail("Successfully created a pool with an illegal modulus length");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new KeyPool(new int[]{128}, 0, 1);
+      fail("Successfully created a pool without keys");
+    } catch (IllegalArgumentException e) {
+    }
+    KeyPool pool = new KeyPool(new int[]{128}, 1, 1);
+    try {
+      pool.poll(256);
+      fail("Successfully polled a modulus length the pool does not have");
+    } catch (IllegalArgumentException e) {
+    } finally {
+      pool.shutdown();
+    }
+  }
+}
@@ -0,0 +1,154 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.FixedBaseTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_1024;
+import static org.junit.Assert.*;
+
+public class KeySnapshotTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testPrivateKeySnapshot() throws IOException {
+    PaillierPrivateKey privateKey = PRIVATE_KEY_1024;
+    PaillierPublicKey publicKey = privateKey.getPublicKey();
+    FixedBaseTable table1 = new FixedBaseTable(BigInteger.valueOf(12345),
+            publicKey.getModulusSquared(), 1024, 4);
+    FixedBaseTable table2 = new FixedBaseTable(publicKey.getGenerator(),
+            publicKey.getModulusSquared(), 100, 7);
+    File file = folder.newFile();
+    KeySnapshot.write(file, privateKey, table1, table2);
+
+    KeySnapshot snapshot = KeySnapshot.open(file);
+    assertTrue(snapshot.hasPrivateKey());
+    PaillierPrivateKey restored = snapshot.getPrivateKey();
+    assertSame(restored, snapshot.getPrivateKey());
+    assertSame(restored.getPublicKey(), snapshot.getPublicKey());
+    assertEquals(privateKey, restored);
+    assertEquals(publicKey.getModulusSquared(), restored.getPublicKey().getModulusSquared());
+    assertEquals(privateKey.hp, restored.hp);
+    assertEquals(privateKey.hq, restored.hq);
+    assertEquals(privateKey.pInverse, restored.pInverse);
+    BigInteger ciphertext = publicKey.raw_encrypt(BigInteger.valueOf(42));
+    assertEquals(BigInteger.valueOf(42), restored.raw_decrypt(ciphertext));
+
+    assertEquals(2, snapshot.getNumberOfTables());
+    FixedBaseTable restored1 = snapshot.getTable(0);
+    FixedBaseTable restored2 = snapshot.getTable(1);
+    assertSame(restored1, snapshot.getTable(0));
+    assertEquals(table1.getBase(), restored1.getBase());
+    assertEquals(table1.getModulus(), restored1.getModulus());
+    assertEquals(table1.getMaxExponentBits(), restored1.getMaxExponentBits());
+    assertEquals(table1.getWindowBits(), restored1.getWindowBits());
+    assertArrayEquals(table2.getPowers(), restored2.getPowers());
+    BigInteger exponent = new BigInteger(1000, new Random(1));
+    assertEquals(table1.modPow(exponent), restored1.modPow(exponent));
+  }
+
+  @Test
+  public void testPublicKeySnapshot() throws IOException {
+    PaillierPublicKey publicKey = PRIVATE_KEY_1024.getPublicKey();
+    File file = folder.newFile();
+    KeySnapshot.write(file, publicKey);
+    KeySnapshot snapshot = KeySnapshot.open(file);
+    assertEquals(publicKey, snapshot.getPublicKey());
+    assertFalse(snapshot.hasPrivateKey());
+    assertEquals(0, snapshot.getNumberOfTables());
+    try {
+      snapshot.getPrivateKey();
+      fail("Successfully read a private key from a public key snapshot");
+    } catch (IllegalStateException e) {
+    }
+  }
+
+  @Test
+  public void testOverwrite() throws IOException {
+    File file = folder.newFile();
+    KeySnapshot.write(file, PRIVATE_KEY_1024);
+    KeySnapshot previous = KeySnapshot.open(file);
+    KeySnapshot.write(file, PRIVATE_KEY_1024.getPublicKey());
+    assertFalse(KeySnapshot.open(file).hasPrivateKey());
+    assertFalse(new File(file.getPath() + ".tmp").exists());
+    // the file is replaced rather than overwritten, so an open snapshot keeps its content
+    assertEquals(PRIVATE_KEY_1024, previous.getPrivateKey());
+  }
+
+  @Test
+  public void testInconsistentModulusSquared() {
+    BigInteger modulus = PRIVATE_KEY_1024.getPublicKey().getModulus();
+    try {
+      new PaillierPublicKey(modulus, modulus.multiply(modulus).add(BigInteger.ONE));
+      fail("Successfully created a key with a wrong square of the modulus");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testUnsupportedKeys() throws IOException {
+    DamgardJurikPrivateKey key = DamgardJurikPrivateKey.create(256, 2);
+    try {
+      KeySnapshot.write(folder.newFile(), key.getPublicKey());
+      fail("Successfully wrote a snapshot of a Damgard-Jurik key");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testCorruption() throws IOException {
+    File file = folder.newFile();
+    KeySnapshot.write(file, PRIVATE_KEY_1024);
+    long length = file.length();
+
+    // a corrupted entry is only detected when it is decoded
+    flipByte(file, length - 10);
+    KeySnapshot snapshot = KeySnapshot.open(file);
+    assertEquals(PRIVATE_KEY_1024.getPublicKey(), snapshot.getPublicKey());
+    try {
+      snapshot.getPrivateKey();
+      fail("Successfully decoded a corrupted private key");
+    } catch (PaillierRuntimeException e) {
+    }
+    flipByte(file, length - 10);
+
+    // the header is checked on open, in particular the version
+    for (long position : new long[]{0, 7, 20}) {
+      flipByte(file, position);
+      try {
+        KeySnapshot.open(file);
+        fail("Successfully opened a corrupted snapshot");
+      } catch (IOException e) {
+      }
+      flipByte(file, position);
+    }
+    assertEquals(PRIVATE_KEY_1024, KeySnapshot.open(file).getPrivateKey());
+
+    try {
+      KeySnapshot.open(folder.newFile());
+      fail("Successfully opened an empty snapshot");
+    } catch (IOException e) {
+    }
+  }
+
+  private static void flipByte(File file, long position) throws IOException {
+    RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.seek(position);
+      int b = raf.read();
+      raf.seek(position);
+      raf.write(b ^ 0x01);
+    } finally {
+      raf.close();
+    }
+  }
+}
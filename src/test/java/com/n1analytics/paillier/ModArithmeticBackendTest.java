@@ -0,0 +1,297 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.BigIntegerBackend;
+import com.n1analytics.paillier.util.BigIntegerUtil;
+import com.n1analytics.paillier.util.GmpBackend;
+import com.n1analytics.paillier.util.ModArithmeticBackend;
+import com.n1analytics.paillier.util.ModArithmeticBackends;
+import com.n1analytics.paillier.util.MontgomeryBackend;
+import com.n1analytics.paillier.util.MontgomeryModulus;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class ModArithmeticBackendTest {
+
+  private static final Random random = new Random(45);
+
+  @Test
+  public void testMontgomeryModulus() {
+    for (int bits : new int[]{2, 31, 32, 33, 64, 100, 512, 1024, 2048}) {
+      for (int i = 0; i < 10; i++) {
+        BigInteger modulus = new BigInteger(bits, random).setBit(bits - 1).setBit(0);
+        MontgomeryModulus montgomery = new MontgomeryModulus(modulus);
+        assertEquals(modulus, montgomery.getModulus());
+        BigInteger a = new BigInteger(bits + 8, random);
+        BigInteger b = new BigInteger(bits - 1, random);
+        BigInteger exponent = new BigInteger(1 + random.nextInt(2 * bits), random);
+        assertEquals(a.mod(modulus), montgomery.fromMontgomery(montgomery.toMontgomery(a)));
+        assertEquals(a.multiply(b).mod(modulus), montgomery.multiplyMod(a, b));
+        assertEquals(a.modPow(exponent, modulus), montgomery.modPow(a, exponent));
+        assertEquals(BigInteger.ONE, montgomery.modPow(a, BigInteger.ZERO));
+        if (a.gcd(modulus).equals(BigInteger.ONE)) {
+          assertEquals(a.modPow(exponent.negate(), modulus),
+                       montgomery.modPow(a, exponent.negate()));
+        }
+
+        // the result may alias a factor
+        int[] x = montgomery.toMontgomery(a);
+        int[] y = montgomery.toMontgomery(b);
+        int[] scratch = montgomery.newScratch();
+        montgomery.multiply(x, y, x, scratch);
+        assertEquals(a.multiply(b).mod(modulus), montgomery.fromMontgomery(x));
+        montgomery.multiply(y, y, y, scratch);
+        assertEquals(b.multiply(b).mod(modulus), montgomery.fromMontgomery(y));
+      }
+    }
+  }
+
+  @Test
+  public void testMontgomeryModulusInvalidModuli() {
+    for (BigInteger modulus : new BigInteger[]{BigInteger.valueOf(-3), BigInteger.ZERO,
+            BigInteger.ONE, BigInteger.valueOf(10)}) {
+      try {
+        new MontgomeryModulus(modulus);
+        fail("Successfully created the Montgomery arithmetic of " + modulus);
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testBackendsAgree() {
+    BigInteger modulus = PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BigInteger even = modulus.add(BigInteger.ONE);
+    for (int i = 0; i < 20; i++) {
+      BigInteger base = new BigInteger(modulus.bitLength() - 1, random).setBit(0);
+      BigInteger exponent = new BigInteger(random.nextInt(600), random);
+      for (ModArithmeticBackend backend : ModArithmeticBackends.getAvailableBackends()) {
+        assertEquals(backend.getName(), base.modPow(exponent, modulus),
+                     backend.modPow(base, exponent, modulus));
+        assertEquals(backend.getName(), base.modPow(exponent.negate(), modulus),
+                     backend.modPow(base, exponent.negate(), modulus));
+        assertEquals(backend.getName(), base.modPow(exponent, modulus),
+                     backend.modPowSecure(base, exponent, modulus));
+        assertEquals(backend.getName(), base.modInverse(modulus),
+                     backend.modInverse(base, modulus));
+        if (!backend.getName().equals("GMP")) {
+          assertEquals(backend.getName(), base.modPow(exponent, even),
+                       backend.modPow(base, exponent, even));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testBatches() {
+    BigInteger modulus = PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BigInteger[] bases = new BigInteger[17];
+    BigInteger[] exponents = new BigInteger[bases.length];
+    for (int i = 0; i < bases.length; i++) {
+      bases[i] = new BigInteger(modulus.bitLength() - 1, random).setBit(0);
+      exponents[i] = new BigInteger(random.nextInt(600), random);
+      if (i % 3 == 0) {
+        exponents[i] = exponents[i].negate();
+      }
+    }
+    BigInteger exponent = exponents[1];
+    for (ModArithmeticBackend backend : ModArithmeticBackends.getAvailableBackends()) {
+      BigInteger[] powers = backend.modPow(bases, exponents, modulus);
+      BigInteger[] shared = backend.modPow(bases, exponent, modulus);
+      BigInteger[] secure = backend.modPowSecure(bases, exponent, modulus);
+      for (int i = 0; i < bases.length; i++) {
+        assertEquals(backend.getName(), bases[i].modPow(exponents[i], modulus), powers[i]);
+        assertEquals(backend.getName(), bases[i].modPow(exponent, modulus), shared[i]);
+        assertEquals(backend.getName(), shared[i], secure[i]);
+      }
+      assertEquals(0, backend.modPow(new BigInteger[0], exponent, modulus).length);
+      BigInteger product = BigInteger.ONE;
+      for (BigInteger base : bases) {
+        product = product.multiply(base).mod(modulus);
+      }
+      assertEquals(backend.getName(), product, backend.product(bases, modulus));
+      assertEquals(backend.getName(), BigInteger.ONE,
+                   backend.product(new BigInteger[0], modulus));
+      try {
+        backend.modPow(bases, new BigInteger[bases.length - 1], modulus);
+        fail("Successfully exponentiated with fewer exponents than bases");
+      } catch (IllegalArgumentException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testRawBatches() {
+    PaillierPublicKey publicKey = PRIVATE_KEY_512.getPublicKey();
+    BigInteger[] plaintexts = new BigInteger[10];
+    BigInteger[] ciphertexts = new BigInteger[plaintexts.length];
+    BigInteger[] factors = new BigInteger[plaintexts.length];
+    for (int i = 0; i < plaintexts.length; i++) {
+      plaintexts[i] = new BigInteger(500, random);
+      ciphertexts[i] = publicKey.raw_encrypt_without_obfuscation(plaintexts[i]);
+      factors[i] = BigInteger.valueOf(i);
+    }
+    BigInteger[] obfuscated = publicKey.raw_obfuscate(ciphertexts);
+    BigInteger[] decrypted = PRIVATE_KEY_512.raw_decrypt(obfuscated);
+    BigInteger[] scaled = PRIVATE_KEY_512.raw_decrypt(
+            publicKey.raw_multiply(obfuscated, factors, MontgomeryBackend.INSTANCE));
+    BigInteger[] tripled = PRIVATE_KEY_512.raw_decrypt(publicKey.raw_multiply(
+            obfuscated, BigInteger.valueOf(3), MontgomeryBackend.INSTANCE));
+    BigInteger sum = PRIVATE_KEY_512.raw_decrypt(
+            publicKey.raw_add(obfuscated, MontgomeryBackend.INSTANCE));
+    assertEquals(sum, PRIVATE_KEY_512.raw_decrypt(publicKey.raw_add(obfuscated)));
+    BigInteger expectedSum = BigInteger.ZERO;
+    BigInteger[] doubled = PRIVATE_KEY_512.raw_decrypt(
+            publicKey.raw_multiply(obfuscated, BigInteger.valueOf(2), BigIntegerBackend.INSTANCE));
+    for (int i = 0; i < plaintexts.length; i++) {
+      assertFalse(ciphertexts[i].equals(obfuscated[i]));
+      assertEquals(plaintexts[i], decrypted[i]);
+      assertEquals(PRIVATE_KEY_512.raw_decrypt(obfuscated[i]), decrypted[i]);
+      assertEquals(plaintexts[i].multiply(factors[i]).mod(publicKey.getModulus()), scaled[i]);
+      assertEquals(plaintexts[i].shiftLeft(1).mod(publicKey.getModulus()), doubled[i]);
+      assertEquals(plaintexts[i].multiply(BigInteger.valueOf(3)).mod(publicKey.getModulus()),
+                   tripled[i]);
+      expectedSum = expectedSum.add(plaintexts[i]);
+    }
+    assertEquals(expectedSum.mod(publicKey.getModulus()), sum);
+    assertEquals(BigInteger.ZERO,
+                 PRIVATE_KEY_512.raw_decrypt(publicKey.raw_add(new BigInteger[0])));
+
+    // the batches use the moduli of Damgard-Jurik keys
+    DamgardJurikPrivateKey privateKey = new DamgardJurikPrivateKey(
+            new DamgardJurikPublicKey(publicKey.getModulus(), 2), PRIVATE_KEY_512.p,
+            PRIVATE_KEY_512.q);
+    DamgardJurikPublicKey djPublicKey = privateKey.getPublicKey();
+    for (int i = 0; i < plaintexts.length; i++) {
+      ciphertexts[i] = djPublicKey.raw_encrypt_without_obfuscation(plaintexts[i]);
+    }
+    obfuscated = djPublicKey.raw_obfuscate(ciphertexts);
+    for (int i = 0; i < plaintexts.length; i++) {
+      assertEquals(plaintexts[i], privateKey.raw_decrypt(obfuscated[i]));
+    }
+  }
+
+  @Test
+  public void testCalibration() {
+    ModArithmeticBackend defaultBackend = ModArithmeticBackends.getDefault();
+    try {
+      Map<Integer, String> calibration = ModArithmeticBackends.calibrate();
+      assertEquals(ModArithmeticBackends.CALIBRATION_BITS.length, calibration.size());
+      assertEquals(calibration, ModArithmeticBackends.getCalibration());
+      for (int bits : ModArithmeticBackends.CALIBRATION_BITS) {
+        assertEquals(calibration.get(bits), ModArithmeticBackends.select(bits).getName());
+        assertEquals(calibration.get(bits), ModArithmeticBackends.select(bits - 1).getName());
+      }
+      assertSame(ModArithmeticBackends.select(4096), ModArithmeticBackends.select(8192));
+    } finally {
+      ModArithmeticBackends.setDefault(defaultBackend);
+    }
+    assertTrue(ModArithmeticBackends.getCalibration().isEmpty());
+    assertSame(defaultBackend, ModArithmeticBackends.select(2048));
+
+    try {
+      ModArithmeticBackends.setDefault(null);
+      fail("Successfully set a null default backend");
+    } catch (NullPointerException e) {
+    }
+  }
+
+  @Test
+  public void testSecureExponentiationAfterCalibration() {
+    Assume.assumeTrue(GmpBackend.isAvailable());
+    final List<LogRecord> warnings = new ArrayList<LogRecord>();
+    Handler handler = new Handler() {
+      @Override
+      public synchronized void publish(LogRecord record) {
+        if (record.getLevel() == Level.WARNING) {
+          warnings.add(record);
+        }
+      }
+
+      @Override
+      public void flush() {
+      }
+
+      @Override
+      public void close() {
+      }
+    };
+    Logger logger = Logger.getLogger("com.n1analytics.paillier");
+    ModArithmeticBackend defaultBackend = ModArithmeticBackends.getDefault();
+    logger.addHandler(handler);
+    try {
+      ModArithmeticBackends.calibrate();
+      for (int bits : ModArithmeticBackends.CALIBRATION_BITS) {
+        BigInteger modulus = BigInteger.ONE.shiftLeft(bits - 1).setBit(0);
+        assertSame(GmpBackend.INSTANCE, ModArithmeticBackends.forSecureModulus(modulus));
+      }
+      // a default that is not side-channel resistant does not apply either
+      ModArithmeticBackends.setDefault(BigIntegerBackend.INSTANCE);
+      PaillierPrivateKey privateKey = PRIVATE_KEY_512;
+      BigInteger modulus = privateKey.getPublicKey().getModulusSquared();
+      assertSame(BigIntegerBackend.INSTANCE, ModArithmeticBackends.forModulus(modulus));
+      assertSame(GmpBackend.INSTANCE, ModArithmeticBackends.forSecureModulus(modulus));
+      long suppressed = ModArithmeticBackends.getSuppressedWarnings();
+      BigInteger plaintext = BigInteger.valueOf(1234567);
+      assertEquals(plaintext,
+                   privateKey.raw_decrypt(privateKey.getPublicKey().raw_encrypt(plaintext)));
+      assertEquals(BigInteger.valueOf(3).modPow(BigInteger.TEN, modulus),
+                   BigIntegerUtil.modPowSecure(BigInteger.valueOf(3), BigInteger.TEN, modulus));
+      assertEquals(suppressed, ModArithmeticBackends.getSuppressedWarnings());
+      assertTrue(warnings.isEmpty());
+    } finally {
+      logger.removeHandler(handler);
+      ModArithmeticBackends.setDefault(defaultBackend);
+    }
+  }
+
+  @Test
+  public void testWarningsAreRateLimited() {
+    BigInteger modulus = PRIVATE_KEY_512.getPublicKey().getModulusSquared();
+    BigInteger base = BigInteger.valueOf(3);
+    // the first call may log, every further call within the interval is suppressed
+    BigIntegerBackend.INSTANCE.modPowSecure(base, BigInteger.TEN, modulus);
+    long suppressed = ModArithmeticBackends.getSuppressedWarnings();
+    for (int i = 0; i < 10; i++) {
+      MontgomeryBackend.INSTANCE.modPowSecure(base, BigInteger.TEN, modulus);
+    }
+    assertEquals(suppressed + 10, ModArithmeticBackends.getSuppressedWarnings());
+  }
+
+  @Test
+  public void testContextOverride() {
+    PaillierContext context = PRIVATE_KEY_512.getPublicKey().createSignedContext();
+    assertNull(context.getArithmeticBackend());
+    PaillierContext montgomery = context.withArithmeticBackend(MontgomeryBackend.INSTANCE);
+    assertSame(MontgomeryBackend.INSTANCE, montgomery.getArithmeticBackend());
+    assertSame(montgomery, montgomery.withArithmeticBackend(MontgomeryBackend.INSTANCE));
+    assertNotSame(context, montgomery);
+    assertEquals(context, montgomery);
+    assertSame(montgomery, PaillierContextRegistry.intern(montgomery));
+    assertSame(context, montgomery.withArithmeticBackend(null).withArithmeticBackend(null)
+            .getPublicKey().createSignedContext());
+
+    EncodedNumber encoded = montgomery.encode(-17.5);
+    assertSame(montgomery, encoded.getContext());
+    EncryptedNumber a = montgomery.encrypt(encoded);
+    EncryptedNumber b = context.encrypt(4);
+    assertEquals(-17.5 * 4, a.multiply(4).decrypt(PRIVATE_KEY_512).decodeDouble(), 0);
+    assertEquals(-13.5, a.add(b).decrypt(PRIVATE_KEY_512).decodeDouble(), 0);
+    assertEquals(-4, montgomery.additiveInverse(b).decrypt(PRIVATE_KEY_512).decodeLong());
+    assertEquals(-8, montgomery.multiply(b, montgomery.encode(-2))
+            .decrypt(PRIVATE_KEY_512).decodeLong());
+    assertEquals(-17.5, a.obfuscate().decrypt(PRIVATE_KEY_512).decodeDouble(), 0);
+  }
+}
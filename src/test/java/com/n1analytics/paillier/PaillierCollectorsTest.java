@@ -0,0 +1,168 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class PaillierCollectorsTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+
+  private static final PaillierContext context = conf.context();
+
+  private static final Random random = new Random(49);
+
+  private static double[] values(int count) {
+    double[] values = new double[count];
+    for (int i = 0; i < count; i++) {
+      // a mix of integers and fractions, so that the exponents differ
+      values[i] = i % 4 == 0 ? random.nextInt(1000) / 16.0 : random.nextInt(2000) - 1000;
+    }
+    return values;
+  }
+
+  private static List<EncryptedNumber> encrypt(double[] values) {
+    List<EncryptedNumber> numbers = new ArrayList<EncryptedNumber>();
+    for (double value : values) {
+      numbers.add(context.encrypt(value));
+    }
+    return numbers;
+  }
+
+  @Test
+  public void testSumming() {
+    double[] values = values(300);
+    List<EncryptedNumber> numbers = encrypt(values);
+    double expected = Arrays.stream(values).sum();
+    EncryptedNumber collected = numbers.stream().collect(PaillierCollectors.summing(context));
+    assertEquals(expected, conf.decrypt(collected), 1e-9);
+    EncryptedNumber parallel =
+            numbers.parallelStream().collect(PaillierCollectors.summing(context));
+    assertEquals(expected, conf.decrypt(parallel), 1e-9);
+    EncryptedNumber reduced = numbers.stream().reduce(EncryptedNumber::add).get();
+    assertEquals(reduced.getExponent(), collected.getExponent());
+    assertEquals(reduced.ciphertext, collected.ciphertext);
+
+    EncryptedNumber empty = Collections.<EncryptedNumber>emptyList().stream()
+            .collect(PaillierCollectors.summing(context));
+    assertEquals(0, conf.decrypt(empty), 0);
+    assertFalse(empty.isSafe);
+
+    assertEquals(2.5, conf.decrypt(Arrays.stream(new double[]{1.5, -2, 3}).boxed()
+            .collect(PaillierCollectors.summing(context, context::encrypt))), 0);
+  }
+
+  @Test
+  public void testSafety() {
+    List<EncryptedNumber> numbers = new ArrayList<EncryptedNumber>();
+    for (int i = 0; i < 10; i++) {
+      numbers.add(context.encrypt(i).obfuscate());
+    }
+    assertTrue(numbers.stream().collect(PaillierCollectors.summing(context)).isSafe);
+    numbers.add(new EncryptedNumber(context, BigInteger.ONE, 0, false));
+    assertFalse(numbers.parallelStream().collect(PaillierCollectors.summing(context)).isSafe);
+  }
+
+  @Test
+  public void testWeightedSum() {
+    double[] values = values(50);
+    List<EncryptedNumber> numbers = encrypt(values);
+    List<Integer> indices = new ArrayList<Integer>();
+    double expected = 0;
+    for (int i = 0; i < values.length; i++) {
+      indices.add(i);
+      expected += values[i] * (i % 2 == 0 ? i : 0.25);
+    }
+    EncryptedNumber sum = indices.parallelStream().collect(PaillierCollectors.weightedSum(
+            context, numbers::get, i -> i % 2 == 0 ? (Number) i : (Number) 0.25));
+    assertEquals(expected, conf.decrypt(sum), 1e-9);
+  }
+
+  @Test
+  public void testGroupingSum() {
+    double[] values = values(120);
+    List<EncryptedNumber> numbers = encrypt(values);
+    double[] expected = new double[3];
+    List<Integer> indices = new ArrayList<Integer>();
+    for (int i = 0; i < values.length; i++) {
+      indices.add(i);
+      expected[i % 3] += values[i];
+    }
+    Map<Integer, EncryptedNumber> sums = indices.parallelStream()
+            .collect(PaillierCollectors.groupingSum(context, i -> i % 3, numbers::get));
+    assertEquals(3, sums.size());
+    for (int group = 0; group < 3; group++) {
+      assertEquals(expected[group], conf.decrypt(sums.get(group)), 1e-9);
+    }
+  }
+
+  @Test
+  public void testAveraging() {
+    double[] values = values(80);
+    EncryptedAverage average = encrypt(values).parallelStream()
+            .collect(PaillierCollectors.averaging(context, number -> number));
+    assertEquals(80, average.getCount());
+    assertEquals(Arrays.stream(values).sum(), conf.decrypt(average.getSum()), 1e-9);
+    assertEquals(Arrays.stream(values).average().getAsDouble(),
+                 average.decryptAverage(conf.privateKey()), 1e-9);
+    EncryptedAverage empty = Collections.<EncryptedNumber>emptyList().stream()
+            .collect(PaillierCollectors.averaging(context, number -> number));
+    assertEquals(0, empty.getCount());
+    assertEquals(0, empty.decryptAverage(conf.privateKey()), 0);
+  }
+
+  @Test
+  public void testAccumulator() {
+    EncryptedSumAccumulator first = new EncryptedSumAccumulator(context);
+    EncryptedSumAccumulator second = new EncryptedSumAccumulator(context);
+    first.add(context.encrypt(1.5)).add(context.encrypt(2));
+    second.add(context.encrypt(-4)).add(context.encrypt(0.125)).add(context.encrypt(7));
+    assertEquals(3.5, conf.decrypt(first.sum()), 0);
+    assertEquals(3.5, conf.decrypt(first.sum()), 0);
+    first.combine(second);
+    assertEquals(5, first.getCount());
+    assertEquals(6.625, conf.decrypt(first.sum()), 0);
+    assertEquals(3, second.getCount());
+    assertEquals(3.125, conf.decrypt(second.sum()), 0);
+    first.combine(new EncryptedSumAccumulator(context));
+    assertEquals(6.625, conf.decrypt(first.sum()), 0);
+    EncryptedSumAccumulator empty = new EncryptedSumAccumulator(context).combine(first);
+    assertEquals(6.625, conf.decrypt(empty.sum()), 0);
+
+    EncryptedNumber number = context.encrypt(5);
+    EncryptedSumAccumulator raw = new EncryptedSumAccumulator(context);
+    raw.add(number.ciphertext, number.getExponent(), false);
+    assertEquals(5, conf.decrypt(raw.sum()), 0);
+    try {
+      raw.add(context.getPublicKey().getModulusSquared(), 0, false);
+      fail("Successfully added a ciphertext out of range");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testContextMismatch() {
+    PaillierContext otherContext = conf.publicKey().createUnsignedContext();
+    List<EncryptedNumber> numbers = Arrays.asList(context.encrypt(1), otherContext.encrypt(2));
+    try {
+      numbers.stream().collect(PaillierCollectors.summing(context));
+      fail("Successfully summed numbers of different contexts");
+    } catch (PaillierContextMismatchException e) {
+    }
+    try {
+      new EncryptedSumAccumulator(context).combine(new EncryptedSumAccumulator(otherContext));
+      fail("Successfully combined sums of different contexts");
+    } catch (PaillierContextMismatchException e) {
+    }
+  }
+}
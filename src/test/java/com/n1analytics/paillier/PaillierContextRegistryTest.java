@@ -0,0 +1,85 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.io.BinaryFormat;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class PaillierContextRegistryTest {
+
+  @Test
+  public void testEqualKeysShareContexts() {
+    PaillierPublicKey publicKey = PRIVATE_KEY_512.getPublicKey();
+    PaillierPublicKey copy = new PaillierPublicKey(publicKey.getModulus());
+    assertNotSame(publicKey, copy);
+    assertSame(PaillierContextRegistry.intern(publicKey), PaillierContextRegistry.intern(copy));
+
+    PaillierContext signed = publicKey.createSignedContext();
+    assertSame(signed, copy.createSignedContext());
+    assertSame(signed, publicKey.createSignedContext(publicKey.getModulus().bitLength()));
+    assertNotSame(signed, publicKey.createUnsignedContext());
+    assertNotSame(signed, publicKey.createSignedContext(100));
+    assertSame(publicKey.createSignedContext(100), copy.createSignedContext(100));
+    assertSame(PaillierContextRegistry.intern(publicKey), signed.getPublicKey());
+
+    // numbers of separately created, equal contexts pass the checks by identity
+    PaillierContext constructed =
+            new PaillierContext(copy, true, publicKey.getModulus().bitLength());
+    assertEquals(signed, constructed);
+    assertSame(signed, PaillierContextRegistry.intern(constructed));
+    EncryptedNumber sum = copy.createSignedContext().encrypt(1).add(signed.encrypt(2));
+    assertEquals(3, sum.decrypt(PRIVATE_KEY_512).decodeLong());
+
+    try {
+      publicKey.createSignedContext(1);
+      fail("Successfully created a signed context with a precision of one");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testIds() {
+    PaillierPublicKey publicKey = PRIVATE_KEY_512.getPublicKey();
+    long id = PaillierContextRegistry.getKeyId(publicKey);
+    assertEquals(id, BinaryFormat.fingerprint(publicKey));
+    assertSame(PaillierContextRegistry.intern(publicKey), PaillierContextRegistry.lookup(id));
+    assertNull(PaillierContextRegistry.lookup(id + 1));
+
+    PaillierContext signed = publicKey.createSignedContext();
+    PaillierContext unsigned = publicKey.createUnsignedContext();
+    assertEquals(PaillierContextRegistry.getContextId(signed),
+                 PaillierContextRegistry.getContextId(signed));
+    assertNotEquals(PaillierContextRegistry.getContextId(signed),
+                    PaillierContextRegistry.getContextId(unsigned));
+    assertEquals(PaillierContextRegistry.getContextId(signed),
+                 PaillierContextRegistry.getContextId(publicKey.createMockSignedContext()));
+  }
+
+  @Test
+  public void testOtherClassesAreNotInterned() {
+    PaillierPublicKey publicKey = PRIVATE_KEY_512.getPublicKey();
+    MockPaillierContext mock = publicKey.createMockSignedContext();
+    assertSame(mock, PaillierContextRegistry.intern(mock));
+    DamgardJurikPublicKey damgardJurik = new DamgardJurikPublicKey(publicKey.getModulus(), 2);
+    assertSame(damgardJurik, PaillierContextRegistry.intern(damgardJurik));
+  }
+
+  @Test
+  public void testUnusedKeysAreEvicted() throws InterruptedException {
+    // a modulus that no other test registers
+    BigInteger modulus = PRIVATE_KEY_512.getPublicKey().getModulus().add(BigInteger.valueOf(2));
+    PaillierContext context = new PaillierPublicKey(modulus).createSignedContext();
+    long id = PaillierContextRegistry.getKeyId(context.getPublicKey());
+    assertNotNull(PaillierContextRegistry.lookup(id));
+
+    context = null;
+    for (int i = 0; i < 100 && PaillierContextRegistry.lookup(id) != null; i++) {
+      System.gc();
+      Thread.sleep(10);
+    }
+    assertNull(PaillierContextRegistry.lookup(id));
+  }
+}
@@ -1128,6 +1128,21 @@ public class PaillierEncryptedNumberTest {
       assertFalse(encrypted.equals(partialEncrypted)); // Compare to an encrypted number with different context
     }
 
+    @Test
+    public void testHashCode() throws Exception {
+      EncryptedNumber encrypted = context.encrypt(17);
+      EncryptedNumber copy = new EncryptedNumber(context, encrypted.ciphertext,
+                                                 encrypted.getExponent());
+      assertEquals(encrypted.hashCode(), encrypted.hashCode()); // The cached hash is stable
+      assertEquals(encrypted.hashCode(), copy.hashCode());
+      assertTrue(encrypted.equals(copy));
+      assertTrue(copy.equals((Object) encrypted));
+
+      EncryptedNumber encrypted2 = context.encrypt(3.14);
+      encrypted2.hashCode();
+      assertFalse(encrypted.equals(encrypted2)); // Both hashes are cached and differ
+    }
+
     @Test
     public void testDecreaseInvalidExponent() throws Exception {
       EncryptedNumber ciphertext = context.encrypt(context.encode(1.01, 1e-8));
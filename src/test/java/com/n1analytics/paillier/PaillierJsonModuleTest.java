@@ -0,0 +1,150 @@
+package com.n1analytics.paillier;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.n1analytics.paillier.cli.PrivateKeyJsonSerialiser;
+import com.n1analytics.paillier.cli.SerialisationUtil;
+import com.n1analytics.paillier.io.EncryptedNumberJsonReader;
+import com.n1analytics.paillier.io.EncryptedNumberJsonWriter;
+import com.n1analytics.paillier.io.PaillierJsonModule;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_1024;
+import static com.n1analytics.paillier.TestConfiguration.PRIVATE_KEY_512;
+import static org.junit.Assert.*;
+
+public class PaillierJsonModuleTest {
+
+  private static final PaillierContext context =
+          PRIVATE_KEY_512.getPublicKey().createSignedContext();
+
+  private static final ObjectMapper mapper =
+          new ObjectMapper().registerModule(new PaillierJsonModule(context));
+
+  @Test
+  public void testKeys() throws IOException {
+    PaillierPublicKey publicKey = PRIVATE_KEY_1024.getPublicKey();
+    String json = mapper.writeValueAsString(publicKey);
+    assertEquals(publicKey, mapper.readValue(json, PaillierPublicKey.class));
+    assertFalse(json.contains("=") || json.contains("+") || json.contains("/"));
+
+    json = mapper.writeValueAsString(PRIVATE_KEY_1024);
+    PaillierPrivateKey privateKey = mapper.readValue(json, PaillierPrivateKey.class);
+    assertEquals(PRIVATE_KEY_1024, privateKey);
+    assertEquals(PRIVATE_KEY_1024.hp, privateKey.hp);
+    assertEquals(PRIVATE_KEY_1024.pInverse, privateKey.pInverse);
+  }
+
+  @Test
+  public void testCliKeyFormat() throws IOException {
+    PrivateKeyJsonSerialiser serialiser = new PrivateKeyJsonSerialiser("test key");
+    PRIVATE_KEY_1024.serializeCrt(serialiser);
+    String json = serialiser.toString();
+    assertEquals(PRIVATE_KEY_1024, mapper.readValue(json, PaillierPrivateKey.class));
+
+    // keys of older versions only have lambda
+    ObjectNode node = (ObjectNode) new ObjectMapper().readTree(json);
+    node.remove("p");
+    node.remove("hp");
+    assertEquals(PRIVATE_KEY_1024, mapper.readValue(node.toString(), PaillierPrivateKey.class));
+    assertEquals(PRIVATE_KEY_1024.getPublicKey(),
+                 mapper.readValue(node.get("pub").toString(), PaillierPublicKey.class));
+  }
+
+  @Test
+  public void testEncryptedNumber() throws IOException {
+    EncryptedNumber number = context.encrypt(-12.75).getSafeEncryptedNumber();
+    String json = mapper.writeValueAsString(number);
+    EncryptedNumber decoded = mapper.readValue(json, EncryptedNumber.class);
+    assertEquals(number.calculateCiphertext(), decoded.ciphertext);
+    assertEquals(number.getExponent(), decoded.getExponent());
+    assertEquals(-12.75, decoded.decrypt(PRIVATE_KEY_512).decodeDouble(), 0);
+
+    EncryptedNumber[] numbers = mapper.readValue("[" + json + "," + json + "]",
+                                                 EncryptedNumber[].class);
+    assertEquals(2, numbers.length);
+
+    try {
+      new ObjectMapper().registerModule(new PaillierJsonModule())
+              .readValue(json, EncryptedNumber.class);
+      fail("Successfully deserialized an encrypted number without a context");
+    } catch (JsonMappingException e) {
+    }
+    try {
+      mapper.readValue("{\"c\": \"AQ\"}", EncryptedNumber.class);
+      fail("Successfully deserialized an encrypted number without an exponent");
+    } catch (IOException e) {
+    }
+  }
+
+  @Test
+  public void testCliEncryptedNumberFormat() throws IOException {
+    EncryptedNumber number = context.encrypt(-42);
+    String json = mapper.writeValueAsString(number);
+    assertTrue(json.contains("\"c\""));
+    assertFalse(json.contains("\"v\""));
+
+    // the command line tool writes the ciphertext in decimal under "v"
+    ObjectNode cli = SerialisationUtil.serialise_encrypted(number);
+    EncryptedNumber fromCli = mapper.readValue(cli.toString(), EncryptedNumber.class);
+    assertEquals(-42, fromCli.decrypt(PRIVATE_KEY_512).decodeLong());
+    // "12" is also valid base64url, but must be read as the decimal it is
+    EncryptedNumber decimal = mapper.readValue("{\"v\": \"12\", \"e\": 0}", EncryptedNumber.class);
+    assertEquals(BigInteger.valueOf(12), decimal.ciphertext);
+    for (String malformed : new String[]{"{\"v\": \"AQ\", \"e\": 0}",
+            "{\"v\": \"12\", \"c\": \"AQ\", \"e\": 0}"}) {
+      try {
+        mapper.readValue(malformed, EncryptedNumber.class);
+        fail("Successfully deserialized " + malformed);
+      } catch (IOException e) {
+      }
+    }
+  }
+
+  @Test
+  public void testStreaming() throws IOException {
+    JsonFactory factory = new JsonFactory();
+    Random rnd = new Random(3);
+    long[] values = new long[500];
+    StringWriter out = new StringWriter();
+    EncryptedNumberJsonWriter writer =
+            new EncryptedNumberJsonWriter(factory.createGenerator(out));
+    for (int i = 0; i < values.length; i++) {
+      values[i] = rnd.nextInt();
+      writer.write(context.encrypt(values[i]));
+    }
+    assertEquals(values.length, writer.getCount());
+    writer.close();
+
+    // the streamed array can also be read in one go
+    assertEquals(values.length, mapper.readValue(out.toString(), EncryptedNumber[].class).length);
+
+    EncryptedNumberJsonReader reader = new EncryptedNumberJsonReader(
+            factory.createParser(new StringReader(out.toString())), context);
+    for (long value : values) {
+      EncryptedNumber number = reader.next();
+      assertNotNull(number);
+      assertEquals(value, number.decrypt(PRIVATE_KEY_512).decodeLong());
+    }
+    assertNull(reader.next());
+    assertNull(reader.next());
+    reader.close();
+
+    reader = new EncryptedNumberJsonReader(factory.createParser("[{\"c\": \"AQ\", \"e\": 0}, 1]"),
+                                           context);
+    assertNotNull(reader.next());
+    try {
+      reader.next();
+      fail("Successfully read a number as an encrypted number");
+    } catch (IOException e) {
+    }
+  }
+}
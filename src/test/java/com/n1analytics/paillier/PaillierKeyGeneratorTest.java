@@ -0,0 +1,70 @@
+package com.n1analytics.paillier;
+
+import com.n1analytics.paillier.util.PrimeSieve;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class PaillierKeyGeneratorTest {
+
+  @Test
+  public void testRandomPrime() {
+    Random rnd = new Random(1);
+    for (int bitLength = 3; bitLength <= 300; bitLength += bitLength < 70 ? 1 : 23) {
+      BigInteger prime = PrimeSieve.randomPrime(bitLength, rnd);
+      assertEquals(bitLength, prime.bitLength());
+      assertTrue(prime.testBit(bitLength - 2));
+      assertTrue(prime.isProbablePrime(100));
+    }
+  }
+
+  @Test
+  public void testSieveFindsFirstPrime() {
+    // with the same seed, the sieve must return the first prime after the random start
+    for (int seed = 0; seed < 20; seed++) {
+      int bitLength = 200 + seed;
+      BigInteger prime = PrimeSieve.randomPrime(bitLength, new Random(seed));
+      BigInteger start = new BigInteger(bitLength, new Random(seed))
+              .or(BigInteger.valueOf(3).shiftLeft(bitLength - 2)).setBit(0);
+      assertEquals(start.subtract(BigInteger.ONE).nextProbablePrime(), prime);
+    }
+  }
+
+  @Test
+  public void testGenerate() {
+    PaillierKeyGenerator generator = new PaillierKeyGenerator(TEST_POOL);
+    for (int modulusLength : new int[]{16, 64, 72, 256, 512, 1024}) {
+      PaillierPrivateKey privateKey = generator.generate(modulusLength);
+      PaillierPublicKey publicKey = privateKey.getPublicKey();
+      assertEquals(modulusLength, publicKey.getModulus().bitLength());
+      assertEquals(publicKey.getModulus(), privateKey.p.multiply(privateKey.q));
+      BigInteger plaintext = BigInteger.valueOf(12345).mod(publicKey.getModulus());
+      assertEquals(plaintext, privateKey.raw_decrypt(publicKey.raw_encrypt(plaintext)));
+    }
+    try {
+      generator.generate(8);
+      fail("Successfully generated a key with an illegal modulus length");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testDeterministicWithSeed() {
+    PaillierKeyGenerator generator1 = new PaillierKeyGenerator(TEST_POOL, new Random(42));
+    PaillierKeyGenerator generator2 = new PaillierKeyGenerator(TEST_POOL, new Random(42));
+    PaillierKeyGenerator generator3 = new PaillierKeyGenerator(TEST_POOL, new Random(43));
+    for (int i = 0; i < 3; i++) {
+      PaillierPrivateKey key1 = generator1.generate(512);
+      PaillierPrivateKey key2 = generator2.generate(512);
+      assertEquals(key1, key2);
+      assertEquals(key1.p, key2.p);
+      assertFalse(key1.equals(generator3.generate(512)));
+    }
+  }
+}
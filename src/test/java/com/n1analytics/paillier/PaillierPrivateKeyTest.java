@@ -13,11 +13,15 @@
  */
 package com.n1analytics.paillier;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.n1analytics.paillier.cli.PrivateKeyJsonSerialiser;
+import com.n1analytics.paillier.cli.SerialisationUtil;
 import org.junit.Test;
 import org.junit.experimental.categories.Category;
 
 import java.math.BigInteger;
 import java.util.HashSet;
+import java.util.Map;
 
 import static org.junit.Assert.*;
 
@@ -176,6 +180,121 @@ public class PaillierPrivateKeyTest {
   // The selected key sizes correspond to the key size likely used in a real life scenario.
   // The number of repeats correspond to the number of unique keys need to be generated.
 
+  @Test
+  public void testCrtSerialization() throws Exception {
+    final PaillierPrivateKey privateKey = TestConfiguration.PRIVATE_KEY_1024;
+    final PaillierPrivateKey[] restored = new PaillierPrivateKey[1];
+    privateKey.serializeCrt(new PaillierPrivateKey.CrtSerializer<RuntimeException>() {
+      @Override
+      public void serialize(PaillierPublicKey publickey, BigInteger p, BigInteger q,
+                            BigInteger hp, BigInteger hq, BigInteger pInverse) {
+        restored[0] = new PaillierPrivateKey(publickey, p, q, hp, hq, pInverse);
+      }
+    });
+    assertEquals(privateKey, restored[0]);
+    BigInteger plaintext = new BigInteger(1000, new java.util.Random());
+    assertEquals(plaintext,
+            restored[0].raw_decrypt(privateKey.getPublicKey().raw_encrypt(plaintext)));
+
+    // JSON, with and without the precomputations
+    PrivateKeyJsonSerialiser serialiser = new PrivateKeyJsonSerialiser("test");
+    privateKey.serializeCrt(serialiser);
+    Map data = new ObjectMapper().readValue(serialiser.toString(), Map.class);
+    PaillierPrivateKey fromJson = SerialisationUtil.unserialise_private(data);
+    assertEquals(privateKey.p, fromJson.p);
+    assertEquals(privateKey.hq, fromJson.hq);
+    for (String key : new String[]{"p", "q", "hp", "hq", "pinv"}) {
+      data.remove(key);
+    }
+    PaillierPrivateKey legacy = SerialisationUtil.unserialise_private(data);
+    assertEquals(privateKey.p.multiply(privateKey.q), legacy.p.multiply(legacy.q));
+    assertEquals(plaintext, legacy.raw_decrypt(privateKey.getPublicKey().raw_encrypt(plaintext)));
+
+    try {
+      new PaillierPrivateKey(privateKey.getPublicKey(), privateKey.p, privateKey.p,
+              privateKey.hp, privateKey.hq, privateKey.pInverse);
+      fail("Successfully created a private key with the wrong primes");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new PaillierPrivateKey(privateKey.getPublicKey(), privateKey.p, privateKey.q,
+              privateKey.hp, privateKey.hq, privateKey.pInverse.add(BigInteger.ONE));
+      fail("Successfully created a private key with the wrong pInverse");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new PaillierPrivateKey(privateKey.getPublicKey(), privateKey.p, privateKey.q,
+              privateKey.hq, privateKey.hp, privateKey.pInverse);
+      fail("Successfully created a private key with swapped hp and hq");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new PaillierPrivateKey(privateKey.getPublicKey(), null, privateKey.q,
+              privateKey.hp, privateKey.hq, privateKey.pInverse);
+      fail("Successfully created a private key without p");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testDecryptToHalf() throws Exception {
+    PaillierPrivateKey privateKey = TestConfiguration.PRIVATE_KEY_1024;
+    PaillierPublicKey publicKey = privateKey.getPublicKey();
+    int halfBits = privateKey.p.bitLength() - 1;
+
+    assertFalse(privateKey.isDecryptableToHalf(publicKey.createSignedContext()));
+    assertFalse(privateKey.isDecryptableToHalf(publicKey.createUnsignedContext(halfBits + 2)));
+    assertFalse(privateKey.isDecryptableToHalf(publicKey.createMockUnsignedContext(64)));
+    assertFalse(privateKey.isDecryptableToHalf(
+            TestConfiguration.PRIVATE_KEY_512.getPublicKey().createUnsignedContext(64)));
+
+    PaillierContext unsigned = publicKey.createUnsignedContext(halfBits);
+    PaillierContext signed = publicKey.createSignedContext(halfBits);
+    assertTrue(privateKey.isDecryptableToHalf(unsigned));
+    assertTrue(privateKey.isDecryptableToHalf(signed));
+
+    BigInteger max = unsigned.getMaxSignificand();
+    assertEquals(max, privateKey.decryptToHalf(unsigned.encrypt(max)).decodeBigInteger());
+    assertEquals(0, privateKey.decryptToHalf(unsigned.encrypt(0)).decodeLong());
+    assertEquals(12345, privateKey.decryptToHalf(unsigned.encrypt(12340).add(5)).decodeLong());
+    assertEquals(BigInteger.valueOf(7).mod(privateKey.p),
+            privateKey.raw_decrypt_to_half(publicKey.raw_encrypt(BigInteger.valueOf(7))));
+
+    for (BigInteger value : new BigInteger[]{signed.getMaxSignificand(),
+            signed.getMinSignificand(), BigInteger.valueOf(-1), BigInteger.ZERO}) {
+      assertEquals(value, privateKey.decryptToHalf(signed.encrypt(value)).decodeBigInteger());
+    }
+    assertEquals(-2.5, privateKey.decryptToHalf(signed.encrypt(1.5).subtract(4)).decodeDouble(),
+                 0);
+    try {
+      privateKey.decryptToHalf(publicKey.createSignedContext().encrypt(1));
+      fail("Successfully decrypted a full precision number to half");
+    } catch (IllegalArgumentException e) {
+    }
+
+    // small overflows are detected, via the fallback to full decryption
+    try {
+      privateKey.decryptToHalf(unsigned.encrypt(max).add(1)).decodeBigInteger();
+      fail("Successfully decoded an overflow");
+    } catch (DecodeException e) {
+    }
+    try {
+      privateKey.decryptToHalf(signed.encrypt(signed.getMaxSignificand()).add(1))
+              .decodeBigInteger();
+      fail("Successfully decoded an overflow");
+    } catch (DecodeException e) {
+    }
+    // an overflow by a multiple of p is invisible modulo p, but decrypt() still detects it
+    BigInteger wrapped = privateKey.p.add(BigInteger.valueOf(5));
+    EncryptedNumber overflow = new EncryptedNumber(unsigned, publicKey.raw_encrypt(wrapped), 0);
+    assertEquals(5, privateKey.decryptToHalf(overflow).decodeLong());
+    try {
+      privateKey.decrypt(overflow).decodeBigInteger();
+      fail("Successfully decoded an overflow");
+    } catch (DecodeException e) {
+    }
+  }
+
   @Category(SlowTests.class)
   @Test
   public void testKeyUniqueness512() throws Exception {
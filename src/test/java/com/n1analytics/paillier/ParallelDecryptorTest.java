@@ -0,0 +1,51 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class ParallelDecryptorTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_1024;
+  private static final PaillierPrivateKey privateKey = conf.privateKey();
+  private static final PaillierContext context = conf.context();
+  private static final Random rnd = new Random();
+
+  @Test
+  public void testDecrypt() {
+    ParallelDecryptor decryptor = new ParallelDecryptor(privateKey, TEST_POOL, 1024);
+    assertTrue(decryptor.isParallel());
+    for (int i = 0; i < TestConfiguration.MAX_ITERATIONS; i++) {
+      BigInteger plaintext = new BigInteger(1000, rnd);
+      BigInteger ciphertext = privateKey.getPublicKey().raw_encrypt(plaintext);
+      assertEquals(plaintext, decryptor.raw_decrypt(ciphertext));
+      double value = rnd.nextDouble() * 1e9 - 5e8;
+      assertEquals(value, decryptor.decrypt(context.encrypt(value)).decodeDouble(), 0);
+    }
+    PaillierContext bounded = privateKey.getPublicKey().createSignedContext(64);
+    assertEquals(-17, decryptor.decrypt(bounded.encrypt(-17)).decodeLong());
+  }
+
+  @Test
+  public void testThreshold() {
+    ParallelDecryptor decryptor = new ParallelDecryptor(privateKey, TEST_POOL);
+    assertFalse(decryptor.isParallel());
+    assertEquals(42, decryptor.decrypt(context.encrypt(42)).decodeLong());
+  }
+
+  @Test
+  public void testKeyMismatch() {
+    ParallelDecryptor decryptor = new ParallelDecryptor(privateKey, TEST_POOL, 0);
+    try {
+      decryptor.decrypt(TestConfiguration.SIGNED_FULL_PRECISION_512.context().encrypt(1));
+      fail("Successfully decrypted with the wrong key");
+    } catch (PaillierKeyMismatchException e) {
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class ParallelSummerTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+
+  private static final PaillierContext context = conf.context();
+
+  @Test
+  public void testSum() {
+    Random rnd = new Random(50);
+    EncryptedNumber[] numbers = new EncryptedNumber[1000];
+    double expected = 0;
+    for (int i = 0; i < numbers.length; i++) {
+      // a mix of integers and fractions, so that the exponents differ
+      double value = i % 7 == 0 ? rnd.nextInt(1000) / 8.0 : rnd.nextInt(2000) - 1000;
+      expected += value;
+      numbers[i] = context.encrypt(value);
+    }
+    CiphertextArray array = CiphertextArray.of(context, numbers);
+    EncryptedNumber sequential = array.sum();
+    for (ParallelSummer summer : new ParallelSummer[]{new ParallelSummer(context),
+            new ParallelSummer(context, TEST_POOL), new ParallelSummer(context, TEST_POOL, 1),
+            new ParallelSummer(context, TEST_POOL, 7)}) {
+      EncryptedNumber sum = summer.sum(numbers);
+      assertEquals(expected, conf.decrypt(sum), 1e-9);
+      assertEquals(sequential.getExponent(), sum.getExponent());
+      assertEquals(sequential.ciphertext, sum.ciphertext);
+      assertEquals(sequential.ciphertext, summer.sum(array).ciphertext);
+      assertEquals(0, conf.decrypt(summer.sum()), 0);
+      assertEquals(0, conf.decrypt(summer.sum(new CiphertextArray(context, 0))), 0);
+    }
+  }
+
+  @Test
+  public void testThreshold() {
+    assertEquals(512, ParallelSummer.defaultThreshold(512));
+    assertEquals(256, ParallelSummer.defaultThreshold(1024));
+    assertEquals(64, ParallelSummer.defaultThreshold(4096));
+    assertEquals(ParallelSummer.MIN_THRESHOLD, ParallelSummer.defaultThreshold(1 << 20));
+    assertEquals(512, new ParallelSummer(context).getThreshold());
+    assertSame(ForkJoinPool.commonPool(), new ParallelSummer(context).getPool());
+    try {
+      new ParallelSummer(context, TEST_POOL, 0);
+      fail("Successfully created a summer with threshold 0");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      new ParallelSummer(context, null, 1);
+      fail("Successfully created a summer without a pool");
+    } catch (NullPointerException e) {
+    }
+  }
+
+  @Test
+  public void testContextMismatch() {
+    PaillierContext otherContext = conf.publicKey().createUnsignedContext();
+    EncryptedNumber[] numbers = new EncryptedNumber[100];
+    for (int i = 0; i < numbers.length; i++) {
+      numbers[i] = (i == 77 ? otherContext : context).encrypt(i);
+    }
+    ParallelSummer summer = new ParallelSummer(context, TEST_POOL, 4);
+    try {
+      summer.sum(numbers);
+      fail("Successfully summed numbers of different contexts");
+    } catch (PaillierContextMismatchException e) {
+    }
+    try {
+      summer.sum(new CiphertextArray(otherContext, 3));
+      fail("Successfully summed an array of a different context");
+    } catch (PaillierContextMismatchException e) {
+    }
+  }
+}
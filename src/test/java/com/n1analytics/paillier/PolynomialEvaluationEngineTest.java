@@ -0,0 +1,134 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class PolynomialEvaluationEngineTest {
+
+  private static final TestConfiguration conf = TestConfiguration.SIGNED_FULL_PRECISION_512;
+  private static final PaillierPrivateKey privateKey = conf.privateKey();
+  private static final PaillierContext context = conf.context();
+  private static final Random rnd = new Random();
+
+  @Test
+  public void testHornerAndFixedBaseAgree() {
+    BigInteger[] roots = {BigInteger.valueOf(3), BigInteger.valueOf(-7), BigInteger.valueOf(11)};
+    EncryptedPolynomial polynomial = EncryptedPolynomial.fromRoots(context, roots, 5);
+    assertEquals(5, polynomial.getDegree());
+    BigInteger modulus = context.getPublicKey().getModulus();
+    for (int i = 0; i < 10; i++) {
+      BigInteger y = i < 3 ? roots[i] : new BigInteger(600, rnd);
+      BigInteger expected = y.subtract(roots[0]).multiply(y.subtract(roots[1]))
+              .multiply(y.subtract(roots[2])).mod(modulus);
+      assertEquals(expected, privateKey.raw_decrypt(polynomial.evaluate(y).ciphertext));
+      assertEquals(expected, privateKey.raw_decrypt(
+              polynomial.evaluate(y, polynomial.createTables(5)).ciphertext));
+    }
+  }
+
+  @Test
+  public void testDamgardJurikKey() {
+    DamgardJurikPrivateKey djPrivateKey = new DamgardJurikPrivateKey(
+            new DamgardJurikPublicKey(privateKey.getPublicKey().getModulus(), 2), privateKey.p,
+            privateKey.q);
+    PaillierContext djContext = djPrivateKey.getPublicKey().createSignedContext();
+    BigInteger modulus = djPrivateKey.getPublicKey().getPlaintextModulus();
+    // roots beyond n only remain roots modulo the plaintext modulus n^2
+    BigInteger[] roots = {new BigInteger(800, rnd), BigInteger.valueOf(-7)};
+    EncryptedPolynomial polynomial = EncryptedPolynomial.fromRoots(djContext, roots, 3);
+    for (int i = 0; i < 5; i++) {
+      BigInteger y = i < 2 ? roots[i] : new BigInteger(1100, rnd);
+      BigInteger expected = y.subtract(roots[0]).multiply(y.subtract(roots[1])).mod(modulus);
+      assertEquals(expected, djPrivateKey.raw_decrypt(polynomial.evaluate(y).ciphertext));
+      assertEquals(expected, djPrivateKey.raw_decrypt(
+              polynomial.evaluate(y, polynomial.createTables(4)).ciphertext));
+    }
+  }
+
+  @Test
+  public void testBucketing() {
+    BalancedBucketing bucketing = new BalancedBucketing(16, new byte[]{1, 2, 3});
+    BigInteger[] elements = new BigInteger[200];
+    for (int i = 0; i < elements.length; i++) {
+      elements[i] = BigInteger.valueOf(i);
+    }
+    List<List<BigInteger>> buckets = bucketing.assign(elements);
+    int total = 0;
+    for (int b = 0; b < buckets.size(); b++) {
+      for (BigInteger element : buckets.get(b)) {
+        int[] candidates = bucketing.candidateBuckets(element);
+        assertTrue(candidates[0] == b || candidates[1] == b);
+      }
+      total += buckets.get(b).size();
+    }
+    assertEquals(elements.length, total);
+    // 200 elements in 16 buckets, two choices keep the load close to the average
+    assertTrue(BalancedBucketing.maxLoad(buckets) <= 20);
+  }
+
+  @Test
+  public void testPrivateSetIntersection() {
+    BalancedBucketing bucketing = new BalancedBucketing(8, new byte[]{42});
+    BigInteger[] ownerSet = new BigInteger[20];
+    for (int i = 0; i < ownerSet.length; i++) {
+      ownerSet[i] = BigInteger.valueOf(1000 + 7 * i);
+    }
+    EncryptedPolynomial[] polynomials =
+            PolynomialEvaluationEngine.encryptSet(context, ownerSet, bucketing);
+    PolynomialEvaluationEngine engine =
+            new PolynomialEvaluationEngine(polynomials, bucketing, TEST_POOL);
+
+    BigInteger[] points = new BigInteger[30];
+    Set<BigInteger> expected = new HashSet<BigInteger>();
+    Set<BigInteger> owned = new HashSet<BigInteger>(Arrays.asList(ownerSet));
+    for (int i = 0; i < points.length; i++) {
+      points[i] = BigInteger.valueOf(1000 + 5 * i);
+      if (owned.contains(points[i])) {
+        expected.add(points[i]);
+      }
+    }
+    EncryptedNumber[][] responses = engine.evaluateMasked(points, points);
+    Set<BigInteger> intersection = new HashSet<BigInteger>();
+    for (int i = 0; i < points.length; i++) {
+      for (EncryptedNumber response : responses[i]) {
+        assertTrue(response.isSafe);
+        BigInteger value = privateKey.raw_decrypt(response.ciphertext);
+        if (value.equals(points[i])) {
+          intersection.add(value);
+        }
+      }
+    }
+    assertEquals(expected, intersection);
+
+    // plain evaluation yields zero exactly for the points in the intersection
+    EncryptedNumber[][] values = engine.evaluate(points);
+    for (int i = 0; i < points.length; i++) {
+      boolean zero = conf.decrypt(values[i][0]) == 0 || conf.decrypt(values[i][1]) == 0;
+      assertEquals(expected.contains(points[i]), zero);
+    }
+  }
+
+  @Test
+  public void testConstructorChecks() {
+    BalancedBucketing bucketing = new BalancedBucketing(4, new byte[0]);
+    EncryptedPolynomial[] polynomials = PolynomialEvaluationEngine.encryptSet(context,
+            new BigInteger[]{BigInteger.ONE}, bucketing);
+    try {
+      new PolynomialEvaluationEngine(new EncryptedPolynomial[]{polynomials[0]}, bucketing,
+              TEST_POOL);
+      fail("Successfully created an engine with the wrong number of polynomials");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}
@@ -14,10 +14,14 @@
 package com.n1analytics.paillier;
 
 import java.math.BigInteger;
+import java.util.concurrent.ForkJoinPool;
 
 public class TestConfiguration {
   // the maximum number of iterations for randomized tests.
   public static final int MAX_ITERATIONS = 40;
+
+  // the pool of the tests of parallel operations; its threads are daemons, so it is never shut down
+  public static final ForkJoinPool TEST_POOL = new ForkJoinPool(4);
   
   public static final PaillierPrivateKey PRIVATE_KEY_512 = PaillierPrivateKey
       .create(512);
@@ -282,6 +286,10 @@ public class TestConfiguration {
     return context;
   }
 
+  public double decrypt(EncryptedNumber number) {
+    return number.decrypt(privateKey).decodeDouble();
+  }
+
   public BigInteger modulus() {
     return context.getPublicKey().getModulus();
   }
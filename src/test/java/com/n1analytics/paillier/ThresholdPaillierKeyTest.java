@@ -0,0 +1,107 @@
+package com.n1analytics.paillier;
+
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+import static com.n1analytics.paillier.TestConfiguration.TEST_POOL;
+import static org.junit.Assert.*;
+
+@Category(SlowTests.class)
+public class ThresholdPaillierKeyTest {
+
+  private static final ThresholdPaillierKeyShare[] shares = ThresholdPaillierKey.create(256, 3, 5);
+  private static final ThresholdPaillierKey key = shares[0].getKey();
+  private static final PaillierContext context = key.getPublicKey().createSignedContext();
+
+  private static EncryptedNumber[] encryptBatch(long[] values) {
+    EncryptedNumber[] batch = new EncryptedNumber[values.length];
+    for (int i = 0; i < values.length; i++) {
+      batch[i] = context.encrypt(values[i]);
+    }
+    return batch;
+  }
+
+  @Test
+  public void testCreate() {
+    assertEquals(256, key.getPublicKey().getModulus().bitLength());
+    assertEquals(3, key.getThreshold());
+    assertEquals(5, key.getNumberOfShares());
+    for (int i = 0; i < shares.length; i++) {
+      assertEquals(i + 1, shares[i].getIndex());
+      assertEquals(key, shares[i].getKey());
+    }
+  }
+
+  @Test
+  public void testDecryptWithAnySubset() {
+    long[] values = {0, 1, -1, 42, Long.MAX_VALUE, Long.MIN_VALUE};
+    EncryptedNumber[] batch = encryptBatch(values);
+    PartialDecryption[] partials = new PartialDecryption[shares.length];
+    for (int i = 0; i < shares.length; i++) {
+      partials[i] = shares[i].partialDecrypt(batch);
+    }
+    int[][] subsets = {{0, 1, 2}, {4, 2, 0}, {1, 3, 4}, {2, 3, 4, 0}};
+    for (int[] subset : subsets) {
+      PartialDecryption[] selected = new PartialDecryption[subset.length];
+      for (int i = 0; i < subset.length; i++) {
+        selected[i] = partials[subset[i]];
+      }
+      EncodedNumber[] decrypted = key.combine(batch, selected);
+      for (int i = 0; i < values.length; i++) {
+        assertEquals(values[i], decrypted[i].decodeLong());
+      }
+    }
+  }
+
+  @Test
+  public void testDecryptInParallel() {
+    double[] values = new double[100];
+    EncryptedNumber[] batch = new EncryptedNumber[values.length];
+    for (int i = 0; i < values.length; i++) {
+      values[i] = (i - 50) * 0.25;
+      batch[i] = context.encrypt(values[i]).add(context.encrypt(1.5));
+    }
+    ThresholdPaillierKeyShare[] selected = {shares[3], shares[1], shares[4]};
+    EncodedNumber[] decrypted = key.decrypt(batch, selected, TEST_POOL);
+    for (int i = 0; i < values.length; i++) {
+      assertEquals(values[i] + 1.5, decrypted[i].decodeDouble(), 0);
+    }
+  }
+
+  @Test
+  public void testNotEnoughShares() {
+    EncryptedNumber[] batch = encryptBatch(new long[]{7});
+    try {
+      key.combine(batch, new PartialDecryption[]{shares[0].partialDecrypt(batch),
+              shares[1].partialDecrypt(batch)});
+      fail("Successfully combined too few partial decryptions");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      key.combine(batch, new PartialDecryption[]{shares[0].partialDecrypt(batch),
+              shares[1].partialDecrypt(batch), shares[0].partialDecrypt(batch)});
+      fail("Successfully combined duplicate partial decryptions");
+    } catch (IllegalArgumentException e) {
+    }
+    try {
+      key.decrypt(batch, new ThresholdPaillierKeyShare[]{shares[0]}, TEST_POOL);
+      fail("Successfully decrypted with too few shares");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+
+  @Test
+  public void testKeyMismatch() {
+    EncryptedNumber other = TestConfiguration.SIGNED_FULL_PRECISION_512.context().encrypt(1);
+    try {
+      shares[0].partialDecrypt(other);
+      fail("Successfully partially decrypted with the wrong key");
+    } catch (PaillierKeyMismatchException e) {
+    }
+    try {
+      new ThresholdPaillierKey(key.getPublicKey(), 4, 3);
+      fail("Successfully created a threshold key with threshold > numberOfShares");
+    } catch (IllegalArgumentException e) {
+    }
+  }
+}